@@ -0,0 +1,186 @@
+package net.uniloftsky.markant.bank.bench;
+
+import net.uniloftsky.markant.bank.biz.AccountLockCoordinator;
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BankAccount;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.BankServiceImpl;
+import net.uniloftsky.markant.bank.biz.BankTransaction;
+import net.uniloftsky.markant.bank.biz.Money;
+import net.uniloftsky.markant.bank.biz.TransactionPage;
+import net.uniloftsky.markant.bank.biz.TransferTransaction;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of the {@link BankServiceImpl} operations on the in-memory persistence service and on the real H2 database.
+ * <p>
+ * Workloads:
+ * <ul>
+ *     <li>uncontended - every thread works with its own accounts</li>
+ *     <li>same account - all threads work with the same account, or the same pair of accounts for transfers</li>
+ *     <li>random pair - transfers between two random accounts of the shared pool</li>
+ * </ul>
+ * Thread counts are passed on the command line, results are written as JSON so runs can be compared:
+ * <pre>
+ * java -jar bench/target/benchmarks.jar BankServiceBenchmark -t 1 -prof gc -rf json -rff bank-service-t1.json
+ * java -jar bench/target/benchmarks.jar BankServiceBenchmark -t 8 -prof gc -rf json -rff bank-service-t8.json
+ * java -jar bench/target/benchmarks.jar BankServiceBenchmark -p persistence=memory -t 8 -prof gc -rf json -rff bank-service-memory.json
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BankServiceBenchmark {
+
+    /**
+     * Number of accounts in the shared pool
+     */
+    private static final int ACCOUNTS = 1024;
+
+    /**
+     * Number of transactions in the history of every thread account
+     */
+    private static final int HISTORY = 100;
+
+    /**
+     * Initial balance, large enough to never run out during a trial
+     */
+    private static final Money INITIAL_BALANCE = Money.parse("1000000000.00");
+
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    /**
+     * Persistence layer: "memory" for {@link InMemoryBankPersistenceService}, "h2" for JPA on the in-memory H2 database
+     */
+    @Param({"memory", "h2"})
+    private String persistence;
+
+    private ConfigurableApplicationContext context;
+    private BankService bankService;
+
+    private final AccountNumber[] accountNumbers = new AccountNumber[ACCOUNTS];
+
+    /**
+     * Index of the next pair of accounts given to a thread
+     */
+    private final AtomicInteger nextThreadAccount = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (persistence) {
+            case "memory" -> {
+                BankServiceImpl service = new BankServiceImpl();
+                service.setPersistenceService(new InMemoryBankPersistenceService());
+                service.setLockCoordinator(new AccountLockCoordinator());
+                bankService = service;
+            }
+            case "h2" -> {
+                context = BenchmarkApplication.start();
+                bankService = context.getBean(BankService.class);
+            }
+            default -> throw new IllegalArgumentException("unknown persistence: " + persistence);
+        }
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountNumbers[i] = AccountNumber.of(1000000000L + i);
+            bankService.deposit(accountNumbers[i], INITIAL_BALANCE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    /**
+     * Pair of accounts used by a single thread only, as long as there are fewer threads than half of the pool
+     */
+    @State(Scope.Thread)
+    public static class ThreadAccounts {
+
+        private AccountNumber own;
+        private AccountNumber counterparty;
+
+        /**
+         * Direction of the next transfer, alternated to keep both balances stable
+         */
+        private boolean reverse;
+
+        @Setup(Level.Trial)
+        public void setUp(BankServiceBenchmark benchmark) {
+            int index = benchmark.nextThreadAccount.getAndAdd(2) % ACCOUNTS;
+            own = benchmark.accountNumbers[index];
+            counterparty = benchmark.accountNumbers[index + 1];
+            for (int i = 0; i < HISTORY; i++) {
+                benchmark.bankService.deposit(own, AMOUNT);
+            }
+        }
+
+        AccountNumber from() {
+            return reverse ? counterparty : own;
+        }
+
+        AccountNumber to() {
+            reverse = !reverse;
+            return reverse ? counterparty : own;
+        }
+    }
+
+    @Benchmark
+    public BankAccount depositUncontended(ThreadAccounts accounts) {
+        return bankService.deposit(accounts.own, AMOUNT);
+    }
+
+    @Benchmark
+    public BankAccount depositSameAccount() {
+        return bankService.deposit(accountNumbers[0], AMOUNT);
+    }
+
+    @Benchmark
+    public BankAccount withdrawUncontended(ThreadAccounts accounts) {
+        return bankService.withdraw(accounts.own, AMOUNT);
+    }
+
+    @Benchmark
+    public BankAccount withdrawSameAccount() {
+        return bankService.withdraw(accountNumbers[0], AMOUNT);
+    }
+
+    @Benchmark
+    public TransferTransaction transferUncontended(ThreadAccounts accounts) {
+        AccountNumber from = accounts.from();
+        return bankService.transfer(from, accounts.to(), AMOUNT);
+    }
+
+    @Benchmark
+    public TransferTransaction transferSameAccounts(ThreadAccounts accounts) {
+        // opposite directions in different threads
+        boolean reverse = accounts.reverse;
+        accounts.reverse = !reverse;
+        return reverse
+                ? bankService.transfer(accountNumbers[1], accountNumbers[0], AMOUNT)
+                : bankService.transfer(accountNumbers[0], accountNumbers[1], AMOUNT);
+    }
+
+    @Benchmark
+    public TransferTransaction transferRandomPair() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        return bankService.transfer(accountNumbers[from], accountNumbers[to], AMOUNT);
+    }
+
+    @Benchmark
+    public TransactionPage<BankTransaction> listTransactions(ThreadAccounts accounts) {
+        return bankService.listTransactions(accounts.own, null, TransactionPage.DEFAULT_LIMIT);
+    }
+}
@@ -0,0 +1,34 @@
+package net.uniloftsky.markant.bank.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Business layer application context on the in-memory H2 database, without the web layer
+ */
+@SpringBootApplication(scanBasePackages = "net.uniloftsky.markant.bank.biz")
+@EntityScan("net.uniloftsky.markant.bank.biz.persistence")
+@EnableJpaRepositories("net.uniloftsky.markant.bank.biz.persistence.repository")
+public class BenchmarkApplication {
+
+    /**
+     * Start the context. Every context gets its own database, so benchmark trials don't see each other's data
+     *
+     * @param properties additional properties in the "key=value" form
+     * @return started context, must be closed by the caller
+     */
+    public static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:bench-" + System.nanoTime())
+                .properties(properties)
+                .run();
+    }
+}
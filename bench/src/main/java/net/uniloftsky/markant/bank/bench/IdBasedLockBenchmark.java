@@ -0,0 +1,46 @@
+package net.uniloftsky.markant.bank.bench;
+
+import net.anotheria.idbasedlock.IdBasedLock;
+import net.anotheria.idbasedlock.IdBasedLockManager;
+import net.anotheria.idbasedlock.SafeIdBasedLockManager;
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline of the {@link LockManagerBenchmark}: cost of locking and unlocking a single account with the id based lock
+ * manager the bank service used before the striped one. Same accounts, cursors and run settings.
+ * <p>
+ * Compiled with the {@code idbasedlock} profile only, since {@code net.anotheria:idbasedlock} isn't on Maven Central.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(5)
+@State(Scope.Benchmark)
+public class IdBasedLockBenchmark {
+
+    private final IdBasedLockManager<AccountNumber> idBasedLockManager = new SafeIdBasedLockManager<>();
+
+    private final AccountNumber[] accountNumbers = new AccountNumber[LockManagerBenchmark.ACCOUNTS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < LockManagerBenchmark.ACCOUNTS; i++) {
+            accountNumbers[i] = AccountNumber.of(LockManagerBenchmark.FIRST_ACCOUNT + i);
+        }
+    }
+
+    @Benchmark
+    public void idBasedLock(LockManagerBenchmark.Cursor cursor) {
+        IdBasedLock<AccountNumber> lock = idBasedLockManager.obtainLock(accountNumbers[cursor.next()]);
+        lock.lock();
+        try {
+            // nothing to do
+        } finally {
+            lock.unlock();
+        }
+    }
+}
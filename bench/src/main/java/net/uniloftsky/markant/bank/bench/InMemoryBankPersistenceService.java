@@ -0,0 +1,201 @@
+package net.uniloftsky.markant.bank.bench;
+
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Persistence service keeping accounts and journals in concurrent maps, used to measure the service and locking
+ * cost without the database.
+ * <p>
+ * Balance updates are atomic per account, like the single statement updates of the database. Only the most recent
+ * {@value #JOURNAL_CAPACITY} journal entries of every account are kept, so long benchmark runs don't fill the heap
+ * with history nobody reads.
+ */
+public class InMemoryBankPersistenceService implements BankPersistenceService {
+
+    /**
+     * Maximum number of journal entries kept per account
+     */
+    static final int JOURNAL_CAPACITY = 1024;
+
+    private final ConcurrentMap<Long, AccountEntity> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Journal> journals = new ConcurrentHashMap<>();
+
+    @Override
+    public AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp) {
+        AccountEntity account = new AccountEntity();
+        account.setNumber(accountNumber);
+        account.setBalance(balance);
+        account.setCreatedAt(creationTimestamp);
+        accounts.put(accountNumber, account);
+        return account;
+    }
+
+    @Override
+    public Optional<AccountEntity> getAccount(long accountNumber) {
+        return Optional.ofNullable(accounts.get(accountNumber));
+    }
+
+    @Override
+    public List<AccountEntity> listAccounts() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @Override
+    public AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp) {
+        accountEntity.setBalance(newBalance);
+        accountEntity.setUpdatedAt(timestamp);
+        accounts.put(accountEntity.getNumber(), accountEntity);
+        return accountEntity;
+    }
+
+    @Override
+    public OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        long[] result = {-1};
+        accounts.computeIfPresent(accountNumber, (number, account) -> {
+            if (account.getBalance() >= amount) {
+                account.setBalance(account.getBalance() - amount);
+                account.setUpdatedAt(timestamp);
+                result[0] = account.getBalance();
+            }
+            return account;
+        });
+        return result[0] < 0 ? OptionalLong.empty() : OptionalLong.of(result[0]);
+    }
+
+    @Override
+    public OptionalLong credit(long accountNumber, long amount, long timestamp) {
+        AccountEntity updated = accounts.computeIfPresent(accountNumber, (number, account) -> {
+            account.setBalance(Math.addExact(account.getBalance(), amount));
+            account.setUpdatedAt(timestamp);
+            return account;
+        });
+        return updated == null ? OptionalLong.empty() : OptionalLong.of(updated.getBalance());
+    }
+
+    @Override
+    public long creditOrCreate(long accountNumber, long amount, long timestamp) {
+        return accounts.compute(accountNumber, (number, account) -> {
+            if (account == null) {
+                account = new AccountEntity();
+                account.setNumber(number);
+                account.setCreatedAt(timestamp);
+            }
+            account.setBalance(Math.addExact(account.getBalance(), amount));
+            account.setUpdatedAt(timestamp);
+            return account;
+        }).getBalance();
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber) {
+        List<TransactionEntity> result = new ArrayList<>();
+        forEachTransaction(accountNumber, Set.of(TransactionEntryType.values()), result::add);
+        return result;
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        return journalOf(accountNumber).list(types, Long.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        return journalOf(accountNumber).list(types, afterTimestamp, afterId, limit);
+    }
+
+    @Override
+    public void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action) {
+        journalOf(accountNumber).list(types, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE).forEach(action);
+    }
+
+    @Override
+    public TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        return append(id, TransactionEntryType.DEPOSIT, accountNumber, null, amount, timestamp);
+    }
+
+    @Override
+    public TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        return append(id, TransactionEntryType.WITHDRAWAL, accountNumber, null, amount, timestamp);
+    }
+
+    @Override
+    public TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        TransactionEntity outgoingTransfer = append(id, TransactionEntryType.TRANSFER_OUT, fromAccountNumber, toAccountNumber, amount, timestamp);
+        if (fromAccountNumber != toAccountNumber) {
+            append(id, TransactionEntryType.TRANSFER_IN, toAccountNumber, fromAccountNumber, amount, timestamp);
+        }
+        return outgoingTransfer;
+    }
+
+    @Override
+    public void createTransactions(List<TransactionEntity> entries) {
+        for (TransactionEntity entry : entries) {
+            journals.computeIfAbsent(entry.getAccountNumber(), number -> new Journal()).add(entry);
+        }
+    }
+
+    private TransactionEntity append(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        journals.computeIfAbsent(accountNumber, number -> new Journal()).add(entry);
+        return entry;
+    }
+
+    private Journal journalOf(long accountNumber) {
+        Journal journal = journals.get(accountNumber);
+        return journal == null ? Journal.EMPTY : journal;
+    }
+
+    /**
+     * Journal of a single account. Entries are appended in timestamp order, so the newest entry is the last one
+     */
+    private static final class Journal {
+
+        private static final Journal EMPTY = new Journal();
+
+        private final ArrayDeque<TransactionEntity> entries = new ArrayDeque<>();
+
+        synchronized void add(TransactionEntity entry) {
+            if (entries.size() == JOURNAL_CAPACITY) {
+                entries.removeFirst();
+            }
+            entries.addLast(entry);
+        }
+
+        /**
+         * List entries of the given types older than the given position, most recent first
+         */
+        synchronized List<TransactionEntity> list(Set<TransactionEntryType> types, long beforeTimestamp, long beforeId, int limit) {
+            List<TransactionEntity> result = new ArrayList<>(Math.min(limit, entries.size()));
+            Iterator<TransactionEntity> iterator = entries.descendingIterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                TransactionEntity entry = iterator.next();
+                boolean older = entry.getTimestamp() < beforeTimestamp
+                        || (entry.getTimestamp() == beforeTimestamp && entry.getTransactionId() < beforeId);
+                if (older && types.contains(entry.getType())) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.uniloftsky.markant.bank.bench;
+
+import net.uniloftsky.markant.bank.biz.StripedLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cost of locking and unlocking a single account with the {@link StripedLockManager}. The id based lock manager it
+ * replaced is measured the same way by {@link IdBasedLockBenchmark}, built with the {@code idbasedlock} profile.
+ * <p>
+ * Every thread walks over its own slice of accounts, so the benchmark measures the lock lookup and the uncontended
+ * lock rather than waiting. Runs with more threads than cores measure the scheduler, thread counts are passed on the
+ * command line:
+ * <pre>
+ * mvn -Pbench,idbasedlock -pl bench -am package -DskipTests
+ * java -jar bench/target/benchmarks.jar "LockManagerBenchmark|IdBasedLockBenchmark" -t 1 -prof gc
+ * java -jar bench/target/benchmarks.jar "LockManagerBenchmark|IdBasedLockBenchmark" -t 8 -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(5)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+
+    /**
+     * Number of distinct accounts
+     */
+    static final int ACCOUNTS = 1 << 14;
+
+    /**
+     * Number of the first account
+     */
+    static final long FIRST_ACCOUNT = 1000000000L;
+
+    private final StripedLockManager stripedLockManager = new StripedLockManager();
+
+    private final long[] numbers = new long[ACCOUNTS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            numbers[i] = FIRST_ACCOUNT + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        @Setup
+        public void setUp() {
+            next = (int) (Thread.currentThread().threadId() * 7919);
+        }
+
+        int next() {
+            return next++ & (ACCOUNTS - 1);
+        }
+    }
+
+    @Benchmark
+    public void stripedLock(Cursor cursor) {
+        ReentrantLock lock = stripedLockManager.lockFor(numbers[cursor.next()]);
+        lock.lock();
+        try {
+            // nothing to do
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package net.uniloftsky.markant.bank.bench;
+
+import net.uniloftsky.markant.bank.biz.TransactionIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating transaction IDs with the {@link TransactionIdGenerator} and the random UUIDs used before, and the
+ * throughput of inserting rows keyed by either of them into an H2 table shaped like {@code bank_transaction}.
+ * <p>
+ * The insert benchmarks add single rows in auto-commit to a table which already holds {@link #PRELOADED} rows, so
+ * random keys have to find their place all over the primary key index while time-ordered keys are appended at its end.
+ * Thread counts are passed on the command line:
+ * <pre>
+ * java -jar bench/target/benchmarks.jar TransactionIdBenchmark -t 1 -prof gc
+ * java -jar bench/target/benchmarks.jar TransactionIdBenchmark -t 8 -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionIdBenchmark {
+
+    /**
+     * Number of rows inserted into each table before the trial
+     */
+    private static final int PRELOADED = 200_000;
+
+    private static final String COLUMNS = "type VARCHAR(16) NOT NULL, account_number BIGINT NOT NULL, amount BIGINT NOT NULL, timestamp BIGINT NOT NULL";
+
+    private final TransactionIdGenerator generator = new TransactionIdGenerator();
+
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        url = "jdbc:h2:mem:transaction-id-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE uuid_transaction (id UUID NOT NULL, " + COLUMNS + ", PRIMARY KEY (id, type))");
+            statement.execute("CREATE TABLE long_transaction (id BIGINT NOT NULL, " + COLUMNS + ", PRIMARY KEY (id, type))");
+        }
+        try (Inserter inserter = new Inserter()) {
+            inserter.open(this);
+            inserter.connection.setAutoCommit(false);
+            for (int i = 0; i < PRELOADED; i++) {
+                inserter.insertUuid(UUID.randomUUID());
+                inserter.insertLong(generator.nextId());
+            }
+            inserter.connection.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    /**
+     * Connection and prepared inserts of a single thread
+     */
+    @State(Scope.Thread)
+    public static class Inserter implements AutoCloseable {
+
+        private Connection connection;
+        private PreparedStatement insertUuid;
+        private PreparedStatement insertLong;
+        private long accountNumber;
+
+        @Setup(Level.Trial)
+        public void open(TransactionIdBenchmark benchmark) throws SQLException {
+            connection = DriverManager.getConnection(benchmark.url);
+            insertUuid = connection.prepareStatement("INSERT INTO uuid_transaction VALUES (?, 'DEPOSIT', ?, 1, ?)");
+            insertLong = connection.prepareStatement("INSERT INTO long_transaction VALUES (?, 'DEPOSIT', ?, 1, ?)");
+            accountNumber = 1000000000L + Thread.currentThread().threadId();
+        }
+
+        @TearDown(Level.Trial)
+        @Override
+        public void close() throws SQLException {
+            connection.close();
+        }
+
+        int insertUuid(UUID id) throws SQLException {
+            insertUuid.setObject(1, id);
+            insertUuid.setLong(2, accountNumber);
+            insertUuid.setLong(3, System.currentTimeMillis());
+            return insertUuid.executeUpdate();
+        }
+
+        int insertLong(long id) throws SQLException {
+            insertLong.setLong(1, id);
+            insertLong.setLong(2, accountNumber);
+            insertLong.setLong(3, System.currentTimeMillis());
+            return insertLong.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public UUID generateRandomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public long generateTimeOrderedId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public int insertRandomUuid(Inserter inserter) throws SQLException {
+        return inserter.insertUuid(UUID.randomUUID());
+    }
+
+    @Benchmark
+    public int insertTimeOrderedId(Inserter inserter) throws SQLException {
+        return inserter.insertLong(generator.nextId());
+    }
+}
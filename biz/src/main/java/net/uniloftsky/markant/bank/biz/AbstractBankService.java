@@ -0,0 +1,541 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Base class for {@link BankService} engines.
+ * <p>
+ * Holds the functionality which doesn't depend on how balances are maintained: validation, reading the transaction
+ * history from the persistence layer and mapping persistence entities to business layer objects.
+ * History read helpers are not transactional on purpose, the subclasses decide how reads are demarcated.
+ * <p>
+ * If the {@link AccountNumberFilter} is configured, accounts it doesn't know are rejected without a database read.
+ * The subclasses add every account they create to it with {@link #creditOrCreate(AccountNumber, Money, long)}
+ * or {@link #registerAccount(AccountNumber)}.
+ * <p>
+ * If the {@link RecentHistoryCache} is configured, the first history pages are served from it. It's only set by the
+ * subclasses which add their journal entries to it.
+ */
+public abstract class AbstractBankService implements BankService {
+
+    // Default balance value on account creation
+    static final Money INITIAL_BALANCE = Money.ZERO;
+
+    // Journal entry types of every transaction history
+    static final Set<TransactionEntryType> DEPOSIT_TYPES = EnumSet.of(TransactionEntryType.DEPOSIT);
+    static final Set<TransactionEntryType> WITHDRAWAL_TYPES = EnumSet.of(TransactionEntryType.WITHDRAWAL);
+    static final Set<TransactionEntryType> TRANSFER_TYPES = EnumSet.of(TransactionEntryType.TRANSFER_OUT, TransactionEntryType.TRANSFER_IN);
+    static final Set<TransactionEntryType> ALL_TYPES = EnumSet.allOf(TransactionEntryType.class);
+
+    /**
+     * Persistence service
+     */
+    protected BankPersistenceService persistenceService;
+
+    /**
+     * Clock instance
+     */
+    protected Clock clock;
+
+    /**
+     * Generator of the transaction IDs of this node
+     */
+    protected TransactionIdGenerator idGenerator;
+
+    /**
+     * Filter of the existing account numbers, disabled if null
+     */
+    protected AccountNumberFilter accountFilter;
+
+    /**
+     * Cache of the recent transactions of the accounts, disabled if null
+     */
+    protected RecentHistoryCache recentHistory;
+
+    protected AbstractBankService() {
+        this.clock = Clock.systemUTC();
+        this.idGenerator = new TransactionIdGenerator();
+    }
+
+    /**
+     * Read a page of withdrawal transactions of the account from the persistence layer, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @return page of withdrawal transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    TransactionPage<WithdrawTransaction> readWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, WITHDRAWAL_TYPES, after, limit, AbstractBankService::mapWithdrawal);
+    }
+
+    /**
+     * Read a page of deposit transactions of the account from the persistence layer, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @return page of deposit transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    TransactionPage<DepositTransaction> readDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, DEPOSIT_TYPES, after, limit, AbstractBankService::mapDeposit);
+    }
+
+    /**
+     * Read a page of transfer transactions of the account from the persistence layer, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @return page of transfer transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    TransactionPage<TransferTransaction> readTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, TRANSFER_TYPES, after, limit, AbstractBankService::mapTransfer);
+    }
+
+    /**
+     * Read a page of all transactions of the account from the persistence layer, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @return page of transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    TransactionPage<BankTransaction> readTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, ALL_TYPES, after, limit, AbstractBankService::map);
+    }
+
+    /**
+     * Read a page of transactions of the given types.
+     * <p>
+     * One entry more than the limit is requested, so the presence of the next page is known without another query.
+     * The first page is served from the recent history cache if possible, an account missing in the cache is loaded
+     * into it if the page fits into the cache
+     *
+     * @param accountNumber account number
+     * @param types         entry types to read
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @param mapper        mapper of entries to business layer objects
+     * @return page of transactions
+     */
+    <T extends BankTransaction> TransactionPage<T> readPage(AccountNumber accountNumber, Set<TransactionEntryType> types, TransactionCursor after, int limit,
+                                                            Function<TransactionEntity, T> mapper) {
+        validatePageLimit(limit);
+        if (after == null && recentHistory != null) {
+            TransactionPage<T> cached = recentHistory.firstPage(accountNumber, types, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        getAccountEntity(accountNumber); // get account entity to check if it exists, otherwise an exception will be thrown
+
+        if (after == null && recentHistory != null && limit < recentHistory.getSize()) {
+            recentHistory.load(accountNumber, () -> persistenceService.listTransactions(accountNumber.getNumber(), ALL_TYPES, recentHistory.getSize()));
+            TransactionPage<T> cached = recentHistory.firstPage(accountNumber, types, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List<TransactionEntity> entities = after == null
+                ? persistenceService.listTransactions(accountNumber.getNumber(), types, limit + 1)
+                : persistenceService.listTransactionsAfter(accountNumber.getNumber(), types, after.getTimestamp(), after.getId().getId(), limit + 1);
+
+        // map persistence layer entities to business layer objects, the order is kept from the persistence layer
+        int size = Math.min(entities.size(), limit);
+        List<T> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(mapper.apply(entities.get(i)));
+        }
+        TransactionCursor next = entities.size() > limit ? TransactionCursor.of(items.getLast()) : null;
+        return new TransactionPage<>(items, next);
+    }
+
+    /**
+     * Stream the transactions of the given type of the account from the persistence layer to the action, most recent first
+     *
+     * @param accountNumber account number
+     * @param type          type of transactions, null for all transactions
+     * @param action        action to perform on every transaction
+     * @throws AccountNotFoundException if account by provided number cannot be found
+     */
+    void exportHistory(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action) {
+        getAccountEntity(accountNumber); // get account entity to check if it exists, otherwise an exception will be thrown
+
+        persistenceService.forEachTransaction(accountNumber.getNumber(), entryTypesOf(type), entity -> action.accept(map(entity)));
+    }
+
+    /**
+     * Journal entry types of the transactions of the given type
+     *
+     * @param type type of transactions, null for all transactions
+     * @return journal entry types
+     */
+    static Set<TransactionEntryType> entryTypesOf(TransactionType type) {
+        return type == null ? ALL_TYPES : switch (type) {
+            case DEPOSIT -> DEPOSIT_TYPES;
+            case WITHDRAWAL -> WITHDRAWAL_TYPES;
+            case TRANSFER -> TRANSFER_TYPES;
+        };
+    }
+
+    /**
+     * Maps a persistence layer account entity to a business-layer {@link BankAccount} object.
+     * <p>
+     * This conversion translates the database representation of an account into a form
+     * suitable for business layer.
+     *
+     * @param entity entity to map
+     * @return bank account
+     */
+    static BankAccount map(AccountEntity entity) {
+        AccountNumber accountNumber = AccountNumber.of(entity.getNumber());
+        Money balance = Money.ofMinorUnits(entity.getBalance());
+        return new BankAccount(accountNumber, balance);
+    }
+
+    /**
+     * Maps a persistence layer transaction journal entry {@link TransactionEntity} to a business layer {@link BankTransaction}
+     * of the corresponding type
+     *
+     * @param entity entity to map
+     * @return bank transaction
+     */
+    static BankTransaction map(TransactionEntity entity) {
+        return switch (entity.getType()) {
+            case DEPOSIT -> mapDeposit(entity);
+            case WITHDRAWAL -> mapWithdrawal(entity);
+            case TRANSFER_OUT, TRANSFER_IN -> mapTransfer(entity);
+        };
+    }
+
+    /**
+     * Maps the columns of a transaction journal entry to a business layer {@link BankTransaction} of the corresponding type
+     *
+     * @param id                        transaction ID
+     * @param type                      entry type
+     * @param accountNumber             account the entry belongs to
+     * @param counterpartyAccountNumber other party of a transfer, ignored otherwise
+     * @param amount                    amount in minor units
+     * @param timestamp                 transaction timestamp
+     * @return bank transaction
+     */
+    static BankTransaction map(long id, TransactionEntryType type, long accountNumber, long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionId transactionId = new TransactionId(id);
+        AccountNumber account = AccountNumber.of(accountNumber);
+        Money money = Money.ofMinorUnits(amount);
+        Instant instant = Instant.ofEpochMilli(timestamp);
+        return switch (type) {
+            case DEPOSIT -> new DepositTransaction(transactionId, account, money, instant);
+            case WITHDRAWAL -> new WithdrawTransaction(transactionId, account, money, instant);
+            case TRANSFER_OUT -> new TransferTransaction(transactionId, account, AccountNumber.of(counterpartyAccountNumber), money, instant);
+            case TRANSFER_IN -> new TransferTransaction(transactionId, AccountNumber.of(counterpartyAccountNumber), account, money, instant);
+        };
+    }
+
+    /**
+     * Maps a persistence layer deposit entry to a business layer {@link DepositTransaction} object.
+     *
+     * @param entity entity to map
+     * @return deposit transaction
+     */
+    static DepositTransaction mapDeposit(TransactionEntity entity) {
+        TransactionId transactionId = new TransactionId(entity.getTransactionId());
+        AccountNumber accountNumber = AccountNumber.of(entity.getAccountNumber());
+        Money amount = Money.ofMinorUnits(entity.getAmount());
+        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
+        return new DepositTransaction(transactionId, accountNumber, amount, timestamp);
+    }
+
+    /**
+     * Maps a persistence layer withdrawal entry to a business layer {@link WithdrawTransaction} object.
+     *
+     * @param entity entity to map
+     * @return withdrawal transaction
+     */
+    static WithdrawTransaction mapWithdrawal(TransactionEntity entity) {
+        TransactionId transactionId = new TransactionId(entity.getTransactionId());
+        AccountNumber accountNumber = AccountNumber.of(entity.getAccountNumber());
+        Money amount = Money.ofMinorUnits(entity.getAmount());
+        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
+        return new WithdrawTransaction(transactionId, accountNumber, amount, timestamp);
+    }
+
+    /**
+     * Maps a persistence layer transfer entry of either party to a business layer {@link TransferTransaction} object
+     *
+     * @param entity entity to map
+     * @return transfer transaction
+     */
+    static TransferTransaction mapTransfer(TransactionEntity entity) {
+        TransactionId transactionId = new TransactionId(entity.getTransactionId());
+        AccountNumber accountNumber = AccountNumber.of(entity.getAccountNumber());
+        AccountNumber counterpartyAccountNumber = AccountNumber.of(entity.getCounterpartyAccountNumber());
+        Money amount = Money.ofMinorUnits(entity.getAmount());
+        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
+        if (entity.getType() == TransactionEntryType.TRANSFER_IN) {
+            return new TransferTransaction(transactionId, counterpartyAccountNumber, accountNumber, amount, timestamp);
+        }
+        return new TransferTransaction(transactionId, accountNumber, counterpartyAccountNumber, amount, timestamp);
+    }
+
+    /**
+     * Create a transaction journal entry, to be saved with {@link BankPersistenceService#createTransactions(List)}
+     *
+     * @param id                        transaction ID
+     * @param type                      entry type
+     * @param accountNumber             account the entry belongs to
+     * @param counterpartyAccountNumber other party of a transfer, null otherwise
+     * @param amount                    amount in minor units
+     * @param timestamp                 transaction timestamp
+     * @return journal entry
+     */
+    static TransactionEntity createEntry(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+
+    /**
+     * Method to validate transaction parameters
+     *
+     * @param amount         transaction amount
+     * @param accountNumbers list of account numbers to validate
+     */
+    static void validateTransactionParameters(Money amount, AccountNumber... accountNumbers) {
+        if (accountNumbers != null) {
+            for (AccountNumber accountNumber : accountNumbers) {
+                if (accountNumber == null) {
+                    throw new IllegalArgumentException("accountNumber cannot be null");
+                }
+            }
+        }
+        if (amount == null || !amount.isPositive()) {
+            throw new IllegalArgumentException("transaction amount must be greater than zero");
+        }
+    }
+
+    /**
+     * Method to validate a batch of operations
+     *
+     * @param operations operations of the batch
+     * @throws InvalidBatchException if the batch is empty, too large or contains an invalid operation
+     */
+    static void validateBatch(List<BatchOperation> operations) {
+        if (operations == null || operations.isEmpty() || operations.size() > BatchOperation.MAX_BATCH_SIZE) {
+            int size = operations == null ? 0 : operations.size();
+            throw new InvalidBatchException("batch must contain between 1 and " + BatchOperation.MAX_BATCH_SIZE + " operations, but was " + size, -1);
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            if (operation == null || operation.getAccountNumber() == null
+                    || (operation.getType() != TransactionType.DEPOSIT && operation.getType() != TransactionType.WITHDRAWAL)
+                    || operation.getAmount() == null || !operation.getAmount().isPositive()) {
+                throw new InvalidBatchException("operation " + i + " must be a deposit or a withdrawal of a positive amount", i);
+            }
+        }
+    }
+
+    /**
+     * Distinct accounts of a batch of operations
+     *
+     * @param operations operations of the batch
+     * @return account numbers, each one once
+     */
+    static AccountNumber[] accountsOf(List<BatchOperation> operations) {
+        return operations.stream().map(BatchOperation::getAccountNumber).distinct().toArray(AccountNumber[]::new);
+    }
+
+    /**
+     * Results of an all-or-nothing batch which is not applied: rejected operations keep their results,
+     * all other operations of the batch are not applied
+     *
+     * @param results results of the operations evaluated before the batch was given up
+     * @param size    number of operations in the batch
+     * @return results of all operations of the batch
+     */
+    static List<BatchOperationResult> notApplied(List<BatchOperationResult> results, int size) {
+        List<BatchOperationResult> notApplied = new ArrayList<>(size);
+        for (BatchOperationResult result : results) {
+            notApplied.add(result.getStatus() == BatchOperationResult.Status.REJECTED ? result : BatchOperationResult.notApplied());
+        }
+        while (notApplied.size() < size) {
+            notApplied.add(BatchOperationResult.notApplied());
+        }
+        return notApplied;
+    }
+
+    /**
+     * Method to validate the limit of a transaction history page
+     *
+     * @param limit maximum number of transactions on the page
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    static void validatePageLimit(int limit) {
+        if (limit < 1 || limit > TransactionPage.MAX_LIMIT) {
+            throw new InvalidPageLimitException("limit must be between 1 and " + TransactionPage.MAX_LIMIT + ", but was " + limit, limit);
+        }
+    }
+
+    /**
+     * Retrieves an account entity by the provided accountNumber.
+     * <p>
+     * If the account cannot be found, an exception will be thrown.
+     *
+     * @param accountNumber account number
+     * @return account entity
+     * @throws AccountNotFoundException if account entity by the given account number doesn't exist
+     */
+    AccountEntity getAccountEntity(AccountNumber accountNumber) {
+        rejectUnknownAccount(accountNumber);
+        return findAccountEntity(accountNumber);
+    }
+
+    /**
+     * Retrieves an account entity by the provided accountNumber, without checking the account filter first
+     *
+     * @param accountNumber account number
+     * @return account entity
+     * @throws AccountNotFoundException if account entity by the given account number doesn't exist
+     */
+    private AccountEntity findAccountEntity(AccountNumber accountNumber) {
+        Optional<AccountEntity> optionalAccountEntity = persistenceService.getAccount(accountNumber.getNumber());
+        if (optionalAccountEntity.isPresent()) {
+            return optionalAccountEntity.get();
+        } else {
+            if (accountFilter != null) {
+                accountFilter.recordFalsePositive();
+            }
+            throw new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber);
+        }
+    }
+
+    /**
+     * Reject the account if the account filter knows it doesn't exist
+     *
+     * @param accountNumber account number
+     * @throws AccountNotFoundException if the account definitely doesn't exist
+     */
+    void rejectUnknownAccount(AccountNumber accountNumber) {
+        if (accountFilter != null && !accountFilter.mightContain(accountNumber.getNumber())) {
+            throw new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber);
+        }
+    }
+
+    /**
+     * Add the account to the account filter. Must be called before the account is created
+     *
+     * @param accountNumber account number
+     */
+    void registerAccount(AccountNumber accountNumber) {
+        if (accountFilter != null) {
+            accountFilter.add(accountNumber.getNumber());
+        }
+    }
+
+    /**
+     * Add the amount to the account balance with a single statement, the account is created if it doesn't exist yet
+     * and added to the account filter
+     *
+     * @param accountNumber        account number
+     * @param amount               amount to add
+     * @param transactionTimestamp timestamp of the balance update
+     * @return new account balance
+     */
+    Money creditOrCreate(AccountNumber accountNumber, Money amount, long transactionTimestamp) {
+        registerAccount(accountNumber);
+        return Money.ofMinorUnits(persistenceService.creditOrCreate(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp));
+    }
+
+    /**
+     * Subtract the amount from the account balance with a single conditional update.
+     * <p>
+     * The account is read only if the update fails, to tell a missing account from an insufficient balance
+     *
+     * @param accountNumber              account number
+     * @param amount                     amount to subtract
+     * @param transactionTimestamp       timestamp of the balance update
+     * @param insufficientBalanceMessage message of the exception thrown if the balance is insufficient
+     * @return new account balance
+     * @throws AccountNotFoundException     if account by the given account number doesn't exist
+     * @throws InsufficientBalanceException if the account balance is less than the amount
+     */
+    Money debit(AccountNumber accountNumber, Money amount, long transactionTimestamp, String insufficientBalanceMessage) {
+        rejectUnknownAccount(accountNumber);
+        OptionalLong balance = persistenceService.debitIfSufficient(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+        if (balance.isEmpty()) {
+            findAccountEntity(accountNumber); // throws an exception if the account doesn't exist
+            throw new InsufficientBalanceException(insufficientBalanceMessage);
+        }
+        return Money.ofMinorUnits(balance.getAsLong());
+    }
+
+    /**
+     * Apply a single operation of a batch with the conditional statements of the persistence layer.
+     * <p>
+     * The journal entry of the operation is only added to the given list, to be saved with the entries of the whole batch
+     *
+     * @param operation operation to apply
+     * @param timestamp timestamp of the operation
+     * @param journal   journal entries of the batch
+     * @return account with its balance after the operation
+     * @throws AccountNotFoundException     if the account of a withdrawal doesn't exist, nothing is changed
+     * @throws InsufficientBalanceException if the balance is less than the withdrawal amount, nothing is changed
+     */
+    BankAccount applyBatchOperation(BatchOperation operation, long timestamp, List<TransactionEntity> journal) {
+        AccountNumber accountNumber = operation.getAccountNumber();
+        Money amount = operation.getAmount();
+        Money balance;
+        TransactionEntryType entryType;
+        if (operation.getType() == TransactionType.DEPOSIT) {
+            balance = creditOrCreate(accountNumber, amount, timestamp);
+            entryType = TransactionEntryType.DEPOSIT;
+        } else {
+            balance = debit(accountNumber, amount, timestamp, "withdrawal amount is greater than the current account balance");
+            entryType = TransactionEntryType.WITHDRAWAL;
+        }
+        journal.add(createEntry(idGenerator.nextTransactionId().getId(), entryType, accountNumber.getNumber(), null, amount.getMinorUnits(), timestamp));
+        return new BankAccount(accountNumber, balance);
+    }
+
+    @Autowired
+    public void setPersistenceService(BankPersistenceService persistenceService) {
+        this.persistenceService = persistenceService;
+    }
+
+    @Autowired
+    public void setIdGenerator(TransactionIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    @Autowired(required = false)
+    public void setAccountFilter(AccountNumberFilter accountFilter) {
+        this.accountFilter = accountFilter;
+    }
+}
@@ -0,0 +1,198 @@
+package net.uniloftsky.markant.bank.biz;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Read cache of account balances, bounded by the number of accounts and by the time since the balance was cached.
+ * <p>
+ * Balance changes are written through by the bank engine with {@link #put(BankAccount)}. Within a transaction the
+ * new balance is cached after the commit, while the account lock is still held, so a rolled back change is never
+ * visible and changes of the same account are cached in their commit order.
+ * <p>
+ * Every account has a version, a counter of its stripe incremented by every cached balance change. A balance read
+ * from the database on a miss is only cached if the version hasn't changed during the read, so a slow read never
+ * replaces a balance written after it started, even if that balance has been evicted meanwhile. A reader therefore
+ * never gets an older balance than the one of a change it has observed. Changes made by other nodes sharing the
+ * database are not seen until the cached balance expires.
+ * <p>
+ * Hits, misses, evictions, the hit ratio and the size are published as {@code bank.account-cache.*} meters.
+ */
+@Component
+public class AccountBalanceCache implements MeterBinder {
+
+    /**
+     * Default maximum number of cached accounts
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+
+    /**
+     * Default time a balance stays cached after it was read or written
+     */
+    public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofSeconds(30);
+
+    /**
+     * Number of account version stripes, a power of two
+     */
+    static final int VERSION_STRIPES = 1024;
+
+    /**
+     * Account versions, shared by the accounts of a stripe
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final Ticker ticker;
+
+    private volatile Cache<Long, BankAccount> cache;
+
+    public AccountBalanceCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+    }
+
+    /**
+     * @param maximumSize      maximum number of cached accounts
+     * @param expireAfterWrite time a balance stays cached after it was read or written
+     */
+    public AccountBalanceCache(long maximumSize, Duration expireAfterWrite) {
+        this(maximumSize, expireAfterWrite, Ticker.systemTicker());
+    }
+
+    AccountBalanceCache(long maximumSize, Duration expireAfterWrite, Ticker ticker) {
+        this.ticker = ticker;
+        configure(maximumSize, expireAfterWrite);
+    }
+
+    /**
+     * Get the account from the cache, or load it and cache it.
+     * <p>
+     * The loaded account isn't cached if a balance change of the account was cached while it was loaded.
+     * Within a transaction the cache is bypassed, the transaction may see its own changes which aren't committed yet
+     *
+     * @param accountNumber account number
+     * @param loader        loader of the account from the database, its exceptions are passed to the caller
+     * @return account
+     */
+    public BankAccount get(AccountNumber accountNumber, Supplier<BankAccount> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+
+        long number = accountNumber.getNumber();
+        BankAccount cached = cache.getIfPresent(number);
+        if (cached != null) {
+            return cached;
+        }
+
+        int stripe = stripe(number);
+        long version = versions.get(stripe);
+        BankAccount account = loader.get();
+        cache.asMap().compute(number, (key, current) ->
+                current != null || versions.get(stripe) != version ? current : account);
+        return account;
+    }
+
+    /**
+     * Write the changed balance of the account through the cache.
+     * <p>
+     * Within a transaction the balance is cached after the commit, and not at all if the transaction is rolled back
+     *
+     * @param account account with its new balance
+     */
+    public void put(BankAccount account) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write(account);
+                }
+            });
+        } else {
+            write(account);
+        }
+    }
+
+    /**
+     * Get the version of the account
+     *
+     * @param accountNumber account number
+     * @return version, greater than the version of any balance cached before
+     */
+    public long version(AccountNumber accountNumber) {
+        return versions.get(stripe(accountNumber.getNumber()));
+    }
+
+    /**
+     * Number of cached accounts, including expired ones not cleaned up yet
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private void write(BankAccount account) {
+        long number = account.getNumber().getNumber();
+        int stripe = stripe(number);
+        // the version is incremented by the same atomic computation a concurrent load is cached by
+        cache.asMap().compute(number, (key, current) -> {
+            versions.incrementAndGet(stripe);
+            return account;
+        });
+    }
+
+    private static int stripe(long number) {
+        return Long.hashCode(number * 0x9E3779B97F4A7C15L) & (VERSION_STRIPES - 1);
+    }
+
+    @Autowired
+    public void configure(@Value("${bank.account-cache.maximum-size:" + DEFAULT_MAXIMUM_SIZE + "}") long maximumSize,
+                          @Value("${bank.account-cache.expire-after-write:30s}") Duration expireAfterWrite) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximum size must not be negative, but was " + maximumSize);
+        }
+        if (expireAfterWrite.isNegative()) {
+            throw new IllegalArgumentException("expiration must not be negative, but was " + expireAfterWrite);
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .ticker(ticker)
+                // evictions are done by the calling threads, so they are visible right after the call
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("bank.account-cache.requests", this, c -> c.cache.stats().hitCount())
+                .description("Account balance cache lookups")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("bank.account-cache.requests", this, c -> c.cache.stats().missCount())
+                .description("Account balance cache lookups")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("bank.account-cache.evictions", this, c -> c.cache.stats().evictionCount())
+                .description("Accounts evicted from the balance cache by size or expiration")
+                .register(registry);
+        Gauge.builder("bank.account-cache.hit-ratio", this, c -> c.cache.stats().hitRate())
+                .description("Ratio of account balance cache lookups which were hits")
+                .register(registry);
+        Gauge.builder("bank.account-cache.size", this, AccountBalanceCache::size)
+                .description("Number of cached account balances")
+                .register(registry);
+    }
+}
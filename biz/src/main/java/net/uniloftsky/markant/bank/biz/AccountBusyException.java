@@ -0,0 +1,27 @@
+package net.uniloftsky.markant.bank.biz;
+
+/**
+ * Exception thrown when account cannot be locked within the configured time, because other operations on it are in progress
+ */
+public class AccountBusyException extends BankServiceException {
+
+    private final AccountNumber accountNumber;
+
+    public AccountBusyException(AccountNumber accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public AccountBusyException(String message, AccountNumber accountNumber) {
+        super(message);
+        this.accountNumber = accountNumber;
+    }
+
+    public AccountBusyException(String message, Throwable cause, AccountNumber accountNumber) {
+        super(message, cause);
+        this.accountNumber = accountNumber;
+    }
+
+    public AccountNumber getAccountNumber() {
+        return accountNumber;
+    }
+}
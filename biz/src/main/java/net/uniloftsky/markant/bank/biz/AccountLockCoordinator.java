@@ -0,0 +1,219 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinator of account locks.
+ * <p>
+ * Account locks are stripes of the {@link StripedLockManager}. Stripes of several accounts are always acquired in the
+ * ascending order of stripe indexes, so operations on the same accounts cannot deadlock regardless of the order
+ * the accounts are passed in. Waiting for a lock is bounded by the configured timeout, after which
+ * {@link AccountBusyException} is thrown.
+ * <p>
+ * Locks acquired within an active transaction are held until the transaction is committed or rolled back,
+ * so the next writer never reads a balance which isn't committed yet. Outside a transaction locks are released
+ * when the returned {@link AccountLocks} is closed.
+ * <p>
+ * Lock wait and hold times are recorded to the {@link BankMetrics}, together with the commit time of the transactions
+ * holding the locks. Sampled acquisitions of every stripe are also reported to the {@link HotAccountTracker}
+ * with the wait time and the queue length of that stripe, attributed to the first locked account it guards.
+ */
+@Component
+public class AccountLockCoordinator {
+
+    /**
+     * Account locks
+     */
+    private StripedLockManager lockManager = new StripedLockManager();
+
+    /**
+     * Maximum time to wait for a single account lock
+     */
+    private Duration timeout = Duration.ofSeconds(5);
+
+    private BankMetrics metrics = BankMetrics.noop();
+
+    /**
+     * Sampler of the per account lock contention, disabled if null
+     */
+    private HotAccountTracker hotAccounts;
+
+    /**
+     * Lock the given accounts.
+     *
+     * @param accountNumbers accounts to lock, duplicates are allowed
+     * @return acquired locks
+     * @throws AccountBusyException if any of the accounts cannot be locked within the timeout
+     */
+    public AccountLocks lock(AccountNumber... accountNumbers) {
+        int[] stripes = new int[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            stripes[i] = lockManager.stripe(accountNumbers[i].getNumber());
+        }
+        Arrays.sort(stripes);
+
+        long waitStart = System.nanoTime();
+        AccountLocks result = new AccountLocks(accountNumbers.length, metrics);
+        int i = 0;
+        try {
+            for (; i < stripes.length; i++) {
+                if (i > 0 && stripes[i] == stripes[i - 1]) {
+                    continue;
+                }
+                ReentrantLock lock = lockManager.lockAt(stripes[i]);
+                boolean sampled = hotAccounts != null && hotAccounts.sample();
+                int queueLength = sampled ? lock.getQueueLength() : 0;
+                long lockStart = sampled ? System.nanoTime() : 0;
+                boolean locked = lock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS);
+                if (sampled) {
+                    hotAccounts.record(accountOf(stripes[i], accountNumbers).getNumber(), System.nanoTime() - lockStart, queueLength);
+                }
+                if (!locked) {
+                    AccountNumber busy = accountOf(stripes[i], accountNumbers);
+                    throw new AccountBusyException("account " + busy + " cannot be locked within " + timeout, busy);
+                }
+                result.add(lock);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result.release();
+            AccountNumber busy = accountOf(stripes[i], accountNumbers);
+            throw new AccountBusyException("interrupted while waiting for account " + busy + " lock", ex, busy);
+        } catch (RuntimeException ex) {
+            result.release();
+            throw ex;
+        }
+        result.acquiredAt = System.nanoTime();
+        result.waitNanos = result.acquiredAt - waitStart;
+        metrics.getLockWait().record(result.waitNanos, TimeUnit.NANOSECONDS);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            result.transactionBound = true;
+            TransactionSynchronizationManager.registerSynchronization(result);
+        }
+        return result;
+    }
+
+    /**
+     * Find the first of the given accounts guarded by the given stripe
+     */
+    private AccountNumber accountOf(int stripe, AccountNumber[] accountNumbers) {
+        for (AccountNumber accountNumber : accountNumbers) {
+            if (lockManager.stripe(accountNumber.getNumber()) == stripe) {
+                return accountNumber;
+            }
+        }
+        throw new IllegalStateException("no account is guarded by stripe " + stripe);
+    }
+
+    @Value("${bank.lock.timeout:5s}")
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Value("${bank.lock.stripes:" + StripedLockManager.DEFAULT_STRIPES + "}")
+    public void setStripes(int stripes) {
+        this.lockManager = new StripedLockManager(stripes);
+    }
+
+    @Autowired(required = false)
+    public void setMetrics(BankMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Autowired(required = false)
+    public void setHotAccounts(HotAccountTracker hotAccounts) {
+        this.hotAccounts = hotAccounts;
+    }
+
+    /**
+     * Locks acquired by {@link AccountLockCoordinator#lock(AccountNumber...)}.
+     * <p>
+     * Bound to the transaction as its synchronization, releasing the locks on completion
+     * and measuring the commit
+     */
+    public static final class AccountLocks implements AutoCloseable, TransactionSynchronization {
+
+        private final ReentrantLock[] locks;
+        private int count;
+
+        private final Timer holdTimer;
+        private final Timer commitTimer;
+
+        /**
+         * Value of {@link System#nanoTime()} when all locks were acquired, and when the commit started
+         */
+        private long acquiredAt;
+        private long commitStartedAt;
+
+        /**
+         * Time spent waiting for the locks, in nanoseconds
+         */
+        private long waitNanos;
+
+        /**
+         * If true, locks are released on transaction completion instead of {@link #close()}
+         */
+        private boolean transactionBound;
+        private boolean released;
+
+        private AccountLocks(int capacity, BankMetrics metrics) {
+            this.locks = new ReentrantLock[capacity];
+            this.holdTimer = metrics.getLockHold();
+            this.commitTimer = metrics.getCommit();
+        }
+
+        private void add(ReentrantLock lock) {
+            locks[count++] = lock;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Release the locks, unless they are bound to the current transaction
+         */
+        @Override
+        public void close() {
+            if (!transactionBound) {
+                release();
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            commitStartedAt = System.nanoTime();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (commitStartedAt != 0) {
+                commitTimer.record(System.nanoTime() - commitStartedAt, TimeUnit.NANOSECONDS);
+            }
+            release();
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                for (int i = count - 1; i >= 0; i--) {
+                    locks[i].unlock();
+                }
+                if (acquiredAt != 0) {
+                    holdTimer.record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+}
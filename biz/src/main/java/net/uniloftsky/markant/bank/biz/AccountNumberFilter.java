@@ -0,0 +1,354 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scalable Bloom filter of the existing account numbers, telling accounts which definitely don't exist without
+ * asking the database.
+ * <p>
+ * The filter is a list of Bloom filters. When the last one is full, a new one with twice the capacity and half the
+ * false positive rate is added, so the overall false positive rate stays below the configured one however many
+ * accounts are added. Once the next filter would exceed the memory limit, accounts are added to the last filter
+ * beyond its capacity: the false positive rate grows, but an added account is never rejected.
+ * <p>
+ * The filter is loaded from the persisted accounts when the application is ready and passes every account until then.
+ * Accounts created meanwhile are added by the engine, so none is missed. Accounts created by other nodes sharing the
+ * database are not known to this node and would be rejected as non-existent, so the filter is meant for a single node
+ * and is enabled with {@code bank.account-filter.enabled=true} only.
+ * <p>
+ * Checks, false positives, the memory and the expected false positive rate are published as
+ * {@code bank.account-filter.*} meters.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.account-filter.enabled", havingValue = "true")
+public class AccountNumberFilter implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountNumberFilter.class);
+
+    /**
+     * Default number of accounts of the first filter
+     */
+    public static final int DEFAULT_EXPECTED_ACCOUNTS = 1_000_000;
+
+    /**
+     * Default upper bound of the false positive rate
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Default memory limit
+     */
+    public static final DataSize DEFAULT_MAX_MEMORY = DataSize.ofMegabytes(64);
+
+    /**
+     * Ratio of the false positive rates of the following filters, the rates add up to twice the rate of the first one
+     */
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    /**
+     * Guards the growth of the filter
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Layer[] layers;
+    private volatile boolean ready;
+
+    private int expectedAccounts = DEFAULT_EXPECTED_ACCOUNTS;
+    private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+    private long maxMemoryBytes = DEFAULT_MAX_MEMORY.toBytes();
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public AccountNumberFilter() {
+        this(DEFAULT_EXPECTED_ACCOUNTS, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * @param expectedAccounts  number of accounts of the first filter
+     * @param falsePositiveRate upper bound of the false positive rate, until the memory limit is reached
+     * @param maxMemory         memory limit of the filter bits
+     */
+    public AccountNumberFilter(int expectedAccounts, double falsePositiveRate, DataSize maxMemory) {
+        configure(expectedAccounts, falsePositiveRate, maxMemory);
+    }
+
+    /**
+     * Add an account number. Must be called before the account is visible to other operations.
+     * <p>
+     * An account the filter already passes isn't added again, so repeated deposits don't fill the filter
+     *
+     * @param accountNumber account number
+     */
+    public void add(long accountNumber) {
+        Layer[] current = layers;
+        for (Layer layer : current) {
+            if (layer.mightContain(accountNumber)) {
+                return;
+            }
+        }
+        Layer layer = current[current.length - 1];
+        if (layer.count.get() >= layer.capacity) {
+            layer = grow(layer);
+        }
+        layer.add(accountNumber);
+    }
+
+    /**
+     * Check whether the account may exist, and count the check
+     *
+     * @param accountNumber account number
+     * @return false if the account definitely doesn't exist, true if it may exist or the filter isn't loaded yet
+     */
+    public boolean mightContain(long accountNumber) {
+        if (!ready) {
+            return true;
+        }
+        for (Layer layer : layers) {
+            if (layer.mightContain(accountNumber)) {
+                passed.increment();
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Record that an account passed by the filter doesn't exist
+     */
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Load the persisted accounts and start rejecting unknown accounts
+     *
+     * @param persistenceService persistence service of the accounts
+     */
+    public void load(BankPersistenceService persistenceService) {
+        int loaded = 0;
+        for (AccountEntity account : persistenceService.listAccounts()) {
+            add(account.getNumber());
+            loaded++;
+        }
+        ready = true;
+        logger.info("account filter loaded with {} accounts, {} bytes", loaded, memoryBytes());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup(ApplicationReadyEvent event) {
+        ObjectProvider<BankPersistenceService> persistenceService = event.getApplicationContext().getBeanProvider(BankPersistenceService.class);
+        persistenceService.ifAvailable(this::load);
+    }
+
+    /**
+     * Whether the filter is loaded and rejects unknown accounts
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Memory of the filter bits
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Layer layer : layers) {
+            bytes += (long) layer.bits.length() * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Expected false positive rate of the filter with the accounts added so far. The rates of lightly filled layers
+     * are far below the precision of {@code 1 - p}, so the product is summed as logarithms
+     */
+    public double expectedFalsePositiveRate() {
+        double logNone = 0;
+        for (Layer layer : layers) {
+            logNone += Math.log1p(-layer.expectedFalsePositiveRate());
+        }
+        return -Math.expm1(logNone);
+    }
+
+    /**
+     * Number of added accounts, an account added by several threads at once may be counted more than once
+     */
+    public long size() {
+        long size = 0;
+        for (Layer layer : layers) {
+            size += layer.count.get();
+        }
+        return size;
+    }
+
+    private Layer grow(Layer full) {
+        lock.lock();
+        try {
+            Layer last = layers[layers.length - 1];
+            if (last != full) {
+                // grown by another thread meanwhile
+                return last;
+            }
+            long capacity = full.capacity * 2;
+            double rate = full.falsePositiveRate * TIGHTENING_RATIO;
+            if (memoryBytes() + Layer.bitsFor(capacity, rate) / Byte.SIZE > maxMemoryBytes) {
+                // the last filter takes more accounts than planned, which is only logged once
+                if (full.capacity != Long.MAX_VALUE) {
+                    logger.warn("account filter reached the memory limit of {} bytes, the false positive rate grows", maxMemoryBytes);
+                    full.capacity = Long.MAX_VALUE;
+                }
+                return full;
+            }
+            Layer layer = new Layer(capacity, rate);
+            Layer[] grown = Arrays.copyOf(layers, layers.length + 1);
+            grown[layers.length] = layer;
+            layers = grown;
+            return layer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Autowired
+    public void configure(@Value("${bank.account-filter.expected-accounts:" + DEFAULT_EXPECTED_ACCOUNTS + "}") int expectedAccounts,
+                          @Value("${bank.account-filter.false-positive-rate:" + DEFAULT_FALSE_POSITIVE_RATE + "}") double falsePositiveRate,
+                          @Value("${bank.account-filter.max-memory:64MB}") DataSize maxMemory) {
+        if (expectedAccounts < 1) {
+            throw new IllegalArgumentException("expected accounts must be positive, but was " + expectedAccounts);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1, but was " + falsePositiveRate);
+        }
+        this.expectedAccounts = expectedAccounts;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxMemoryBytes = maxMemory.toBytes();
+        this.layers = new Layer[]{new Layer(expectedAccounts, falsePositiveRate * (1 - TIGHTENING_RATIO))};
+        this.ready = false;
+    }
+
+    public int getExpectedAccounts() {
+        return expectedAccounts;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("bank.account-filter.checks", passed, LongAdder::sum)
+                .description("Account existence checks of the account filter")
+                .tag("result", "passed")
+                .register(registry);
+        FunctionCounter.builder("bank.account-filter.checks", rejected, LongAdder::sum)
+                .description("Account existence checks of the account filter")
+                .tag("result", "rejected")
+                .register(registry);
+        FunctionCounter.builder("bank.account-filter.false-positives", falsePositives, LongAdder::sum)
+                .description("Accounts passed by the account filter which don't exist")
+                .register(registry);
+        Gauge.builder("bank.account-filter.memory", this, AccountNumberFilter::memoryBytes)
+                .description("Memory of the account filter bits")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("bank.account-filter.expected-false-positive-rate", this, AccountNumberFilter::expectedFalsePositiveRate)
+                .description("Expected false positive rate of the account filter")
+                .register(registry);
+        Gauge.builder("bank.account-filter.accounts", this, AccountNumberFilter::size)
+                .description("Accounts added to the account filter")
+                .register(registry);
+    }
+
+    /**
+     * Single Bloom filter. Bits are set atomically, so accounts are added and checked without locking
+     */
+    static final class Layer {
+
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashes;
+        private final double falsePositiveRate;
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Number of accounts the filter is sized for, raised once the memory limit is reached
+         */
+        private volatile long capacity;
+
+        Layer(long capacity, double falsePositiveRate) {
+            long bits = bitsFor(capacity, falsePositiveRate);
+            if (bits / Long.SIZE > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("account filter of " + capacity + " accounts is too large");
+            }
+            this.bits = new AtomicLongArray((int) ((bits + Long.SIZE - 1) / Long.SIZE));
+            this.bitCount = (long) this.bits.length() * Long.SIZE;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.falsePositiveRate = falsePositiveRate;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Optimal number of bits of a filter
+         */
+        static long bitsFor(long capacity, double falsePositiveRate) {
+            return Math.max(Long.SIZE, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        }
+
+        void add(long accountNumber) {
+            long hash1 = StripedLockManager.mix(accountNumber);
+            long hash2 = StripedLockManager.mix(hash1) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = bits.get(index);
+                while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask)) {
+                    word = bits.get(index);
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        boolean mightContain(long accountNumber) {
+            long hash1 = StripedLockManager.mix(accountNumber);
+            long hash2 = StripedLockManager.mix(hash1) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double expectedFalsePositiveRate() {
+            return Math.pow(-Math.expm1(-hashes * (double) count.get() / bitCount), hashes);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package net.uniloftsky.markant.bank.biz;
 
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 /**
@@ -19,7 +18,7 @@ public final class BankAccount {
     /**
      * Account balance
      */
-    private final BigDecimal balance;
+    private final Money balance;
 
     /**
      * Public constructor with arguments
@@ -27,7 +26,7 @@ public final class BankAccount {
      * @param number  account id
      * @param balance account balance
      */
-    public BankAccount(AccountNumber number, BigDecimal balance) {
+    public BankAccount(AccountNumber number, Money balance) {
         this.number = number;
         this.balance = balance;
     }
@@ -36,7 +35,7 @@ public final class BankAccount {
         return number;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
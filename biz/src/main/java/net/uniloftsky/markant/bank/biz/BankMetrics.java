@@ -0,0 +1,129 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Meters of the bank service.
+ * <p>
+ * Meters are created once and kept by their users, so recording doesn't look anything up in the registry.
+ * Percentiles and histogram buckets aren't set here, they are configured by the registry with the
+ * {@code management.metrics.distribution.*} properties of the meter names.
+ */
+public class BankMetrics {
+
+    /**
+     * Latency of the bank service operations, tagged with the operation
+     */
+    public static final String OPERATION = "bank.operation";
+
+    /**
+     * Failed bank service operations, tagged with the operation and the exception
+     */
+    public static final String OPERATION_FAILURES = "bank.operation.failures";
+
+    /**
+     * Time spent waiting for account locks
+     */
+    public static final String LOCK_WAIT = "bank.lock.wait";
+
+    /**
+     * Time account locks are held, from acquisition until release
+     */
+    public static final String LOCK_HOLD = "bank.lock.hold";
+
+    /**
+     * Time of the commit of transactions holding account locks, including the flush of pending inserts
+     */
+    public static final String COMMIT = "bank.transaction.commit";
+
+    /**
+     * Latency of the persistence layer calls, tagged with the method
+     */
+    public static final String PERSISTENCE = "bank.persistence";
+
+    private static final BankMetrics NOOP;
+
+    static {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        registry.config().meterFilter(MeterFilter.deny());
+        NOOP = new BankMetrics(registry);
+    }
+
+    private final MeterRegistry registry;
+    private final Timer lockWait;
+    private final Timer lockHold;
+    private final Timer commit;
+
+    public BankMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.lockWait = Timer.builder(LOCK_WAIT).description("Time spent waiting for account locks").register(registry);
+        this.lockHold = Timer.builder(LOCK_HOLD).description("Time account locks are held").register(registry);
+        this.commit = Timer.builder(COMMIT).description("Commit time of transactions holding account locks").register(registry);
+    }
+
+    /**
+     * Metrics which record nothing, used when no registry is configured
+     *
+     * @return no-op metrics
+     */
+    public static BankMetrics noop() {
+        return NOOP;
+    }
+
+    /**
+     * Create the latency timer of the operation
+     *
+     * @param operation operation name
+     * @return timer
+     */
+    public Timer operationTimer(String operation) {
+        return Timer.builder(OPERATION)
+                .description("Latency of bank service operations")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    /**
+     * Get the counter of the operation failures caused by the exception
+     *
+     * @param operation operation name
+     * @param exception exception type
+     * @return counter
+     */
+    public Counter failureCounter(String operation, Class<? extends Throwable> exception) {
+        return Counter.builder(OPERATION_FAILURES)
+                .description("Failed bank service operations")
+                .tag("operation", operation)
+                .tag("exception", exception.getSimpleName())
+                .register(registry);
+    }
+
+    /**
+     * Create the latency timer of the persistence layer method
+     *
+     * @param method method name
+     * @return timer
+     */
+    public Timer persistenceTimer(String method) {
+        return Timer.builder(PERSISTENCE)
+                .description("Latency of persistence layer calls")
+                .tag("method", method)
+                .register(registry);
+    }
+
+    public Timer getLockWait() {
+        return lockWait;
+    }
+
+    public Timer getLockHold() {
+        return lockHold;
+    }
+
+    public Timer getCommit() {
+        return commit;
+    }
+}
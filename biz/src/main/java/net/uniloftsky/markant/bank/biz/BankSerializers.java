@@ -23,6 +23,17 @@ public class BankSerializers {
         }
     }
 
+    /**
+     * Serializer for {@link Money}. Writes the amount as a string to keep its exact decimal notation
+     */
+    public static class MoneySerializer extends JsonSerializer<Money> {
+
+        @Override
+        public void serialize(Money money, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeString(money.toString());
+        }
+    }
+
     /**
      * Serializer for {@link TransactionId}
      */
@@ -34,6 +45,17 @@ public class BankSerializers {
         }
     }
 
+    /**
+     * Serializer for {@link TransactionCursor}
+     */
+    public static class TransactionCursorSerializer extends JsonSerializer<TransactionCursor> {
+
+        @Override
+        public void serialize(TransactionCursor cursor, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeString(cursor.toString());
+        }
+    }
+
     /**
      * Serializer for {@link Instant}
      */
@@ -1,7 +1,7 @@
 package net.uniloftsky.markant.bank.biz;
 
-import java.math.BigDecimal;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Bank service to manage banking accounts and transactions
@@ -25,17 +25,20 @@ public interface BankService {
      * @throws AccountNotFoundException     if account by provided number cannot be found
      * @throws InsufficientBalanceException if withdrawal amount is greater than account balance
      */
-    BankAccount withdraw(AccountNumber accountNumber, BigDecimal amount);
+    BankAccount withdraw(AccountNumber accountNumber, Money amount);
 
     /**
-     * Get list of withdrawal transactions for the specified account.
+     * Get a page of withdrawal transactions for the specified account.
      * Transactions are sorted by timestamp in descending order (most recent first)
      *
      * @param accountNumber account number
-     * @return list of withdrawal transactions
-     * @throws AccountNotFoundException if account by provided number cannot be found
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of withdrawal transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
      */
-    List<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber);
+    TransactionPage<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit);
 
     /**
      * Deposit the provided amount of money to account
@@ -43,27 +46,33 @@ public interface BankService {
      * @param accountNumber account ID
      * @param amount        money amount
      */
-    BankAccount deposit(AccountNumber accountNumber, BigDecimal amount);
+    BankAccount deposit(AccountNumber accountNumber, Money amount);
 
     /**
-     * Get list of deposit transactions for the specified account.
+     * Get a page of deposit transactions for the specified account.
      * Transactions are sorted by timestamp in descending order (most recent first)
      *
      * @param accountNumber account number
-     * @return list of deposit transactions
-     * @throws AccountNotFoundException if account by provided number cannot be found
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of deposit transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
      */
-    List<DepositTransaction> listDeposits(AccountNumber accountNumber);
+    TransactionPage<DepositTransaction> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit);
 
     /**
-     * Get list of all transactions (deposits, withdrawals, transfers) for the specified account.
+     * Get a page of all transactions (deposits, withdrawals, transfers) for the specified account.
      * Transactions are sorted by timestamp in descending order (most recent first)
      *
      * @param accountNumber account number
-     * @return list of all transactions
-     * @throws AccountNotFoundException if account by provided number cannot be found
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of all transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
      */
-    List<BankTransaction> listTransactions(AccountNumber accountNumber);
+    TransactionPage<BankTransaction> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit);
 
     /**
      * Transfer money from one account to another
@@ -73,16 +82,47 @@ public interface BankService {
      * @param amount            transfer amount of money
      * @return transfer transaction
      */
-    TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, BigDecimal amount);
+    TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount);
 
     /**
-     * Get list of transfer transactions for the specified account.
+     * Get a page of transfer transactions for the specified account.
+     * Transactions are sorted by timestamp in descending order (most recent first)
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of transfer transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    TransactionPage<TransferTransaction> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit);
+
+    /**
+     * Export the complete history of the specified account, passing transactions one by one to the given action.
      * Transactions are sorted by timestamp in descending order (most recent first).
+     * <p>
+     * Transactions are read from the persistence layer as a stream and aren't collected, so memory use doesn't
+     * depend on the size of the history
      *
      * @param accountNumber account number
-     * @return list of transfer
+     * @param type          type of transactions to export, null to export all transactions
+     * @param action        action to perform on every transaction
      * @throws AccountNotFoundException if account by provided number cannot be found
      */
-    List<TransferTransaction> listTransfers(AccountNumber accountNumber);
+    void exportTransactions(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action);
+
+    /**
+     * Apply a batch of deposits and withdrawals, in the given order.
+     * <p>
+     * Every operation is atomic on its own: it's either applied or rejected without changing anything, and a rejected
+     * operation doesn't affect the others. In the all-or-nothing mode the batch is applied only if no operation
+     * is rejected, otherwise nothing is changed
+     *
+     * @param operations   operations to apply, from 1 to {@value BatchOperation#MAX_BATCH_SIZE}
+     * @param allOrNothing if true, a single rejected operation rejects the whole batch
+     * @return results of the operations, in the order of the operations
+     * @throws InvalidBatchException if the batch is empty, too large or contains anything but deposits and withdrawals
+     */
+    List<BatchOperationResult> applyBatch(List<BatchOperation> operations, boolean allOrNothing);
 
 }
@@ -1,330 +1,293 @@
 package net.uniloftsky.markant.bank.biz;
 
-import net.anotheria.idbasedlock.IdBasedLock;
-import net.anotheria.idbasedlock.IdBasedLockManager;
-import net.anotheria.idbasedlock.SafeIdBasedLockManager;
+import net.uniloftsky.markant.bank.biz.AccountLockCoordinator.AccountLocks;
+import net.uniloftsky.markant.bank.biz.jfr.DepositEvent;
+import net.uniloftsky.markant.bank.biz.jfr.HistoryReadEvent;
+import net.uniloftsky.markant.bank.biz.jfr.TransferEvent;
+import net.uniloftsky.markant.bank.biz.jfr.WithdrawEvent;
 import net.uniloftsky.markant.bank.biz.persistence.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
-import java.math.BigDecimal;
-import java.time.Clock;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
-
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Default bank service engine. Every operation changes the account balance in the database within the database transaction.
+ * <p>
+ * Balances are checked and changed by single conditional statements, so their correctness doesn't depend on JVM locks
+ * and several nodes can share the database. Accounts are still locked through the {@link AccountLockCoordinator} until
+ * the transaction is completed, which queues operations on the same account in this node and bounds the wait.
+ * <p>
+ * Operations are recorded as Flight Recorder events of the {@code net.uniloftsky.markant.bank.biz.jfr} package, with
+ * their lock wait, persistence time and outcome. Events are practically free while Flight Recorder doesn't record them.
+ * <p>
+ * Accounts are read through the {@link AccountBalanceCache} if it's configured, every balance change is written through it.
+ * Likewise every journal entry is added to the {@link RecentHistoryCache}, which serves the first history pages.
+ */
 @Service
-public class BankServiceImpl implements BankService {
-
-    // Default balance value on account creation
-    static final String INITIAL_BALANCE = "0";
+@ConditionalOnProperty(name = "bank.engine", havingValue = "jpa", matchIfMissing = true)
+public class BankServiceImpl extends AbstractBankService {
 
     /**
-     * Persistence service
+     * Transaction type of the history read events of all transactions
      */
-    private BankPersistenceService persistenceService;
+    private static final String ALL_TRANSACTIONS = "ALL";
 
     /**
-     * Clock instance
+     * Lock coordinator to synchronize transactions
      */
-    private Clock clock;
+    private AccountLockCoordinator lockCoordinator;
 
     /**
-     * Lock manager to synchronize transactions
+     * Cache of account balances, disabled if null
      */
-    private IdBasedLockManager<AccountNumber> accountLockManager;
+    private AccountBalanceCache balanceCache;
 
     public BankServiceImpl() {
-        this.clock = Clock.systemUTC();
-        this.accountLockManager = new SafeIdBasedLockManager<>();
+        this.lockCoordinator = new AccountLockCoordinator();
     }
 
+    /**
+     * Not transactional, so a cached account is returned without getting a database connection
+     */
     @Override
-    @Transactional(readOnly = true)
     public BankAccount getAccount(AccountNumber accountNumber) {
-        AccountEntity entity = getAccountEntity(accountNumber);
-        return map(entity);
+        if (balanceCache == null) {
+            return map(getAccountEntity(accountNumber));
+        }
+        return balanceCache.get(accountNumber, () -> map(getAccountEntity(accountNumber)));
     }
 
     @Override
     @Transactional
-    public BankAccount withdraw(AccountNumber accountNumber, BigDecimal amount) {
+    public BankAccount withdraw(AccountNumber accountNumber, Money amount) {
         validateTransactionParameters(amount, accountNumber);
 
-        IdBasedLock<AccountNumber> lock = accountLockManager.obtainLock(accountNumber);
-        lock.lock();
-        try {
-            AccountEntity accountEntity = getAccountEntity(accountNumber);
-            BankAccount account = map(accountEntity);
-            BigDecimal balanceAfterWithdrawal = account.getBalance().subtract(amount);
-            if (balanceAfterWithdrawal.compareTo(BigDecimal.ZERO) < 0) {
-                throw new InsufficientBalanceException("withdrawal amount is greater than the current account balance");
-            }
+        WithdrawEvent event = new WithdrawEvent(accountNumber.getNumber(), amount.getMinorUnits());
+        event.begin();
+        try (AccountLocks locks = lockCoordinator.lock(accountNumber)) {
+            event.lockAcquired(locks.getWaitNanos());
+            long transactionTimestamp = clock.instant().toEpochMilli();
+
+            // subtract the amount if the balance is sufficient
+            event.persistenceStarted();
+            Money balanceAfterWithdrawal = debit(accountNumber, amount, transactionTimestamp,
+                    "withdrawal amount is greater than the current account balance");
 
             // create withdrawal transaction
-            long transactionTimestamp = clock.instant().toEpochMilli();
             createWithdrawTransaction(accountNumber, amount, transactionTimestamp);
-
-            // update account balance
-            account = updateBalance(accountEntity, balanceAfterWithdrawal, transactionTimestamp);
-            return account;
+            event.persistenceFinished();
+            return cached(new BankAccount(accountNumber, balanceAfterWithdrawal));
+        } catch (RuntimeException ex) {
+            event.failed(ex);
+            throw ex;
         } finally {
-            lock.unlock();
+            event.commit();
         }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber) {
-        getAccountEntity(accountNumber); // get account entity to check if it exists, otherwise an exception will be thrown
-        List<WithdrawTransactionEntity> entities = persistenceService.listWithdrawals(accountNumber.getNumber());
-
-        // map persistence layer entities to business layer objects
-        List<WithdrawTransaction> result = new ArrayList<>(entities.size());
-        for (WithdrawTransactionEntity entity : entities) {
-            WithdrawTransaction transaction = map(entity);
-            result.add(transaction);
-        }
-
-        // sort the result
-        result.sort(Comparator.comparing(WithdrawTransaction::getTimestamp).reversed());
-        return result;
+    public TransactionPage<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return recordHistoryRead(accountNumber, TransactionType.WITHDRAWAL, () -> readWithdrawals(accountNumber, after, limit));
     }
 
     @Override
     @Transactional
-    public BankAccount deposit(AccountNumber accountNumber, BigDecimal amount) {
+    public BankAccount deposit(AccountNumber accountNumber, Money amount) {
         validateTransactionParameters(amount, accountNumber);
 
-        IdBasedLock<AccountNumber> lock = accountLockManager.obtainLock(accountNumber);
-        lock.lock();
-        try {
-            AccountEntity accountEntity = getOrCreateAccountEntity(accountNumber);
-            BankAccount account = map(accountEntity);
-            BigDecimal balanceAfterDeposit = account.getBalance().add(amount);
+        DepositEvent event = new DepositEvent(accountNumber.getNumber(), amount.getMinorUnits());
+        event.begin();
+        try (AccountLocks locks = lockCoordinator.lock(accountNumber)) {
+            event.lockAcquired(locks.getWaitNanos());
+            long transactionTimestamp = clock.instant().toEpochMilli();
+
+            // add the amount, the account is created by the same statement if it doesn't exist yet
+            event.persistenceStarted();
+            Money balanceAfterDeposit = creditOrCreate(accountNumber, amount, transactionTimestamp);
 
             // create deposit transaction
-            long transactionTimestamp = clock.instant().toEpochMilli();
             createDepositTransaction(accountNumber, amount, transactionTimestamp);
-
-            // update account balance
-            account = updateBalance(accountEntity, balanceAfterDeposit, transactionTimestamp);
-            return account;
+            event.persistenceFinished();
+            return cached(new BankAccount(accountNumber, balanceAfterDeposit));
+        } catch (RuntimeException ex) {
+            event.failed(ex);
+            throw ex;
         } finally {
-            lock.unlock();
+            event.commit();
         }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<DepositTransaction> listDeposits(AccountNumber accountNumber) {
-        getAccountEntity(accountNumber); // get account entity to check if it exists, otherwise an exception will be thrown
-        List<DepositTransactionEntity> entities = persistenceService.listDeposits(accountNumber.getNumber());
-
-        // map persistence layer entities to business layer objects
-        List<DepositTransaction> result = new ArrayList<>(entities.size());
-        for (DepositTransactionEntity entity : entities) {
-            DepositTransaction transaction = map(entity);
-            result.add(transaction);
-        }
-
-        // sort the result
-        result.sort(Comparator.comparing(DepositTransaction::getTimestamp).reversed());
-        return result;
+    public TransactionPage<DepositTransaction> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return recordHistoryRead(accountNumber, TransactionType.DEPOSIT, () -> readDeposits(accountNumber, after, limit));
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BankTransaction> listTransactions(AccountNumber accountNumber) {
-        List<DepositTransaction> deposits = listDeposits(accountNumber);
-        List<WithdrawTransaction> withdrawals = listWithdrawals(accountNumber);
-        List<TransferTransaction> transfers = listTransfers(accountNumber);
-
-        List<BankTransaction> result = new ArrayList<>(deposits.size() + withdrawals.size() + transfers.size());
-        result.addAll(deposits);
-        result.addAll(withdrawals);
-        result.addAll(transfers);
-
-        // sorting the combined result list
-        result.sort(Comparator.comparing(BankTransaction::getTimestamp).reversed());
-        return result;
+    public TransactionPage<BankTransaction> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return recordHistoryRead(accountNumber, null, () -> readTransactions(accountNumber, after, limit));
     }
 
     @Override
     @Transactional
-    public TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, BigDecimal amount) {
+    public TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount) {
         validateTransactionParameters(amount, fromAccountNumber, toAccountNumber);
 
-        IdBasedLock<AccountNumber> fromLock = accountLockManager.obtainLock(fromAccountNumber);
-        IdBasedLock<AccountNumber> toLock = accountLockManager.obtainLock(toAccountNumber);
-        fromLock.lock();
-        toLock.lock();
-        try {
+        TransferEvent event = new TransferEvent(fromAccountNumber.getNumber(), toAccountNumber.getNumber(), amount.getMinorUnits());
+        event.begin();
+        try (AccountLocks locks = lockCoordinator.lock(fromAccountNumber, toAccountNumber)) {
+            event.lockAcquired(locks.getWaitNanos());
             long transferTimestamp = clock.instant().toEpochMilli();
-
-            // subtract transfer amount from initiator account and update balance
-            AccountEntity fromEntity = getAccountEntity(fromAccountNumber);
-            BankAccount fromAccount = map(fromEntity);
-            BigDecimal initiatorBalanceAfter = fromAccount.getBalance().subtract(amount);
-            if (initiatorBalanceAfter.compareTo(BigDecimal.ZERO) < 0) {
-                throw new InsufficientBalanceException("transfer amount is greater than the current account transfer initiator balance");
+            String insufficientBalanceMessage = "transfer amount is greater than the current account transfer initiator balance";
+
+            // rows are updated in the order of account numbers, so opposite transfers cannot deadlock in the database
+            event.persistenceStarted();
+            // balances are cached in the order of the updates, so the final balance of a transfer to the same account wins
+            if (fromAccountNumber.getNumber() <= toAccountNumber.getNumber()) {
+                cached(new BankAccount(fromAccountNumber, debit(fromAccountNumber, amount, transferTimestamp, insufficientBalanceMessage)));
+                cached(new BankAccount(toAccountNumber, credit(toAccountNumber, amount, transferTimestamp)));
+            } else {
+                cached(new BankAccount(toAccountNumber, credit(toAccountNumber, amount, transferTimestamp)));
+                cached(new BankAccount(fromAccountNumber, debit(fromAccountNumber, amount, transferTimestamp, insufficientBalanceMessage)));
             }
 
-            // update balance for initiator account
-            updateBalance(fromEntity, initiatorBalanceAfter, transferTimestamp);
-
-            // add transfer amount to target account and update balance
-            AccountEntity toEntity = getAccountEntity(toAccountNumber);
-            BankAccount toAccount = map(toEntity);
-            BigDecimal targetBalanceAfter = toAccount.getBalance().add(amount);
-
-            // update balance for target account
-            updateBalance(toEntity, targetBalanceAfter, transferTimestamp);
-
             // create transfer transaction
-            TransferTransactionEntity transferEntity = createTransferTransaction(fromAccountNumber, toAccountNumber, amount, transferTimestamp);
-            return map(transferEntity);
+            TransactionEntity transferEntity = createTransferTransaction(fromAccountNumber, toAccountNumber, amount, transferTimestamp);
+            event.persistenceFinished();
+            return mapTransfer(transferEntity);
+        } catch (RuntimeException ex) {
+            event.failed(ex);
+            throw ex;
         } finally {
-            toLock.unlock();
-            fromLock.unlock();
+            event.commit();
         }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<TransferTransaction> listTransfers(AccountNumber accountNumber) {
-        getAccountEntity(accountNumber); // get account entity to check if it exists, otherwise an exception will be thrown
-        List<TransferTransactionEntity> entities = persistenceService.listTransfers(accountNumber.getNumber());
-
-        // map persistence layer entities to business layer objects
-        List<TransferTransaction> result = new ArrayList<>(entities.size());
-        for (TransferTransactionEntity entity : entities) {
-            TransferTransaction transaction = map(entity);
-            result.add(transaction);
-        }
-
-        // sort the result
-        result.sort(Comparator.comparing(TransferTransaction::getTimestamp).reversed());
-        return result;
+    public TransactionPage<TransferTransaction> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return recordHistoryRead(accountNumber, TransactionType.TRANSFER, () -> readTransfers(accountNumber, after, limit));
     }
 
-    /**
-     * Maps a persistence layer account entity to a business-layer {@link BankAccount} object.
-     * <p>
-     * This conversion translates the database representation of an account into a form
-     * suitable for business layer.
-     *
-     * @param entity entity to map
-     * @return bank account
-     */
-    private BankAccount map(AccountEntity entity) {
-        AccountNumber accountNumber = AccountNumber.of(entity.getNumber());
-        BigDecimal balance = new BigDecimal(entity.getBalance());
-        return new BankAccount(accountNumber, balance);
-    }
-
-    /**
-     * Maps a persistence layer deposit entity {@link DepositTransactionEntity} to a business layer {@link DepositTransaction} object.
-     *
-     * @param entity entity to map
-     * @return deposit transaction
-     */
-    private DepositTransaction map(DepositTransactionEntity entity) {
-        TransactionId transactionId = new TransactionId(entity.getId());
-        AccountNumber accountNumber = AccountNumber.of(entity.getAccountNumber());
-        BigDecimal amount = new BigDecimal(entity.getAmount());
-        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
-        return new DepositTransaction(transactionId, accountNumber, amount, timestamp);
+    @Override
+    @Transactional(readOnly = true)
+    public void exportTransactions(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action) {
+        HistoryReadEvent event = new HistoryReadEvent(accountNumber.getNumber(), type == null ? ALL_TRANSACTIONS : type.name(), true);
+        event.begin();
+        event.persistenceStarted();
+        try {
+            exportHistory(accountNumber, type, event.isEnabled() ? transaction -> {
+                event.addTransaction();
+                action.accept(transaction);
+            } : action);
+        } catch (RuntimeException ex) {
+            event.failed(ex);
+            throw ex;
+        } finally {
+            // the export time includes the time of the action
+            event.persistenceFinished();
+            event.commit();
+        }
     }
 
     /**
-     * Maps a persistence layer withdrawal entity {@link WithdrawTransactionEntity} to a business layer {@link WithdrawTransaction} object.
-     *
-     * @param entity entity to map
-     * @return withdrawal transaction
+     * All accounts of the batch are locked up front, in the order of their lock stripes. Operations are applied by the
+     * conditional statements of single operations, their journal entries are inserted with one batch at the end.
+     * An all-or-nothing batch with a rejected operation is rolled back
      */
-    private WithdrawTransaction map(WithdrawTransactionEntity entity) {
-        TransactionId transactionId = new TransactionId(entity.getId());
-        AccountNumber accountNumber = AccountNumber.of(entity.getAccountNumber());
-        BigDecimal amount = new BigDecimal(entity.getAmount());
-        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
-        return new WithdrawTransaction(transactionId, accountNumber, amount, timestamp);
-    }
+    @Override
+    @Transactional
+    public List<BatchOperationResult> applyBatch(List<BatchOperation> operations, boolean allOrNothing) {
+        validateBatch(operations);
+
+        try (AccountLocks ignored = lockCoordinator.lock(accountsOf(operations))) {
+            long batchTimestamp = clock.instant().toEpochMilli();
+            List<TransactionEntity> journal = new ArrayList<>(operations.size());
+            List<BatchOperationResult> results = new ArrayList<>(operations.size());
+            for (BatchOperation operation : operations) {
+                try {
+                    results.add(BatchOperationResult.applied(cached(applyBatchOperation(operation, batchTimestamp, journal))));
+                } catch (AccountNotFoundException | InsufficientBalanceException ex) {
+                    results.add(BatchOperationResult.rejected(ex));
+                    if (allOrNothing) {
+                        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                        return notApplied(results, operations.size());
+                    }
+                }
+            }
 
-    /**
-     * Maps a persistence layer transfer entity {@link TransferTransactionEntity} to a business layer {@link TransferTransaction} object
-     *
-     * @param entity entity to map
-     * @return transfer transaction
-     */
-    private TransferTransaction map(TransferTransactionEntity entity) {
-        TransactionId transactionId = new TransactionId(entity.getId());
-        AccountNumber fromAccountNumber = AccountNumber.of(entity.getFromAccountNumber());
-        AccountNumber toAccountNumber = AccountNumber.of(entity.getToAccountNumber());
-        BigDecimal amount = new BigDecimal(entity.getAmount());
-        Instant timestamp = Instant.ofEpochMilli(entity.getTimestamp());
-        return new TransferTransaction(transactionId, fromAccountNumber, toAccountNumber, amount, timestamp);
+            persistenceService.createTransactions(journal);
+            if (recentHistory != null) {
+                journal.forEach(recentHistory::add);
+            }
+            return results;
+        }
     }
 
     /**
-     * Method to validate transaction parameters
+     * Write the changed balance of the account through the balance cache, if it's configured
      *
-     * @param amount         transaction amount
-     * @param accountNumbers list of account numbers to validate
+     * @param account account with its new balance
+     * @return the given account
      */
-    void validateTransactionParameters(BigDecimal amount, AccountNumber... accountNumbers) {
-        if (accountNumbers != null) {
-            for (AccountNumber accountNumber : accountNumbers) {
-                if (accountNumber == null) {
-                    throw new IllegalArgumentException("accountNumber cannot be null");
-                }
-            }
-        }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("transaction amount must be greater than zero");
+    private BankAccount cached(BankAccount account) {
+        if (balanceCache != null) {
+            balanceCache.put(account);
         }
+        return account;
     }
 
     /**
-     * Retrieves an account entity by the provided accountNumber or creates a new one.
-     * <p>
-     * If the account already exists, it will be returned.
-     * Otherwise, a new account entity will be created and returned.
+     * Read a page of the transaction history and record it as a {@link HistoryReadEvent}
      *
      * @param accountNumber account number
-     * @return existing or freshly created account with provided number
+     * @param type          type of read transactions, null for all transactions
+     * @param read          page read
+     * @return page of transactions
      */
-    AccountEntity getOrCreateAccountEntity(AccountNumber accountNumber) {
-        Optional<AccountEntity> optionalAccountEntity = persistenceService.getAccount(accountNumber.getNumber());
-        if (optionalAccountEntity.isPresent()) {
-            return optionalAccountEntity.get();
-        } else {
-
-            // If not found, create a new account
-            long accountCreationTimestamp = clock.instant().toEpochMilli();
-            return persistenceService.createAccount(accountNumber.getNumber(), INITIAL_BALANCE, accountCreationTimestamp);
+    private <T extends BankTransaction> TransactionPage<T> recordHistoryRead(AccountNumber accountNumber, TransactionType type, Supplier<TransactionPage<T>> read) {
+        HistoryReadEvent event = new HistoryReadEvent(accountNumber.getNumber(), type == null ? ALL_TRANSACTIONS : type.name(), false);
+        event.begin();
+        event.persistenceStarted();
+        try {
+            TransactionPage<T> page = read.get();
+            event.setTransactions(page.getItems().size());
+            return page;
+        } catch (RuntimeException ex) {
+            event.failed(ex);
+            throw ex;
+        } finally {
+            event.persistenceFinished();
+            event.commit();
         }
     }
 
     /**
-     * Retrieves an account entity by the provided accountNumber.
-     * <p>
-     * If the account cannot be found, an exception will be thrown.
+     * Add the amount to the balance of an existing account with a single update
      *
-     * @param accountNumber account number
-     * @return account entity
-     * @throws AccountNotFoundException if account entity by the given account number doesn't exist
+     * @param accountNumber        account number
+     * @param amount               amount to add
+     * @param transactionTimestamp timestamp of the balance update
+     * @return new account balance
+     * @throws AccountNotFoundException if account by the given account number doesn't exist
      */
-    AccountEntity getAccountEntity(AccountNumber accountNumber) {
-        Optional<AccountEntity> optionalAccountEntity = persistenceService.getAccount(accountNumber.getNumber());
-        if (optionalAccountEntity.isPresent()) {
-            return optionalAccountEntity.get();
-        } else {
+    Money credit(AccountNumber accountNumber, Money amount, long transactionTimestamp) {
+        rejectUnknownAccount(accountNumber);
+        OptionalLong balance = persistenceService.credit(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+        if (balance.isEmpty()) {
             throw new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber);
         }
+        return Money.ofMinorUnits(balance.getAsLong());
     }
 
     /**
@@ -336,9 +299,12 @@ public class BankServiceImpl implements BankService {
      * @param amount               amount of deposit
      * @param transactionTimestamp timestamp of deposit
      */
-    void createDepositTransaction(AccountNumber accountNumber, BigDecimal amount, long transactionTimestamp) {
-        TransactionId transactionId = TransactionId.generateNew();
-        persistenceService.createDepositTransaction(transactionId.getId(), accountNumber.getNumber(), amount.toPlainString(), transactionTimestamp);
+    void createDepositTransaction(AccountNumber accountNumber, Money amount, long transactionTimestamp) {
+        TransactionId transactionId = idGenerator.nextTransactionId();
+        persistenceService.createDepositTransaction(transactionId.getId(), accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+        if (recentHistory != null) {
+            recentHistory.add(accountNumber.getNumber(), transactionId.getId(), TransactionEntryType.DEPOSIT, 0, amount.getMinorUnits(), transactionTimestamp);
+        }
     }
 
     /**
@@ -350,9 +316,12 @@ public class BankServiceImpl implements BankService {
      * @param amount               amount of withdrawal
      * @param transactionTimestamp timestamp of withdrawal
      */
-    void createWithdrawTransaction(AccountNumber accountNumber, BigDecimal amount, long transactionTimestamp) {
-        TransactionId transactionId = TransactionId.generateNew();
-        persistenceService.createWithdrawTransaction(transactionId.getId(), accountNumber.getNumber(), amount.toPlainString(), transactionTimestamp);
+    void createWithdrawTransaction(AccountNumber accountNumber, Money amount, long transactionTimestamp) {
+        TransactionId transactionId = idGenerator.nextTransactionId();
+        persistenceService.createWithdrawTransaction(transactionId.getId(), accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+        if (recentHistory != null) {
+            recentHistory.add(accountNumber.getNumber(), transactionId.getId(), TransactionEntryType.WITHDRAWAL, 0, amount.getMinorUnits(), transactionTimestamp);
+        }
     }
 
     /**
@@ -363,26 +332,31 @@ public class BankServiceImpl implements BankService {
      * @param amount               amount of transfer
      * @param transactionTimestamp timestamp of transfer
      */
-    TransferTransactionEntity createTransferTransaction(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, BigDecimal amount, long transactionTimestamp) {
-        TransactionId transactionId = TransactionId.generateNew();
-        return persistenceService.createTransferTransaction(transactionId.getId(), fromAccountNumber.getNumber(), toAccountNumber.getNumber(), amount.toPlainString(), transactionTimestamp);
+    TransactionEntity createTransferTransaction(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount, long transactionTimestamp) {
+        TransactionId transactionId = idGenerator.nextTransactionId();
+        TransactionEntity entity = persistenceService.createTransferTransaction(transactionId.getId(), fromAccountNumber.getNumber(), toAccountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+        if (recentHistory != null) {
+            recentHistory.add(fromAccountNumber.getNumber(), transactionId.getId(), TransactionEntryType.TRANSFER_OUT, toAccountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+            // the target gets its own entry, unless it's the initiator itself, like in the journal
+            if (!fromAccountNumber.equals(toAccountNumber)) {
+                recentHistory.add(toAccountNumber.getNumber(), transactionId.getId(), TransactionEntryType.TRANSFER_IN, fromAccountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp);
+            }
+        }
+        return entity;
     }
 
-    /**
-     * Update the balance for a specified account entity
-     *
-     * @param accountEntity        existing account entity retrieved from persistence layer
-     * @param newBalance           new balance to be set for the given account
-     * @param transactionTimestamp timestamp of balance update
-     * @return account object with an updated balance
-     */
-    BankAccount updateBalance(AccountEntity accountEntity, BigDecimal newBalance, long transactionTimestamp) {
-        AccountEntity updatedAccountEntity = persistenceService.updateAccountBalance(accountEntity, newBalance.toPlainString(), transactionTimestamp);
-        return map(updatedAccountEntity);
+    @Autowired
+    public void setLockCoordinator(AccountLockCoordinator lockCoordinator) {
+        this.lockCoordinator = lockCoordinator;
     }
 
-    @Autowired
-    public void setPersistenceService(BankPersistenceService persistenceService) {
-        this.persistenceService = persistenceService;
+    @Autowired(required = false)
+    public void setBalanceCache(AccountBalanceCache balanceCache) {
+        this.balanceCache = balanceCache;
+    }
+
+    @Autowired(required = false)
+    public void setRecentHistory(RecentHistoryCache recentHistory) {
+        this.recentHistory = recentHistory;
     }
 }
@@ -2,7 +2,6 @@ package net.uniloftsky.markant.bank.biz;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 
 /**
@@ -23,7 +22,7 @@ public interface BankTransaction {
      *
      * @return amount of the transaction
      */
-    BigDecimal getAmount();
+    Money getAmount();
 
     /**
      * Transaction type
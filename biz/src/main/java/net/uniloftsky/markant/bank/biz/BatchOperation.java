@@ -0,0 +1,77 @@
+package net.uniloftsky.markant.bank.biz;
+
+import java.util.Objects;
+
+/**
+ * Single deposit or withdrawal of a batch, see {@link BankService#applyBatch(java.util.List, boolean)}
+ */
+public final class BatchOperation {
+
+    /**
+     * Maximum number of operations in one batch
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Account of the operation
+     */
+    private final AccountNumber accountNumber;
+
+    /**
+     * Type of the operation, a deposit or a withdrawal
+     */
+    private final TransactionType type;
+
+    /**
+     * Amount of the operation
+     */
+    private final Money amount;
+
+    public BatchOperation(AccountNumber accountNumber, TransactionType type, Money amount) {
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amount = amount;
+    }
+
+    public static BatchOperation deposit(AccountNumber accountNumber, Money amount) {
+        return new BatchOperation(accountNumber, TransactionType.DEPOSIT, amount);
+    }
+
+    public static BatchOperation withdrawal(AccountNumber accountNumber, Money amount) {
+        return new BatchOperation(accountNumber, TransactionType.WITHDRAWAL, amount);
+    }
+
+    public AccountNumber getAccountNumber() {
+        return accountNumber;
+    }
+
+    public TransactionType getType() {
+        return type;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BatchOperation that = (BatchOperation) o;
+        return Objects.equals(accountNumber, that.accountNumber) && type == that.type && Objects.equals(amount, that.amount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountNumber, type, amount);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOperation{" +
+                "accountNumber=" + accountNumber +
+                ", type=" + type +
+                ", amount=" + amount +
+                '}';
+    }
+}
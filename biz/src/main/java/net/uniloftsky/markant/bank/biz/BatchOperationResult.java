@@ -0,0 +1,81 @@
+package net.uniloftsky.markant.bank.biz;
+
+/**
+ * Result of a single operation of a batch
+ */
+public final class BatchOperationResult {
+
+    /**
+     * Status of the operation
+     */
+    public enum Status {
+
+        /**
+         * Operation is applied
+         */
+        APPLIED,
+
+        /**
+         * Operation is rejected, for example because of an insufficient balance. It changed nothing
+         */
+        REJECTED,
+
+        /**
+         * Operation is not applied because another operation of the all-or-nothing batch was rejected
+         */
+        NOT_APPLIED
+    }
+
+    private static final BatchOperationResult NOT_APPLIED = new BatchOperationResult(Status.NOT_APPLIED, null, null);
+
+    private final Status status;
+
+    /**
+     * Account with its balance after the operation, null unless the operation is applied
+     */
+    private final BankAccount account;
+
+    /**
+     * Reason of the rejection, null unless the operation is rejected
+     */
+    private final BankServiceException error;
+
+    private BatchOperationResult(Status status, BankAccount account, BankServiceException error) {
+        this.status = status;
+        this.account = account;
+        this.error = error;
+    }
+
+    public static BatchOperationResult applied(BankAccount account) {
+        return new BatchOperationResult(Status.APPLIED, account, null);
+    }
+
+    public static BatchOperationResult rejected(BankServiceException error) {
+        return new BatchOperationResult(Status.REJECTED, null, error);
+    }
+
+    public static BatchOperationResult notApplied() {
+        return NOT_APPLIED;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public BankAccount getAccount() {
+        return account;
+    }
+
+    public BankServiceException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchOperationResult{" +
+                "status=" + status +
+                ", account=" + account +
+                ", error=" + error +
+                '}';
+    }
+}
@@ -3,7 +3,6 @@ package net.uniloftsky.markant.bank.biz;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import io.swagger.v3.oas.annotations.media.Schema;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Objects;
 
@@ -31,7 +30,7 @@ public final class DepositTransaction implements BankTransaction {
     /**
      * Amount of deposit
      */
-    private final BigDecimal amount;
+    private final Money amount;
 
     /**
      * Timestamp of deposit
@@ -47,7 +46,7 @@ public final class DepositTransaction implements BankTransaction {
      * @param amount        deposit amount
      * @param timestamp     transaction timestamp. Must be defined in milliseconds
      */
-    public DepositTransaction(TransactionId id, AccountNumber accountNumber, BigDecimal amount, Instant timestamp) {
+    public DepositTransaction(TransactionId id, AccountNumber accountNumber, Money amount, Instant timestamp) {
         this.id = id;
         this.accountNumber = accountNumber;
         this.amount = amount;
@@ -64,7 +63,7 @@ public final class DepositTransaction implements BankTransaction {
     }
 
     @Override
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
@@ -0,0 +1,243 @@
+package net.uniloftsky.markant.bank.biz;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+
+/**
+ * Group commit bank service engine.
+ * <p>
+ * Balances are maintained in the database by the same conditional statements as in the default engine, but operations
+ * are not committed one by one. They are submitted to the {@link GroupCommitPipeline}, which applies concurrent operations
+ * in one database transaction and returns to every caller after the shared commit, so one commit is paid per batch.
+ * <p>
+ * Every operation is rejected before it changes anything, a transfer checks its target before the initiator is debited.
+ * Operations are serialized by the single writer of the pipeline, account locks are not used.
+ * Enabled with the {@code bank.engine=group-commit} property.
+ */
+@Service
+@ConditionalOnProperty(name = "bank.engine", havingValue = "group-commit")
+public class GroupCommitBankServiceImpl extends AbstractBankService {
+
+    /**
+     * Transaction manager for the batch transactions
+     */
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Maximum number of operations applied in one database transaction
+     */
+    private int maxBatchSize = 256;
+
+    /**
+     * Maximum time to wait for more operations after the first one of a batch
+     */
+    private Duration maxDelay = Duration.ofNanos(200_000);
+
+    /**
+     * Pipeline applying the operations
+     */
+    private GroupCommitPipeline pipeline;
+
+    @PostConstruct
+    public void start() {
+        pipeline = new GroupCommitPipeline(persistenceService, new TransactionTemplate(transactionManager), maxBatchSize, maxDelay);
+        pipeline.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        pipeline.stop();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BankAccount getAccount(AccountNumber accountNumber) {
+        return map(getAccountEntity(accountNumber));
+    }
+
+    @Override
+    public BankAccount withdraw(AccountNumber accountNumber, Money amount) {
+        validateTransactionParameters(amount, accountNumber);
+
+        return pipeline.submit(journal -> {
+            long transactionTimestamp = clock.instant().toEpochMilli();
+            Money balanceAfterWithdrawal = debit(accountNumber, amount, transactionTimestamp,
+                    "withdrawal amount is greater than the current account balance");
+            journal.add(createEntry(idGenerator.nextTransactionId().getId(), TransactionEntryType.WITHDRAWAL,
+                    accountNumber.getNumber(), null, amount.getMinorUnits(), transactionTimestamp));
+            return new BankAccount(accountNumber, balanceAfterWithdrawal);
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionPage<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readWithdrawals(accountNumber, after, limit);
+    }
+
+    @Override
+    public BankAccount deposit(AccountNumber accountNumber, Money amount) {
+        validateTransactionParameters(amount, accountNumber);
+
+        return pipeline.submit(journal -> {
+            long transactionTimestamp = clock.instant().toEpochMilli();
+            Money balanceAfterDeposit = creditOrCreate(accountNumber, amount, transactionTimestamp);
+            journal.add(createEntry(idGenerator.nextTransactionId().getId(), TransactionEntryType.DEPOSIT,
+                    accountNumber.getNumber(), null, amount.getMinorUnits(), transactionTimestamp));
+            return new BankAccount(accountNumber, balanceAfterDeposit);
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionPage<DepositTransaction> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readDeposits(accountNumber, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionPage<BankTransaction> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readTransactions(accountNumber, after, limit);
+    }
+
+    @Override
+    public TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount) {
+        validateTransactionParameters(amount, fromAccountNumber, toAccountNumber);
+
+        return pipeline.submit(journal -> {
+            long transferTimestamp = clock.instant().toEpochMilli();
+
+            // the target is checked first, so the debit is the last step which can reject the transfer
+            getAccountEntity(toAccountNumber);
+            debit(fromAccountNumber, amount, transferTimestamp, "transfer amount is greater than the current account transfer initiator balance");
+            if (persistenceService.credit(toAccountNumber.getNumber(), amount.getMinorUnits(), transferTimestamp).isEmpty()) {
+                // not a rejection, the batch has to be rolled back as the initiator is debited already
+                throw new IllegalStateException("transfer target " + toAccountNumber + " disappeared");
+            }
+
+            TransactionId transactionId = idGenerator.nextTransactionId();
+            journal.add(createEntry(transactionId.getId(), TransactionEntryType.TRANSFER_OUT, fromAccountNumber.getNumber(),
+                    toAccountNumber.getNumber(), amount.getMinorUnits(), transferTimestamp));
+            // the target gets its own entry, unless it's the initiator itself
+            if (!fromAccountNumber.equals(toAccountNumber)) {
+                journal.add(createEntry(transactionId.getId(), TransactionEntryType.TRANSFER_IN, toAccountNumber.getNumber(),
+                        fromAccountNumber.getNumber(), amount.getMinorUnits(), transferTimestamp));
+            }
+            return new TransferTransaction(transactionId, fromAccountNumber, toAccountNumber, amount, Instant.ofEpochMilli(transferTimestamp));
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionPage<TransferTransaction> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readTransfers(accountNumber, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportTransactions(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action) {
+        exportHistory(accountNumber, type, action);
+    }
+
+    /**
+     * The batch is one operation of the pipeline. An all-or-nothing batch is checked against the current balances first
+     * and applied only if none of its operations would be rejected, the single writer keeps the balances unchanged meanwhile
+     */
+    @Override
+    public List<BatchOperationResult> applyBatch(List<BatchOperation> operations, boolean allOrNothing) {
+        validateBatch(operations);
+
+        return pipeline.submit(journal -> {
+            long batchTimestamp = clock.instant().toEpochMilli();
+            if (allOrNothing) {
+                List<BatchOperationResult> rejected = checkBatch(operations);
+                if (rejected != null) {
+                    return rejected;
+                }
+            }
+
+            List<BatchOperationResult> results = new ArrayList<>(operations.size());
+            for (BatchOperation operation : operations) {
+                try {
+                    results.add(BatchOperationResult.applied(applyBatchOperation(operation, batchTimestamp, journal)));
+                } catch (AccountNotFoundException | InsufficientBalanceException ex) {
+                    if (allOrNothing) {
+                        // not a rejection, the checked balances were changed by another node
+                        throw new IllegalStateException("all-or-nothing batch cannot be applied after it was checked", ex);
+                    }
+                    results.add(BatchOperationResult.rejected(ex));
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Check whether any operation of the batch would be rejected, without changing anything
+     *
+     * @param operations operations of the batch
+     * @return results of the batch if any operation would be rejected, null otherwise
+     */
+    private List<BatchOperationResult> checkBatch(List<BatchOperation> operations) {
+        // balances in minor units, empty if the account doesn't exist
+        Map<AccountNumber, OptionalLong> balances = new HashMap<>();
+        List<BatchOperationResult> results = new ArrayList<>(operations.size());
+        for (BatchOperation operation : operations) {
+            AccountNumber accountNumber = operation.getAccountNumber();
+            OptionalLong balance = balances.computeIfAbsent(accountNumber, number -> persistenceService.getAccount(number.getNumber())
+                    .map(account -> OptionalLong.of(account.getBalance()))
+                    .orElseGet(OptionalLong::empty));
+            long amount = operation.getAmount().getMinorUnits();
+            if (operation.getType() == TransactionType.DEPOSIT) {
+                balances.put(accountNumber, OptionalLong.of(balance.orElse(INITIAL_BALANCE.getMinorUnits()) + amount));
+                results.add(BatchOperationResult.notApplied());
+            } else if (balance.isEmpty()) {
+                results.add(BatchOperationResult.rejected(new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber)));
+                return notApplied(results, operations.size());
+            } else if (balance.getAsLong() < amount) {
+                results.add(BatchOperationResult.rejected(new InsufficientBalanceException("withdrawal amount is greater than the current account balance")));
+                return notApplied(results, operations.size());
+            } else {
+                balances.put(accountNumber, OptionalLong.of(balance.getAsLong() - amount));
+                results.add(BatchOperationResult.notApplied());
+            }
+        }
+        return null;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    @Value("${bank.group-commit.max-batch-size:256}")
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Value("${bank.group-commit.max-delay:200us}")
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    void setPipeline(GroupCommitPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+}
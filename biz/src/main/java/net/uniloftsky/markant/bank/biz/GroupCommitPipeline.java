@@ -0,0 +1,273 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit pipeline of the group-commit engine.
+ * <p>
+ * Operations submitted by concurrent callers are collected by a single writer thread, for up to the maximum delay after
+ * the first one or up to the maximum batch size, and applied in one database transaction. Journal entries of the batch
+ * are saved with one batch of inserts, every caller gets its result after the shared commit.
+ * <p>
+ * An operation rejected with a {@link BankServiceException} must not have changed anything, it fails alone and the rest
+ * of the batch is committed. If the batch transaction fails for any other reason, its operations are applied again
+ * in a transaction each, so only the faulty operation fails.
+ */
+class GroupCommitPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitPipeline.class);
+
+    // How often the writer checks whether the pipeline was stopped
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final BankPersistenceService persistenceService;
+
+    /**
+     * Transaction operations to apply every batch in a single database transaction
+     */
+    private final TransactionOperations transactionOperations;
+
+    /**
+     * Maximum number of operations applied in one transaction
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Maximum time to wait for more operations after the first one of a batch
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * Operations waiting to be applied. Not bounded, every caller waits for its own operation
+     */
+    private final BlockingQueue<Submission<?>> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    GroupCommitPipeline(BankPersistenceService persistenceService, TransactionOperations transactionOperations, int maxBatchSize, Duration maxDelay) {
+        if (maxBatchSize <= 0 || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("batch size must be greater than zero and delay must not be negative");
+        }
+        this.persistenceService = persistenceService;
+        this.transactionOperations = transactionOperations;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    /**
+     * Start the writer thread
+     */
+    void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("group-commit-writer").start(this::commitLoop);
+    }
+
+    /**
+     * Stop accepting operations and wait until all submitted operations are committed
+     */
+    void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Submit an operation and wait until the batch containing it is committed
+     *
+     * @param operation operation to apply
+     * @return result of the operation
+     * @throws BankServiceException  if the operation was rejected
+     * @throws IllegalStateException if the pipeline is stopped or the calling thread was interrupted while waiting
+     */
+    <T> T submit(Operation<T> operation) {
+        if (!running) {
+            throw new IllegalStateException("group commit pipeline is not running");
+        }
+        Submission<T> submission = new Submission<>(operation);
+        queue.add(submission);
+        try {
+            return submission.future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("group commit failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            // the operation is still applied, the caller just doesn't wait for it
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the group commit", ex);
+        }
+    }
+
+    /**
+     * Number of operations waiting to be applied
+     *
+     * @return number of pending operations
+     */
+    int pending() {
+        return queue.size();
+    }
+
+    private void commitLoop() {
+        List<Submission<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission<?> first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                commit(batch);
+                batch.clear();
+            } catch (InterruptedException ex) {
+                logger.warn("Group commit writer was interrupted, {} operations are not applied", queue.size() + batch.size());
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch);
+                batch.forEach(submission -> submission.future.completeExceptionally(new IllegalStateException("group commit writer was interrupted")));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Collect operations submitted until the batch is full or the maximum delay has passed
+     *
+     * @param batch batch with its first operation
+     */
+    private void collect(List<Submission<?>> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            Submission<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Apply a batch of operations in one transaction and complete their results after the commit.
+     * If the transaction fails, operations are applied again in a transaction each
+     *
+     * @param batch operations to apply, in the order of submitting
+     */
+    void commit(List<Submission<?>> batch) {
+        try {
+            apply(batch);
+        } catch (RuntimeException ex) {
+            if (batch.size() == 1) {
+                batch.getFirst().failure = ex;
+            } else {
+                logger.warn("Group commit of {} operations failed, applying them one by one", batch.size(), ex);
+                for (Submission<?> submission : batch) {
+                    try {
+                        apply(List.of(submission));
+                    } catch (RuntimeException submissionEx) {
+                        submission.failure = submissionEx;
+                    }
+                }
+            }
+        }
+        batch.forEach(Submission::complete);
+    }
+
+    private void apply(List<Submission<?>> batch) {
+        transactionOperations.executeWithoutResult(status -> {
+            List<TransactionEntity> journal = new ArrayList<>(batch.size() * 2);
+            for (Submission<?> submission : batch) {
+                submission.apply(journal);
+            }
+            if (!journal.isEmpty()) {
+                persistenceService.createTransactions(journal);
+            }
+        });
+    }
+
+    /**
+     * Operation applied by the pipeline
+     */
+    @FunctionalInterface
+    interface Operation<T> {
+
+        /**
+         * Apply the operation in the transaction of its batch
+         *
+         * @param journal journal entries of the batch, the operation appends its own entries
+         * @return result of the operation
+         * @throws BankServiceException if the operation is rejected. It must not have changed anything
+         */
+        T apply(List<TransactionEntity> journal);
+    }
+
+    /**
+     * Submitted operation with its outcome
+     */
+    static final class Submission<T> {
+
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * Outcome of the last application, set by the writer thread only
+         */
+        private T result;
+        private RuntimeException failure;
+
+        Submission(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        private void apply(List<TransactionEntity> journal) {
+            int journalSize = journal.size();
+            try {
+                result = operation.apply(journal);
+                failure = null;
+            } catch (BankServiceException ex) {
+                // a rejected operation leaves nothing behind
+                journal.subList(journalSize, journal.size()).clear();
+                result = null;
+                failure = ex;
+            }
+        }
+
+        private void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+
+        CompletableFuture<T> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.uniloftsky.markant.bank.biz;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Lock contention statistics of an account reported by the {@link HotAccountTracker}
+ */
+@JsonPropertyOrder({"accountNumber", "acquisitions", "error", "samples", "waitP99Nanos", "maxWaitNanos",
+        "meanQueueLength", "maxQueueLength"})
+public final class HotAccount {
+
+    private final long accountNumber;
+
+    /**
+     * Estimated number of lock acquisitions, at most {@link #error} more than the real number
+     */
+    private final long acquisitions;
+    private final long error;
+
+    /**
+     * Number of recorded acquisitions the wait and queue statistics are based on
+     */
+    private final long samples;
+
+    /**
+     * 99th percentile of the lock wait time, accurate to 25%
+     */
+    private final long waitP99Nanos;
+    private final long maxWaitNanos;
+
+    /**
+     * Number of threads already waiting for the lock when it was requested
+     */
+    private final double meanQueueLength;
+    private final int maxQueueLength;
+
+    public HotAccount(long accountNumber, long acquisitions, long error, long samples, long waitP99Nanos,
+                      long maxWaitNanos, double meanQueueLength, int maxQueueLength) {
+        this.accountNumber = accountNumber;
+        this.acquisitions = acquisitions;
+        this.error = error;
+        this.samples = samples;
+        this.waitP99Nanos = waitP99Nanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.meanQueueLength = meanQueueLength;
+        this.maxQueueLength = maxQueueLength;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getWaitP99Nanos() {
+        return waitP99Nanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public double getMeanQueueLength() {
+        return meanQueueLength;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    @Override
+    public String toString() {
+        return "HotAccount{" +
+                "accountNumber=" + accountNumber +
+                ", acquisitions=" + acquisitions +
+                ", waitP99Nanos=" + waitP99Nanos +
+                ", maxQueueLength=" + maxQueueLength +
+                '}';
+    }
+}
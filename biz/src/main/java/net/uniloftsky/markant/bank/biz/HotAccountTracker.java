@@ -0,0 +1,260 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detector of the hottest accounts by the sampled account lock acquisitions.
+ * <p>
+ * Acquisitions are counted by the space-saving algorithm: a fixed number of slots is kept, and an account without
+ * a slot takes over the slot with the smallest count, inheriting the count as its error. Accounts acquired more
+ * often than {@code total / capacity} times are guaranteed to have a slot, so memory stays fixed regardless of the
+ * number of accounts. Every slot also keeps a histogram of the lock wait time and the lock queue length statistics.
+ * <p>
+ * Only every {@code sampleInterval}-th acquisition is recorded on average, the counts are scaled back accordingly.
+ */
+@Component
+public class HotAccountTracker {
+
+    /**
+     * Default number of tracked accounts
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Default interval between the sampled acquisitions
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 8;
+
+    /**
+     * Number of wait time histogram buckets: four buckets per power of two up to 2^40 ns (about 18 minutes)
+     */
+    static final int BUCKETS = 160;
+
+    /**
+     * Guards the slots. Not a monitor, so recording virtual threads don't pin their carrier threads
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Slot[] slots;
+    private Map<Long, Slot> index;
+    private int size;
+
+    private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    public HotAccountTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of tracked accounts
+     */
+    public HotAccountTracker(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Decide whether the current lock acquisition is sampled
+     *
+     * @return true if the acquisition should be recorded
+     */
+    public boolean sample() {
+        return sampleInterval == 1 || ThreadLocalRandom.current().nextInt(sampleInterval) == 0;
+    }
+
+    /**
+     * Record a sampled lock acquisition
+     *
+     * @param accountNumber number of the locked account
+     * @param waitNanos     time spent waiting for the lock, including failed attempts
+     * @param queueLength   number of threads waiting for the lock when the acquisition started
+     */
+    public void record(long accountNumber, long waitNanos, int queueLength) {
+        lock.lock();
+        try {
+            Slot slot = index.get(accountNumber);
+            if (slot == null) {
+                slot = claimSlot(accountNumber);
+            }
+            slot.count += sampleInterval;
+            slot.samples++;
+            slot.waitHistogram[bucket(waitNanos)]++;
+            slot.maxWaitNanos = Math.max(slot.maxWaitNanos, waitNanos);
+            slot.queueLengthSum += queueLength;
+            slot.maxQueueLength = Math.max(slot.maxQueueLength, queueLength);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the hottest accounts, ordered by the estimated number of lock acquisitions
+     *
+     * @param limit maximum number of accounts
+     * @return hottest accounts
+     */
+    public List<HotAccount> top(int limit) {
+        List<HotAccount> result = new ArrayList<>(Math.min(limit, slots.length));
+        lock.lock();
+        try {
+            Slot[] ordered = Arrays.copyOf(slots, size);
+            Arrays.sort(ordered, Comparator.comparingLong((Slot slot) -> slot.count).reversed());
+            for (int i = 0; i < ordered.length && i < limit; i++) {
+                result.add(ordered[i].toHotAccount());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Forget all recorded acquisitions, so the next report reflects the current load only
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            allocate(slots.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a free slot, or the slot with the smallest count if all are taken
+     */
+    private Slot claimSlot(long accountNumber) {
+        Slot slot;
+        if (size < slots.length) {
+            slot = slots[size++];
+            slot.clear(0);
+        } else {
+            slot = slots[0];
+            for (int i = 1; i < size; i++) {
+                if (slots[i].count < slot.count) {
+                    slot = slots[i];
+                }
+            }
+            index.remove(slot.accountNumber);
+            slot.clear(slot.count);
+        }
+        slot.accountNumber = accountNumber;
+        index.put(accountNumber, slot);
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
+        }
+        Slot[] allocated = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            allocated[i] = new Slot();
+        }
+        this.slots = allocated;
+        this.index = new HashMap<>(capacity * 2);
+        this.size = 0;
+    }
+
+    @Value("${bank.hot-accounts.capacity:" + DEFAULT_CAPACITY + "}")
+    public void setCapacity(int capacity) {
+        lock.lock();
+        try {
+            allocate(capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Value("${bank.hot-accounts.sample-interval:" + DEFAULT_SAMPLE_INTERVAL + "}")
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sample interval must be positive, but was " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Get the wait time histogram bucket: values below 4 ns have their own buckets,
+     * every following power of two is split into four buckets
+     */
+    static int bucket(long nanos) {
+        if (nanos < 4) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - 2)) & 3;
+        return Math.min(((exponent - 1) << 2) | subBucket, BUCKETS - 1);
+    }
+
+    /**
+     * Get the largest wait time counted in the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = (bucket >>> 2) + 1;
+        int subBucket = bucket & 3;
+        return (((4L | subBucket) + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Counters of a tracked account
+     */
+    private static final class Slot {
+
+        private long accountNumber;
+
+        /**
+         * Estimated number of acquisitions and the maximum overestimation of it
+         */
+        private long count;
+        private long error;
+
+        private long samples;
+        private final long[] waitHistogram = new long[BUCKETS];
+        private long maxWaitNanos;
+        private long queueLengthSum;
+        private int maxQueueLength;
+
+        private void clear(long inheritedCount) {
+            count = inheritedCount;
+            error = inheritedCount;
+            samples = 0;
+            Arrays.fill(waitHistogram, 0);
+            maxWaitNanos = 0;
+            queueLengthSum = 0;
+            maxQueueLength = 0;
+        }
+
+        private HotAccount toHotAccount() {
+            return new HotAccount(accountNumber, count, error, samples, waitPercentile(0.99), maxWaitNanos,
+                    samples == 0 ? 0 : (double) queueLengthSum / samples, maxQueueLength);
+        }
+
+        /**
+         * Upper bound of the bucket containing the percentile, capped by the maximum wait
+         */
+        private long waitPercentile(double percentile) {
+            long rank = (long) Math.ceil(percentile * samples);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += waitHistogram[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), maxWaitNanos);
+                }
+            }
+            return maxWaitNanos;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.uniloftsky.markant.bank.biz;
+
+/**
+ * Exception thrown when a batch of operations is empty, too large or contains an operation which cannot be batched
+ */
+public class InvalidBatchException extends BankServiceException {
+
+    /**
+     * Position of the invalid operation in the batch, -1 if the batch size is invalid
+     */
+    private final int index;
+
+    public InvalidBatchException(String message, int index) {
+        super(message);
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
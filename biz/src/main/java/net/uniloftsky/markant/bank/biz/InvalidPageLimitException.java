@@ -0,0 +1,25 @@
+package net.uniloftsky.markant.bank.biz;
+
+/**
+ * Exception thrown when the requested number of transactions on a page is out of the allowed range
+ */
+public class InvalidPageLimitException extends BankServiceException {
+
+    /**
+     * Invalid limit
+     */
+    private final int limit;
+
+    public InvalidPageLimitException(int limit) {
+        this.limit = limit;
+    }
+
+    public InvalidPageLimitException(String message, int limit) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
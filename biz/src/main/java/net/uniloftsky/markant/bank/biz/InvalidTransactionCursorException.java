@@ -0,0 +1,30 @@
+package net.uniloftsky.markant.bank.biz;
+
+/**
+ * Exception thrown when the transaction history cursor cannot be decoded
+ */
+public class InvalidTransactionCursorException extends BankServiceException {
+
+    /**
+     * Invalid cursor
+     */
+    private final String cursor;
+
+    public InvalidTransactionCursorException(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public InvalidTransactionCursorException(String message, String cursor) {
+        super(message);
+        this.cursor = cursor;
+    }
+
+    public InvalidTransactionCursorException(String message, Throwable cause, String cursor) {
+        super(message, cause);
+        this.cursor = cursor;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+}
@@ -0,0 +1,417 @@
+package net.uniloftsky.markant.bank.biz;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.uniloftsky.markant.bank.biz.persistence.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Ledger bank service engine.
+ * <p>
+ * Authoritative account balances live in memory, every operation is applied to the in-memory ledger under the
+ * account lock and appended to the {@link LedgerJournal}, which writes it behind to the persistence layer.
+ * On startup the ledger is rebuilt from the persisted account balances.
+ * <p>
+ * History reads wait until the journal is written, so a client always sees its own transactions. A read fails if the
+ * journal isn't written within {@code bank.ledger.journal.flush-timeout}. If a journal batch cannot be written, the
+ * ledger fails: writes and reads are rejected, since the balances include operations a rebuild wouldn't see, until a
+ * restart rebuilds it from the persisted transactions.
+ * Enabled with the {@code bank.engine=ledger} property.
+ */
+@Service
+@ConditionalOnProperty(name = "bank.engine", havingValue = "ledger")
+public class LedgerBankServiceImpl extends AbstractBankService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerBankServiceImpl.class);
+
+    /**
+     * In-memory ledger, accounts by account number
+     */
+    private final ConcurrentMap<Long, LedgerAccount> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Transaction manager for the journal writes
+     */
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Maximum number of journal entries written in one database transaction
+     */
+    private int journalBatchSize = 500;
+
+    /**
+     * Maximum number of journal entries waiting to be written
+     */
+    private int journalCapacity = 100_000;
+
+    /**
+     * Number of attempts to write a journal batch before the ledger fails
+     */
+    private int journalMaxAttempts = LedgerJournal.DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Maximum time a history read waits for the journal to be written
+     */
+    private Duration journalFlushTimeout = LedgerJournal.DEFAULT_FLUSH_TIMEOUT;
+
+    /**
+     * Write-behind journal
+     */
+    private LedgerJournal journal;
+
+    @PostConstruct
+    public void start() {
+        rebuild();
+        journal = new LedgerJournal(persistenceService, new TransactionTemplate(transactionManager), journalBatchSize, journalCapacity,
+                journalMaxAttempts, journalFlushTimeout);
+        journal.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        journal.stop();
+    }
+
+    @Override
+    public BankAccount getAccount(AccountNumber accountNumber) {
+        LedgerAccount account = getLedgerAccount(accountNumber);
+        journal.checkNotFailed();
+        return new BankAccount(accountNumber, account.balance);
+    }
+
+    @Override
+    public BankAccount withdraw(AccountNumber accountNumber, Money amount) {
+        validateTransactionParameters(amount, accountNumber);
+
+        LedgerAccount account = getLedgerAccount(accountNumber);
+        account.lock.lock();
+        try {
+            Money balanceAfterWithdrawal = account.balance.minus(amount);
+            if (balanceAfterWithdrawal.isNegative()) {
+                throw new InsufficientBalanceException("withdrawal amount is greater than the current account balance");
+            }
+
+            long transactionTimestamp = clock.instant().toEpochMilli();
+            TransactionId transactionId = idGenerator.nextTransactionId();
+            journal.append(LedgerJournalEntry.withdrawal(transactionId.getId(), account.number, amount.getMinorUnits(),
+                    balanceAfterWithdrawal.getMinorUnits(), transactionTimestamp));
+            account.balance = balanceAfterWithdrawal;
+            return new BankAccount(accountNumber, balanceAfterWithdrawal);
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    @Override
+    public TransactionPage<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        getLedgerAccount(accountNumber);
+        journal.flush();
+        return readWithdrawals(accountNumber, after, limit);
+    }
+
+    @Override
+    public BankAccount deposit(AccountNumber accountNumber, Money amount) {
+        validateTransactionParameters(amount, accountNumber);
+
+        LedgerAccount account = getOrCreateLedgerAccount(accountNumber);
+        account.lock.lock();
+        try {
+            Money balanceAfterDeposit = account.balance.plus(amount);
+
+            long transactionTimestamp = clock.instant().toEpochMilli();
+            TransactionId transactionId = idGenerator.nextTransactionId();
+            journal.append(LedgerJournalEntry.deposit(transactionId.getId(), account.number, amount.getMinorUnits(),
+                    balanceAfterDeposit.getMinorUnits(), transactionTimestamp));
+            account.balance = balanceAfterDeposit;
+            return new BankAccount(accountNumber, balanceAfterDeposit);
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    @Override
+    public TransactionPage<DepositTransaction> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        getLedgerAccount(accountNumber);
+        journal.flush();
+        return readDeposits(accountNumber, after, limit);
+    }
+
+    @Override
+    public TransactionPage<BankTransaction> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        getLedgerAccount(accountNumber);
+        journal.flush();
+        return readTransactions(accountNumber, after, limit);
+    }
+
+    @Override
+    public TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount) {
+        validateTransactionParameters(amount, fromAccountNumber, toAccountNumber);
+
+        LedgerAccount from = getLedgerAccount(fromAccountNumber);
+        LedgerAccount to = getLedgerAccount(toAccountNumber);
+
+        // locks are always taken in the order of account numbers, so opposite transfers cannot deadlock
+        LedgerAccount first = from.number <= to.number ? from : to;
+        LedgerAccount second = first == from ? to : from;
+        first.lock.lock();
+        second.lock.lock();
+        try {
+            Money initiatorBalanceAfter = from.balance.minus(amount);
+            if (initiatorBalanceAfter.isNegative()) {
+                throw new InsufficientBalanceException("transfer amount is greater than the current account transfer initiator balance");
+            }
+            Money targetBalanceAfter = (from == to ? initiatorBalanceAfter : to.balance).plus(amount);
+
+            long transferTimestamp = clock.instant().toEpochMilli();
+            TransactionId transactionId = idGenerator.nextTransactionId();
+            journal.append(LedgerJournalEntry.transfer(transactionId.getId(), from.number, to.number, amount.getMinorUnits(),
+                    initiatorBalanceAfter.getMinorUnits(), targetBalanceAfter.getMinorUnits(), transferTimestamp));
+            from.balance = initiatorBalanceAfter;
+            to.balance = targetBalanceAfter;
+            return new TransferTransaction(transactionId, fromAccountNumber, toAccountNumber, amount, Instant.ofEpochMilli(transferTimestamp));
+        } finally {
+            second.lock.unlock();
+            first.lock.unlock();
+        }
+    }
+
+    @Override
+    public TransactionPage<TransferTransaction> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        getLedgerAccount(accountNumber);
+        journal.flush();
+        return readTransfers(accountNumber, after, limit);
+    }
+
+    @Override
+    public void exportTransactions(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action) {
+        getLedgerAccount(accountNumber);
+        journal.flush();
+        exportHistory(accountNumber, type, action);
+    }
+
+    /**
+     * Accounts of the deposits are created first, like by single deposits, then all accounts of the batch are locked
+     * in the order of account numbers. The batch is evaluated on a copy of the balances and journaled only if it's
+     * applied, so a rejected all-or-nothing batch has nothing to undo. Accounts created for its deposits stay, with
+     * the initial balance
+     */
+    @Override
+    public List<BatchOperationResult> applyBatch(List<BatchOperation> operations, boolean allOrNothing) {
+        validateBatch(operations);
+
+        // accounts of the batch in the order of account numbers, existing means existing before the batch
+        Map<Long, LedgerAccount> batchAccounts = new TreeMap<>();
+        Set<Long> existing = new HashSet<>();
+        for (BatchOperation operation : operations) {
+            long number = operation.getAccountNumber().getNumber();
+            LedgerAccount account = accounts.get(number);
+            if (account != null) {
+                existing.add(number);
+            } else if (operation.getType() == TransactionType.DEPOSIT) {
+                account = getOrCreateLedgerAccount(operation.getAccountNumber());
+            }
+            if (account != null) {
+                batchAccounts.putIfAbsent(number, account);
+            }
+        }
+
+        List<LedgerAccount> locked = new ArrayList<>(batchAccounts.size());
+        try {
+            for (LedgerAccount account : batchAccounts.values()) {
+                account.lock.lock();
+                locked.add(account);
+            }
+
+            long batchTimestamp = clock.instant().toEpochMilli();
+            Map<Long, Money> balances = new HashMap<>();
+            List<LedgerJournalEntry> entries = new ArrayList<>(operations.size());
+            List<BatchOperationResult> results = new ArrayList<>(operations.size());
+            for (BatchOperation operation : operations) {
+                AccountNumber accountNumber = operation.getAccountNumber();
+                long number = accountNumber.getNumber();
+                LedgerAccount account = batchAccounts.get(number);
+                Money amount = operation.getAmount();
+                long transactionId = idGenerator.nextTransactionId().getId();
+                if (operation.getType() == TransactionType.DEPOSIT) {
+                    Money balanceAfterDeposit = balances.getOrDefault(number, account.balance).plus(amount);
+                    balances.put(number, balanceAfterDeposit);
+                    existing.add(number);
+                    entries.add(LedgerJournalEntry.deposit(transactionId, number, amount.getMinorUnits(), balanceAfterDeposit.getMinorUnits(), batchTimestamp));
+                    results.add(BatchOperationResult.applied(new BankAccount(accountNumber, balanceAfterDeposit)));
+                    continue;
+                }
+
+                BankServiceException rejection = null;
+                if (account == null || !existing.contains(number)) {
+                    rejection = new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber);
+                } else {
+                    Money balanceAfterWithdrawal = balances.getOrDefault(number, account.balance).minus(amount);
+                    if (balanceAfterWithdrawal.isNegative()) {
+                        rejection = new InsufficientBalanceException("withdrawal amount is greater than the current account balance");
+                    } else {
+                        balances.put(number, balanceAfterWithdrawal);
+                        entries.add(LedgerJournalEntry.withdrawal(transactionId, number, amount.getMinorUnits(), balanceAfterWithdrawal.getMinorUnits(), batchTimestamp));
+                        results.add(BatchOperationResult.applied(new BankAccount(accountNumber, balanceAfterWithdrawal)));
+                    }
+                }
+                if (rejection != null) {
+                    results.add(BatchOperationResult.rejected(rejection));
+                    if (allOrNothing) {
+                        return notApplied(results, operations.size());
+                    }
+                }
+            }
+
+            for (LedgerJournalEntry entry : entries) {
+                journal.append(entry);
+            }
+            for (Map.Entry<Long, Money> balance : balances.entrySet()) {
+                batchAccounts.get(balance.getKey()).balance = balance.getValue();
+            }
+            return results;
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                locked.get(i).lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Rebuild the in-memory ledger from the persisted account balances.
+     * <p>
+     * The journal writes the transactions of a batch and the last balances of their accounts in one database
+     * transaction, like the other engines write an operation, so a persisted balance includes every persisted
+     * transaction of its account and there is no tail of transactions to replay. The accounts are read in one query,
+     * the histories aren't read at all
+     */
+    void rebuild() {
+        accounts.clear();
+        List<AccountEntity> entities = persistenceService.listAccounts();
+        for (AccountEntity entity : entities) {
+            accounts.put(entity.getNumber(), new LedgerAccount(entity.getNumber(), Money.ofMinorUnits(entity.getBalance())));
+        }
+        logger.info("Ledger rebuilt from the persisted balances, {} accounts loaded", entities.size());
+    }
+
+    /**
+     * Retrieves an account from the in-memory ledger
+     *
+     * @param accountNumber account number
+     * @return ledger account
+     * @throws AccountNotFoundException if account by the given account number doesn't exist
+     */
+    LedgerAccount getLedgerAccount(AccountNumber accountNumber) {
+        LedgerAccount account = accounts.get(accountNumber.getNumber());
+        if (account == null) {
+            throw new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber);
+        }
+        return account;
+    }
+
+    /**
+     * Retrieves an account from the in-memory ledger or creates a new one.
+     * <p>
+     * A new account is published locked, so no operation on it can be journaled before its creation
+     *
+     * @param accountNumber account number
+     * @return existing or freshly created ledger account
+     */
+    LedgerAccount getOrCreateLedgerAccount(AccountNumber accountNumber) {
+        LedgerAccount account = accounts.get(accountNumber.getNumber());
+        if (account != null) {
+            return account;
+        }
+
+        registerAccount(accountNumber);
+        LedgerAccount created = new LedgerAccount(accountNumber.getNumber(), INITIAL_BALANCE);
+        created.lock.lock();
+        try {
+            LedgerAccount existing = accounts.putIfAbsent(created.number, created);
+            if (existing != null) {
+                return existing;
+            }
+            long accountCreationTimestamp = clock.instant().toEpochMilli();
+            journal.append(LedgerJournalEntry.account(created.number, INITIAL_BALANCE.getMinorUnits(), accountCreationTimestamp));
+            return created;
+        } finally {
+            created.lock.unlock();
+        }
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    @Value("${bank.ledger.journal.batch-size:500}")
+    public void setJournalBatchSize(int journalBatchSize) {
+        this.journalBatchSize = journalBatchSize;
+    }
+
+    @Value("${bank.ledger.journal.capacity:100000}")
+    public void setJournalCapacity(int journalCapacity) {
+        this.journalCapacity = journalCapacity;
+    }
+
+    @Value("${bank.ledger.journal.max-attempts:10}")
+    public void setJournalMaxAttempts(int journalMaxAttempts) {
+        this.journalMaxAttempts = journalMaxAttempts;
+    }
+
+    @Value("${bank.ledger.journal.flush-timeout:30s}")
+    public void setJournalFlushTimeout(Duration journalFlushTimeout) {
+        this.journalFlushTimeout = journalFlushTimeout;
+    }
+
+    void setJournal(LedgerJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Account of the in-memory ledger
+     */
+    static final class LedgerAccount {
+
+        private final long number;
+
+        /**
+         * Lock guarding balance changes
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Current balance. Written under the lock, read without it
+         */
+        private volatile Money balance;
+
+        LedgerAccount(long number, Money balance) {
+            this.number = number;
+            this.balance = balance;
+        }
+
+        Money getBalance() {
+            return balance;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind journal of the ledger engine.
+ * <p>
+ * Entries are appended after they were applied to the in-memory ledger and written to the {@link BankPersistenceService}
+ * by a single writer thread, strictly in the order of appending. Every batch of entries is written in one database transaction
+ * and only the last balance of each account in the batch is written. A failed batch is retried up to
+ * {@code maxAttempts} times, then the journal fails: the writer stops, the unwritten entries are logged with all their
+ * fields, and appends and flushes are rejected. The entries were acknowledged to the clients already and a rebuild
+ * only sees the written ones, so the ledger stops instead of skipping them; a restart rebuilds it from the persisted
+ * transactions.
+ */
+class LedgerJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerJournal.class);
+
+    // Bounds of the delay between attempts to write a failed batch
+    private static final long RETRY_DELAY_MIN_MILLIS = 100;
+    private static final long RETRY_DELAY_MAX_MILLIS = 5_000;
+
+    // How often the writer checks whether the journal was stopped
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Default number of attempts to write a batch before the journal fails
+     */
+    static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    /**
+     * Default maximum time a flush waits for the writer
+     */
+    static final Duration DEFAULT_FLUSH_TIMEOUT = Duration.ofSeconds(30);
+
+    private final BankPersistenceService persistenceService;
+
+    /**
+     * Transaction operations to write every batch in a single database transaction
+     */
+    private final TransactionOperations transactionOperations;
+
+    /**
+     * Maximum number of entries written in one batch
+     */
+    private final int batchSize;
+
+    /**
+     * Number of attempts to write a batch before the journal fails
+     */
+    private final int maxAttempts;
+
+    /**
+     * Maximum time a flush waits for the writer
+     */
+    private final Duration flushTimeout;
+
+    /**
+     * Queue of entries waiting to be written. Bounded, appending blocks if the writer falls behind
+     */
+    private final BlockingQueue<LedgerJournalEntry> queue;
+
+    /**
+     * Lock which makes sequence assignment and enqueueing one step, so the queue order matches the sequence order
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Sequence of the last appended entry. Guarded by {@link #appendLock}
+     */
+    private long appendedSequence;
+
+    /**
+     * Lock and condition to wait for entries being written
+     */
+    private final ReentrantLock writtenLock = new ReentrantLock();
+    private final Condition writtenCondition = writtenLock.newCondition();
+
+    /**
+     * Sequence of the last entry written to the persistence layer
+     */
+    private volatile long writtenSequence;
+
+    /**
+     * Cause of the failure of the journal, null while it works
+     */
+    private volatile RuntimeException failure;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    LedgerJournal(BankPersistenceService persistenceService, TransactionOperations transactionOperations, int batchSize, int capacity) {
+        this(persistenceService, transactionOperations, batchSize, capacity, DEFAULT_MAX_ATTEMPTS, DEFAULT_FLUSH_TIMEOUT);
+    }
+
+    LedgerJournal(BankPersistenceService persistenceService, TransactionOperations transactionOperations, int batchSize, int capacity,
+                  int maxAttempts, Duration flushTimeout) {
+        if (batchSize <= 0 || capacity <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("batch size, capacity and maximum attempts must be greater than zero");
+        }
+        if (flushTimeout.isNegative() || flushTimeout.isZero()) {
+            throw new IllegalArgumentException("flush timeout must be positive, but was " + flushTimeout);
+        }
+        this.persistenceService = persistenceService;
+        this.transactionOperations = transactionOperations;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.flushTimeout = flushTimeout;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Start the writer thread
+     */
+    void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("ledger-journal-writer").start(this::writeLoop);
+    }
+
+    /**
+     * Stop accepting entries and wait until all appended entries are written
+     */
+    void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Append an entry to the journal. Blocks if the journal is full.
+     *
+     * @param entry entry to append
+     * @throws IllegalStateException if the journal is stopped or failed, or the calling thread was interrupted while waiting
+     */
+    void append(LedgerJournalEntry entry) {
+        if (!running) {
+            throw new IllegalStateException("ledger journal is not running");
+        }
+        appendLock.lock();
+        try {
+            checkNotFailed();
+            entry.setSequence(appendedSequence + 1);
+            queue.put(entry);
+            appendedSequence++;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while appending to the ledger journal", ex);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until all entries appended before this call are written to the persistence layer, before reading the
+     * history of the account
+     *
+     * @throws IllegalStateException if the entries are not written within the flush timeout, the journal failed, or
+     *                               the calling thread was interrupted while waiting
+     */
+    void flush() {
+        long target;
+        appendLock.lock();
+        try {
+            target = appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+
+        writtenLock.lock();
+        try {
+            long remainingNanos = flushTimeout.toNanos();
+            while (writtenSequence < target) {
+                checkNotFailed();
+                if (remainingNanos <= 0) {
+                    throw new IllegalStateException("ledger journal was not written within " + flushTimeout + ", "
+                            + (target - writtenSequence) + " entries are behind");
+                }
+                remainingNanos = writtenCondition.awaitNanos(remainingNanos);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while flushing the ledger journal", ex);
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    /**
+     * Number of entries waiting to be written
+     *
+     * @return number of pending entries
+     */
+    int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Check that the journal didn't fail, before the ledger serves a balance which may not be persisted
+     *
+     * @throws IllegalStateException if the journal failed
+     */
+    void checkNotFailed() {
+        RuntimeException cause = failure;
+        if (cause != null) {
+            throw new IllegalStateException("ledger journal failed, restart to rebuild the ledger", cause);
+        }
+    }
+
+    private void writeLoop() {
+        List<LedgerJournalEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LedgerJournalEntry first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (failure != null) {
+                    // entries appended while the journal failed are drained, so appenders blocked on the full queue go on
+                    logUnwritten(batch);
+                } else if (writeWithRetry(batch)) {
+                    markWritten(batch.getLast().getSequence());
+                } else {
+                    fail(batch);
+                }
+                batch.clear();
+            } catch (InterruptedException ex) {
+                logger.warn("Ledger journal writer was interrupted, {} entries are not written", queue.size() + batch.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write a batch, retrying it up to the maximum attempts
+     *
+     * @return true if the batch is written, false if all attempts failed, which fails the journal
+     */
+    private boolean writeWithRetry(List<LedgerJournalEntry> batch) throws InterruptedException {
+        long delay = RETRY_DELAY_MIN_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                write(batch);
+                return true;
+            } catch (RuntimeException ex) {
+                if (attempt == maxAttempts) {
+                    failure = new IllegalStateException("batch of " + batch.size() + " ledger journal entries starting at sequence "
+                            + batch.getFirst().getSequence() + " could not be written in " + attempt + " attempts", ex);
+                    return false;
+                }
+                logger.error("Failed to write a batch of {} ledger journal entries starting at sequence {}, retrying in {} ms",
+                        batch.size(), batch.getFirst().getSequence(), delay, ex);
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, RETRY_DELAY_MAX_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Log the failure and the entries of the failed batch and wake up the flushes, which fail instead of waiting for
+     * their timeout. Appends are rejected from now on
+     *
+     * @param batch batch which could not be written
+     */
+    private void fail(List<LedgerJournalEntry> batch) {
+        logger.error("Ledger journal failed, writes are rejected until the ledger is rebuilt by a restart", failure);
+        logUnwritten(batch);
+        writtenLock.lock();
+        try {
+            writtenCondition.signalAll();
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+
+    /**
+     * Log entries which are not written, with all their fields, so the acknowledged operations can be recovered
+     */
+    private void logUnwritten(List<LedgerJournalEntry> entries) {
+        for (LedgerJournalEntry entry : entries) {
+            logger.error("Unwritten ledger journal entry {}", entry);
+        }
+    }
+
+    /**
+     * Write a batch of entries in one transaction
+     *
+     * @param batch entries to write, in the order of appending
+     */
+    void write(List<LedgerJournalEntry> batch) {
+        transactionOperations.executeWithoutResult(status -> {
+
+            // only the last balance of every account is written
+            Map<Long, LedgerJournalEntry> lastUpdates = new LinkedHashMap<>();
+            Map<Long, Long> lastBalances = new LinkedHashMap<>();
+            for (LedgerJournalEntry entry : batch) {
+                switch (entry.getKind()) {
+                    case ACCOUNT -> persistenceService.createAccount(entry.getAccountNumber(), entry.getBalanceAfter(), entry.getTimestamp());
+                    case DEPOSIT -> {
+                        persistenceService.createDepositTransaction(entry.getTransactionId(), entry.getAccountNumber(), entry.getAmount(), entry.getTimestamp());
+                        lastUpdates.put(entry.getAccountNumber(), entry);
+                        lastBalances.put(entry.getAccountNumber(), entry.getBalanceAfter());
+                    }
+                    case WITHDRAWAL -> {
+                        persistenceService.createWithdrawTransaction(entry.getTransactionId(), entry.getAccountNumber(), entry.getAmount(), entry.getTimestamp());
+                        lastUpdates.put(entry.getAccountNumber(), entry);
+                        lastBalances.put(entry.getAccountNumber(), entry.getBalanceAfter());
+                    }
+                    case TRANSFER -> {
+                        persistenceService.createTransferTransaction(entry.getTransactionId(), entry.getAccountNumber(), entry.getTargetAccountNumber(),
+                                entry.getAmount(), entry.getTimestamp());
+                        lastUpdates.put(entry.getAccountNumber(), entry);
+                        lastBalances.put(entry.getAccountNumber(), entry.getBalanceAfter());
+                        lastUpdates.put(entry.getTargetAccountNumber(), entry);
+                        lastBalances.put(entry.getTargetAccountNumber(), entry.getTargetBalanceAfter());
+                    }
+                }
+            }
+
+            for (Map.Entry<Long, Long> balance : lastBalances.entrySet()) {
+                long accountNumber = balance.getKey();
+                AccountEntity accountEntity = persistenceService.getAccount(accountNumber)
+                        .orElseThrow(() -> new IllegalStateException("account " + accountNumber + " is not persisted"));
+                persistenceService.updateAccountBalance(accountEntity, balance.getValue(), lastUpdates.get(accountNumber).getTimestamp());
+            }
+        });
+    }
+
+    private void markWritten(long sequence) {
+        writtenLock.lock();
+        try {
+            writtenSequence = sequence;
+            writtenCondition.signalAll();
+        } finally {
+            writtenLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package net.uniloftsky.markant.bank.biz;
+
+
+/**
+ * Entry of the ledger journal. Describes a single change which was already applied to the in-memory ledger
+ * and has to be written to the persistence layer.
+ */
+final class LedgerJournalEntry {
+
+    /**
+     * Kind of the journal entry
+     */
+    enum Kind {
+
+        /**
+         * Account creation
+         */
+        ACCOUNT,
+
+        /**
+         * Deposit transaction
+         */
+        DEPOSIT,
+
+        /**
+         * Withdrawal transaction
+         */
+        WITHDRAWAL,
+
+        /**
+         * Transfer transaction
+         */
+        TRANSFER
+    }
+
+    private final Kind kind;
+
+    /**
+     * Transaction ID, zero for account creation entries
+     */
+    private final long transactionId;
+
+    /**
+     * Account number, transfer initiator for transfers
+     */
+    private final long accountNumber;
+
+    /**
+     * Transfer target account number. Defined only for transfers
+     */
+    private final long targetAccountNumber;
+
+    /**
+     * Transaction amount in minor units
+     */
+    private final long amount;
+
+    /**
+     * Balance of the account after the change was applied, in minor units
+     */
+    private final long balanceAfter;
+
+    /**
+     * Balance of the transfer target account after the change was applied, in minor units. Defined only for transfers
+     */
+    private final long targetBalanceAfter;
+
+    /**
+     * Timestamp of the change in milliseconds
+     */
+    private final long timestamp;
+
+    /**
+     * Sequence number of the entry in the journal. Assigned on append
+     */
+    private long sequence;
+
+    private LedgerJournalEntry(Kind kind, long transactionId, long accountNumber, long targetAccountNumber, long amount,
+                               long balanceAfter, long targetBalanceAfter, long timestamp) {
+        this.kind = kind;
+        this.transactionId = transactionId;
+        this.accountNumber = accountNumber;
+        this.targetAccountNumber = targetAccountNumber;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.targetBalanceAfter = targetBalanceAfter;
+        this.timestamp = timestamp;
+    }
+
+    static LedgerJournalEntry account(long accountNumber, long balance, long timestamp) {
+        return new LedgerJournalEntry(Kind.ACCOUNT, 0, accountNumber, 0, 0, balance, 0, timestamp);
+    }
+
+    static LedgerJournalEntry deposit(long transactionId, long accountNumber, long amount, long balanceAfter, long timestamp) {
+        return new LedgerJournalEntry(Kind.DEPOSIT, transactionId, accountNumber, 0, amount, balanceAfter, 0, timestamp);
+    }
+
+    static LedgerJournalEntry withdrawal(long transactionId, long accountNumber, long amount, long balanceAfter, long timestamp) {
+        return new LedgerJournalEntry(Kind.WITHDRAWAL, transactionId, accountNumber, 0, amount, balanceAfter, 0, timestamp);
+    }
+
+    static LedgerJournalEntry transfer(long transactionId, long fromAccountNumber, long toAccountNumber, long amount,
+                                       long fromBalanceAfter, long toBalanceAfter, long timestamp) {
+        return new LedgerJournalEntry(Kind.TRANSFER, transactionId, fromAccountNumber, toAccountNumber, amount, fromBalanceAfter, toBalanceAfter, timestamp);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    long getTransactionId() {
+        return transactionId;
+    }
+
+    long getAccountNumber() {
+        return accountNumber;
+    }
+
+    long getTargetAccountNumber() {
+        return targetAccountNumber;
+    }
+
+    long getAmount() {
+        return amount;
+    }
+
+    long getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    long getTargetBalanceAfter() {
+        return targetBalanceAfter;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "kind=" + kind +
+                ", sequence=" + sequence +
+                ", transactionId=" + transactionId +
+                ", accountNumber=" + accountNumber +
+                ", targetAccountNumber=" + targetAccountNumber +
+                ", amount=" + amount +
+                ", balanceAfter=" + balanceAfter +
+                ", targetBalanceAfter=" + targetBalanceAfter +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
@@ -0,0 +1,160 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.Timer;
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Persistence service decorator recording the latency of every call.
+ * <p>
+ * Balance updates and reads are executed by the database right away. New journal entries are only queued by JPA,
+ * their inserts are executed on commit and measured by the {@value BankMetrics#COMMIT} timer, except for batches of
+ * {@link #createTransactions(List)}, which are inserted right away.
+ */
+public class MeteredBankPersistenceService implements BankPersistenceService {
+
+    private final BankPersistenceService delegate;
+
+    private final Timer createAccount;
+    private final Timer getAccount;
+    private final Timer listAccounts;
+    private final Timer updateAccountBalance;
+    private final Timer debitIfSufficient;
+    private final Timer credit;
+    private final Timer creditOrCreate;
+    private final Timer listTransactions;
+    private final Timer listTransactionsPage;
+    private final Timer listTransactionsAfter;
+    private final Timer forEachTransaction;
+    private final Timer createDepositTransaction;
+    private final Timer createWithdrawTransaction;
+    private final Timer createTransferTransaction;
+    private final Timer createTransactions;
+
+    public MeteredBankPersistenceService(BankPersistenceService delegate, BankMetrics metrics) {
+        this.delegate = delegate;
+        this.createAccount = metrics.persistenceTimer("createAccount");
+        this.getAccount = metrics.persistenceTimer("getAccount");
+        this.listAccounts = metrics.persistenceTimer("listAccounts");
+        this.updateAccountBalance = metrics.persistenceTimer("updateAccountBalance");
+        this.debitIfSufficient = metrics.persistenceTimer("debitIfSufficient");
+        this.credit = metrics.persistenceTimer("credit");
+        this.creditOrCreate = metrics.persistenceTimer("creditOrCreate");
+        this.listTransactions = metrics.persistenceTimer("listTransactions");
+        this.listTransactionsPage = metrics.persistenceTimer("listTransactionsPage");
+        this.listTransactionsAfter = metrics.persistenceTimer("listTransactionsAfter");
+        this.forEachTransaction = metrics.persistenceTimer("forEachTransaction");
+        this.createDepositTransaction = metrics.persistenceTimer("createDepositTransaction");
+        this.createWithdrawTransaction = metrics.persistenceTimer("createWithdrawTransaction");
+        this.createTransferTransaction = metrics.persistenceTimer("createTransferTransaction");
+        this.createTransactions = metrics.persistenceTimer("createTransactions");
+    }
+
+    @Override
+    public AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp) {
+        return measure(createAccount, () -> delegate.createAccount(accountNumber, balance, creationTimestamp));
+    }
+
+    @Override
+    public Optional<AccountEntity> getAccount(long accountNumber) {
+        return measure(getAccount, () -> delegate.getAccount(accountNumber));
+    }
+
+    @Override
+    public List<AccountEntity> listAccounts() {
+        return measure(listAccounts, delegate::listAccounts);
+    }
+
+    @Override
+    public AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp) {
+        return measure(updateAccountBalance, () -> delegate.updateAccountBalance(accountEntity, newBalance, timestamp));
+    }
+
+    @Override
+    public OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        return measure(debitIfSufficient, () -> delegate.debitIfSufficient(accountNumber, amount, timestamp));
+    }
+
+    @Override
+    public OptionalLong credit(long accountNumber, long amount, long timestamp) {
+        return measure(credit, () -> delegate.credit(accountNumber, amount, timestamp));
+    }
+
+    @Override
+    public long creditOrCreate(long accountNumber, long amount, long timestamp) {
+        long start = System.nanoTime();
+        try {
+            return delegate.creditOrCreate(accountNumber, amount, timestamp);
+        } finally {
+            creditOrCreate.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber) {
+        return measure(listTransactions, () -> delegate.listTransactions(accountNumber));
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        return measure(listTransactionsPage, () -> delegate.listTransactions(accountNumber, types, limit));
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        return measure(listTransactionsAfter, () -> delegate.listTransactionsAfter(accountNumber, types, afterTimestamp, afterId, limit));
+    }
+
+    /**
+     * Measured time includes the action performed on every entry
+     */
+    @Override
+    public void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action) {
+        measure(forEachTransaction, () -> {
+            delegate.forEachTransaction(accountNumber, types, action);
+            return null;
+        });
+    }
+
+    @Override
+    public TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        return measure(createDepositTransaction, () -> delegate.createDepositTransaction(id, accountNumber, amount, timestamp));
+    }
+
+    @Override
+    public TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        return measure(createWithdrawTransaction, () -> delegate.createWithdrawTransaction(id, accountNumber, amount, timestamp));
+    }
+
+    @Override
+    public TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        return measure(createTransferTransaction, () -> delegate.createTransferTransaction(id, fromAccountNumber, toAccountNumber, amount, timestamp));
+    }
+
+    @Override
+    public void createTransactions(List<TransactionEntity> entries) {
+        measure(createTransactions, () -> {
+            delegate.createTransactions(entries);
+            return null;
+        });
+    }
+
+    private <T> T measure(Timer timer, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
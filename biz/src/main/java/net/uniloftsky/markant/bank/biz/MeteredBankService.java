@@ -0,0 +1,140 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bank service decorator recording the latency and failures of every operation.
+ * <p>
+ * Wraps the transactional engine, so the latency includes the commit.
+ */
+public class MeteredBankService implements BankService {
+
+    private final BankService delegate;
+    private final BankMetrics metrics;
+
+    private final OperationMeters getAccount;
+    private final OperationMeters withdraw;
+    private final OperationMeters listWithdrawals;
+    private final OperationMeters deposit;
+    private final OperationMeters listDeposits;
+    private final OperationMeters listTransactions;
+    private final OperationMeters transfer;
+    private final OperationMeters listTransfers;
+    private final OperationMeters exportTransactions;
+    private final OperationMeters applyBatch;
+
+    public MeteredBankService(BankService delegate, BankMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.getAccount = new OperationMeters("getAccount");
+        this.withdraw = new OperationMeters("withdraw");
+        this.listWithdrawals = new OperationMeters("listWithdrawals");
+        this.deposit = new OperationMeters("deposit");
+        this.listDeposits = new OperationMeters("listDeposits");
+        this.listTransactions = new OperationMeters("listTransactions");
+        this.transfer = new OperationMeters("transfer");
+        this.listTransfers = new OperationMeters("listTransfers");
+        this.exportTransactions = new OperationMeters("exportTransactions");
+        this.applyBatch = new OperationMeters("applyBatch");
+    }
+
+    @Override
+    public BankAccount getAccount(AccountNumber accountNumber) {
+        return measure(getAccount, () -> delegate.getAccount(accountNumber));
+    }
+
+    @Override
+    public BankAccount withdraw(AccountNumber accountNumber, Money amount) {
+        return measure(withdraw, () -> delegate.withdraw(accountNumber, amount));
+    }
+
+    @Override
+    public TransactionPage<WithdrawTransaction> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return measure(listWithdrawals, () -> delegate.listWithdrawals(accountNumber, after, limit));
+    }
+
+    @Override
+    public BankAccount deposit(AccountNumber accountNumber, Money amount) {
+        return measure(deposit, () -> delegate.deposit(accountNumber, amount));
+    }
+
+    @Override
+    public TransactionPage<DepositTransaction> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return measure(listDeposits, () -> delegate.listDeposits(accountNumber, after, limit));
+    }
+
+    @Override
+    public TransactionPage<BankTransaction> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return measure(listTransactions, () -> delegate.listTransactions(accountNumber, after, limit));
+    }
+
+    @Override
+    public TransferTransaction transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount) {
+        return measure(transfer, () -> delegate.transfer(fromAccountNumber, toAccountNumber, amount));
+    }
+
+    @Override
+    public TransactionPage<TransferTransaction> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return measure(listTransfers, () -> delegate.listTransfers(accountNumber, after, limit));
+    }
+
+    @Override
+    public void exportTransactions(AccountNumber accountNumber, TransactionType type, Consumer<? super BankTransaction> action) {
+        measure(exportTransactions, () -> {
+            delegate.exportTransactions(accountNumber, type, action);
+            return null;
+        });
+    }
+
+    @Override
+    public List<BatchOperationResult> applyBatch(List<BatchOperation> operations, boolean allOrNothing) {
+        return measure(applyBatch, () -> delegate.applyBatch(operations, allOrNothing));
+    }
+
+    private <T> T measure(OperationMeters meters, Supplier<T> operation) {
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } catch (RuntimeException ex) {
+            meters.failed(ex);
+            throw ex;
+        } finally {
+            meters.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Meters of a single operation. Counters of the expected business failures are created upfront,
+     * counters of other exceptions on their first occurrence
+     */
+    private final class OperationMeters {
+
+        private final String operation;
+        private final Timer timer;
+        private final Counter insufficientBalance;
+        private final Counter accountNotFound;
+
+        private OperationMeters(String operation) {
+            this.operation = operation;
+            this.timer = metrics.operationTimer(operation);
+            this.insufficientBalance = metrics.failureCounter(operation, InsufficientBalanceException.class);
+            this.accountNotFound = metrics.failureCounter(operation, AccountNotFoundException.class);
+        }
+
+        private void failed(RuntimeException ex) {
+            if (ex instanceof InsufficientBalanceException) {
+                insufficientBalance.increment();
+            } else if (ex instanceof AccountNotFoundException) {
+                accountNotFound.increment();
+            } else {
+                metrics.failureCounter(operation, ex.getClass()).increment();
+            }
+        }
+    }
+}
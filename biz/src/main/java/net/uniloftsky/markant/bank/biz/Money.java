@@ -0,0 +1,188 @@
+package net.uniloftsky.markant.bank.biz;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.math.BigDecimal;
+
+/**
+ * Amount of money with the fixed scale of {@value #SCALE} fractional digits.
+ * <p>
+ * Stored as a count of minor units (cents), so arithmetic doesn't allocate or round. All arithmetic is overflow
+ * checked and throws {@link ArithmeticException} instead of wrapping around.
+ */
+@JsonSerialize(using = BankSerializers.MoneySerializer.class)
+@Schema(type = "string", example = "100.25", description = "Amount of money with two fractional digits")
+public final class Money implements Comparable<Money> {
+
+    /**
+     * Number of fractional digits
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Number of minor units in one major unit
+     */
+    private static final long MINOR_UNITS_PER_UNIT = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Amount in minor units
+     */
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * Static factory method to instantiate Money from the count of minor units
+     *
+     * @param minorUnits amount in minor units, e.g. 10050 for 100.50
+     * @return Money object
+     */
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Static factory method to instantiate Money from the decimal amount
+     *
+     * @param amount decimal amount
+     * @return Money object
+     * @throws ArithmeticException if amount has more than {@value #SCALE} significant fractional digits or doesn't fit into the range
+     */
+    public static Money of(BigDecimal amount) {
+        return ofMinorUnits(amount.setScale(SCALE).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Parse the amount in the plain decimal notation: optional minus sign, integer digits and up to {@value #SCALE}
+     * fractional digits separated by a period. Trailing zero fractional digits beyond the scale are allowed
+     *
+     * @param amount amount to parse, e.g. "100.25"
+     * @return Money object
+     * @throws NumberFormatException if amount has invalid format or doesn't fit into the range
+     */
+    public static Money parse(String amount) {
+        if (amount == null || amount.isEmpty()) {
+            throw new NumberFormatException("amount is empty");
+        }
+        int length = amount.length();
+        int position = 0;
+        boolean negative = amount.charAt(0) == '-';
+        if (negative) {
+            position++;
+        }
+
+        // integer part
+        long units = 0;
+        int integerDigits = 0;
+        while (position < length && amount.charAt(position) != '.') {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(amount, position++));
+            integerDigits++;
+        }
+
+        // fractional part
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (position < length) {
+            position++;
+            if (position == length) {
+                throw new NumberFormatException("amount has no fractional digits after the period: " + amount);
+            }
+            while (position < length) {
+                int digit = digit(amount, position++);
+                if (fractionDigits < SCALE) {
+                    fraction = fraction * 10 + digit;
+                } else if (digit != 0) {
+                    throw new NumberFormatException("amount has more than " + SCALE + " fractional digits: " + amount);
+                }
+                fractionDigits++;
+            }
+        }
+        if (integerDigits == 0 && fractionDigits == 0) {
+            throw new NumberFormatException("amount has no digits: " + amount);
+        }
+        for (int i = fractionDigits; i < SCALE; i++) {
+            fraction *= 10;
+        }
+
+        try {
+            long minorUnits = Math.addExact(Math.multiplyExact(units, MINOR_UNITS_PER_UNIT), fraction);
+            return ofMinorUnits(negative ? -minorUnits : minorUnits);
+        } catch (ArithmeticException ex) {
+            throw new NumberFormatException("amount is out of range: " + amount);
+        }
+    }
+
+    private static int digit(String amount, int position) {
+        char c = amount.charAt(position);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("invalid character '" + c + "' in amount: " + amount);
+        }
+        return c - '0';
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Money that = (Money) o;
+        return minorUnits == that.minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    /**
+     * Plain decimal notation with exactly {@value #SCALE} fractional digits, e.g. "100.50" or "-0.05"
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(24);
+        if (minorUnits < 0) {
+            result.append('-');
+        }
+        // Math.abs of Long.MIN_VALUE overflows, so the remainder and the quotient are made positive separately
+        long units = Math.abs(minorUnits / MINOR_UNITS_PER_UNIT);
+        int fraction = (int) Math.abs(minorUnits % MINOR_UNITS_PER_UNIT);
+        result.append(units).append('.');
+        if (fraction < 10) {
+            result.append('0');
+        }
+        return result.append(fraction).toString();
+    }
+}
@@ -0,0 +1,111 @@
+package net.uniloftsky.markant.bank.biz;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of the {@link BankService}. Operations are performed on subscription and signal
+ * the same exceptions as errors
+ */
+public interface ReactiveBankService {
+
+    /**
+     * Get account by provided account number
+     *
+     * @param accountNumber account number
+     * @return bank account
+     * @throws AccountNotFoundException if account by provided number cannot be found
+     */
+    Mono<BankAccount> getAccount(AccountNumber accountNumber);
+
+    /**
+     * Withdraw the provided amount of money from account
+     *
+     * @param accountNumber account ID
+     * @param amount        money amount
+     * @throws AccountNotFoundException     if account by provided number cannot be found
+     * @throws InsufficientBalanceException if withdrawal amount is greater than account balance
+     */
+    Mono<BankAccount> withdraw(AccountNumber accountNumber, Money amount);
+
+    /**
+     * Get a page of withdrawal transactions for the specified account, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of withdrawal transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    Mono<TransactionPage<WithdrawTransaction>> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit);
+
+    /**
+     * Deposit the provided amount of money to account
+     *
+     * @param accountNumber account ID
+     * @param amount        money amount
+     */
+    Mono<BankAccount> deposit(AccountNumber accountNumber, Money amount);
+
+    /**
+     * Get a page of deposit transactions for the specified account, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of deposit transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    Mono<TransactionPage<DepositTransaction>> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit);
+
+    /**
+     * Get a page of all transactions for the specified account, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    Mono<TransactionPage<BankTransaction>> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit);
+
+    /**
+     * Transfer the provided amount of money from one account to another
+     *
+     * @param fromAccountNumber transfer initiator account number
+     * @param toAccountNumber   transfer target account number
+     * @param amount            money amount
+     * @return transfer transaction
+     * @throws AccountNotFoundException     if any of the accounts cannot be found
+     * @throws InsufficientBalanceException if transfer amount is greater than the initiator balance
+     */
+    Mono<TransferTransaction> transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount);
+
+    /**
+     * Get a page of transfer transactions for the specified account, most recent first
+     *
+     * @param accountNumber account number
+     * @param after         cursor of the previous page, null to get the first page
+     * @param limit         maximum number of transactions on the page, from 1 to {@value TransactionPage#MAX_LIMIT}
+     * @return page of transfer transactions
+     * @throws AccountNotFoundException  if account by provided number cannot be found
+     * @throws InvalidPageLimitException if limit is out of range
+     */
+    Mono<TransactionPage<TransferTransaction>> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit);
+
+    /**
+     * Stream the complete history of transactions of the given type for the specified account, most recent first.
+     * <p>
+     * Transactions are read from the database as they are requested by the subscriber
+     *
+     * @param accountNumber account number
+     * @param type          type of transactions, null for all transactions
+     * @return transactions
+     * @throws AccountNotFoundException if account by provided number cannot be found
+     */
+    Flux<BankTransaction> exportTransactions(AccountNumber accountNumber, TransactionType type);
+
+}
@@ -0,0 +1,228 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.ReactiveBankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Reactive bank service engine. Every operation changes the account balance in the database within the reactive transaction.
+ * <p>
+ * Balances are checked and changed by the same single conditional statements as in {@link BankServiceImpl}, so their
+ * correctness doesn't depend on JVM locks, and none are taken: a subscriber waiting for a lock would hold its event loop.
+ * Operations on the same account are queued by the row locks of the database instead. Transfers update the rows
+ * in the order of account numbers, so opposite transfers cannot deadlock.
+ * <p>
+ * History reads aren't transactional, like the history read helpers of {@link AbstractBankService}
+ */
+@Service
+@ConditionalOnProperty(name = "bank.engine", havingValue = "reactive")
+public class ReactiveBankServiceImpl implements ReactiveBankService {
+
+    /**
+     * Persistence service
+     */
+    private ReactiveBankPersistenceService persistenceService;
+
+    /**
+     * Operator demarcating the reactive transactions of the operations
+     */
+    private TransactionalOperator transactionalOperator;
+
+    /**
+     * Clock instance
+     */
+    private final Clock clock = Clock.systemUTC();
+
+    /**
+     * Generator of the transaction IDs of this node
+     */
+    private TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Override
+    public Mono<BankAccount> getAccount(AccountNumber accountNumber) {
+        return getAccountEntity(accountNumber).map(AbstractBankService::map);
+    }
+
+    @Override
+    public Mono<BankAccount> withdraw(AccountNumber accountNumber, Money amount) {
+        return Mono.defer(() -> {
+            AbstractBankService.validateTransactionParameters(amount, accountNumber);
+            long transactionTimestamp = clock.instant().toEpochMilli();
+
+            // subtract the amount if the balance is sufficient, then create withdrawal transaction
+            return debit(accountNumber, amount, transactionTimestamp, "withdrawal amount is greater than the current account balance")
+                    .flatMap(balance -> persistenceService.createWithdrawTransaction(idGenerator.nextTransactionId().getId(),
+                                    accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp)
+                            .thenReturn(new BankAccount(accountNumber, balance)));
+        }).as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<TransactionPage<WithdrawTransaction>> listWithdrawals(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, AbstractBankService.WITHDRAWAL_TYPES, after, limit, AbstractBankService::mapWithdrawal);
+    }
+
+    @Override
+    public Mono<BankAccount> deposit(AccountNumber accountNumber, Money amount) {
+        return Mono.defer(() -> {
+            AbstractBankService.validateTransactionParameters(amount, accountNumber);
+            long transactionTimestamp = clock.instant().toEpochMilli();
+
+            // add the amount, the account is created by the same statement if it doesn't exist yet, then create deposit transaction
+            return persistenceService.creditOrCreate(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp)
+                    .flatMap(balance -> persistenceService.createDepositTransaction(idGenerator.nextTransactionId().getId(),
+                                    accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp)
+                            .thenReturn(new BankAccount(accountNumber, Money.ofMinorUnits(balance))));
+        }).as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<TransactionPage<DepositTransaction>> listDeposits(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, AbstractBankService.DEPOSIT_TYPES, after, limit, AbstractBankService::mapDeposit);
+    }
+
+    @Override
+    public Mono<TransactionPage<BankTransaction>> listTransactions(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, AbstractBankService.ALL_TYPES, after, limit, AbstractBankService::map);
+    }
+
+    @Override
+    public Mono<TransferTransaction> transfer(AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount) {
+        return Mono.defer(() -> {
+            AbstractBankService.validateTransactionParameters(amount, fromAccountNumber, toAccountNumber);
+            long transferTimestamp = clock.instant().toEpochMilli();
+            String insufficientBalanceMessage = "transfer amount is greater than the current account transfer initiator balance";
+
+            // rows are updated in the order of account numbers, so opposite transfers cannot deadlock in the database
+            Mono<Money> debit = debit(fromAccountNumber, amount, transferTimestamp, insufficientBalanceMessage);
+            Mono<Money> credit = credit(toAccountNumber, amount, transferTimestamp);
+            Mono<Money> updates = fromAccountNumber.getNumber() <= toAccountNumber.getNumber() ? debit.then(credit) : credit.then(debit);
+
+            // create transfer transaction
+            return updates.then(persistenceService.createTransferTransaction(idGenerator.nextTransactionId().getId(), fromAccountNumber.getNumber(),
+                            toAccountNumber.getNumber(), amount.getMinorUnits(), transferTimestamp))
+                    .map(AbstractBankService::mapTransfer);
+        }).as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<TransactionPage<TransferTransaction>> listTransfers(AccountNumber accountNumber, TransactionCursor after, int limit) {
+        return readPage(accountNumber, AbstractBankService.TRANSFER_TYPES, after, limit, AbstractBankService::mapTransfer);
+    }
+
+    @Override
+    public Flux<BankTransaction> exportTransactions(AccountNumber accountNumber, TransactionType type) {
+        // get account entity to check if it exists, otherwise an error is signalled before the first transaction
+        return getAccountEntity(accountNumber)
+                .thenMany(Flux.defer(() -> persistenceService.streamTransactions(accountNumber.getNumber(), AbstractBankService.entryTypesOf(type))))
+                .map(AbstractBankService::map);
+    }
+
+    /**
+     * Read a page of transactions of the given types.
+     * <p>
+     * One entry more than the limit is requested, so the presence of the next page is known without another query
+     *
+     * @param accountNumber account number
+     * @param types         entry types to read
+     * @param after         cursor of the previous page, null for the first page
+     * @param limit         maximum number of transactions on the page
+     * @param mapper        mapper of entries to business layer objects
+     * @return page of transactions
+     */
+    <T extends BankTransaction> Mono<TransactionPage<T>> readPage(AccountNumber accountNumber, Set<TransactionEntryType> types, TransactionCursor after, int limit,
+                                                                  Function<TransactionEntity, T> mapper) {
+        return Mono.defer(() -> {
+            AbstractBankService.validatePageLimit(limit);
+            Flux<TransactionEntity> entities = after == null
+                    ? persistenceService.listTransactions(accountNumber.getNumber(), types, limit + 1)
+                    : persistenceService.listTransactionsAfter(accountNumber.getNumber(), types, after.getTimestamp(), after.getId().getId(), limit + 1);
+
+            // get account entity to check if it exists, otherwise an error is signalled
+            return getAccountEntity(accountNumber)
+                    .thenMany(entities)
+                    .collectList()
+                    .map(page -> {
+                        // the order is kept from the persistence layer
+                        int size = Math.min(page.size(), limit);
+                        List<T> items = new ArrayList<>(size);
+                        for (int i = 0; i < size; i++) {
+                            items.add(mapper.apply(page.get(i)));
+                        }
+                        TransactionCursor next = page.size() > limit ? TransactionCursor.of(items.getLast()) : null;
+                        return new TransactionPage<>(items, next);
+                    });
+        });
+    }
+
+    /**
+     * Subtract the amount from the account balance with a single conditional update.
+     * <p>
+     * The account is read only if the update fails, to tell a missing account from an insufficient balance
+     *
+     * @param accountNumber              account number
+     * @param amount                     amount to subtract
+     * @param transactionTimestamp       timestamp of the balance update
+     * @param insufficientBalanceMessage message of the exception signalled if the balance is insufficient
+     * @return new account balance
+     */
+    Mono<Money> debit(AccountNumber accountNumber, Money amount, long transactionTimestamp, String insufficientBalanceMessage) {
+        return persistenceService.debitIfSufficient(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp)
+                .map(Money::ofMinorUnits)
+                .switchIfEmpty(getAccountEntity(accountNumber)
+                        .then(Mono.error(() -> new InsufficientBalanceException(insufficientBalanceMessage))));
+    }
+
+    /**
+     * Add the amount to the balance of an existing account with a single update
+     *
+     * @param accountNumber        account number
+     * @param amount               amount to add
+     * @param transactionTimestamp timestamp of the balance update
+     * @return new account balance
+     */
+    Mono<Money> credit(AccountNumber accountNumber, Money amount, long transactionTimestamp) {
+        return persistenceService.credit(accountNumber.getNumber(), amount.getMinorUnits(), transactionTimestamp)
+                .map(Money::ofMinorUnits)
+                .switchIfEmpty(Mono.error(() -> new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber)));
+    }
+
+    /**
+     * Retrieves an account entity by the provided accountNumber, signals {@link AccountNotFoundException} if it doesn't exist
+     *
+     * @param accountNumber account number
+     * @return account entity
+     */
+    Mono<AccountEntity> getAccountEntity(AccountNumber accountNumber) {
+        return persistenceService.getAccount(accountNumber.getNumber())
+                .switchIfEmpty(Mono.error(() -> new AccountNotFoundException("account by number " + accountNumber + " doesn't exist", accountNumber)));
+    }
+
+    @Autowired
+    public void setPersistenceService(ReactiveBankPersistenceService persistenceService) {
+        this.persistenceService = persistenceService;
+    }
+
+    @Autowired
+    public void setTransactionalOperator(TransactionalOperator transactionalOperator) {
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    @Autowired
+    public void setIdGenerator(TransactionIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+}
@@ -0,0 +1,441 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the most recent transactions of every account, serving the first pages of the transaction history.
+ * <p>
+ * The last {@code size} journal entries of an account are kept in a ring buffer of primitive columns instead of
+ * entities, so a cached account costs a fixed number of bytes and a page is built without intermediate objects.
+ * Accounts are loaded on a miss and evicted as a whole, least recently used first, once the memory budget is used up.
+ * <p>
+ * Accounts are spread over up to {@value #MAX_STRIPES} stripes, each with its own lock, map and share of the budget, so
+ * reads and writes of different accounts rarely wait for each other. The order of use is kept per stripe, so the
+ * evicted account is the least recently used one of its stripe. A small cache has fewer stripes, at least
+ * {@value #MIN_STRIPE_ACCOUNTS} accounts each.
+ * <p>
+ * New entries are added by the bank engine with {@link #add}, after the commit within a transaction, while the account
+ * lock is still held, so the entries of an account are added in their commit order. Like in the
+ * {@link AccountBalanceCache}, an account loaded while one of its entries was added isn't cached, so a slow load never
+ * hides a newer entry. A load between the commit and the addition already reads the new entry, so an entry already
+ * held by the account is not added again.
+ * <p>
+ * Transactions of other nodes sharing the database are not seen, the cache is for a single node only.
+ * <p>
+ * Hits, misses, evictions and the number of cached accounts are published as {@code bank.recent-history.*} meters.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.recent-history.enabled", havingValue = "true", matchIfMissing = true)
+public class RecentHistoryCache implements MeterBinder {
+
+    /**
+     * Default number of entries kept for every account, enough for the first page of the default limit
+     */
+    public static final int DEFAULT_SIZE = 64;
+
+    /**
+     * Default memory budget
+     */
+    public static final DataSize DEFAULT_MAX_MEMORY = DataSize.ofMegabytes(64);
+
+    /**
+     * Bytes of a cached entry: ID, timestamp, amount and counterparty columns, and the type column
+     */
+    static final int ENTRY_BYTES = 4 * Long.BYTES + 1;
+
+    /**
+     * Approximate bytes of a cached account besides its entries: the buffer object, the arrays and the map entry
+     */
+    static final int ACCOUNT_OVERHEAD_BYTES = 160;
+
+    /**
+     * Maximum number of stripes, a power of two
+     */
+    static final int MAX_STRIPES = 64;
+
+    /**
+     * Minimum number of accounts of a stripe, a smaller cache has fewer stripes
+     */
+    static final int MIN_STRIPE_ACCOUNTS = 64;
+
+    /**
+     * Number of account versions of all stripes, a power of two
+     */
+    private static final int VERSIONS = 1024;
+
+    private static final TransactionEntryType[] ENTRY_TYPES = TransactionEntryType.values();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Stripes of the cached accounts, a power of two
+     */
+    private volatile Stripe[] stripes;
+    private int size;
+    private int maxAccounts;
+
+    public RecentHistoryCache() {
+        this(DEFAULT_SIZE, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * @param size      number of entries kept for every account
+     * @param maxMemory memory budget of all cached accounts
+     */
+    public RecentHistoryCache(int size, DataSize maxMemory) {
+        configure(size, maxMemory);
+    }
+
+    /**
+     * Build the first page of the transaction history of the account from the cache.
+     * <p>
+     * The page is served if the account is cached and its entries are enough to tell the page and whether a next page
+     * exists. The items are of the transaction type of the entry types, as if they were mapped from the journal
+     *
+     * @param accountNumber account number
+     * @param types         entry types to include
+     * @param limit         maximum number of transactions on the page
+     * @return page of transactions, or null if it cannot be served from the cache
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BankTransaction> TransactionPage<T> firstPage(AccountNumber accountNumber, Set<TransactionEntryType> types, int limit) {
+        long number = accountNumber.getNumber();
+        Stripe stripe = stripeOf(number);
+        History history;
+        stripe.lock.lock();
+        try {
+            history = stripe.accounts.get(number);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (history == null) {
+            misses.increment();
+            return null;
+        }
+
+        List<T> items = new ArrayList<>(Math.min(limit, size));
+        boolean hasNext = false;
+        history.lock.lock();
+        try {
+            for (int i = 0; i < history.count; i++) {
+                int index = history.indexOf(i);
+                TransactionEntryType type = ENTRY_TYPES[history.types[index]];
+                if (!types.contains(type)) {
+                    continue;
+                }
+                if (items.size() == limit) {
+                    hasNext = true;
+                    break;
+                }
+                items.add((T) AbstractBankService.map(history.ids[index], type, accountNumber.getNumber(),
+                        history.counterparties[index], history.amounts[index], history.timestamps[index]));
+            }
+            if (!hasNext && !history.complete) {
+                // older entries are not cached, they may belong to the page
+                misses.increment();
+                return null;
+            }
+        } finally {
+            history.lock.unlock();
+        }
+        hits.increment();
+        return new TransactionPage<>(items, hasNext ? TransactionCursor.of(items.getLast()) : null);
+    }
+
+    /**
+     * Load the recent entries of the account into the cache, unless an entry of the account is added meanwhile
+     *
+     * @param accountNumber account number
+     * @param loader        loader of at most {@link #getSize()} most recent entries of all types, most recent first
+     */
+    public void load(AccountNumber accountNumber, Supplier<List<TransactionEntity>> loader) {
+        long number = accountNumber.getNumber();
+        Stripe stripe = stripeOf(number);
+        int versionIndex = stripe.versionIndex(number);
+        long version;
+        stripe.lock.lock();
+        try {
+            if (stripe.accounts.containsKey(number)) {
+                return;
+            }
+            version = stripe.versions[versionIndex];
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        List<TransactionEntity> entries = loader.get();
+        History history = new History(size);
+        // the ring is filled from the oldest entry
+        for (int i = Math.min(entries.size(), size) - 1; i >= 0; i--) {
+            TransactionEntity entry = entries.get(i);
+            Long counterparty = entry.getCounterpartyAccountNumber();
+            history.add(entry.getTransactionId(), entry.getType(), counterparty == null ? 0 : counterparty, entry.getAmount(), entry.getTimestamp());
+        }
+        history.complete = entries.size() < size;
+
+        stripe.lock.lock();
+        try {
+            if (stripe.versions[versionIndex] == version) {
+                stripe.accounts.putIfAbsent(number, history);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Add a new journal entry of the account, within a transaction after the commit
+     *
+     * @param accountNumber             account the entry belongs to
+     * @param id                        transaction ID
+     * @param type                      entry type
+     * @param counterpartyAccountNumber other party of a transfer, 0 otherwise
+     * @param amount                    amount in minor units
+     * @param timestamp                 transaction timestamp
+     */
+    public void add(long accountNumber, long id, TransactionEntryType type, long counterpartyAccountNumber, long amount, long timestamp) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write(accountNumber, id, type, counterpartyAccountNumber, amount, timestamp);
+                }
+            });
+        } else {
+            write(accountNumber, id, type, counterpartyAccountNumber, amount, timestamp);
+        }
+    }
+
+    /**
+     * Add a new journal entry, see {@link #add(long, long, TransactionEntryType, long, long, long)}
+     *
+     * @param entry journal entry
+     */
+    public void add(TransactionEntity entry) {
+        Long counterparty = entry.getCounterpartyAccountNumber();
+        add(entry.getAccountNumber(), entry.getTransactionId(), entry.getType(), counterparty == null ? 0 : counterparty,
+                entry.getAmount(), entry.getTimestamp());
+    }
+
+    private void write(long accountNumber, long id, TransactionEntryType type, long counterpartyAccountNumber, long amount, long timestamp) {
+        Stripe stripe = stripeOf(accountNumber);
+        History history;
+        stripe.lock.lock();
+        try {
+            stripe.versions[stripe.versionIndex(accountNumber)]++;
+            // not an access, a written account isn't kept longer than a read one
+            history = stripe.accounts.get(accountNumber);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (history != null) {
+            history.lock.lock();
+            try {
+                history.add(id, type, counterpartyAccountNumber, amount, timestamp);
+            } finally {
+                history.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Number of cached accounts
+     */
+    public int accounts() {
+        int accounts = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                accounts += stripe.accounts.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return accounts;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxAccounts() {
+        return maxAccounts;
+    }
+
+    int getStripes() {
+        return stripes.length;
+    }
+
+    private Stripe stripeOf(long number) {
+        Stripe[] stripes = this.stripes;
+        return stripes[(int) StripedLockManager.mix(number) & (stripes.length - 1)];
+    }
+
+    @Autowired
+    public void configure(@Value("${bank.recent-history.size:" + DEFAULT_SIZE + "}") int size,
+                          @Value("${bank.recent-history.max-memory:64MB}") DataSize maxMemory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive, but was " + size);
+        }
+        long accountBytes = (long) size * ENTRY_BYTES + ACCOUNT_OVERHEAD_BYTES;
+        int maxAccounts = (int) Math.min(maxMemory.toBytes() / accountBytes, Integer.MAX_VALUE);
+        int stripeCount = Math.clamp(Integer.highestOneBit(maxAccounts / MIN_STRIPE_ACCOUNTS), 1, MAX_STRIPES);
+        Stripe[] stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // the budget is split evenly, the first stripes take the remainder
+            stripes[i] = new Stripe(maxAccounts / stripeCount + (i < maxAccounts % stripeCount ? 1 : 0), VERSIONS / stripeCount);
+        }
+        this.size = size;
+        this.maxAccounts = maxAccounts;
+        this.stripes = stripes;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("bank.recent-history.requests", hits, LongAdder::sum)
+                .description("First history pages requested from the recent history cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("bank.recent-history.requests", misses, LongAdder::sum)
+                .description("First history pages requested from the recent history cache")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("bank.recent-history.evictions", evictions, LongAdder::sum)
+                .description("Accounts evicted from the recent history cache")
+                .register(registry);
+        Gauge.builder("bank.recent-history.accounts", this, RecentHistoryCache::accounts)
+                .description("Accounts in the recent history cache")
+                .register(registry);
+    }
+
+    /**
+     * Cached accounts of a stripe and their versions, guarded by the lock of the stripe
+     */
+    private final class Stripe {
+
+        /**
+         * Not a monitor, so virtual threads don't pin their carrier threads
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Cached accounts in the order of access, least recently used first
+         */
+        private final LinkedHashMap<Long, History> accounts;
+
+        /**
+         * Account versions, each shared by some accounts of the stripe, incremented by every added entry
+         */
+        private final long[] versions;
+
+        Stripe(int maxAccounts, int versionCount) {
+            this.versions = new long[versionCount];
+            this.accounts = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, History> eldest) {
+                    if (size() > maxAccounts) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Version of the account, from the hash bits not used to pick the stripe
+         */
+        int versionIndex(long number) {
+            return (int) (StripedLockManager.mix(number) >>> 32) & (versions.length - 1);
+        }
+    }
+
+    /**
+     * Ring buffer of the recent entries of an account, in primitive columns
+     */
+    static final class History {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final long[] ids;
+        private final long[] timestamps;
+        private final long[] amounts;
+        private final long[] counterparties;
+        private final byte[] types;
+
+        /**
+         * Index of the next added entry
+         */
+        private int head;
+
+        /**
+         * Number of entries
+         */
+        private int count;
+
+        /**
+         * Whether the buffer holds the whole history of the account
+         */
+        private boolean complete;
+
+        History(int size) {
+            this.ids = new long[size];
+            this.timestamps = new long[size];
+            this.amounts = new long[size];
+            this.counterparties = new long[size];
+            this.types = new byte[size];
+        }
+
+        void add(long id, TransactionEntryType type, long counterpartyAccountNumber, long amount, long timestamp) {
+            // entries are ordered by time, an entry loaded after its commit is among the newest of its timestamp
+            for (int i = 0; i < count && timestamps[indexOf(i)] >= timestamp; i++) {
+                if (ids[indexOf(i)] == id) {
+                    return;
+                }
+            }
+            ids[head] = id;
+            types[head] = (byte) type.ordinal();
+            counterparties[head] = counterpartyAccountNumber;
+            amounts[head] = amount;
+            timestamps[head] = timestamp;
+            head = (head + 1) % ids.length;
+            if (count < ids.length) {
+                count++;
+            } else {
+                // the oldest entry is overwritten
+                complete = false;
+            }
+        }
+
+        /**
+         * Index of the i-th most recent entry
+         */
+        int indexOf(int i) {
+            int index = head - 1 - i;
+            return index < 0 ? index + ids.length : index;
+        }
+    }
+}
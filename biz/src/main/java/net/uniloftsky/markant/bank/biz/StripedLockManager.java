@@ -0,0 +1,99 @@
+package net.uniloftsky.markant.bank.biz;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock manager with a fixed array of locks (stripes), shared by all account numbers.
+ * <p>
+ * An account number is mapped to its stripe by a mixed hash, so obtaining a lock allocates nothing and doesn't touch
+ * any shared map. Different accounts may share the same stripe, so callers locking several accounts must order
+ * and deduplicate them by {@link #stripe(long)}, not by account number.
+ * <p>
+ * Locks are {@link ReentrantLock}s, so waiting virtual threads don't pin their carrier threads.
+ */
+public final class StripedLockManager {
+
+    /**
+     * Default number of stripes
+     */
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * Number of stripes minus one, used instead of the modulo
+     */
+    private final int mask;
+
+    public StripedLockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to the next power of two
+     */
+    public StripedLockManager(int stripes) {
+        if (stripes < 1 || stripes > 1 << 30) {
+            throw new IllegalArgumentException("number of stripes must be between 1 and 2^30, but was " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the index of the stripe guarding the given account number
+     *
+     * @param number account number
+     * @return stripe index
+     */
+    public int stripe(long number) {
+        return (int) mix(number) & mask;
+    }
+
+    /**
+     * Get the lock of the given stripe
+     *
+     * @param stripe stripe index, see {@link #stripe(long)}
+     * @return stripe lock
+     */
+    public ReentrantLock lockAt(int stripe) {
+        return locks[stripe];
+    }
+
+    /**
+     * Get the lock guarding the given account number
+     *
+     * @param number account number
+     * @return stripe lock
+     */
+    public ReentrantLock lockFor(long number) {
+        return locks[stripe(number)];
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    /**
+     * Finalizer of the 64-bit MurmurHash3. Sequential account numbers end up in unrelated stripes.
+     * Shared by the other structures striped by account number
+     *
+     * @param value value to mix
+     * @return mixed value, every bit depending on all bits of the value
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
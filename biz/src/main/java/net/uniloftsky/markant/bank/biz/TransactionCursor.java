@@ -0,0 +1,96 @@
+package net.uniloftsky.markant.bank.biz;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position in the transaction history of an account, the timestamp and the ID of the last transaction of a page.
+ * <p>
+ * Transactions are ordered by timestamp and ID, both descending, so the next page starts right after the cursor
+ * no matter how many transactions are added in the meantime. Clients get the cursor as an opaque URL safe string
+ */
+@JsonSerialize(using = BankSerializers.TransactionCursorSerializer.class)
+@Schema(type = "string", description = "Opaque cursor of the transaction history page")
+public final class TransactionCursor {
+
+    /**
+     * Length of the encoded cursor in bytes: timestamp and transaction ID
+     */
+    private static final int ENCODED_LENGTH = 2 * Long.BYTES;
+
+    private final long timestamp;
+    private final TransactionId id;
+
+    private TransactionCursor(long timestamp, TransactionId id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * Static factory method to instantiate the cursor pointing to the given transaction
+     *
+     * @param transaction last transaction of the page
+     * @return cursor
+     */
+    public static TransactionCursor of(BankTransaction transaction) {
+        return new TransactionCursor(transaction.getTimestamp().toEpochMilli(), transaction.getId());
+    }
+
+    /**
+     * Parse the cursor from the string returned by {@link #toString()}
+     *
+     * @param cursor encoded cursor
+     * @return cursor
+     * @throws InvalidTransactionCursorException if the cursor cannot be decoded
+     */
+    public static TransactionCursor parse(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidTransactionCursorException("cursor is not a valid base64 string: " + cursor, ex, cursor);
+        }
+        if (bytes.length != ENCODED_LENGTH) {
+            throw new InvalidTransactionCursorException("cursor has invalid length: " + cursor, cursor);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long timestamp = buffer.getLong();
+        return new TransactionCursor(timestamp, new TransactionId(buffer.getLong()));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public TransactionId getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransactionCursor that = (TransactionCursor) o;
+        return timestamp == that.timestamp && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, id);
+    }
+
+    /**
+     * Encoded cursor, URL safe base64 without padding
+     */
+    @Override
+    public String toString() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_LENGTH);
+        buffer.putLong(timestamp);
+        buffer.putLong(id.getId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+}
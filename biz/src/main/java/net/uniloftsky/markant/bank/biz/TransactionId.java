@@ -1,29 +1,49 @@
 package net.uniloftsky.markant.bank.biz;
 
-import com.fasterxml.jackson.annotation.JsonValue;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
 
-import java.util.Objects;
 import java.util.UUID;
 
 /**
- * Bank transaction ID
+ * Bank transaction ID.
+ * <p>
+ * The ID is a time-ordered 64-bit number, see {@link TransactionIdGenerator}. Clients get it in the UUID format:
+ * a version 8 UUID carrying the 64 bits of the ID, so the string representation is ordered like the IDs
  */
 @JsonSerialize(using = BankSerializers.TransactionIdSerializer.class)
+@Schema(type = "string", format = "uuid", description = "Transaction ID")
 public final class TransactionId {
 
-    @JsonValue
-    private final UUID id;
+    /**
+     * UUID version and variant bits of the string representation
+     */
+    private static final long UUID_VERSION = 0x8000L;
+    private static final long UUID_VARIANT = 0x8000000000000000L;
 
-    TransactionId(UUID id) {
+    private final long id;
+
+    TransactionId(long id) {
         this.id = id;
     }
 
-    public static TransactionId generateNew() {
-        return new TransactionId(UUID.randomUUID());
+    /**
+     * Parse the ID from the string returned by {@link #toString()}
+     *
+     * @param id ID in the UUID format
+     * @return transaction ID
+     * @throws IllegalArgumentException if the string is not a transaction ID
+     */
+    public static TransactionId parse(String id) {
+        UUID uuid = UUID.fromString(id);
+        if (uuid.version() != 8 || uuid.variant() != 2) {
+            throw new IllegalArgumentException("not a transaction ID: " + id);
+        }
+        long msb = uuid.getMostSignificantBits();
+        return new TransactionId((msb & 0xFFFFFFFFFFFF0000L) | ((msb & 0xFFFL) << 4) | (uuid.getLeastSignificantBits() & 0xFL));
     }
 
-    UUID getId() {
+    long getId() {
         return id;
     }
 
@@ -32,16 +52,21 @@ public final class TransactionId {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TransactionId that = (TransactionId) o;
-        return Objects.equals(id, that.id);
+        return id == that.id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(id);
+        return Long.hashCode(id);
     }
 
+    /**
+     * ID in the UUID format: the upper 48 bits, the version, the next 12 bits, the variant and the last 4 bits
+     */
     @Override
     public String toString() {
-        return id.toString();
+        long msb = (id & 0xFFFFFFFFFFFF0000L) | UUID_VERSION | ((id >>> 4) & 0xFFFL);
+        long lsb = UUID_VARIANT | (id & 0xFL);
+        return new UUID(msb, lsb).toString();
     }
 }
@@ -0,0 +1,123 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator of time-ordered 64-bit transaction IDs.
+ * <p>
+ * An ID is composed like a Snowflake ID, from the most significant bits: a zero sign bit, 41 bits of milliseconds since
+ * {@link #EPOCH}, 10 bits of the node ID and a 12 bit sequence. IDs of one node are strictly increasing, IDs of
+ * different nodes are ordered by time up to the clock difference of the nodes.
+ * <p>
+ * Generation is lock-free: the last timestamp and sequence are kept in one atomic value and advanced by compare-and-set.
+ * When the sequence of a millisecond is exhausted, or the clock goes backwards, the generator borrows the next
+ * millisecond instead of waiting, so the IDs may run slightly ahead of the clock under extreme load.
+ * The generator bean is configured with the {@code bank.node-id} property and injected into the bank services, so
+ * every application context generates the IDs of its own node.
+ */
+@Component
+public class TransactionIdGenerator {
+
+    /**
+     * Start of the ID timestamps, IDs are generated until 2093
+     */
+    public static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+
+    /**
+     * Maximum node ID
+     */
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final Clock clock;
+    private final long epochMillis = EPOCH.toEpochMilli();
+
+    /**
+     * Milliseconds since the epoch and the sequence of the last generated ID, shifted like in the ID but without the node
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    private int nodeId;
+
+    public TransactionIdGenerator() {
+        this(0, Clock.systemUTC());
+    }
+
+    /**
+     * @param nodeId ID of the node, from 0 to {@link #MAX_NODE_ID}
+     * @param clock  clock of the timestamps
+     */
+    public TransactionIdGenerator(int nodeId, Clock clock) {
+        this.clock = clock;
+        setNodeId(nodeId);
+    }
+
+    /**
+     * Generate the next ID
+     *
+     * @return ID greater than all IDs generated by this generator before
+     */
+    public long nextId() {
+        long now = clock.millis() - epochMillis;
+        long prev;
+        long next;
+        do {
+            prev = last.get();
+            // a new millisecond starts a new sequence, otherwise the sequence overflows into the next millisecond
+            next = Math.max(now << SEQUENCE_BITS, prev + 1);
+        } while (!last.compareAndSet(prev, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+    }
+
+    /**
+     * Generate the next transaction ID
+     *
+     * @return transaction ID of the next ID, see {@link #nextId()}
+     */
+    public TransactionId nextTransactionId() {
+        return new TransactionId(nextId());
+    }
+
+    /**
+     * Time the ID was generated at, up to the borrowed milliseconds
+     *
+     * @param id generated ID
+     * @return timestamp of the ID
+     */
+    public static Instant timestampOf(long id) {
+        return EPOCH.plusMillis(id >>> (NODE_BITS + SEQUENCE_BITS));
+    }
+
+    /**
+     * Node the ID was generated by
+     *
+     * @param id generated ID
+     * @return node ID
+     */
+    public static int nodeIdOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    @Value("${bank.node-id:0}")
+    public void setNodeId(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("node ID must be from 0 to " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+}
@@ -0,0 +1,53 @@
+package net.uniloftsky.markant.bank.biz;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Page of the transaction history, most recent transactions first
+ *
+ * @param <T> type of transactions
+ */
+@JsonPropertyOrder({"items", "next"})
+public final class TransactionPage<T extends BankTransaction> {
+
+    /**
+     * Default number of transactions on a page
+     */
+    public static final int DEFAULT_LIMIT = 50;
+
+    /**
+     * Maximum number of transactions on a page
+     */
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * Transactions of the page
+     */
+    private final List<T> items;
+
+    /**
+     * Cursor to request the next page, null if this page is the last one
+     */
+    private final TransactionCursor next;
+
+    public TransactionPage(List<T> items, TransactionCursor next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    @Schema(type = "string", nullable = true, description = "Cursor to pass as \"after\" to get the next page, null if this page is the last one")
+    public TransactionCursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
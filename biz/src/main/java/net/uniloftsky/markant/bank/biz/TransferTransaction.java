@@ -2,7 +2,6 @@ package net.uniloftsky.markant.bank.biz;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Objects;
 
@@ -34,7 +33,7 @@ public final class TransferTransaction implements BankTransaction {
     /**
      * Amount of transfer
      */
-    private final BigDecimal amount;
+    private final Money amount;
 
     /**
      * Timestamp of transfer
@@ -51,7 +50,7 @@ public final class TransferTransaction implements BankTransaction {
      * @param toAccountNumber        transfer initiator account number
      * @param fromAccountNumber      transfer target account number
      */
-    public TransferTransaction(TransactionId id, AccountNumber fromAccountNumber, AccountNumber toAccountNumber, BigDecimal amount, Instant timestamp) {
+    public TransferTransaction(TransactionId id, AccountNumber fromAccountNumber, AccountNumber toAccountNumber, Money amount, Instant timestamp) {
         this.id = id;
         this.amount = amount;
         this.timestamp = timestamp;
@@ -73,7 +72,7 @@ public final class TransferTransaction implements BankTransaction {
     }
 
     @Override
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
@@ -3,7 +3,6 @@ package net.uniloftsky.markant.bank.biz;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import io.swagger.v3.oas.annotations.media.Schema;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Objects;
 
@@ -31,7 +30,7 @@ public final class WithdrawTransaction implements BankTransaction {
     /**
      * Amount of withdrawal
      */
-    private final BigDecimal amount;
+    private final Money amount;
 
     /**
      * Timestamp of withdrawal
@@ -47,7 +46,7 @@ public final class WithdrawTransaction implements BankTransaction {
      * @param amount        amount of withdrawal
      * @param timestamp     timestamp of withdrawal
      */
-    public WithdrawTransaction(TransactionId id, AccountNumber accountNumber, BigDecimal amount, Instant timestamp) {
+    public WithdrawTransaction(TransactionId id, AccountNumber accountNumber, Money amount, Instant timestamp) {
         this.id = id;
         this.accountNumber = accountNumber;
         this.amount = amount;
@@ -64,7 +63,7 @@ public final class WithdrawTransaction implements BankTransaction {
     }
 
     @Override
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
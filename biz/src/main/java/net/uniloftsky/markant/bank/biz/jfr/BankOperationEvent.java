@@ -0,0 +1,94 @@
+package net.uniloftsky.markant.bank.biz.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import net.uniloftsky.markant.bank.biz.Money;
+
+/**
+ * Base of the Flight Recorder events of the bank service operations.
+ * <p>
+ * The event duration covers the operation within its database transaction, the commit isn't included.
+ * When Flight Recorder isn't recording the event, {@link #begin()} and {@link #commit()} do nothing and the
+ * durations aren't measured, so events can be created on every operation.
+ */
+@Category({"Markant Bank", "Operations"})
+@StackTrace(false)
+public abstract class BankOperationEvent extends Event {
+
+    /**
+     * Outcome of the operation which completed normally
+     */
+    public static final String SUCCESS = "SUCCESS";
+
+    @Label("Account Number")
+    long accountNumber;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for the account locks")
+    @Timespan
+    long lockWait;
+
+    @Label("Persistence Time")
+    @Description("Time spent in the persistence layer")
+    @Timespan
+    long persistenceTime;
+
+    @Label("Outcome")
+    @Description("SUCCESS or the simple name of the exception the operation failed with")
+    String outcome = SUCCESS;
+
+    /**
+     * Start of the current persistence call, zero if none is measured
+     */
+    private transient long persistenceStartedAt;
+
+    BankOperationEvent(long accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    /**
+     * @param lockWait time spent waiting for the account locks, in nanoseconds
+     */
+    public void lockAcquired(long lockWait) {
+        this.lockWait = lockWait;
+    }
+
+    public void persistenceStarted() {
+        if (isEnabled()) {
+            persistenceStartedAt = System.nanoTime();
+        }
+    }
+
+    public void persistenceFinished() {
+        if (persistenceStartedAt != 0) {
+            persistenceTime += System.nanoTime() - persistenceStartedAt;
+            persistenceStartedAt = 0;
+        }
+    }
+
+    /**
+     * Record the failure of the operation. The persistence call in progress is measured up to the failure
+     *
+     * @param failure exception the operation failed with
+     */
+    public void failed(Throwable failure) {
+        persistenceFinished();
+        outcome = failure.getClass().getSimpleName();
+    }
+
+    /**
+     * Get the decimal order of magnitude of the amount, e.g. 2 for amounts from 100.00 to 999.99 and -2 for amounts
+     * from 0.01 to 0.09, so recordings tell small payments from large ones without carrying the exact amounts
+     */
+    static int scaleOf(long minorUnits) {
+        int digits = 0;
+        for (long value = Math.abs(minorUnits); value >= 10; value /= 10) {
+            digits++;
+        }
+        return digits - Money.SCALE;
+    }
+}
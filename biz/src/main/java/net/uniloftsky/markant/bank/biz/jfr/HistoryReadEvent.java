@@ -0,0 +1,45 @@
+package net.uniloftsky.markant.bank.biz.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a transaction history read, either a page or a complete export.
+ * History reads don't lock accounts, so their lock wait is always zero
+ */
+@Name("net.uniloftsky.markant.bank.HistoryRead")
+@Label("History Read")
+public class HistoryReadEvent extends BankOperationEvent {
+
+    @Label("Transaction Type")
+    @Description("Type of the read transactions, ALL for the complete history")
+    String transactionType;
+
+    @Label("Export")
+    @Description("True if the complete history was exported, false if a single page was read")
+    boolean export;
+
+    @Label("Transactions")
+    @Description("Number of read transactions")
+    int transactions;
+
+    /**
+     * @param accountNumber   account number
+     * @param transactionType type of the read transactions, ALL for the complete history
+     * @param export          true for a complete history export
+     */
+    public HistoryReadEvent(long accountNumber, String transactionType, boolean export) {
+        super(accountNumber);
+        this.transactionType = transactionType;
+        this.export = export;
+    }
+
+    public void setTransactions(int transactions) {
+        this.transactions = transactions;
+    }
+
+    public void addTransaction() {
+        transactions++;
+    }
+}
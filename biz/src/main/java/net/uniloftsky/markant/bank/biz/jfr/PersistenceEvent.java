@@ -0,0 +1,42 @@
+package net.uniloftsky.markant.bank.biz.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a persistence layer call. Journal inserts are only queued by the call,
+ * they are executed on commit. Batches of journal entries are inserted by the call itself
+ */
+@Name("net.uniloftsky.markant.bank.Persistence")
+@Label("Persistence Call")
+@Category({"Markant Bank", "Persistence"})
+@StackTrace(false)
+public class PersistenceEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Account Number")
+    long accountNumber;
+
+    @Label("Rows")
+    @Description("Number of rows read or written, -1 if unknown")
+    int rows = -1;
+
+    /**
+     * @param method        persistence service method
+     * @param accountNumber account number
+     */
+    public PersistenceEvent(String method, long accountNumber) {
+        this.method = method;
+        this.accountNumber = accountNumber;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+}
@@ -0,0 +1,33 @@
+package net.uniloftsky.markant.bank.biz.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a transfer. The account number is the number of the transfer initiator
+ */
+@Name("net.uniloftsky.markant.bank.Transfer")
+@Label("Transfer")
+public class TransferEvent extends BankOperationEvent {
+
+    @Label("Target Account Number")
+    long targetAccountNumber;
+
+    @Label("Amount Scale")
+    @Description("Decimal order of magnitude of the amount")
+    int amountScale;
+
+    /**
+     * @param fromAccountNumber transfer initiator account number
+     * @param toAccountNumber   transfer target account number
+     * @param amount            amount in minor units
+     */
+    public TransferEvent(long fromAccountNumber, long toAccountNumber, long amount) {
+        super(fromAccountNumber);
+        this.targetAccountNumber = toAccountNumber;
+        if (isEnabled()) {
+            this.amountScale = scaleOf(amount);
+        }
+    }
+}
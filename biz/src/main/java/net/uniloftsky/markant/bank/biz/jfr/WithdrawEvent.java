@@ -0,0 +1,28 @@
+package net.uniloftsky.markant.bank.biz.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a withdraw
+ */
+@Name("net.uniloftsky.markant.bank.Withdraw")
+@Label("Withdraw")
+public class WithdrawEvent extends BankOperationEvent {
+
+    @Label("Amount Scale")
+    @Description("Decimal order of magnitude of the amount")
+    int amountScale;
+
+    /**
+     * @param accountNumber account number
+     * @param amount        amount in minor units
+     */
+    public WithdrawEvent(long accountNumber, long amount) {
+        super(accountNumber);
+        if (isEnabled()) {
+            this.amountScale = scaleOf(amount);
+        }
+    }
+}
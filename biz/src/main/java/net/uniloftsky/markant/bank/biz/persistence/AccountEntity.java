@@ -1,9 +1,7 @@
 package net.uniloftsky.markant.bank.biz.persistence;
 
-import jakarta.persistence.Column;
-import jakarta.persistence.Entity;
-import jakarta.persistence.Id;
-import jakarta.persistence.Table;
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 
 import java.util.Objects;
 
@@ -12,14 +10,17 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "bank_account")
-public class AccountEntity {
+public class AccountEntity implements Persistable<Long> {
 
     @Id
     @Column(name = "number", nullable = false, updatable = false)
     private long number;
 
-    @Column(name = "balance")
-    private String balance;
+    /**
+     * Balance in minor units, see {@link net.uniloftsky.markant.bank.biz.Money}
+     */
+    @Column(name = "balance", nullable = false)
+    private long balance;
 
     @Column(name = "created_at", nullable = false)
     private long createdAt;
@@ -27,6 +28,17 @@ public class AccountEntity {
     @Column(name = "updated_at")
     private long updatedAt;
 
+    /**
+     * Account numbers are assigned, so the entity is new until it's persisted or loaded
+     */
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public Long getId() {
+        return number;
+    }
+
     public long getNumber() {
         return number;
     }
@@ -35,11 +47,11 @@ public class AccountEntity {
         this.number = id;
     }
 
-    public String getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(String balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
@@ -59,6 +71,17 @@ public class AccountEntity {
         this.updatedAt = updatedAt;
     }
 
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PrePersist
+    @PostLoad
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -2,7 +2,9 @@ package net.uniloftsky.markant.bank.biz.persistence;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Bank persistence service.
@@ -14,12 +16,12 @@ public interface BankPersistenceService {
      * Create account with provided parameters
      *
      * @param accountNumber     account number
-     * @param balance           account balance
+     * @param balance           account balance in minor units
      * @param creationTimestamp creation timestamp. Should be provided in milliseconds
      * @return created account entity
      * @throws IllegalArgumentException if parameters are invalid
      */
-    AccountEntity createAccount(long accountNumber, String balance, long creationTimestamp);
+    AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp);
 
     /**
      * Get optional account by account number
@@ -29,80 +31,149 @@ public interface BankPersistenceService {
      */
     Optional<AccountEntity> getAccount(long accountNumber);
 
+    /**
+     * Retrieves a list of all existing accounts.
+     * <p>
+     * The returned list is not sorted
+     *
+     * @return list of account entities
+     */
+    List<AccountEntity> listAccounts();
+
     /**
      * Update balance for an existing account.
      * <p>
      * Method has a side effect: the provided accountEntity will be modified with a new balance and timestamp
      *
      * @param accountEntity existing account entity
-     * @param newBalance    new balance value
+     * @param newBalance    new balance value in minor units
      * @param timestamp     timestamp of the balance update. Should be specified in milliseconds
      * @return updated account entity
      */
-    AccountEntity updateAccountBalance(AccountEntity accountEntity, String newBalance, long timestamp);
+    AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp);
 
     /**
-     * Retrieves a list of deposit transactions for the specified account.
+     * Subtract the amount from the account balance, if the balance is sufficient.
      * <p>
-     * The returned list is not sorted and reflects the order in which the transactions were saved in the database
+     * The balance is checked and updated atomically by a single statement, without reading the account first
      *
      * @param accountNumber account number
-     * @return list of deposit transactions
+     * @param amount        amount to subtract in minor units
+     * @param timestamp     timestamp of the balance update. Should be specified in milliseconds
+     * @return new balance in minor units, or empty if account doesn't exist or its balance is less than the amount
      */
-    List<DepositTransactionEntity> listDeposits(long accountNumber);
+    OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp);
 
     /**
-     * Create and save a deposit transaction for a given account number and with specified amount
+     * Add the amount to the balance of an existing account with a single statement
      *
-     * @param id            deposit transaction ID
-     * @param accountNumber deposit owner, account number
-     * @param amount        amount of deposit
-     * @param timestamp     timestamp of the deposit transaction
-     * @return created deposit transaction entity
+     * @param accountNumber account number
+     * @param amount        amount to add in minor units
+     * @param timestamp     timestamp of the balance update. Should be specified in milliseconds
+     * @return new balance in minor units, or empty if account doesn't exist
      */
-    DepositTransactionEntity createDepositTransaction(UUID id, long accountNumber, String amount, long timestamp);
+    OptionalLong credit(long accountNumber, long amount, long timestamp);
 
     /**
-     * Retrieves a list of withdrawal transactions for the specified account.
+     * Add the amount to the account balance with a single statement. The account is created if it doesn't exist yet
+     *
+     * @param accountNumber account number
+     * @param amount        amount to add in minor units
+     * @param timestamp     timestamp of the balance update, also used as the creation timestamp of a new account
+     * @return new balance in minor units
+     */
+    long creditOrCreate(long accountNumber, long amount, long timestamp);
+
+    /**
+     * Retrieves all transaction journal entries of the specified account, most recent first.
      * <p>
-     * The returned list is not sorted and reflects the order in which the transactions were saved in the database
+     * A transfer between two different accounts is present in the journal of both accounts
      *
      * @param accountNumber account number
-     * @return list of withdrawal transactions
+     * @return list of transaction journal entries
      */
-    List<WithdrawTransactionEntity> listWithdrawals(long accountNumber);
+    List<TransactionEntity> listTransactions(long accountNumber);
 
     /**
-     * Create and save a withdrawal transaction for a given account number and with specified amount
+     * Retrieves the first page of transaction journal entries of the specified types, most recent first
      *
-     * @param id            withdrawal transaction ID
-     * @param accountNumber withdrawal owner, account number
-     * @param amount        amount of withdrawal
-     * @param timestamp     timestamp of the withdrawal transaction
-     * @return created withdrawal transaction entity
+     * @param accountNumber account number
+     * @param types         entry types to include
+     * @param limit         maximum number of entries
+     * @return list of transaction journal entries
      */
-    WithdrawTransactionEntity createWithdrawTransaction(UUID id, long accountNumber, String amount, long timestamp);
+    List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit);
 
     /**
-     * Retrieves a list of transfer transactions for the specified account.
+     * Retrieves the page of transaction journal entries of the specified types following the given entry, most recent first.
      * <p>
-     * The specified account can be either the transfer initiator or the transfer target.
+     * Entries are ordered by timestamp and transaction ID, the page starts right after the entry with the given timestamp and ID
+     *
+     * @param accountNumber  account number
+     * @param types          entry types to include
+     * @param afterTimestamp timestamp of the last entry of the previous page
+     * @param afterId        transaction ID of the last entry of the previous page
+     * @param limit          maximum number of entries
+     * @return list of transaction journal entries
+     */
+    List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit);
+
+    /**
+     * Passes every transaction journal entry of the specified types to the given action, most recent first.
+     * <p>
+     * Entries are streamed from the database and detached after the action, so memory use doesn't depend
+     * on the size of the history. Runs in a read-only transaction held open until the last entry is processed
      *
      * @param accountNumber account number
-     * @return list of transfer transactions
+     * @param types         entry types to include
+     * @param action        action to perform on every entry
+     */
+    void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action);
+
+    /**
+     * Create and save a deposit transaction for a given account number and with specified amount
+     *
+     * @param id            deposit transaction ID
+     * @param accountNumber deposit owner, account number
+     * @param amount        amount of deposit in minor units
+     * @param timestamp     timestamp of the deposit transaction
+     * @return created deposit transaction entity
+     */
+    TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp);
+
+    /**
+     * Create and save a withdrawal transaction for a given account number and with specified amount
+     *
+     * @param id            withdrawal transaction ID
+     * @param accountNumber withdrawal owner, account number
+     * @param amount        amount of withdrawal in minor units
+     * @param timestamp     timestamp of the withdrawal transaction
+     * @return created withdrawal transaction entity
      */
-    List<TransferTransactionEntity> listTransfers(long accountNumber);
+    TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp);
 
     /**
-     * Create and save a transfer transaction from one account to another and with specified amount
+     * Create and save a transfer transaction from one account to another and with specified amount.
+     * <p>
+     * The transfer is recorded for both parties, a transfer to the same account is recorded once
      *
      * @param id                transfer transaction ID
      * @param fromAccountNumber transfer initiator
      * @param toAccountNumber   transfer target
-     * @param amount            amount of transfer
+     * @param amount            amount of transfer in minor units
      * @param timestamp         timestamp of the transfer transaction
-     * @return created transfer transaction entity
+     * @return created entry of the transfer initiator
+     */
+    TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp);
+
+    /**
+     * Save the given transaction journal entries with one batch of inserts.
+     * <p>
+     * Entries are inserted as they are, a transfer needs an entry for each party. They are inserted right away
+     * and don't become managed entities
+     *
+     * @param entries journal entries to save
      */
-    TransferTransactionEntity createTransferTransaction(UUID id, long fromAccountNumber, long toAccountNumber, String amount, long timestamp);
+    void createTransactions(List<TransactionEntity> entries);
 
 }
@@ -1,28 +1,46 @@
 package net.uniloftsky.markant.bank.biz.persistence;
 
+import jakarta.persistence.EntityManager;
+import net.uniloftsky.markant.bank.biz.jfr.PersistenceEvent;
 import net.uniloftsky.markant.bank.biz.persistence.repository.AccountRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.DepositTransactionRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.TransferTransactionRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.WithdrawTransactionRepository;
+import net.uniloftsky.markant.bank.biz.persistence.repository.TransactionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+/**
+ * JPA persistence service. Calls made by the bank service operations are recorded as {@link PersistenceEvent}s
+ */
 @Service
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "jpa", matchIfMissing = true)
 public class BankPersistenceServiceImpl implements BankPersistenceService {
 
+    /**
+     * Insert of a journal entry by {@link #createTransactions(List)}
+     */
+    private static final String INSERT_TRANSACTION = "INSERT INTO bank_transaction " +
+            "(id, type, account_number, counterparty_account_number, amount, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+
     private AccountRepository accountRepository;
-    private DepositTransactionRepository depositRepository;
-    private WithdrawTransactionRepository withdrawRepository;
-    private TransferTransactionRepository transferRepository;
+    private TransactionRepository transactionRepository;
+    private EntityManager entityManager;
+    private JdbcTemplate jdbcTemplate;
 
     @Override
-    public AccountEntity createAccount(long accountNumber, String balance, long creationTimestamp) {
-        assert accountNumber > 0 && balance != null && !balance.isEmpty() && creationTimestamp > 0;
+    public AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp) {
+        assert accountNumber > 0 && balance >= 0 && creationTimestamp > 0;
 
         AccountEntity account = new AccountEntity();
         account.setNumber(accountNumber);
@@ -36,12 +54,25 @@ public class BankPersistenceServiceImpl implements BankPersistenceService {
     public Optional<AccountEntity> getAccount(long accountNumber) {
         assert accountNumber > 0;
 
-        return accountRepository.findById(accountNumber);
+        PersistenceEvent event = new PersistenceEvent("getAccount", accountNumber);
+        event.begin();
+        try {
+            Optional<AccountEntity> account = accountRepository.findById(accountNumber);
+            event.setRows(account.isPresent() ? 1 : 0);
+            return account;
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public List<AccountEntity> listAccounts() {
+        return new ArrayList<>(accountRepository.findAll());
     }
 
     @Override
-    public AccountEntity updateAccountBalance(AccountEntity accountEntity, String newBalance, long timestamp) {
-        assert accountEntity != null && newBalance != null && !newBalance.isEmpty() && timestamp > 0;
+    public AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp) {
+        assert accountEntity != null && newBalance >= 0 && timestamp > 0;
 
         accountEntity.setBalance(newBalance);
         accountEntity.setUpdatedAt(timestamp);
@@ -50,64 +81,205 @@ public class BankPersistenceServiceImpl implements BankPersistenceService {
     }
 
     @Override
-    public List<DepositTransactionEntity> listDeposits(long accountNumber) {
-        assert accountNumber > 0;
+    public OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
 
-        return new ArrayList<>(depositRepository.findAllByAccountNumber(accountNumber));
+        PersistenceEvent event = new PersistenceEvent("debitIfSufficient", accountNumber);
+        event.begin();
+        try {
+            OptionalLong balance = accountRepository.debitIfSufficient(accountNumber, amount, timestamp)
+                    .map(OptionalLong::of)
+                    .orElseGet(OptionalLong::empty);
+            event.setRows(balance.isPresent() ? 1 : 0);
+            return balance;
+        } finally {
+            event.commit();
+        }
     }
 
     @Override
-    public DepositTransactionEntity createDepositTransaction(UUID id, long accountNumber, String amount, long timestamp) {
-        assert id != null && accountNumber > 0 && amount != null && !amount.isEmpty() && timestamp > 0;
+    public OptionalLong credit(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
 
-        DepositTransactionEntity depositTransaction = new DepositTransactionEntity();
-        depositTransaction.setId(id);
-        depositTransaction.setAccountNumber(accountNumber);
-        depositTransaction.setAmount(amount);
-        depositTransaction.setTimestamp(timestamp);
-        depositTransaction = depositRepository.save(depositTransaction);
-        return depositTransaction;
+        PersistenceEvent event = new PersistenceEvent("credit", accountNumber);
+        event.begin();
+        try {
+            OptionalLong balance = accountRepository.credit(accountNumber, amount, timestamp)
+                    .map(OptionalLong::of)
+                    .orElseGet(OptionalLong::empty);
+            event.setRows(balance.isPresent() ? 1 : 0);
+            return balance;
+        } finally {
+            event.commit();
+        }
     }
 
     @Override
-    public List<WithdrawTransactionEntity> listWithdrawals(long accountNumber) {
+    public long creditOrCreate(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        PersistenceEvent event = new PersistenceEvent("creditOrCreate", accountNumber);
+        event.begin();
+        try {
+            long balance = accountRepository.creditOrCreate(accountNumber, amount, timestamp);
+            event.setRows(1);
+            return balance;
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber) {
         assert accountNumber > 0;
 
-        return new ArrayList<>(withdrawRepository.findAllByAccountNumber(accountNumber));
+        return transactionRepository.findAllByAccountNumberOrderByTimestampDesc(accountNumber);
     }
 
     @Override
-    public WithdrawTransactionEntity createWithdrawTransaction(UUID id, long accountNumber, String amount, long timestamp) {
-        assert id != null && accountNumber > 0 && amount != null && !amount.isEmpty() && timestamp > 0;
+    public List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
 
-        WithdrawTransactionEntity withdrawTransaction = new WithdrawTransactionEntity();
-        withdrawTransaction.setId(id);
-        withdrawTransaction.setAccountNumber(accountNumber);
-        withdrawTransaction.setAmount(amount);
-        withdrawTransaction.setTimestamp(timestamp);
-        withdrawTransaction = withdrawRepository.save(withdrawTransaction);
-        return withdrawTransaction;
+        PersistenceEvent event = new PersistenceEvent("listTransactionsPage", accountNumber);
+        event.begin();
+        try {
+            List<TransactionEntity> page = transactionRepository.findFirstPage(accountNumber, types, Limit.of(limit));
+            event.setRows(page.size());
+            return page;
+        } finally {
+            event.commit();
+        }
     }
 
     @Override
-    public List<TransferTransactionEntity> listTransfers(long accountNumber) {
-        assert accountNumber > 0;
+    public List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
 
-        return new ArrayList<>(transferRepository.findAllByFromOrToAccountNumber(accountNumber));
+        PersistenceEvent event = new PersistenceEvent("listTransactionsAfter", accountNumber);
+        event.begin();
+        try {
+            List<TransactionEntity> page = transactionRepository.findPageAfter(accountNumber, types, afterTimestamp, afterId, Limit.of(limit));
+            event.setRows(page.size());
+            return page;
+        } finally {
+            event.commit();
+        }
     }
 
     @Override
-    public TransferTransactionEntity createTransferTransaction(UUID id, long fromAccountNumber, long toAccountNumber, String amount, long timestamp) {
-        assert id != null && fromAccountNumber > 0 && toAccountNumber > 0 && amount != null && !amount.isEmpty() && timestamp > 0;
+    @Transactional(readOnly = true)
+    public void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action) {
+        assert accountNumber > 0 && !types.isEmpty() && action != null;
+
+        PersistenceEvent event = new PersistenceEvent("forEachTransaction", accountNumber);
+        event.begin();
+        int[] rows = new int[1];
+        try (Stream<TransactionEntity> entries = transactionRepository.streamAll(accountNumber, types)) {
+            entries.forEach(entry -> {
+                action.accept(entry);
+                // otherwise the persistence context keeps every entry read so far
+                entityManager.detach(entry);
+                rows[0]++;
+            });
+        } finally {
+            // the event duration includes the time of the action
+            event.setRows(rows[0]);
+            event.commit();
+        }
+    }
+
+    @Override
+    public TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity depositTransaction = createEntry(id, TransactionEntryType.DEPOSIT, accountNumber, null, amount, timestamp);
+        PersistenceEvent event = new PersistenceEvent("createDepositTransaction", accountNumber);
+        event.begin();
+        try {
+            TransactionEntity entry = transactionRepository.save(depositTransaction);
+            event.setRows(1);
+            return entry;
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity withdrawTransaction = createEntry(id, TransactionEntryType.WITHDRAWAL, accountNumber, null, amount, timestamp);
+        PersistenceEvent event = new PersistenceEvent("createWithdrawTransaction", accountNumber);
+        event.begin();
+        try {
+            TransactionEntity entry = transactionRepository.save(withdrawTransaction);
+            event.setRows(1);
+            return entry;
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        assert id > 0 && fromAccountNumber > 0 && toAccountNumber > 0 && amount > 0 && timestamp > 0;
+
+        PersistenceEvent event = new PersistenceEvent("createTransferTransaction", fromAccountNumber);
+        event.begin();
+        try {
+            TransactionEntity outgoingTransfer = createEntry(id, TransactionEntryType.TRANSFER_OUT, fromAccountNumber, toAccountNumber, amount, timestamp);
+            outgoingTransfer = transactionRepository.save(outgoingTransfer);
+            event.setRows(1);
+
+            // the target gets its own entry, unless it's the initiator itself
+            if (fromAccountNumber != toAccountNumber) {
+                TransactionEntity incomingTransfer = createEntry(id, TransactionEntryType.TRANSFER_IN, toAccountNumber, fromAccountNumber, amount, timestamp);
+                transactionRepository.save(incomingTransfer);
+                event.setRows(2);
+            }
+            return outgoingTransfer;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Entries are inserted with JDBC, in the database transaction of the JPA transaction manager
+     */
+    @Override
+    public void createTransactions(List<TransactionEntity> entries) {
+        assert entries != null;
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // a batch spans several accounts, the event carries the account of the first entry
+        PersistenceEvent event = new PersistenceEvent("createTransactions", entries.getFirst().getAccountNumber());
+        event.begin();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, entries, entries.size(), (statement, entry) -> {
+                statement.setLong(1, entry.getTransactionId());
+                statement.setString(2, entry.getType().name());
+                statement.setLong(3, entry.getAccountNumber());
+                statement.setObject(4, entry.getCounterpartyAccountNumber(), Types.BIGINT);
+                statement.setLong(5, entry.getAmount());
+                statement.setLong(6, entry.getTimestamp());
+            });
+            event.setRows(entries.size());
+        } finally {
+            event.commit();
+        }
+    }
 
-        TransferTransactionEntity transferTransaction = new TransferTransactionEntity();
-        transferTransaction.setId(id);
-        transferTransaction.setFromAccountNumber(fromAccountNumber);
-        transferTransaction.setToAccountNumber(toAccountNumber);
-        transferTransaction.setAmount(amount);
-        transferTransaction.setTimestamp(timestamp);
-        transferTransaction = transferRepository.save(transferTransaction);
-        return transferTransaction;
+    private TransactionEntity createEntry(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        return entry;
     }
 
     @Autowired
@@ -116,17 +288,17 @@ public class BankPersistenceServiceImpl implements BankPersistenceService {
     }
 
     @Autowired
-    public void setDepositRepository(DepositTransactionRepository depositRepository) {
-        this.depositRepository = depositRepository;
+    public void setTransactionRepository(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
     }
 
     @Autowired
-    public void setWithdrawRepository(WithdrawTransactionRepository withdrawRepository) {
-        this.withdrawRepository = withdrawRepository;
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
     }
 
     @Autowired
-    public void setTransferRepository(TransferTransactionRepository transferRepository) {
-        this.transferRepository = transferRepository;
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
     }
 }
@@ -0,0 +1,684 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import net.uniloftsky.markant.bank.biz.StripedLockManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Persistence service keeping accounts and transaction journals in primitive arrays on the heap, without a database.
+ * Nothing survives a restart, it isolates the cost of the service, the locking and the serialization from the
+ * database cost.
+ * <p>
+ * Accounts are spread over stripes by the low bits of {@link StripedLockManager#mix} of their number, the high bits
+ * select the slot within the stripe. Every stripe is an open-addressing map keyed by
+ * the account number, with the account fields and the journal of every account in primitive columns, guarded by the
+ * lock of the stripe. Operations of accounts of different stripes never contend, and nothing is boxed per account or
+ * per journal entry.
+ * <p>
+ * Journals only grow, grown columns are copied, so readers iterate the columns they saw under the lock without
+ * holding it. Changes made within a Spring transaction are applied to the balances right away and reverted on
+ * rollback, their journal entries are appended before the commit, like by {@link MappedJournalPersistenceService}.
+ */
+@Service
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "memory")
+public class InMemoryBankPersistenceService implements BankPersistenceService {
+
+    /**
+     * Default number of stripes
+     */
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private static final TransactionEntryType[] ENTRY_TYPES = TransactionEntryType.values();
+    private static final Set<TransactionEntryType> ALL_TYPES = EnumSet.allOf(TransactionEntryType.class);
+
+    private Stripe[] stripes;
+
+    /**
+     * Number of stripes minus one, used instead of the modulo
+     */
+    private int mask;
+
+    public InMemoryBankPersistenceService() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to the next power of two
+     */
+    public InMemoryBankPersistenceService(int stripes) {
+        configure(stripes);
+    }
+
+    @Override
+    public AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp) {
+        assert accountNumber > 0 && balance >= 0 && creationTimestamp > 0;
+
+        Stripe stripe = stripeOf(accountNumber);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.insert(accountNumber);
+            if (stripe.createdAt[slot] != 0) {
+                throw new DuplicateKeyException("account by number " + accountNumber + " already exists");
+            }
+            stripe.create(slot, creationTimestamp, balance, 0);
+        } finally {
+            stripe.lock.unlock();
+        }
+        undoable(() -> remove(accountNumber));
+        return toEntity(accountNumber, creationTimestamp, balance, 0);
+    }
+
+    @Override
+    public Optional<AccountEntity> getAccount(long accountNumber) {
+        assert accountNumber > 0;
+
+        Stripe stripe = stripeOf(accountNumber);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            if (slot < 0 || stripe.createdAt[slot] == 0) {
+                return Optional.empty();
+            }
+            return Optional.of(toEntity(accountNumber, stripe.createdAt[slot], stripe.balances[slot], stripe.updatedAt[slot]));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public List<AccountEntity> listAccounts() {
+        List<AccountEntity> result = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int slot = 0; slot < stripe.numbers.length; slot++) {
+                    if (stripe.createdAt[slot] != 0) {
+                        result.add(toEntity(stripe.numbers[slot], stripe.createdAt[slot], stripe.balances[slot], stripe.updatedAt[slot]));
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp) {
+        assert accountEntity != null && newBalance >= 0 && timestamp > 0;
+
+        long accountNumber = accountEntity.getNumber();
+        Stripe stripe = stripeOf(accountNumber);
+        boolean created;
+        long previousBalance;
+        long previousUpdatedAt;
+        stripe.lock.lock();
+        try {
+            int slot = stripe.insert(accountNumber);
+            created = stripe.createdAt[slot] == 0;
+            previousBalance = stripe.balances[slot];
+            previousUpdatedAt = stripe.updatedAt[slot];
+            if (created) {
+                // a new entity is inserted, like by the repository
+                stripe.create(slot, accountEntity.getCreatedAt() > 0 ? accountEntity.getCreatedAt() : timestamp, newBalance, timestamp);
+            } else {
+                stripe.balances[slot] = newBalance;
+                stripe.updatedAt[slot] = timestamp;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        undoable(created ? () -> remove(accountNumber) : () -> restore(accountNumber, previousBalance, previousUpdatedAt));
+        accountEntity.setBalance(newBalance);
+        accountEntity.setUpdatedAt(timestamp);
+        return accountEntity;
+    }
+
+    @Override
+    public OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return change(accountNumber, -amount, timestamp, true);
+    }
+
+    @Override
+    public OptionalLong credit(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return change(accountNumber, amount, timestamp, false);
+    }
+
+    @Override
+    public long creditOrCreate(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        Stripe stripe = stripeOf(accountNumber);
+        long balance;
+        long previousUpdatedAt;
+        boolean created;
+        stripe.lock.lock();
+        try {
+            int slot = stripe.insert(accountNumber);
+            created = stripe.createdAt[slot] == 0;
+            previousUpdatedAt = stripe.updatedAt[slot];
+            if (created) {
+                balance = amount;
+                stripe.create(slot, timestamp, balance, timestamp);
+            } else {
+                balance = Math.addExact(stripe.balances[slot], amount);
+                stripe.balances[slot] = balance;
+                stripe.updatedAt[slot] = timestamp;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        undoable(created ? () -> remove(accountNumber) : () -> revert(accountNumber, amount, timestamp, previousUpdatedAt));
+        return balance;
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber) {
+        assert accountNumber > 0;
+
+        return list(accountNumber, ALL_TYPES, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return list(accountNumber, types, Long.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return list(accountNumber, types, afterTimestamp, afterId, limit);
+    }
+
+    /**
+     * Entries are created from the columns one by one, nothing but the current entry is held in memory
+     */
+    @Override
+    public void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action) {
+        assert accountNumber > 0 && !types.isEmpty() && action != null;
+
+        scan(accountNumber, types, entry -> {
+            action.accept(entry);
+            return true;
+        });
+    }
+
+    @Override
+    public TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity entry = createEntry(id, TransactionEntryType.DEPOSIT, accountNumber, null, amount, timestamp);
+        write(List.of(entry));
+        return entry;
+    }
+
+    @Override
+    public TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity entry = createEntry(id, TransactionEntryType.WITHDRAWAL, accountNumber, null, amount, timestamp);
+        write(List.of(entry));
+        return entry;
+    }
+
+    @Override
+    public TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        assert id > 0 && fromAccountNumber > 0 && toAccountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity outgoingTransfer = createEntry(id, TransactionEntryType.TRANSFER_OUT, fromAccountNumber, toAccountNumber, amount, timestamp);
+        // the target gets its own entry, unless it's the initiator itself
+        if (fromAccountNumber != toAccountNumber) {
+            write(List.of(outgoingTransfer, createEntry(id, TransactionEntryType.TRANSFER_IN, toAccountNumber, fromAccountNumber, amount, timestamp)));
+        } else {
+            write(List.of(outgoingTransfer));
+        }
+        return outgoingTransfer;
+    }
+
+    @Override
+    public void createTransactions(List<TransactionEntity> entries) {
+        assert entries != null;
+
+        if (!entries.isEmpty()) {
+            write(entries);
+        }
+    }
+
+    /**
+     * Add the difference to the balance of an existing account
+     *
+     * @param accountNumber   account number
+     * @param difference      amount to add, negative to subtract
+     * @param timestamp       timestamp of the balance update
+     * @param checkSufficient if true, the balance isn't changed if it would become negative
+     * @return new balance, or empty if the account doesn't exist or its balance is insufficient
+     */
+    private OptionalLong change(long accountNumber, long difference, long timestamp, boolean checkSufficient) {
+        Stripe stripe = stripeOf(accountNumber);
+        long balance;
+        long previousUpdatedAt;
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            if (slot < 0 || stripe.createdAt[slot] == 0 || (checkSufficient && stripe.balances[slot] + difference < 0)) {
+                return OptionalLong.empty();
+            }
+            balance = Math.addExact(stripe.balances[slot], difference);
+            previousUpdatedAt = stripe.updatedAt[slot];
+            stripe.balances[slot] = balance;
+            stripe.updatedAt[slot] = timestamp;
+        } finally {
+            stripe.lock.unlock();
+        }
+        undoable(() -> revert(accountNumber, difference, timestamp, previousUpdatedAt));
+        return OptionalLong.of(balance);
+    }
+
+    /**
+     * Revert a balance change. Other changes made meanwhile are kept
+     */
+    private void revert(long accountNumber, long difference, long timestamp, long previousUpdatedAt) {
+        Stripe stripe = stripeOf(accountNumber);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            stripe.balances[slot] -= difference;
+            if (stripe.updatedAt[slot] == timestamp) {
+                stripe.updatedAt[slot] = previousUpdatedAt;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void restore(long accountNumber, long balance, long updatedAt) {
+        Stripe stripe = stripeOf(accountNumber);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            stripe.balances[slot] = balance;
+            stripe.updatedAt[slot] = updatedAt;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a created account. Its slot stays in the map, marked as having no account
+     */
+    private void remove(long accountNumber) {
+        Stripe stripe = stripeOf(accountNumber);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            stripe.create(slot, 0, 0, 0);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Register the revert of a change to run if the current transaction is rolled back
+     */
+    private void undoable(Runnable undo) {
+        Pending pending = pending();
+        if (pending != null) {
+            pending.undos.add(undo);
+        }
+    }
+
+    /**
+     * Append the entries right away, or before the commit of the current transaction
+     */
+    private void write(List<TransactionEntity> entries) {
+        Pending pending = pending();
+        if (pending != null) {
+            pending.entries.addAll(entries);
+        } else {
+            append(entries);
+        }
+    }
+
+    /**
+     * Changes of the current transaction, created on the first change
+     *
+     * @return changes of the transaction, or null if there is no transaction
+     */
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    private void append(List<TransactionEntity> entries) {
+        for (TransactionEntity entry : entries) {
+            Stripe stripe = stripeOf(entry.getAccountNumber());
+            stripe.lock.lock();
+            try {
+                stripe.append(stripe.insert(entry.getAccountNumber()), entry);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Pass the entries of the given types to the action, most recent first, until it returns false
+     */
+    private void scan(long accountNumber, Set<TransactionEntryType> types, Predicate<TransactionEntity> action) {
+        Stripe stripe = stripeOf(accountNumber);
+        Journal journal;
+        int size;
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(accountNumber);
+            journal = slot < 0 ? null : stripe.journals[slot];
+            if (journal == null) {
+                return;
+            }
+            // the columns are read without the lock, up to the size seen under it
+            journal = journal.view();
+            size = journal.size;
+        } finally {
+            stripe.lock.unlock();
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            TransactionEntryType type = ENTRY_TYPES[journal.types[i]];
+            if (!types.contains(type)) {
+                continue;
+            }
+            Long counterparty = type == TransactionEntryType.TRANSFER_OUT || type == TransactionEntryType.TRANSFER_IN ? journal.counterparties[i] : null;
+            TransactionEntity entry = createEntry(journal.ids[i], type, accountNumber, counterparty, journal.amounts[i], journal.timestamps[i]);
+            entry.markNotNew();
+            if (!action.test(entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * List entries of the given types older than the given position, most recent first
+     */
+    private List<TransactionEntity> list(long accountNumber, Set<TransactionEntryType> types, long beforeTimestamp, long beforeId, int limit) {
+        List<TransactionEntity> result = new ArrayList<>(Math.min(limit, 64));
+        scan(accountNumber, types, entry -> {
+            boolean older = entry.getTimestamp() < beforeTimestamp
+                    || (entry.getTimestamp() == beforeTimestamp && entry.getTransactionId() < beforeId);
+            if (older) {
+                result.add(entry);
+            }
+            return result.size() < limit;
+        });
+        return result;
+    }
+
+    private Stripe stripeOf(long accountNumber) {
+        return stripes[(int) StripedLockManager.mix(accountNumber) & mask];
+    }
+
+    private static AccountEntity toEntity(long number, long createdAt, long balance, long updatedAt) {
+        AccountEntity entity = new AccountEntity();
+        entity.setNumber(number);
+        entity.setCreatedAt(createdAt);
+        entity.setBalance(balance);
+        entity.setUpdatedAt(updatedAt);
+        entity.markNotNew();
+        return entity;
+    }
+
+    private static TransactionEntity createEntry(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+
+    /**
+     * Replaces all accounts, called before the service is used
+     *
+     * @param stripes number of stripes, rounded up to the next power of two
+     */
+    @Autowired
+    public void configure(@Value("${bank.memory.stripes:1024}") int stripes) {
+        if (stripes < 1 || stripes > 1 << 30) {
+            throw new IllegalArgumentException("number of stripes must be between 1 and 2^30, but was " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        Stripe[] created = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            created[i] = new Stripe();
+        }
+        this.stripes = created;
+        this.mask = size - 1;
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Changes of a transaction: journal entries appended before its commit and balance changes reverted on rollback
+     */
+    private final class Pending implements TransactionSynchronization {
+
+        private final List<TransactionEntity> entries = new ArrayList<>();
+        private final List<Runnable> undos = new ArrayList<>();
+
+        /**
+         * Changes are reverted before the account locks of the transaction are released
+         */
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            append(entries);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(InMemoryBankPersistenceService.this);
+            if (status != STATUS_COMMITTED) {
+                for (int i = undos.size() - 1; i >= 0; i--) {
+                    undos.get(i).run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map of the accounts of a stripe, keyed by the account number with linear probing.
+     * Account fields are kept in columns indexed by the slot, a slot with a zero creation timestamp has no account,
+     * e.g. of a rolled back creation. Slots are never removed
+     */
+    private static final class Stripe {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // zero marks a free slot, account numbers are positive
+        long[] numbers = new long[INITIAL_CAPACITY];
+        long[] createdAt = new long[INITIAL_CAPACITY];
+        long[] balances = new long[INITIAL_CAPACITY];
+        long[] updatedAt = new long[INITIAL_CAPACITY];
+        Journal[] journals = new Journal[INITIAL_CAPACITY];
+        int size;
+
+        /**
+         * Slot of the account number
+         *
+         * @return slot, or -1 if the number has none
+         */
+        int find(long number) {
+            int mask = numbers.length - 1;
+            for (int slot = slot(number, mask); ; slot = (slot + 1) & mask) {
+                if (numbers[slot] == number) {
+                    return slot;
+                }
+                if (numbers[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Slot of the account number, taken if the number has none. The map grows at three quarters of its capacity
+         */
+        int insert(long number) {
+            int slot = find(number);
+            if (slot >= 0) {
+                return slot;
+            }
+            if ((size + 1) * 4 > numbers.length * 3) {
+                grow();
+            }
+            int mask = numbers.length - 1;
+            slot = slot(number, mask);
+            while (numbers[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            numbers[slot] = number;
+            size++;
+            return slot;
+        }
+
+        void create(int slot, long createdAt, long balance, long updatedAt) {
+            this.createdAt[slot] = createdAt;
+            this.balances[slot] = balance;
+            this.updatedAt[slot] = updatedAt;
+        }
+
+        void append(int slot, TransactionEntity entry) {
+            Journal journal = journals[slot];
+            if (journal == null) {
+                journal = new Journal();
+                journals[slot] = journal;
+            }
+            journal.add(entry);
+        }
+
+        private void grow() {
+            long[] oldNumbers = numbers;
+            long[] oldCreatedAt = createdAt;
+            long[] oldBalances = balances;
+            long[] oldUpdatedAt = updatedAt;
+            Journal[] oldJournals = journals;
+            int capacity = oldNumbers.length * 2;
+            numbers = new long[capacity];
+            createdAt = new long[capacity];
+            balances = new long[capacity];
+            updatedAt = new long[capacity];
+            journals = new Journal[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldNumbers.length; i++) {
+                if (oldNumbers[i] != 0) {
+                    int slot = slot(oldNumbers[i], mask);
+                    while (numbers[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    numbers[slot] = oldNumbers[i];
+                    createdAt[slot] = oldCreatedAt[i];
+                    balances[slot] = oldBalances[i];
+                    updatedAt[slot] = oldUpdatedAt[i];
+                    journals[slot] = oldJournals[i];
+                }
+            }
+        }
+
+        private static int slot(long number, int mask) {
+            return (int) (StripedLockManager.mix(number) >>> 32) & mask;
+        }
+    }
+
+    /**
+     * Journal entries of an account in primitive columns, in the order of appending
+     */
+    private static final class Journal {
+
+        long[] ids;
+        long[] timestamps;
+        long[] amounts;
+        long[] counterparties;
+        byte[] types;
+        int size;
+
+        Journal() {
+            this(new long[8], new long[8], new long[8], new long[8], new byte[8], 0);
+        }
+
+        private Journal(long[] ids, long[] timestamps, long[] amounts, long[] counterparties, byte[] types, int size) {
+            this.ids = ids;
+            this.timestamps = timestamps;
+            this.amounts = amounts;
+            this.counterparties = counterparties;
+            this.types = types;
+            this.size = size;
+        }
+
+        void add(TransactionEntity entry) {
+            if (size == ids.length) {
+                // entries below the size are never changed, so readers may keep iterating the old columns
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                counterparties = Arrays.copyOf(counterparties, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            ids[size] = entry.getTransactionId();
+            timestamps[size] = entry.getTimestamp();
+            amounts[size] = entry.getAmount();
+            counterparties[size] = entry.getCounterpartyAccountNumber() == null ? 0 : entry.getCounterpartyAccountNumber();
+            types[size] = (byte) entry.getType().ordinal();
+            size++;
+        }
+
+        /**
+         * Columns and size as of now, called with the lock of the stripe held
+         */
+        Journal view() {
+            return new Journal(ids, timestamps, amounts, counterparties, types, size);
+        }
+    }
+}
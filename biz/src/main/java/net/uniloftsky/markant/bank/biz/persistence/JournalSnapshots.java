@@ -0,0 +1,191 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import net.uniloftsky.markant.bank.biz.persistence.MappedJournalPersistenceService.Account;
+import net.uniloftsky.markant.bank.biz.persistence.MappedJournalPersistenceService.History;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshots of the index of the {@link MappedJournalPersistenceService}: the balances of all accounts and the journal
+ * positions of their entries, as of a journal sequence, so only the records appended after it are replayed on startup.
+ * <p>
+ * A snapshot is a single mapped file: a header, the accounts, the histories and a checksum of everything before it.
+ * It's written to a temporary file, forced and renamed, so a snapshot file is always complete. Only the newest
+ * snapshots are kept, so a damaged snapshot can be skipped in favour of an older one.
+ */
+final class JournalSnapshots {
+
+    // File format "MKSN", version 1
+    private static final int MAGIC = 0x4D4B534E;
+    private static final int VERSION = 1;
+
+    // Magic, version, sequence, position, number of accounts and of histories
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    // Number, creation timestamp, balance and update timestamp
+    private static final int ACCOUNT_SIZE = 4 * Long.BYTES;
+
+    // Account number and number of positions, followed by the positions
+    private static final int HISTORY_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final int retention;
+
+    /**
+     * @param directory directory of the snapshot files, the journal directory
+     * @param retention number of snapshots kept
+     */
+    JournalSnapshots(Path directory, int retention) {
+        if (retention < 1) {
+            throw new IllegalArgumentException("snapshot retention must be positive, but was " + retention);
+        }
+        this.directory = directory;
+        this.retention = retention;
+    }
+
+    /**
+     * Write a snapshot and delete the snapshots beyond the retention
+     *
+     * @param header    sequence and position of the snapshot
+     * @param accounts  accounts as of the sequence
+     * @param histories histories as of the sequence
+     * @throws IOException if the snapshot cannot be written
+     */
+    void write(Header header, Map<Long, Account> accounts, Map<Long, History> histories) throws IOException {
+        long size = HEADER_SIZE + (long) accounts.size() * ACCOUNT_SIZE + Integer.BYTES;
+        for (History history : histories.values()) {
+            size += HISTORY_HEADER_SIZE + (long) history.size * Long.BYTES;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("snapshot of " + size + " bytes is larger than a mapped file");
+        }
+
+        Path file = directory.resolve(String.format("snapshot-%020d", header.sequence) + SUFFIX);
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putLong(header.sequence).putLong(header.position)
+                    .putInt(accounts.size()).putInt(histories.size());
+            for (Account account : accounts.values()) {
+                buffer.putLong(account.number).putLong(account.createdAt).putLong(account.balance).putLong(account.updatedAt);
+            }
+            for (Map.Entry<Long, History> entry : histories.entrySet()) {
+                History history = entry.getValue();
+                buffer.putLong(entry.getKey()).putInt(history.size);
+                for (int i = 0; i < history.size; i++) {
+                    buffer.putLong(history.positions[i]);
+                }
+            }
+            buffer.putInt(checksum(buffer, (int) size - Integer.BYTES));
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list();
+        for (int i = retention; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Snapshot files, the newest first
+     *
+     * @throws IOException if the directory cannot be listed
+     */
+    List<Path> list() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith("snapshot-") && name.endsWith(SUFFIX);
+            }).forEach(snapshots::add);
+        }
+        // sequences are zero padded, so the names sort like the sequences
+        snapshots.sort(Comparator.comparing((Path file) -> file.getFileName().toString()).reversed());
+        return snapshots;
+    }
+
+    /**
+     * Load a snapshot
+     *
+     * @param file      snapshot file
+     * @param accounts  accounts of the snapshot are put here
+     * @param histories histories of the snapshot are put here
+     * @return header of the snapshot
+     * @throws IOException if the snapshot cannot be read or is damaged, the maps may be partially filled then
+     */
+    Header load(Path file, Map<Long, Account> accounts, Map<Long, History> histories) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("invalid snapshot size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt((int) size - Integer.BYTES) != checksum(buffer, (int) size - Integer.BYTES)) {
+                throw new IOException("snapshot checksum mismatch");
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a snapshot of version " + VERSION);
+            }
+            Header header = new Header(buffer.getLong(), buffer.getLong());
+            int accountCount = buffer.getInt();
+            int historyCount = buffer.getInt();
+            for (int i = 0; i < accountCount; i++) {
+                Account account = new Account(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+                accounts.put(account.number, account);
+            }
+            for (int i = 0; i < historyCount; i++) {
+                long accountNumber = buffer.getLong();
+                long[] positions = new long[buffer.getInt()];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = buffer.getLong();
+                }
+                histories.put(accountNumber, new History(positions));
+            }
+            return header;
+        }
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(0, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Sequence and journal position a snapshot was taken at
+     */
+    static final class Header {
+
+        /**
+         * Sequence of the last record in the snapshot
+         */
+        final long sequence;
+
+        /**
+         * Journal position after the last record in the snapshot, where the replay continues
+         */
+        final long position;
+
+        Header(long sequence, long position) {
+            this.sequence = sequence;
+            this.position = position;
+        }
+    }
+}
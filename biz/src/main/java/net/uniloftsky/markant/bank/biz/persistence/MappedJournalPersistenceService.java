@@ -0,0 +1,1396 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistence service keeping an append-only journal in memory-mapped segment files, without a database.
+ * <p>
+ * Every change is appended as a fixed-size binary record: account creations, balance changes and transaction journal
+ * entries. Balances and the positions of the journal entries of every account are indexed in memory, the index is
+ * rebuilt by replaying the segments on startup. Histories are read from the mapped segments through the index, in the
+ * order of appending, which is the order of the timestamps as long as the accounts are locked by the bank engine.
+ * <p>
+ * Changes made within a Spring transaction are applied to the index right away, so the conditional balance updates of
+ * the same transaction see them, and appended as one group of records before the commit. A rolled back transaction
+ * reverts its balance changes and appends nothing. Balance changes are recorded as differences, so concurrent
+ * transactions may commit in any order; their balances are visible before the commit, the bank engines lock the
+ * accounts until the transaction is completed. Changes made outside of a transaction are appended under the account
+ * lock before the new balance is published, and reverted if they aren't forced. A group of records is only replayed if
+ * it was appended completely, a torn tail is cut off on startup.
+ * <p>
+ * Appended records are forced to the storage device by a single flusher thread once per durability window, for all
+ * groups appended during the window. A group is acknowledged once it's forced, with a window of zero every group
+ * forces the segments itself. A failed force, or a group not forced within the force timeout, fails the journal:
+ * waiting and further writes fail, since a failed force may have lost pages already written. Reads go on, a restart
+ * recovers from the segments.
+ * <p>
+ * Every snapshot interval a snapshotter thread writes the index as of the forced records to a snapshot file, see
+ * {@link JournalSnapshots}. It replays the forced records after the latest snapshot into a copy of it, without touching
+ * the live index, so writers are never blocked. On startup the latest snapshot is loaded and only the records after it
+ * are replayed.
+ */
+@Service
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "journal")
+public class MappedJournalPersistenceService implements BankPersistenceService, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedJournalPersistenceService.class);
+
+    /**
+     * Size of a record in bytes. Segment sizes are multiples of it, so no record spans two segments
+     */
+    static final int RECORD_SIZE = 64;
+
+    /**
+     * Default size of a segment file
+     */
+    public static final DataSize DEFAULT_SEGMENT_SIZE = DataSize.ofMegabytes(64);
+
+    /**
+     * Default time appended records may wait to be forced together
+     */
+    public static final Duration DEFAULT_DURABILITY_WINDOW = Duration.ofMillis(2);
+
+    /**
+     * Default time between two snapshots
+     */
+    public static final Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofMinutes(5);
+
+    /**
+     * Default number of snapshots kept
+     */
+    public static final int DEFAULT_SNAPSHOT_RETENTION = 2;
+
+    /**
+     * Default maximum time a writer waits for its records to be forced
+     */
+    public static final Duration DEFAULT_FORCE_TIMEOUT = Duration.ofSeconds(10);
+
+    // Largest segment, a mapped buffer is indexed by int
+    private static final long MAX_SEGMENT_SIZE = DataSize.ofGigabytes(1).toBytes();
+
+    // Record kinds, zero marks the end of the journal
+    static final byte ACCOUNT = 1;
+    static final byte BALANCE_CHANGE = 2;
+    static final byte BALANCE_SET = 3;
+    static final byte ENTRY = 16;
+
+    // Record flag of the last record of a group
+    private static final byte LAST_IN_GROUP = 1;
+
+    // Record layout: kind, flags, 2 reserved bytes, checksum, then the long fields
+    private static final int KIND = 0;
+    private static final int FLAGS = 1;
+    private static final int CHECKSUM = 4;
+    private static final int SEQUENCE = 8;
+    private static final int TRANSACTION_ID = 16;
+    private static final int ACCOUNT_NUMBER = 24;
+    private static final int COUNTERPARTY_ACCOUNT_NUMBER = 32;
+    private static final int AMOUNT = 40;
+    private static final int TIMESTAMP = 48;
+    private static final int UPDATED_AT = 56;
+
+    private static final TransactionEntryType[] ENTRY_TYPES = TransactionEntryType.values();
+    private static final Set<TransactionEntryType> ALL_TYPES = EnumSet.allOf(TransactionEntryType.class);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d{10})\\.journal");
+
+    private Path directory;
+    private long segmentSize;
+    private long durabilityWindowNanos;
+    private long snapshotIntervalNanos = DEFAULT_SNAPSHOT_INTERVAL.toNanos();
+    private int snapshotRetention = DEFAULT_SNAPSHOT_RETENTION;
+    private long forceTimeoutNanos = DEFAULT_FORCE_TIMEOUT.toNanos();
+
+    private final ConcurrentMap<Long, Account> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, History> histories = new ConcurrentHashMap<>();
+
+    /**
+     * Lock of appending, guards the append position, the sequence and the encoding buffer
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ByteBuffer encodingBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private long appendPosition;
+    private long sequence;
+
+    /**
+     * Mapped segments, from the first one. Replaced on every new segment
+     */
+    private volatile Segment[] segments = new Segment[0];
+    private long firstSegment;
+
+    /**
+     * End of the last appended group
+     */
+    private volatile long appendedPosition;
+
+    /**
+     * Lock held while segments are forced, and the lock and condition to wait for a forced position
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final ReentrantLock forcedLock = new ReentrantLock();
+    private final Condition forcedCondition = forcedLock.newCondition();
+    private volatile long forcedPosition;
+
+    /**
+     * Cause of the failure of the journal, null while it works
+     */
+    private volatile RuntimeException failure;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * Lock held while a snapshot is written, and the sequence of the latest snapshot
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private JournalSnapshots snapshots;
+    private Thread snapshotter;
+    private volatile long snapshotSequence;
+    private volatile long snapshotsWritten;
+
+    /**
+     * Duration of the recovery on startup and the number of records replayed by it
+     */
+    private long recoveryNanos;
+    private long recoveredRecords;
+
+    public MappedJournalPersistenceService() {
+        this(Path.of("journal"), DEFAULT_SEGMENT_SIZE, DEFAULT_DURABILITY_WINDOW);
+    }
+
+    /**
+     * @param directory         directory of the segment files
+     * @param segmentSize       size of a segment file, rounded down to a multiple of the record size
+     * @param durabilityWindow  time appended records may wait to be forced together, zero to force every group
+     */
+    public MappedJournalPersistenceService(Path directory, DataSize segmentSize, Duration durabilityWindow) {
+        configure(directory, segmentSize, durabilityWindow);
+    }
+
+    /**
+     * Load the latest snapshot, replay the segments after it and start the flusher and the snapshotter
+     *
+     * @throws UncheckedIOException if the segments cannot be read
+     */
+    @PostConstruct
+    public void start() {
+        try {
+            Files.createDirectories(directory);
+            snapshots = new JournalSnapshots(directory, snapshotRetention);
+            recover();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("cannot recover the journal in " + directory, ex);
+        }
+        running = true;
+        if (durabilityWindowNanos > 0) {
+            flusher = Thread.ofPlatform().name("journal-flusher").daemon().start(this::flushLoop);
+        }
+        if (snapshotIntervalNanos > 0) {
+            snapshotter = Thread.ofPlatform().name("journal-snapshotter").daemon().start(this::snapshotLoop);
+        }
+    }
+
+    /**
+     * Stop appending, force the appended records, write a last snapshot and close the segments
+     */
+    @PreDestroy
+    public void stop() {
+        appendLock.lock();
+        try {
+            running = false;
+        } finally {
+            appendLock.unlock();
+        }
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+        }
+        if (snapshotter != null) {
+            LockSupport.unpark(snapshotter);
+        }
+        join(flusher);
+        join(snapshotter);
+        if (failure == null) {
+            force();
+        }
+        if (snapshotter != null) {
+            try {
+                snapshot();
+            } catch (RuntimeException ex) {
+                logger.error("Writing the last journal snapshot failed", ex);
+            }
+        }
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments = new Segment[0];
+    }
+
+    @Override
+    public AccountEntity createAccount(long accountNumber, long balance, long creationTimestamp) {
+        assert accountNumber > 0 && balance >= 0 && creationTimestamp > 0;
+
+        Account account = new Account(accountNumber, creationTimestamp, balance, 0);
+        JournalRecord record = JournalRecord.account(accountNumber, balance, creationTimestamp, 0);
+        if (accounts.putIfAbsent(accountNumber, account) != null) {
+            throw new DuplicateKeyException("account by number " + accountNumber + " already exists");
+        }
+        write(record, () -> accounts.remove(accountNumber, account));
+        return account.toEntity();
+    }
+
+    @Override
+    public Optional<AccountEntity> getAccount(long accountNumber) {
+        assert accountNumber > 0;
+
+        Account account = accounts.get(accountNumber);
+        return account == null ? Optional.empty() : Optional.of(account.toEntity());
+    }
+
+    @Override
+    public List<AccountEntity> listAccounts() {
+        List<AccountEntity> result = new ArrayList<>(accounts.size());
+        for (Account account : accounts.values()) {
+            result.add(account.toEntity());
+        }
+        return result;
+    }
+
+    @Override
+    public AccountEntity updateAccountBalance(AccountEntity accountEntity, long newBalance, long timestamp) {
+        assert accountEntity != null && newBalance >= 0 && timestamp > 0;
+
+        Account account = accounts.get(accountEntity.getNumber());
+        if (account == null) {
+            // a new entity is inserted, like by the repository
+            createAccount(accountEntity.getNumber(), newBalance, accountEntity.getCreatedAt() > 0 ? accountEntity.getCreatedAt() : timestamp);
+        } else {
+            long end;
+            Runnable undo;
+            account.lock.lock();
+            try {
+                long previousBalance = account.balance;
+                long previousUpdatedAt = account.updatedAt;
+                undo = () -> account.restore(previousBalance, previousUpdatedAt);
+                end = appendOrDefer(JournalRecord.balanceSet(account.number, newBalance, timestamp), undo);
+                account.balance = newBalance;
+                account.updatedAt = timestamp;
+            } finally {
+                account.lock.unlock();
+            }
+            awaitForced(end, undo);
+        }
+        accountEntity.setBalance(newBalance);
+        accountEntity.setUpdatedAt(timestamp);
+        return accountEntity;
+    }
+
+    @Override
+    public OptionalLong debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        Account account = accounts.get(accountNumber);
+        return account == null ? OptionalLong.empty() : change(account, -amount, timestamp, true);
+    }
+
+    @Override
+    public OptionalLong credit(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        Account account = accounts.get(accountNumber);
+        return account == null ? OptionalLong.empty() : change(account, amount, timestamp, false);
+    }
+
+    @Override
+    public long creditOrCreate(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        while (true) {
+            Account account = accounts.get(accountNumber);
+            if (account != null) {
+                return change(account, amount, timestamp, false).orElseThrow();
+            }
+            Account created = new Account(accountNumber, timestamp, amount, timestamp);
+            if (accounts.putIfAbsent(accountNumber, created) == null) {
+                write(JournalRecord.account(accountNumber, amount, timestamp, timestamp), () -> accounts.remove(accountNumber, created));
+                return amount;
+            }
+        }
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber) {
+        assert accountNumber > 0;
+
+        return list(accountNumber, ALL_TYPES, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return list(accountNumber, types, Long.MAX_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return list(accountNumber, types, afterTimestamp, afterId, limit);
+    }
+
+    /**
+     * Entries are read from the mapped segments one by one, nothing but the current entry is held in memory
+     */
+    @Override
+    public void forEachTransaction(long accountNumber, Set<TransactionEntryType> types, Consumer<TransactionEntity> action) {
+        assert accountNumber > 0 && !types.isEmpty() && action != null;
+
+        scan(accountNumber, types, entry -> {
+            action.accept(entry);
+            return true;
+        });
+    }
+
+    /**
+     * Pass the entries of the given types to the action, most recent first, until it returns false
+     */
+    private void scan(long accountNumber, Set<TransactionEntryType> types, Predicate<TransactionEntity> action) {
+        History history = histories.get(accountNumber);
+        if (history == null) {
+            return;
+        }
+        long[] positions;
+        int size;
+        history.lock.lock();
+        try {
+            positions = history.positions;
+            size = history.size;
+        } finally {
+            history.lock.unlock();
+        }
+        byte[] bytes = new byte[RECORD_SIZE];
+        for (int i = size - 1; i >= 0; i--) {
+            TransactionEntity entry = readEntry(positions[i], bytes);
+            if (types.contains(entry.getType()) && !action.test(entry)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public TransactionEntity createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity entry = createEntry(id, TransactionEntryType.DEPOSIT, accountNumber, null, amount, timestamp);
+        write(JournalRecord.entry(entry), null);
+        return entry;
+    }
+
+    @Override
+    public TransactionEntity createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity entry = createEntry(id, TransactionEntryType.WITHDRAWAL, accountNumber, null, amount, timestamp);
+        write(JournalRecord.entry(entry), null);
+        return entry;
+    }
+
+    @Override
+    public TransactionEntity createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        assert id > 0 && fromAccountNumber > 0 && toAccountNumber > 0 && amount > 0 && timestamp > 0;
+
+        TransactionEntity outgoingTransfer = createEntry(id, TransactionEntryType.TRANSFER_OUT, fromAccountNumber, toAccountNumber, amount, timestamp);
+        List<JournalRecord> records = new ArrayList<>(2);
+        records.add(JournalRecord.entry(outgoingTransfer));
+        // the target gets its own entry, unless it's the initiator itself
+        if (fromAccountNumber != toAccountNumber) {
+            records.add(JournalRecord.entry(createEntry(id, TransactionEntryType.TRANSFER_IN, toAccountNumber, fromAccountNumber, amount, timestamp)));
+        }
+        write(records);
+        return outgoingTransfer;
+    }
+
+    @Override
+    public void createTransactions(List<TransactionEntity> entries) {
+        assert entries != null;
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<JournalRecord> records = new ArrayList<>(entries.size());
+        for (TransactionEntity entry : entries) {
+            records.add(JournalRecord.entry(entry));
+        }
+        write(records);
+    }
+
+    /**
+     * Add the difference to the balance of the account
+     *
+     * @param account         account
+     * @param difference      amount to add, negative to subtract
+     * @param timestamp       timestamp of the balance update
+     * @param checkSufficient if true, the balance isn't changed if it would become negative
+     * @return new balance, or empty if the balance is insufficient
+     */
+    private OptionalLong change(Account account, long difference, long timestamp, boolean checkSufficient) {
+        long balance;
+        long end;
+        Runnable undo;
+        account.lock.lock();
+        try {
+            if (checkSufficient && account.balance + difference < 0) {
+                return OptionalLong.empty();
+            }
+            balance = Math.addExact(account.balance, difference);
+            long previousUpdatedAt = account.updatedAt;
+            undo = () -> account.revert(difference, timestamp, previousUpdatedAt);
+            // a failed append leaves the balance untouched
+            end = appendOrDefer(JournalRecord.balanceChange(account.number, difference, timestamp), undo);
+            account.balance = balance;
+            account.updatedAt = timestamp;
+        } finally {
+            account.lock.unlock();
+        }
+        awaitForced(end, undo);
+        return OptionalLong.of(balance);
+    }
+
+    /**
+     * Write a record, see {@link #write(List)}
+     *
+     * @param record record to write
+     * @param undo   revert of the change of the index made by the record, null if the index isn't changed yet
+     */
+    private void write(JournalRecord record, Runnable undo) {
+        long end;
+        try {
+            end = appendOrDefer(record, undo);
+        } catch (RuntimeException ex) {
+            if (undo != null) {
+                undo.run();
+            }
+            throw ex;
+        }
+        awaitForced(end, undo);
+    }
+
+    /**
+     * Append a record right away, or add it to the changes of the current transaction
+     *
+     * @param record record to append
+     * @param undo   revert of the change of the index made by the record, null if the index isn't changed
+     * @return end position of the appended record, or 0 if it's appended before the commit
+     */
+    private long appendOrDefer(JournalRecord record, Runnable undo) {
+        Pending pending = pending();
+        if (pending == null) {
+            return append(List.of(record));
+        }
+        pending.records.add(record);
+        if (undo != null) {
+            pending.undos.add(undo);
+        }
+        return 0;
+    }
+
+    /**
+     * Wait until the record appended right away is forced, revert its change of the index if it isn't
+     *
+     * @param position end position of the appended record, 0 if it's appended before the commit
+     * @param undo     revert of the change of the index made by the record, null if the index isn't changed
+     */
+    private void awaitForced(long position, Runnable undo) {
+        if (position == 0) {
+            return;
+        }
+        try {
+            awaitForced(position);
+        } catch (RuntimeException ex) {
+            if (undo != null) {
+                undo.run();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Write the records as one group: right away, or before the commit of the current transaction
+     *
+     * @param records records to write
+     */
+    private void write(List<JournalRecord> records) {
+        Pending pending = pending();
+        if (pending != null) {
+            pending.records.addAll(records);
+        } else {
+            awaitForced(append(records));
+        }
+    }
+
+    /**
+     * Changes of the current transaction, created on the first change
+     *
+     * @return changes of the transaction, or null if there is no transaction
+     */
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Append the records as one group and index their journal entries. The records aren't forced yet
+     *
+     * @param records records to append
+     * @return end position of the group
+     * @throws UncheckedIOException  if a new segment cannot be created, nothing is appended
+     * @throws IllegalStateException if the journal isn't running
+     */
+    private long append(List<JournalRecord> records) {
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("journal is not running");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("journal failed, restart to recover it", failure);
+            }
+            // the space of the whole group is reserved first, so a failure leaves no partial group behind
+            long start = appendPosition;
+            long end = start + (long) records.size() * RECORD_SIZE;
+            try {
+                for (long position = start; position < end; position += segmentSize - position % segmentSize) {
+                    segment(position);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("cannot create a journal segment in " + directory, ex);
+            }
+
+            long position = start;
+            for (int i = 0; i < records.size(); i++) {
+                JournalRecord record = records.get(i);
+                record.sequence = ++sequence;
+                record.encode(encodingBuffer, i == records.size() - 1);
+                Segment segment = segments[segmentIndex(position)];
+                segment.buffer.put(offset(position), encodingBuffer.array());
+                if (record.kind >= ENTRY) {
+                    histories.computeIfAbsent(record.accountNumber, number -> new History()).add(position);
+                }
+                position += RECORD_SIZE;
+            }
+            appendPosition = end;
+            appendedPosition = end;
+            return end;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the journal is forced up to the given position, or force it if there is no durability window
+     *
+     * @param position end position of the appended group
+     * @throws IllegalStateException if the journal failed or isn't forced within the force timeout, which fails it
+     */
+    private void awaitForced(long position) {
+        if (durabilityWindowNanos == 0) {
+            force();
+            return;
+        }
+        forcedLock.lock();
+        try {
+            long remainingNanos = forceTimeoutNanos;
+            while (forcedPosition < position) {
+                if (failure != null) {
+                    throw new IllegalStateException("journal failed, the records are not forced", failure);
+                }
+                if (remainingNanos <= 0) {
+                    IllegalStateException timeout = new IllegalStateException("journal was not forced within " + Duration.ofNanos(forceTimeoutNanos));
+                    fail(timeout);
+                    throw timeout;
+                }
+                remainingNanos = forcedCondition.awaitNanos(remainingNanos);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the journal to be forced", ex);
+        } finally {
+            forcedLock.unlock();
+        }
+    }
+
+    /**
+     * Force the segments up to the appended position. Concurrent calls force one after the other,
+     * so a call waiting for another one usually finds its records forced already
+     */
+    private void force() {
+        forceLock.lock();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("journal failed, the records are not forced", failure);
+            }
+            long target = appendedPosition;
+            long position = forcedPosition;
+            if (target <= position) {
+                return;
+            }
+            Segment[] segments = this.segments;
+            try {
+                while (position < target) {
+                    long end = Math.min(target, position - position % segmentSize + segmentSize);
+                    segments[segmentIndex(position)].buffer.force(offset(position), (int) (end - position));
+                    position = end;
+                }
+            } catch (RuntimeException ex) {
+                fail(ex);
+                throw ex;
+            }
+            forcedLock.lock();
+            try {
+                forcedPosition = target;
+                forcedCondition.signalAll();
+            } finally {
+                forcedLock.unlock();
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running && failure == null) {
+            LockSupport.parkNanos(durabilityWindowNanos);
+            try {
+                force();
+            } catch (RuntimeException ex) {
+                // not retried, a retry may succeed without the pages lost by the failed force
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fail the journal and wake up the writers waiting for their records to be forced
+     *
+     * @param cause cause of the failure, kept if the journal failed already
+     */
+    private void fail(RuntimeException cause) {
+        forcedLock.lock();
+        try {
+            if (failure == null) {
+                failure = cause;
+                logger.error("Journal failed, writes are rejected until it's recovered by a restart", cause);
+            }
+            forcedCondition.signalAll();
+        } finally {
+            forcedLock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot of the index as of the forced records, unless nothing was forced since the latest snapshot.
+     * The latest snapshot is loaded into a copy of the index and the forced records after it are replayed into it,
+     * the live index isn't touched
+     *
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    public void snapshot() {
+        snapshotLock.lock();
+        try {
+            long end = forcedPosition;
+            Map<Long, Account> snapshotAccounts = new HashMap<>();
+            Map<Long, History> snapshotHistories = new HashMap<>();
+            Replay replay = loadSnapshot(snapshotAccounts, snapshotHistories, end);
+            long latestSequence = replay.sequence;
+            replay(replay, end, snapshotAccounts, snapshotHistories);
+            if (replay.sequence > latestSequence) {
+                snapshots.write(new JournalSnapshots.Header(replay.sequence, replay.position), snapshotAccounts, snapshotHistories);
+                snapshotSequence = replay.sequence;
+                snapshotsWritten++;
+                logger.debug("Journal snapshot of {} accounts written at sequence {}", snapshotAccounts.size(), replay.sequence);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("cannot write a journal snapshot in " + directory, ex);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void snapshotLoop() {
+        while (running) {
+            LockSupport.parkNanos(snapshotIntervalNanos);
+            if (!running) {
+                return;
+            }
+            try {
+                snapshot();
+            } catch (RuntimeException ex) {
+                // retried in the next interval, the recovery just replays more records
+                logger.error("Writing a journal snapshot failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Load the latest snapshot, replay the complete groups of the segments after it into the index and cut off the rest
+     */
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+        List<Long> indexes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    indexes.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        indexes.sort(null);
+        for (int i = 1; i < indexes.size(); i++) {
+            if (indexes.get(i) != indexes.get(i - 1) + 1) {
+                throw new IOException("journal segment " + (indexes.get(i - 1) + 1) + " is missing in " + directory);
+            }
+        }
+        firstSegment = indexes.isEmpty() ? 0 : indexes.getFirst();
+        Segment[] mapped = new Segment[indexes.size()];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = Segment.open(segmentFile(indexes.get(i)), indexes.get(i), segmentSize);
+        }
+        segments = mapped;
+
+        long end = firstSegment * segmentSize + (long) mapped.length * segmentSize;
+        Replay replay = loadSnapshot(accounts, histories, end);
+        snapshotSequence = replay.sequence;
+        replay(replay, end, accounts, histories);
+
+        truncate(replay.position);
+        sequence = replay.sequence;
+        appendPosition = replay.position;
+        appendedPosition = replay.position;
+        forcedPosition = replay.position;
+        recoveredRecords = replay.records;
+        recoveryNanos = System.nanoTime() - started;
+        logger.info("Journal in {} recovered in {} ms: {} records replayed after the snapshot at sequence {}, {} accounts in {} segments",
+                directory, TimeUnit.NANOSECONDS.toMillis(recoveryNanos), replay.records, snapshotSequence, accounts.size(), segments.length);
+    }
+
+    /**
+     * Load the latest snapshot matching the journal into the given maps. Snapshots which are damaged or don't match
+     * the journal, e.g. of a deleted journal, are deleted
+     *
+     * @param accounts  accounts of the snapshot are put here
+     * @param histories histories of the snapshot are put here
+     * @param end       end of the journal, a snapshot beyond it doesn't match
+     * @return replay continuing after the snapshot, or from the start of the journal if there is none
+     */
+    private Replay loadSnapshot(Map<Long, Account> accounts, Map<Long, History> histories, long end) throws IOException {
+        long start = firstSegment * segmentSize;
+        for (Path file : snapshots.list()) {
+            try {
+                JournalSnapshots.Header header = snapshots.load(file, accounts, histories);
+                if (matches(header, start, end)) {
+                    return new Replay(header.position, header.sequence);
+                }
+                logger.warn("Journal snapshot {} doesn't match the journal, deleting it", file);
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Journal snapshot {} is damaged, deleting it", file, ex);
+            }
+            accounts.clear();
+            histories.clear();
+            Files.deleteIfExists(file);
+        }
+        return new Replay(start, 0);
+    }
+
+    /**
+     * Whether the snapshot ends with the last record of a group of the journal
+     */
+    private boolean matches(JournalSnapshots.Header header, long start, long end) {
+        if (header.position < start || header.position > end || header.position % RECORD_SIZE != 0) {
+            return false;
+        }
+        if (header.position == start) {
+            return header.sequence == 0;
+        }
+        JournalRecord last = JournalRecord.decode(readRecord(header.position - RECORD_SIZE, new byte[RECORD_SIZE]));
+        return last != null && last.last && last.sequence == header.sequence;
+    }
+
+    /**
+     * Replay the complete groups from the position of the replay up to the given end into the given index
+     *
+     * @param replay    replay, advanced to the end of the last complete group
+     * @param end       position to stop at
+     * @param accounts  accounts of the index
+     * @param histories histories of the index
+     */
+    private void replay(Replay replay, long end, Map<Long, Account> accounts, Map<Long, History> histories) {
+        long position = replay.position;
+        long lastSequence = replay.sequence;
+        List<JournalRecord> group = new ArrayList<>();
+        List<Long> groupPositions = new ArrayList<>();
+        byte[] bytes = new byte[RECORD_SIZE];
+        while (position < end) {
+            JournalRecord record = JournalRecord.decode(readRecord(position, bytes));
+            if (record == null || record.sequence != lastSequence + 1) {
+                break;
+            }
+            lastSequence = record.sequence;
+            group.add(record);
+            groupPositions.add(position);
+            position += RECORD_SIZE;
+            if (record.last) {
+                for (int i = 0; i < group.size(); i++) {
+                    apply(group.get(i), groupPositions.get(i), accounts, histories);
+                }
+                replay.records += group.size();
+                replay.position = position;
+                replay.sequence = lastSequence;
+                group.clear();
+                groupPositions.clear();
+            }
+        }
+    }
+
+    /**
+     * Apply a replayed record to the given index
+     */
+    private static void apply(JournalRecord record, long position, Map<Long, Account> accounts, Map<Long, History> histories) {
+        switch (record.kind) {
+            case ACCOUNT -> accounts.put(record.accountNumber, new Account(record.accountNumber, record.timestamp, record.amount, record.updatedAt));
+            case BALANCE_CHANGE -> {
+                Account account = accounts.get(record.accountNumber);
+                account.balance += record.amount;
+                account.updatedAt = record.timestamp;
+            }
+            case BALANCE_SET -> {
+                Account account = accounts.get(record.accountNumber);
+                account.balance = record.amount;
+                account.updatedAt = record.timestamp;
+            }
+            default -> histories.computeIfAbsent(record.accountNumber, number -> new History()).add(position);
+        }
+    }
+
+    /**
+     * Remove the records from the given position on: the rest of its segment is cleared and later segments are deleted,
+     * so records of an incomplete group are never replayed after new records
+     */
+    private void truncate(long position) throws IOException {
+        Segment[] mapped = segments;
+        int keep = mapped.length;
+        if (position < firstSegment * segmentSize + (long) mapped.length * segmentSize) {
+            int index = segmentIndex(position);
+            MappedByteBuffer buffer = mapped[index].buffer;
+            boolean cleared = false;
+            for (int offset = offset(position); offset < segmentSize; offset += RECORD_SIZE) {
+                if (buffer.get(offset + KIND) != 0) {
+                    buffer.put(offset + KIND, (byte) 0);
+                    cleared = true;
+                }
+            }
+            if (cleared) {
+                buffer.force();
+                logger.warn("Journal in {} was cut off at position {}", directory, position);
+            }
+            keep = offset(position) == 0 && index > 0 ? index : index + 1;
+        }
+        for (int i = keep; i < mapped.length; i++) {
+            mapped[i].close();
+            Files.delete(segmentFile(mapped[i].index));
+        }
+        if (keep < mapped.length) {
+            Segment[] kept = new Segment[keep];
+            System.arraycopy(mapped, 0, kept, 0, keep);
+            segments = kept;
+        }
+    }
+
+    /**
+     * Segment of the position, created if it's the next one. Called with the append lock held
+     */
+    private Segment segment(long position) throws IOException {
+        int index = segmentIndex(position);
+        Segment[] mapped = segments;
+        if (index < mapped.length) {
+            return mapped[index];
+        }
+        long segmentNumber = firstSegment + index;
+        Segment segment = Segment.open(segmentFile(segmentNumber), segmentNumber, segmentSize);
+        Segment[] extended = new Segment[mapped.length + 1];
+        System.arraycopy(mapped, 0, extended, 0, mapped.length);
+        extended[mapped.length] = segment;
+        segments = extended;
+        return segment;
+    }
+
+    private int segmentIndex(long position) {
+        return (int) (position / segmentSize - firstSegment);
+    }
+
+    private int offset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(String.format("segment-%010d.journal", index));
+    }
+
+    private ByteBuffer readRecord(long position, byte[] bytes) {
+        segments[segmentIndex(position)].buffer.get(offset(position), bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private TransactionEntity readEntry(long position, byte[] bytes) {
+        JournalRecord record = JournalRecord.decode(readRecord(position, bytes));
+        TransactionEntryType type = ENTRY_TYPES[record.kind - ENTRY];
+        Long counterparty = type == TransactionEntryType.TRANSFER_OUT || type == TransactionEntryType.TRANSFER_IN ? record.counterpartyAccountNumber : null;
+        TransactionEntity entry = createEntry(record.transactionId, type, record.accountNumber, counterparty, record.amount, record.timestamp);
+        entry.markNotNew();
+        return entry;
+    }
+
+    /**
+     * List entries of the given types older than the given position, most recent first
+     */
+    private List<TransactionEntity> list(long accountNumber, Set<TransactionEntryType> types, long beforeTimestamp, long beforeId, int limit) {
+        List<TransactionEntity> result = new ArrayList<>(Math.min(limit, 64));
+        scan(accountNumber, types, entry -> {
+            boolean older = entry.getTimestamp() < beforeTimestamp
+                    || (entry.getTimestamp() == beforeTimestamp && entry.getTransactionId() < beforeId);
+            if (older) {
+                result.add(entry);
+            }
+            return result.size() < limit;
+        });
+        return result;
+    }
+
+    private static TransactionEntity createEntry(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+
+    @Autowired
+    public void configure(@Value("${bank.journal.directory:journal}") Path directory,
+                          @Value("${bank.journal.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${bank.journal.durability-window:2ms}") Duration durabilityWindow) {
+        if (segmentSize.toBytes() < RECORD_SIZE || segmentSize.toBytes() > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segment size must be between " + RECORD_SIZE + " bytes and 1GB, but was " + segmentSize);
+        }
+        if (durabilityWindow.isNegative()) {
+            throw new IllegalArgumentException("durability window must not be negative, but was " + durabilityWindow);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize.toBytes() - segmentSize.toBytes() % RECORD_SIZE;
+        this.durabilityWindowNanos = durabilityWindow.toNanos();
+    }
+
+    /**
+     * @param forceTimeout maximum time a writer waits for its records to be forced before the journal fails
+     */
+    @Value("${bank.journal.force-timeout:10s}")
+    public void setForceTimeout(Duration forceTimeout) {
+        if (forceTimeout.isNegative() || forceTimeout.isZero()) {
+            throw new IllegalArgumentException("force timeout must be positive, but was " + forceTimeout);
+        }
+        this.forceTimeoutNanos = forceTimeout.toNanos();
+    }
+
+    /**
+     * @param interval  time between two snapshots, zero to write no snapshots
+     * @param retention number of snapshots kept
+     */
+    @Autowired
+    public void configureSnapshots(@Value("${bank.journal.snapshot.interval:5m}") Duration interval,
+                                   @Value("${bank.journal.snapshot.retention:2}") int retention) {
+        if (interval.isNegative()) {
+            throw new IllegalArgumentException("snapshot interval must not be negative, but was " + interval);
+        }
+        if (retention < 1) {
+            throw new IllegalArgumentException("snapshot retention must be positive, but was " + retention);
+        }
+        this.snapshotIntervalNanos = interval.toNanos();
+        this.snapshotRetention = retention;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TimeGauge.builder("bank.journal.recovery", this, TimeUnit.NANOSECONDS, service -> service.recoveryNanos)
+                .description("Duration of the journal recovery on startup")
+                .register(registry);
+        Gauge.builder("bank.journal.recovery.records", this, service -> service.recoveredRecords)
+                .description("Journal records replayed after the latest snapshot on startup")
+                .register(registry);
+        FunctionCounter.builder("bank.journal.snapshots", this, service -> service.snapshotsWritten)
+                .description("Journal snapshots written")
+                .register(registry);
+        Gauge.builder("bank.journal.snapshot.sequence", this, service -> service.snapshotSequence)
+                .description("Journal sequence of the latest snapshot")
+                .register(registry);
+    }
+
+    /**
+     * Changes of a transaction, appended before its commit and reverted on rollback
+     */
+    private final class Pending implements TransactionSynchronization {
+
+        private final List<JournalRecord> records = new ArrayList<>();
+        private final List<Runnable> undos = new ArrayList<>();
+
+        /**
+         * Changes are reverted before the account locks of the transaction are released
+         */
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!records.isEmpty()) {
+                awaitForced(append(records));
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(MappedJournalPersistenceService.this);
+            if (status != STATUS_COMMITTED) {
+                for (int i = undos.size() - 1; i >= 0; i--) {
+                    undos.get(i).run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay of the journal, from a position after the given sequence
+     */
+    private static final class Replay {
+
+        private long position;
+        private long sequence;
+        private long records;
+
+        Replay(long position, long sequence) {
+            this.position = position;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Indexed account
+     */
+    static final class Account {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        final long number;
+        final long createdAt;
+        long balance;
+        long updatedAt;
+
+        Account(long number, long createdAt, long balance, long updatedAt) {
+            this.number = number;
+            this.createdAt = createdAt;
+            this.balance = balance;
+            this.updatedAt = updatedAt;
+        }
+
+        /**
+         * Revert a balance change. Other changes made meanwhile are kept
+         */
+        void revert(long difference, long timestamp, long previousUpdatedAt) {
+            lock.lock();
+            try {
+                balance -= difference;
+                if (updatedAt == timestamp) {
+                    updatedAt = previousUpdatedAt;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void restore(long balance, long updatedAt) {
+            lock.lock();
+            try {
+                this.balance = balance;
+                this.updatedAt = updatedAt;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        AccountEntity toEntity() {
+            AccountEntity entity = new AccountEntity();
+            entity.setNumber(number);
+            entity.setCreatedAt(createdAt);
+            lock.lock();
+            try {
+                entity.setBalance(balance);
+                entity.setUpdatedAt(updatedAt);
+            } finally {
+                lock.unlock();
+            }
+            entity.markNotNew();
+            return entity;
+        }
+    }
+
+    /**
+     * Positions of the journal entries of an account, in the order of appending
+     */
+    static final class History {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        long[] positions;
+        int size;
+
+        History() {
+            this.positions = new long[8];
+        }
+
+        /**
+         * History of the given positions, e.g. of a snapshot
+         */
+        History(long[] positions) {
+            this.positions = positions;
+            this.size = positions.length;
+        }
+
+        void add(long position) {
+            lock.lock();
+            try {
+                if (size == positions.length) {
+                    // positions below the size are never changed, so readers may keep iterating the old array
+                    long[] grown = new long[Math.max(8, size * 2)];
+                    System.arraycopy(positions, 0, grown, 0, size);
+                    positions = grown;
+                }
+                positions[size++] = position;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Record of the journal. Unused fields are zero
+     */
+    static final class JournalRecord {
+
+        byte kind;
+        boolean last;
+        long sequence;
+        long transactionId;
+        long accountNumber;
+        long counterpartyAccountNumber;
+        long amount;
+        long timestamp;
+        long updatedAt;
+
+        /**
+         * Created account, the amount is its balance and the timestamp its creation timestamp
+         */
+        static JournalRecord account(long accountNumber, long balance, long createdAt, long updatedAt) {
+            JournalRecord record = new JournalRecord();
+            record.kind = ACCOUNT;
+            record.accountNumber = accountNumber;
+            record.amount = balance;
+            record.timestamp = createdAt;
+            record.updatedAt = updatedAt;
+            return record;
+        }
+
+        /**
+         * Balance change, the amount is added to the balance
+         */
+        static JournalRecord balanceChange(long accountNumber, long difference, long timestamp) {
+            JournalRecord record = new JournalRecord();
+            record.kind = BALANCE_CHANGE;
+            record.accountNumber = accountNumber;
+            record.amount = difference;
+            record.timestamp = timestamp;
+            return record;
+        }
+
+        /**
+         * Balance replaced by the amount
+         */
+        static JournalRecord balanceSet(long accountNumber, long balance, long timestamp) {
+            JournalRecord record = new JournalRecord();
+            record.kind = BALANCE_SET;
+            record.accountNumber = accountNumber;
+            record.amount = balance;
+            record.timestamp = timestamp;
+            return record;
+        }
+
+        /**
+         * Transaction journal entry
+         */
+        static JournalRecord entry(TransactionEntity entry) {
+            JournalRecord record = new JournalRecord();
+            record.kind = (byte) (ENTRY + entry.getType().ordinal());
+            record.transactionId = entry.getTransactionId();
+            record.accountNumber = entry.getAccountNumber();
+            record.counterpartyAccountNumber = entry.getCounterpartyAccountNumber() == null ? 0 : entry.getCounterpartyAccountNumber();
+            record.amount = entry.getAmount();
+            record.timestamp = entry.getTimestamp();
+            return record;
+        }
+
+        void encode(ByteBuffer buffer, boolean last) {
+            buffer.put(KIND, kind)
+                    .put(FLAGS, last ? LAST_IN_GROUP : 0)
+                    .putLong(SEQUENCE, sequence)
+                    .putLong(TRANSACTION_ID, transactionId)
+                    .putLong(ACCOUNT_NUMBER, accountNumber)
+                    .putLong(COUNTERPARTY_ACCOUNT_NUMBER, counterpartyAccountNumber)
+                    .putLong(AMOUNT, amount)
+                    .putLong(TIMESTAMP, timestamp)
+                    .putLong(UPDATED_AT, updatedAt);
+            buffer.putInt(CHECKSUM, checksum(buffer.array()));
+        }
+
+        /**
+         * Decode a record
+         *
+         * @param buffer record bytes
+         * @return record, or null at the end of the journal or if the record is torn
+         */
+        static JournalRecord decode(ByteBuffer buffer) {
+            byte kind = buffer.get(KIND);
+            if (kind == 0 || buffer.getInt(CHECKSUM) != checksum(buffer.array())) {
+                return null;
+            }
+            JournalRecord record = new JournalRecord();
+            record.kind = kind;
+            record.last = (buffer.get(FLAGS) & LAST_IN_GROUP) != 0;
+            record.sequence = buffer.getLong(SEQUENCE);
+            record.transactionId = buffer.getLong(TRANSACTION_ID);
+            record.accountNumber = buffer.getLong(ACCOUNT_NUMBER);
+            record.counterpartyAccountNumber = buffer.getLong(COUNTERPARTY_ACCOUNT_NUMBER);
+            record.amount = buffer.getLong(AMOUNT);
+            record.timestamp = buffer.getLong(TIMESTAMP);
+            record.updatedAt = buffer.getLong(UPDATED_AT);
+            return record;
+        }
+
+        /**
+         * Checksum of the record bytes, without the checksum itself
+         */
+        private static int checksum(byte[] bytes) {
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, 0, CHECKSUM);
+            crc.update(bytes, SEQUENCE, RECORD_SIZE - SEQUENCE);
+            return (int) crc.getValue();
+        }
+    }
+
+    /**
+     * Segment file mapped into memory
+     */
+    private static final class Segment {
+
+        private final long index;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, long index, long size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                return new Segment(index, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.warn("Closing journal segment {} failed", index, ex);
+            }
+        }
+    }
+}
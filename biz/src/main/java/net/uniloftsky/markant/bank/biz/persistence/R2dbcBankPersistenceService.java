@@ -0,0 +1,201 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * R2DBC persistence service. Runs the same statements as the JPA persistence service, balance updates read the updated
+ * row from the H2 {@code FINAL TABLE} of the data change, journal pages are read by keyset.
+ * <p>
+ * Statements join the reactive transaction of the subscriber, if any
+ */
+@Service
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "r2dbc")
+public class R2dbcBankPersistenceService implements ReactiveBankPersistenceService {
+
+    private static final String TRANSACTION_COLUMNS = "id, type, account_number, counterparty_account_number, amount, timestamp";
+
+    private DatabaseClient databaseClient;
+
+    @Override
+    public Mono<AccountEntity> getAccount(long accountNumber) {
+        assert accountNumber > 0;
+
+        return databaseClient.sql("SELECT number, balance, created_at, updated_at FROM bank_account WHERE number = :accountNumber")
+                .bind("accountNumber", accountNumber)
+                .map(R2dbcBankPersistenceService::mapAccount)
+                .one();
+    }
+
+    @Override
+    public Mono<Long> debitIfSufficient(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return updateBalance("SELECT balance FROM FINAL TABLE (" +
+                "UPDATE bank_account SET balance = balance - :amount, updated_at = :timestamp " +
+                "WHERE number = :accountNumber AND balance >= :amount)", accountNumber, amount, timestamp);
+    }
+
+    @Override
+    public Mono<Long> credit(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return updateBalance("SELECT balance FROM FINAL TABLE (" +
+                "UPDATE bank_account SET balance = balance + :amount, updated_at = :timestamp " +
+                "WHERE number = :accountNumber)", accountNumber, amount, timestamp);
+    }
+
+    @Override
+    public Mono<Long> creditOrCreate(long accountNumber, long amount, long timestamp) {
+        assert accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return updateBalance("SELECT balance FROM FINAL TABLE (" +
+                "MERGE INTO bank_account a USING (VALUES (CAST(:accountNumber AS BIGINT))) s(number) ON a.number = s.number " +
+                "WHEN MATCHED THEN UPDATE SET balance = a.balance + :amount, updated_at = :timestamp " +
+                "WHEN NOT MATCHED THEN INSERT (number, balance, created_at, updated_at) VALUES (:accountNumber, :amount, :timestamp, :timestamp))",
+                accountNumber, amount, timestamp);
+    }
+
+    @Override
+    public Flux<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return databaseClient.sql("SELECT " + TRANSACTION_COLUMNS + " FROM bank_transaction " +
+                        "WHERE account_number = :accountNumber AND type IN (:types) " +
+                        "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+                .bind("accountNumber", accountNumber)
+                .bind("types", typeNames(types))
+                .bind("limit", limit)
+                .map(R2dbcBankPersistenceService::mapTransaction)
+                .all();
+    }
+
+    @Override
+    public Flux<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit) {
+        assert accountNumber > 0 && !types.isEmpty() && limit > 0;
+
+        return databaseClient.sql("SELECT " + TRANSACTION_COLUMNS + " FROM bank_transaction " +
+                        "WHERE account_number = :accountNumber AND type IN (:types) " +
+                        "AND (timestamp < :timestamp OR (timestamp = :timestamp AND id < :id)) " +
+                        "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+                .bind("accountNumber", accountNumber)
+                .bind("types", typeNames(types))
+                .bind("timestamp", afterTimestamp)
+                .bind("id", afterId)
+                .bind("limit", limit)
+                .map(R2dbcBankPersistenceService::mapTransaction)
+                .all();
+    }
+
+    @Override
+    public Flux<TransactionEntity> streamTransactions(long accountNumber, Set<TransactionEntryType> types) {
+        assert accountNumber > 0 && !types.isEmpty();
+
+        return databaseClient.sql("SELECT " + TRANSACTION_COLUMNS + " FROM bank_transaction " +
+                        "WHERE account_number = :accountNumber AND type IN (:types) " +
+                        "ORDER BY timestamp DESC, id DESC")
+                .bind("accountNumber", accountNumber)
+                .bind("types", typeNames(types))
+                .map(R2dbcBankPersistenceService::mapTransaction)
+                .all();
+    }
+
+    @Override
+    public Mono<TransactionEntity> createDepositTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return insert(createEntry(id, TransactionEntryType.DEPOSIT, accountNumber, null, amount, timestamp));
+    }
+
+    @Override
+    public Mono<TransactionEntity> createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp) {
+        assert id > 0 && accountNumber > 0 && amount > 0 && timestamp > 0;
+
+        return insert(createEntry(id, TransactionEntryType.WITHDRAWAL, accountNumber, null, amount, timestamp));
+    }
+
+    @Override
+    public Mono<TransactionEntity> createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp) {
+        assert id > 0 && fromAccountNumber > 0 && toAccountNumber > 0 && amount > 0 && timestamp > 0;
+
+        Mono<TransactionEntity> outgoingTransfer = insert(createEntry(id, TransactionEntryType.TRANSFER_OUT, fromAccountNumber, toAccountNumber, amount, timestamp));
+        // the target gets its own entry, unless it's the initiator itself
+        if (fromAccountNumber == toAccountNumber) {
+            return outgoingTransfer;
+        }
+        return outgoingTransfer.flatMap(entry -> insert(createEntry(id, TransactionEntryType.TRANSFER_IN, toAccountNumber, fromAccountNumber, amount, timestamp))
+                .thenReturn(entry));
+    }
+
+    /**
+     * Run a balance update reading the new balance
+     *
+     * @return new balance, empty if no row was updated
+     */
+    private Mono<Long> updateBalance(String sql, long accountNumber, long amount, long timestamp) {
+        return databaseClient.sql(sql)
+                .bind("accountNumber", accountNumber)
+                .bind("amount", amount)
+                .bind("timestamp", timestamp)
+                .map(row -> row.get("balance", Long.class))
+                .one();
+    }
+
+    private Mono<TransactionEntity> insert(TransactionEntity entry) {
+        DatabaseClient.GenericExecuteSpec statement = databaseClient.sql("INSERT INTO bank_transaction (" + TRANSACTION_COLUMNS + ") " +
+                        "VALUES (:id, :type, :accountNumber, :counterpartyAccountNumber, :amount, :timestamp)")
+                .bind("id", entry.getTransactionId())
+                .bind("type", entry.getType().name())
+                .bind("accountNumber", entry.getAccountNumber())
+                .bind("amount", entry.getAmount())
+                .bind("timestamp", entry.getTimestamp());
+        statement = entry.getCounterpartyAccountNumber() == null
+                ? statement.bindNull("counterpartyAccountNumber", Long.class)
+                : statement.bind("counterpartyAccountNumber", entry.getCounterpartyAccountNumber());
+        return statement.then().thenReturn(entry);
+    }
+
+    private static List<String> typeNames(Set<TransactionEntryType> types) {
+        return types.stream().map(TransactionEntryType::name).toList();
+    }
+
+    private static AccountEntity mapAccount(Readable row) {
+        AccountEntity account = new AccountEntity();
+        account.setNumber(row.get("number", Long.class));
+        account.setBalance(row.get("balance", Long.class));
+        account.setCreatedAt(row.get("created_at", Long.class));
+        Long updatedAt = row.get("updated_at", Long.class);
+        account.setUpdatedAt(updatedAt == null ? 0 : updatedAt);
+        return account;
+    }
+
+    private static TransactionEntity mapTransaction(Readable row) {
+        return createEntry(row.get("id", Long.class), TransactionEntryType.valueOf(row.get("type", String.class)),
+                row.get("account_number", Long.class), row.get("counterparty_account_number", Long.class),
+                row.get("amount", Long.class), row.get("timestamp", Long.class));
+    }
+
+    private static TransactionEntity createEntry(long id, TransactionEntryType type, long accountNumber, Long counterpartyAccountNumber, long amount, long timestamp) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(id);
+        entry.setType(type);
+        entry.setAccountNumber(accountNumber);
+        entry.setCounterpartyAccountNumber(counterpartyAccountNumber);
+        entry.setAmount(amount);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+
+    @Autowired
+    public void setDatabaseClient(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+}
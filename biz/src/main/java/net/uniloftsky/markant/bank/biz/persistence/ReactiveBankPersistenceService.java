@@ -0,0 +1,117 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * Reactive counterpart of the {@link BankPersistenceService}.
+ * Responsible only for saving and retrieving data from the database.
+ */
+public interface ReactiveBankPersistenceService {
+
+    /**
+     * Get account by account number
+     *
+     * @param accountNumber account number
+     * @return account entity, empty if the account doesn't exist
+     */
+    Mono<AccountEntity> getAccount(long accountNumber);
+
+    /**
+     * Subtract the amount from the account balance if the balance is sufficient, with a single conditional update
+     *
+     * @param accountNumber account number
+     * @param amount        amount to subtract in minor units
+     * @param timestamp     timestamp of the update in milliseconds
+     * @return new balance, empty if the account doesn't exist or its balance is less than the amount
+     */
+    Mono<Long> debitIfSufficient(long accountNumber, long amount, long timestamp);
+
+    /**
+     * Add the amount to the balance of an existing account with a single update
+     *
+     * @param accountNumber account number
+     * @param amount        amount to add in minor units
+     * @param timestamp     timestamp of the update in milliseconds
+     * @return new balance, empty if the account doesn't exist
+     */
+    Mono<Long> credit(long accountNumber, long amount, long timestamp);
+
+    /**
+     * Add the amount to the account balance, creating the account with the amount as its balance if it doesn't exist
+     *
+     * @param accountNumber account number
+     * @param amount        amount to add in minor units
+     * @param timestamp     timestamp of the update in milliseconds
+     * @return new balance
+     */
+    Mono<Long> creditOrCreate(long accountNumber, long amount, long timestamp);
+
+    /**
+     * Get the first entries of the given types of the account journal, most recent first
+     *
+     * @param accountNumber account number
+     * @param types         entry types
+     * @param limit         maximum number of entries
+     * @return journal entries
+     */
+    Flux<TransactionEntity> listTransactions(long accountNumber, Set<TransactionEntryType> types, int limit);
+
+    /**
+     * Get the entries of the given types of the account journal following the given entry, most recent first
+     *
+     * @param accountNumber  account number
+     * @param types          entry types
+     * @param afterTimestamp timestamp of the last entry of the previous page
+     * @param afterId        ID of the last entry of the previous page
+     * @param limit          maximum number of entries
+     * @return journal entries
+     */
+    Flux<TransactionEntity> listTransactionsAfter(long accountNumber, Set<TransactionEntryType> types, long afterTimestamp, long afterId, int limit);
+
+    /**
+     * Stream all entries of the given types of the account journal, most recent first
+     *
+     * @param accountNumber account number
+     * @param types         entry types
+     * @return journal entries
+     */
+    Flux<TransactionEntity> streamTransactions(long accountNumber, Set<TransactionEntryType> types);
+
+    /**
+     * Create a deposit journal entry
+     *
+     * @param id            transaction ID
+     * @param accountNumber account number
+     * @param amount        amount in minor units
+     * @param timestamp     timestamp in milliseconds
+     * @return created entry
+     */
+    Mono<TransactionEntity> createDepositTransaction(long id, long accountNumber, long amount, long timestamp);
+
+    /**
+     * Create a withdrawal journal entry
+     *
+     * @param id            transaction ID
+     * @param accountNumber account number
+     * @param amount        amount in minor units
+     * @param timestamp     timestamp in milliseconds
+     * @return created entry
+     */
+    Mono<TransactionEntity> createWithdrawTransaction(long id, long accountNumber, long amount, long timestamp);
+
+    /**
+     * Create the journal entries of a transfer, one for each party
+     *
+     * @param id                transaction ID
+     * @param fromAccountNumber transfer initiator account number
+     * @param toAccountNumber   transfer target account number
+     * @param amount            amount in minor units
+     * @param timestamp         timestamp in milliseconds
+     * @return created entry of the initiator
+     */
+    Mono<TransactionEntity> createTransferTransaction(long id, long fromAccountNumber, long toAccountNumber, long amount, long timestamp);
+
+}
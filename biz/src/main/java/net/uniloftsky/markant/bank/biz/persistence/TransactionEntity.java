@@ -0,0 +1,184 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Persistence transaction journal entry.
+ * <p>
+ * All transaction types share one table, indexed by account number and timestamp, so the history of an account is read
+ * by one ordered query. An entry is identified by the transaction ID and the entry type, as a transfer has one entry per party
+ */
+@Entity
+@IdClass(TransactionEntity.Key.class)
+@Table(name = "bank_transaction", indexes = {
+        @Index(name = "bank_transaction_account_timestamp_idx", columnList = "account_number, timestamp DESC, id DESC")
+})
+public class TransactionEntity implements Persistable<TransactionEntity.Key> {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private long id;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private TransactionEntryType type;
+
+    /**
+     * Account the entry belongs to
+     */
+    @Column(name = "account_number", nullable = false)
+    private long accountNumber;
+
+    /**
+     * Other party of a transfer, null for deposits and withdrawals
+     */
+    @Column(name = "counterparty_account_number")
+    private Long counterpartyAccountNumber;
+
+    /**
+     * Amount in minor units, see {@link net.uniloftsky.markant.bank.biz.Money}
+     */
+    @Column(name = "amount", nullable = false)
+    private long amount;
+
+    @Column(name = "timestamp", nullable = false)
+    private long timestamp;
+
+    /**
+     * Ids are assigned, so the entity is new until it's persisted or loaded
+     */
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public Key getId() {
+        return new Key(id, type);
+    }
+
+    public long getTransactionId() {
+        return id;
+    }
+
+    public void setTransactionId(long id) {
+        this.id = id;
+    }
+
+    public TransactionEntryType getType() {
+        return type;
+    }
+
+    public void setType(TransactionEntryType type) {
+        this.type = type;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(long accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public Long getCounterpartyAccountNumber() {
+        return counterpartyAccountNumber;
+    }
+
+    public void setCounterpartyAccountNumber(Long counterpartyAccountNumber) {
+        this.counterpartyAccountNumber = counterpartyAccountNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PrePersist
+    @PostLoad
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransactionEntity that = (TransactionEntity) o;
+        return id == that.id && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "id=" + id +
+                ", type=" + type +
+                ", accountNumber=" + accountNumber +
+                ", counterpartyAccountNumber=" + counterpartyAccountNumber +
+                ", amount=" + amount +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+
+    /**
+     * Primary key of the journal entry
+     */
+    public static class Key implements Serializable {
+
+        private long id;
+        private TransactionEntryType type;
+
+        public Key() {
+        }
+
+        public Key(long id, TransactionEntryType type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public TransactionEntryType getType() {
+            return type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return id == that.id && type == that.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, type);
+        }
+    }
+}
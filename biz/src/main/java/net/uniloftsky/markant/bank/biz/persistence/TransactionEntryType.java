@@ -0,0 +1,30 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+/**
+ * Type of the transaction journal entry.
+ * <p>
+ * A transfer is recorded as two entries, one for every party, so the journal of an account contains all of its transactions
+ */
+public enum TransactionEntryType {
+
+    /**
+     * Deposit to the account
+     */
+    DEPOSIT,
+
+    /**
+     * Withdrawal from the account
+     */
+    WITHDRAWAL,
+
+    /**
+     * Transfer from the account, the counterparty is the transfer target
+     */
+    TRANSFER_OUT,
+
+    /**
+     * Transfer to the account, the counterparty is the transfer initiator
+     */
+    TRANSFER_IN
+
+}
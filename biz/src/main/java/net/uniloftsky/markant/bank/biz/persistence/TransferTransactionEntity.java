@@ -1,97 +0,0 @@
-package net.uniloftsky.markant.bank.biz.persistence;
-
-import jakarta.persistence.Column;
-import jakarta.persistence.Entity;
-import jakarta.persistence.Id;
-import jakarta.persistence.Table;
-
-import java.util.Objects;
-import java.util.UUID;
-
-/**
- * Persistence transfer transaction entity
- */
-@Entity
-@Table(name = "transfer_transaction")
-public class TransferTransactionEntity {
-
-    @Id
-    @Column(name = "id")
-    private UUID id;
-
-    @Column(name = "amount")
-    private String amount;
-
-    @Column(name = "timestamp")
-    private long timestamp;
-
-    @Column(name = "from_account_number")
-    private long fromAccountNumber;
-
-    @Column(name = "to_account_number")
-    private long toAccountNumber;
-
-    public UUID getId() {
-        return id;
-    }
-
-    public void setId(UUID id) {
-        this.id = id;
-    }
-
-    public String getAmount() {
-        return amount;
-    }
-
-    public void setAmount(String amount) {
-        this.amount = amount;
-    }
-
-    public long getTimestamp() {
-        return timestamp;
-    }
-
-    public void setTimestamp(long timestamp) {
-        this.timestamp = timestamp;
-    }
-
-    public long getFromAccountNumber() {
-        return fromAccountNumber;
-    }
-
-    public void setFromAccountNumber(long fromAccountNumber) {
-        this.fromAccountNumber = fromAccountNumber;
-    }
-
-    public long getToAccountNumber() {
-        return toAccountNumber;
-    }
-
-    public void setToAccountNumber(long toAccountNumber) {
-        this.toAccountNumber = toAccountNumber;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        TransferTransactionEntity that = (TransferTransactionEntity) o;
-        return Objects.equals(id, that.id);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hashCode(id);
-    }
-
-    @Override
-    public String toString() {
-        return "{" +
-                "id=" + id +
-                ", amount='" + amount + '\'' +
-                ", timestamp=" + timestamp +
-                ", fromAccountNumber=" + fromAccountNumber +
-                ", toAccountNumber=" + toAccountNumber +
-                '}';
-    }
-}
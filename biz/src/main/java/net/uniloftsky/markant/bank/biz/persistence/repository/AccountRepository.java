@@ -2,11 +2,35 @@ package net.uniloftsky.markant.bank.biz.persistence.repository;
 
 import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 /**
- * JPA repository for Bank Account entities
+ * JPA repository for Bank Account entities.
+ * <p>
+ * Balance updates are single H2 statements reading the updated row from the {@code FINAL TABLE} of the data change,
+ * so the balance is checked, changed and returned atomically by the database
  */
 @Repository
 public interface AccountRepository extends JpaRepository<AccountEntity, Long> {
+
+    @Query(value = "SELECT balance FROM FINAL TABLE (" +
+            "UPDATE bank_account SET balance = balance - :amount, updated_at = :timestamp " +
+            "WHERE number = :accountNumber AND balance >= :amount)", nativeQuery = true)
+    Optional<Long> debitIfSufficient(@Param("accountNumber") long accountNumber, @Param("amount") long amount, @Param("timestamp") long timestamp);
+
+    @Query(value = "SELECT balance FROM FINAL TABLE (" +
+            "UPDATE bank_account SET balance = balance + :amount, updated_at = :timestamp " +
+            "WHERE number = :accountNumber)", nativeQuery = true)
+    Optional<Long> credit(@Param("accountNumber") long accountNumber, @Param("amount") long amount, @Param("timestamp") long timestamp);
+
+    @Query(value = "SELECT balance FROM FINAL TABLE (" +
+            "MERGE INTO bank_account a USING (VALUES (CAST(:accountNumber AS BIGINT))) s(number) ON a.number = s.number " +
+            "WHEN MATCHED THEN UPDATE SET balance = a.balance + :amount, updated_at = :timestamp " +
+            "WHEN NOT MATCHED THEN INSERT (number, balance, created_at, updated_at) VALUES (:accountNumber, :amount, :timestamp, :timestamp))",
+            nativeQuery = true)
+    long creditOrCreate(@Param("accountNumber") long accountNumber, @Param("amount") long amount, @Param("timestamp") long timestamp);
 }
@@ -0,0 +1,57 @@
+package net.uniloftsky.markant.bank.biz.persistence.repository;
+
+import jakarta.persistence.QueryHint;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * JPA repository for transaction journal entries.
+ * <p>
+ * All queries are served by the {@code (account_number, timestamp DESC, id DESC)} index, so no sort is needed.
+ * Pages are read by keyset: the next page starts after the timestamp and ID of the last entry of the previous one.
+ * Complete histories are streamed in batches of {@value #STREAM_FETCH_SIZE} rows instead
+ */
+@Repository
+public interface TransactionRepository extends JpaRepository<TransactionEntity, TransactionEntity.Key> {
+
+    /**
+     * Number of rows fetched from the database at once by streaming queries
+     */
+    int STREAM_FETCH_SIZE = 500;
+
+    List<TransactionEntity> findAllByAccountNumberOrderByTimestampDesc(long accountNumber);
+
+    @Query("SELECT t FROM TransactionEntity t WHERE t.accountNumber = :accountNumber AND t.type IN :types " +
+            "ORDER BY t.timestamp DESC, t.id DESC")
+    List<TransactionEntity> findFirstPage(@Param("accountNumber") long accountNumber, @Param("types") Collection<TransactionEntryType> types,
+                                          Limit limit);
+
+    @Query("SELECT t FROM TransactionEntity t WHERE t.accountNumber = :accountNumber AND t.type IN :types " +
+            "AND (t.timestamp < :timestamp OR (t.timestamp = :timestamp AND t.id < :id)) " +
+            "ORDER BY t.timestamp DESC, t.id DESC")
+    List<TransactionEntity> findPageAfter(@Param("accountNumber") long accountNumber, @Param("types") Collection<TransactionEntryType> types,
+                                          @Param("timestamp") long timestamp, @Param("id") long id, Limit limit);
+
+    /**
+     * Stream all entries of the given types. The stream must be consumed and closed within a transaction
+     */
+    @Query("SELECT t FROM TransactionEntity t WHERE t.accountNumber = :accountNumber AND t.type IN :types " +
+            "ORDER BY t.timestamp DESC, t.id DESC")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<TransactionEntity> streamAll(@Param("accountNumber") long accountNumber, @Param("types") Collection<TransactionEntryType> types);
+
+}
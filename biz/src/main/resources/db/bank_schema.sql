@@ -0,0 +1,22 @@
+-- Schema of the bank tables. The JPA persistence creates the tables from the entities through Hibernate, the script
+-- creates the same tables for the R2DBC persistence, which has no schema generation.
+
+CREATE TABLE IF NOT EXISTS bank_account (
+    number     BIGINT NOT NULL,
+    balance    BIGINT NOT NULL,
+    created_at BIGINT NOT NULL,
+    updated_at BIGINT,
+    PRIMARY KEY (number)
+);
+
+CREATE TABLE IF NOT EXISTS bank_transaction (
+    id                          BIGINT      NOT NULL,
+    type                        VARCHAR(16) NOT NULL,
+    account_number              BIGINT      NOT NULL,
+    counterparty_account_number BIGINT,
+    amount                      BIGINT      NOT NULL,
+    timestamp                   BIGINT      NOT NULL,
+    PRIMARY KEY (id, type)
+);
+
+CREATE INDEX IF NOT EXISTS bank_transaction_account_timestamp_idx ON bank_transaction (account_number, timestamp DESC, id DESC);
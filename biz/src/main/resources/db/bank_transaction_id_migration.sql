@@ -0,0 +1,37 @@
+-- Replaces the random UUID transaction IDs of a database created before the 64-bit transaction IDs, to be run after
+-- bank_transaction_migration.sql. Like that script, it's meant for databases kept between application versions only.
+-- The new IDs are composed like the generated ones, from the transaction timestamp, the node ID 1023 and a sequence
+-- within the millisecond, so the history keeps its order. Both entries of a transfer keep sharing their ID.
+-- The sequence has 12 bits: a millisecond with more than 4096 transactions fails the migration on the sequence check
+-- instead of spilling into the node bits, where its IDs could collide with generated ones. A transaction before the
+-- epoch of the IDs, 2024-01-01, would get a negative ID and fails the migration on the timestamp check, such
+-- transactions are not mapped. The transactions are not changed by then, only the bank_transaction_id table is left
+-- behind.
+
+CREATE TABLE bank_transaction_id (
+    old_id    UUID   NOT NULL PRIMARY KEY,
+    timestamp BIGINT NOT NULL CONSTRAINT bank_transaction_id_timestamp_check CHECK (timestamp >= 1704067200000),
+    sequence  BIGINT NOT NULL CONSTRAINT bank_transaction_id_sequence_check CHECK (sequence < 4096),
+    new_id    BIGINT NOT NULL
+);
+
+INSERT INTO bank_transaction_id (old_id, timestamp, sequence, new_id)
+SELECT id, timestamp, sequence, (timestamp - 1704067200000) * 4194304 + 1023 * 4096 + sequence
+FROM (SELECT id, timestamp, ROW_NUMBER() OVER (PARTITION BY timestamp ORDER BY id) - 1 AS sequence
+      FROM (SELECT DISTINCT id, timestamp FROM bank_transaction) transactions) sequenced;
+
+ALTER TABLE bank_transaction ADD COLUMN new_id BIGINT;
+
+UPDATE bank_transaction
+SET new_id = (SELECT new_id FROM bank_transaction_id WHERE old_id = bank_transaction.id);
+
+DROP INDEX IF EXISTS bank_transaction_account_timestamp_idx;
+ALTER TABLE bank_transaction DROP PRIMARY KEY;
+ALTER TABLE bank_transaction DROP COLUMN id;
+ALTER TABLE bank_transaction ALTER COLUMN new_id RENAME TO id;
+ALTER TABLE bank_transaction ALTER COLUMN id SET NOT NULL;
+ALTER TABLE bank_transaction ADD PRIMARY KEY (id, type);
+
+CREATE INDEX bank_transaction_account_timestamp_idx ON bank_transaction (account_number, timestamp DESC, id DESC);
+
+DROP TABLE bank_transaction_id;
@@ -0,0 +1,37 @@
+-- Moves the transactions of a database created before the unified transaction journal into the bank_transaction table.
+-- The in-memory database of the prototype is created by Hibernate and needs no migration, the script is meant for
+-- databases kept between application versions. Transfers are recorded for both parties, a transfer to the same
+-- account is recorded once.
+
+CREATE TABLE IF NOT EXISTS bank_transaction (
+    id                          UUID        NOT NULL,
+    type                        VARCHAR(16) NOT NULL,
+    account_number              BIGINT      NOT NULL,
+    counterparty_account_number BIGINT,
+    amount                      BIGINT      NOT NULL,
+    timestamp                   BIGINT      NOT NULL,
+    PRIMARY KEY (id, type)
+);
+
+CREATE INDEX IF NOT EXISTS bank_transaction_account_timestamp_idx ON bank_transaction (account_number, timestamp DESC, id DESC);
+
+INSERT INTO bank_transaction (id, type, account_number, counterparty_account_number, amount, timestamp)
+SELECT id, 'DEPOSIT', account_number, NULL, amount, timestamp
+FROM deposit_transaction;
+
+INSERT INTO bank_transaction (id, type, account_number, counterparty_account_number, amount, timestamp)
+SELECT id, 'WITHDRAWAL', account_number, NULL, amount, timestamp
+FROM withdraw_transaction;
+
+INSERT INTO bank_transaction (id, type, account_number, counterparty_account_number, amount, timestamp)
+SELECT id, 'TRANSFER_OUT', from_account_number, to_account_number, amount, timestamp
+FROM transfer_transaction;
+
+INSERT INTO bank_transaction (id, type, account_number, counterparty_account_number, amount, timestamp)
+SELECT id, 'TRANSFER_IN', to_account_number, from_account_number, amount, timestamp
+FROM transfer_transaction
+WHERE to_account_number <> from_account_number;
+
+DROP TABLE deposit_transaction;
+DROP TABLE withdraw_transaction;
+DROP TABLE transfer_transaction;
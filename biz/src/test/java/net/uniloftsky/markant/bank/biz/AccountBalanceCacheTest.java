@@ -0,0 +1,160 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountBalanceCacheTest {
+
+    private final AccountNumber accountNumber = AccountNumber.of(1234567890L);
+    private final AtomicLong nanos = new AtomicLong();
+    private final AccountBalanceCache cache = new AccountBalanceCache(2, Duration.ofSeconds(30), nanos::get);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testLoadedOnceAndServedFromCache() {
+
+        // given
+        AtomicInteger loads = new AtomicInteger();
+
+        // when
+        BankAccount first = cache.get(accountNumber, () -> {
+            loads.incrementAndGet();
+            return new BankAccount(accountNumber, Money.parse("10.00"));
+        });
+        BankAccount second = cache.get(accountNumber, () -> {
+            loads.incrementAndGet();
+            return new BankAccount(accountNumber, Money.parse("99.00"));
+        });
+
+        // then
+        assertEquals(1, loads.get());
+        assertEquals(Money.parse("10.00"), first.getBalance());
+        assertEquals(Money.parse("10.00"), second.getBalance());
+    }
+
+    @Test
+    public void testWriteThrough() {
+
+        // given
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.parse("10.00")));
+        long version = cache.version(accountNumber);
+
+        // when
+        cache.put(new BankAccount(accountNumber, Money.parse("15.00")));
+
+        // then
+        assertTrue(cache.version(accountNumber) > version);
+        assertEquals(Money.parse("15.00"), cache.get(accountNumber, () -> fail("cached balance expected")).getBalance());
+    }
+
+    @Test
+    public void testLoadRacingWithWriteIsNotCached() {
+
+        // given
+        // the balance is changed and evicted while the old balance is being read from the database
+        AccountBalanceCache evictingCache = new AccountBalanceCache(0, Duration.ofSeconds(30), nanos::get);
+
+        // when
+        BankAccount loaded = evictingCache.get(accountNumber, () -> {
+            evictingCache.put(new BankAccount(accountNumber, Money.parse("15.00")));
+            return new BankAccount(accountNumber, Money.parse("10.00"));
+        });
+
+        // then
+        // the read balance is returned, but isn't cached over the newer one
+        assertEquals(Money.parse("10.00"), loaded.getBalance());
+        assertEquals(0, evictingCache.size());
+    }
+
+    @Test
+    public void testWriteWithinTransactionIsCachedOnCommit() {
+
+        // given
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.parse("10.00")));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        cache.put(new BankAccount(accountNumber, Money.parse("15.00")));
+
+        // then
+        assertEquals(Money.parse("10.00"), cache.get(accountNumber, () -> fail("cached balance expected")).getBalance());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(Money.parse("15.00"), cache.get(accountNumber, () -> fail("cached balance expected")).getBalance());
+    }
+
+    @Test
+    public void testWriteWithinRolledBackTransactionIsDiscarded() {
+
+        // given
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.parse("10.00")));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        cache.put(new BankAccount(accountNumber, Money.parse("15.00")));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // then
+        assertEquals(Money.parse("10.00"), cache.get(accountNumber, () -> fail("cached balance expected")).getBalance());
+    }
+
+    @Test
+    public void testExpiration() {
+
+        // given
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.parse("10.00")));
+
+        // when
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+        BankAccount result = cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.parse("20.00")));
+
+        // then
+        assertEquals(Money.parse("20.00"), result.getBalance());
+    }
+
+    @Test
+    public void testMetrics() {
+
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        // when
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.ZERO));
+        cache.get(accountNumber, () -> new BankAccount(accountNumber, Money.ZERO));
+        for (long number = 1000000001L; number <= 1000000002L; number++) {
+            AccountNumber other = AccountNumber.of(number);
+            cache.get(other, () -> new BankAccount(other, Money.ZERO));
+        }
+
+        // then
+        // three misses, one hit, and one of the three accounts evicted by the size of two
+        assertEquals(1, registry.get("bank.account-cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(3, registry.get("bank.account-cache.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("bank.account-cache.evictions").functionCounter().count());
+        assertEquals(0.25, registry.get("bank.account-cache.hit-ratio").gauge().value());
+        assertEquals(2, registry.get("bank.account-cache.size").gauge().value());
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new AccountBalanceCache(-1, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new AccountBalanceCache(1, Duration.ofSeconds(-1)));
+    }
+}
@@ -0,0 +1,182 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.uniloftsky.markant.bank.biz.AccountLockCoordinator.AccountLocks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountLockCoordinatorTest {
+
+    /**
+     * Dummy account numbers
+     */
+    private final AccountNumber accountNumber = AccountNumber.of(1234567890L);
+    private final AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
+
+    private AccountLockCoordinator lockCoordinator;
+
+    @BeforeEach
+    void setUp() {
+        lockCoordinator = new AccountLockCoordinator();
+        lockCoordinator.setTimeout(Duration.ofMillis(50));
+    }
+
+    @Test
+    public void testLockIsReleasedOnClose() throws Exception {
+
+        // given
+        AccountLocks locks = lockCoordinator.lock(accountNumber, targetAccountNumber);
+
+        // when
+        locks.close();
+
+        // then
+        // another thread can lock both accounts
+        lockInOtherThread(targetAccountNumber, accountNumber).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBusyAccount() {
+
+        // given
+        AccountLocks locks = lockCoordinator.lock(targetAccountNumber);
+
+        // when
+        CompletableFuture<Void> result = lockInOtherThread(accountNumber, targetAccountNumber);
+
+        // then
+        AccountBusyException ex = assertThrows(AccountBusyException.class, () -> unwrap(result));
+        assertEquals(targetAccountNumber, ex.getAccountNumber());
+
+        // the already acquired lock of the other account is released
+        lockInOtherThread(accountNumber).join();
+        locks.close();
+    }
+
+    @Test
+    public void testSameAccountTwice() throws Exception {
+
+        // when
+        AccountLocks locks = lockCoordinator.lock(accountNumber, accountNumber);
+        locks.close();
+
+        // then
+        lockInOtherThread(accountNumber).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAccountsSharingStripe() throws Exception {
+
+        // given
+        // every account is guarded by the single stripe
+        lockCoordinator.setStripes(1);
+
+        // when
+        AccountLocks locks = lockCoordinator.lock(targetAccountNumber, accountNumber);
+        locks.close();
+
+        // then
+        lockInOtherThread(accountNumber, targetAccountNumber).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLockIsHeldUntilTransactionCompletion() throws Exception {
+
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            lockCoordinator.lock(accountNumber).close();
+
+            // when
+            // closed, but the transaction isn't completed yet
+            CompletableFuture<Void> beforeCompletion = lockInOtherThread(accountNumber);
+            assertThrows(AccountBusyException.class, () -> unwrap(beforeCompletion));
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // then
+        lockInOtherThread(accountNumber).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testMetrics() {
+
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        lockCoordinator.setMetrics(new BankMetrics(registry));
+
+        // when
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            lockCoordinator.lock(accountNumber, targetAccountNumber).close();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.beforeCommit(false);
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        lockCoordinator.lock(accountNumber).close();
+
+        // then
+        // the commit is measured only for transaction bound locks
+        assertEquals(2, registry.get(BankMetrics.LOCK_WAIT).timer().count());
+        assertEquals(2, registry.get(BankMetrics.LOCK_HOLD).timer().count());
+        assertEquals(1, registry.get(BankMetrics.COMMIT).timer().count());
+    }
+
+    @Test
+    public void testHotAccounts() throws Exception {
+
+        // given
+        HotAccountTracker hotAccounts = new HotAccountTracker();
+        hotAccounts.setSampleInterval(1);
+        lockCoordinator.setHotAccounts(hotAccounts);
+        AccountLocks locks = lockCoordinator.lock(targetAccountNumber);
+
+        // when
+        CompletableFuture<Void> busy = lockInOtherThread(targetAccountNumber);
+        assertThrows(AccountBusyException.class, () -> unwrap(busy));
+        locks.close();
+        lockCoordinator.lock(accountNumber, targetAccountNumber).close();
+
+        // then
+        // the timed out acquisition is recorded with its wait
+        List<HotAccount> result = hotAccounts.top(10);
+        assertEquals(2, result.size());
+        assertEquals(targetAccountNumber.getNumber(), result.get(0).getAccountNumber());
+        assertEquals(3, result.get(0).getAcquisitions());
+        assertTrue(result.get(0).getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(accountNumber.getNumber(), result.get(1).getAccountNumber());
+    }
+
+    /**
+     * Lock and release the given accounts in another thread
+     */
+    private CompletableFuture<Void> lockInOtherThread(AccountNumber... accountNumbers) {
+        return CompletableFuture.runAsync(() -> lockCoordinator.lock(accountNumbers).close());
+    }
+
+    private static void unwrap(CompletableFuture<Void> future) throws Throwable {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class AccountNumberFilterTest {
+
+    private static final long FIRST_ACCOUNT = 1000000000L;
+
+    @Test
+    public void testPassesEverythingUntilLoaded() {
+
+        // given
+        AccountNumberFilter filter = new AccountNumberFilter(1000, 0.01, DataSize.ofMegabytes(1));
+
+        // when
+        boolean result = filter.mightContain(FIRST_ACCOUNT);
+
+        // then
+        assertFalse(filter.isReady());
+        assertTrue(result);
+    }
+
+    @Test
+    public void testLoad() {
+
+        // given
+        BankPersistenceService persistenceService = mock(BankPersistenceService.class);
+        AccountEntity account = new AccountEntity();
+        account.setNumber(FIRST_ACCOUNT);
+        given(persistenceService.listAccounts()).willReturn(List.of(account));
+        AccountNumberFilter filter = new AccountNumberFilter(1000, 0.01, DataSize.ofMegabytes(1));
+
+        // when
+        filter.load(persistenceService);
+
+        // then
+        assertTrue(filter.isReady());
+        assertTrue(filter.mightContain(FIRST_ACCOUNT));
+        assertFalse(filter.mightContain(FIRST_ACCOUNT + 1));
+    }
+
+    @Test
+    public void testGrowsWithoutFalseNegatives() {
+
+        // given
+        // the first filter is sized for 1000 accounts, 20000 accounts need several more
+        AccountNumberFilter filter = loadedFilter(1000, 0.01, DataSize.ofMegabytes(1));
+        long memoryBefore = filter.memoryBytes();
+
+        // when
+        for (long number = FIRST_ACCOUNT; number < FIRST_ACCOUNT + 20_000; number++) {
+            filter.add(number);
+        }
+
+        // then
+        assertTrue(filter.memoryBytes() > memoryBefore);
+        for (long number = FIRST_ACCOUNT; number < FIRST_ACCOUNT + 20_000; number++) {
+            assertTrue(filter.mightContain(number), "added account " + number + " rejected");
+        }
+        assertTrue(filter.expectedFalsePositiveRate() <= 0.01, "expected rate " + filter.expectedFalsePositiveRate());
+
+        int falsePositives = 0;
+        for (long number = 2000000000L; number < 2000000000L + 100_000; number++) {
+            if (filter.mightContain(number)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100_000 * 0.015, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testRepeatedAddDoesNotGrow() {
+
+        // given
+        AccountNumberFilter filter = loadedFilter(10, 0.01, DataSize.ofMegabytes(1));
+        long memoryBefore = filter.memoryBytes();
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            filter.add(FIRST_ACCOUNT);
+        }
+
+        // then
+        assertEquals(1, filter.size());
+        assertEquals(memoryBefore, filter.memoryBytes());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+
+        // given
+        // the limit leaves no room for a second filter
+        AccountNumberFilter filter = loadedFilter(100, 0.01, DataSize.ofBytes(200));
+        long memoryBefore = filter.memoryBytes();
+
+        // when
+        for (long number = FIRST_ACCOUNT; number < FIRST_ACCOUNT + 1000; number++) {
+            filter.add(number);
+        }
+
+        // then
+        // the false positive rate grows beyond the configured one, but no added account is rejected
+        assertEquals(memoryBefore, filter.memoryBytes());
+        assertTrue(filter.expectedFalsePositiveRate() > 0.01);
+        for (long number = FIRST_ACCOUNT; number < FIRST_ACCOUNT + 1000; number++) {
+            assertTrue(filter.mightContain(number));
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AccountNumberFilter filter = loadedFilter(1000, 0.01, DataSize.ofMegabytes(1));
+        filter.bindTo(registry);
+        filter.add(FIRST_ACCOUNT);
+
+        // when
+        filter.mightContain(FIRST_ACCOUNT);
+        filter.mightContain(FIRST_ACCOUNT + 1);
+        filter.recordFalsePositive();
+
+        // then
+        assertEquals(1, registry.get("bank.account-filter.checks").tag("result", "passed").functionCounter().count());
+        assertEquals(1, registry.get("bank.account-filter.checks").tag("result", "rejected").functionCounter().count());
+        assertEquals(1, registry.get("bank.account-filter.false-positives").functionCounter().count());
+        assertEquals(1, registry.get("bank.account-filter.accounts").gauge().value());
+        assertEquals(filter.memoryBytes(), registry.get("bank.account-filter.memory").gauge().value());
+        assertTrue(registry.get("bank.account-filter.expected-false-positive-rate").gauge().value() > 0);
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new AccountNumberFilter(0, 0.01, DataSize.ofMegabytes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new AccountNumberFilter(1000, 0, DataSize.ofMegabytes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new AccountNumberFilter(1000, 1, DataSize.ofMegabytes(1)));
+    }
+
+    private static AccountNumberFilter loadedFilter(int expectedAccounts, double falsePositiveRate, DataSize maxMemory) {
+        AccountNumberFilter filter = new AccountNumberFilter(expectedAccounts, falsePositiveRate, maxMemory);
+        filter.load(mock(BankPersistenceService.class));
+        return filter;
+    }
+}
@@ -0,0 +1,87 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batches of the default engine on the real database
+ */
+@SpringBootTest
+public class BankServiceImplBatchTest {
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testApplyBatch() {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(3000000001L);
+        AccountNumber otherAccountNumber = AccountNumber.of(3000000002L);
+        AccountNumber missingAccountNumber = AccountNumber.of(3000000003L);
+        bankService.deposit(accountNumber, Money.parse("10.00"));
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(otherAccountNumber, Money.parse("5.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("20.00")),
+                BatchOperation.withdrawal(missingAccountNumber, Money.parse("1.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("4.00")));
+
+        // when
+        List<BatchOperationResult> results = bankService.applyBatch(operations, false);
+
+        // then
+        assertEquals(Money.parse("5.00"), results.get(0).getAccount().getBalance());
+        assertInstanceOf(InsufficientBalanceException.class, results.get(1).getError());
+        assertInstanceOf(AccountNotFoundException.class, results.get(2).getError());
+        assertEquals(Money.parse("6.00"), results.get(3).getAccount().getBalance());
+        assertEquals(Money.parse("6.00"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("5.00"), bankService.getAccount(otherAccountNumber).getBalance());
+        assertEquals(1, bankService.listWithdrawals(accountNumber, null, 10).getItems().size());
+    }
+
+    @Test
+    public void testApplyBatchAllOrNothing() {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(3000000004L);
+        AccountNumber newAccountNumber = AccountNumber.of(3000000005L);
+        bankService.deposit(accountNumber, Money.parse("10.00"));
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(newAccountNumber, Money.parse("5.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("4.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("7.00")));
+
+        // when
+        List<BatchOperationResult> results = bankService.applyBatch(operations, true);
+
+        // then
+        // the applied operations are rolled back, including the created account
+        assertEquals(BatchOperationResult.Status.NOT_APPLIED, results.get(0).getStatus());
+        assertEquals(BatchOperationResult.Status.NOT_APPLIED, results.get(1).getStatus());
+        assertInstanceOf(InsufficientBalanceException.class, results.get(2).getError());
+        assertEquals(Money.parse("10.00"), bankService.getAccount(accountNumber).getBalance());
+        assertThrows(AccountNotFoundException.class, () -> bankService.getAccount(newAccountNumber));
+        assertTrue(bankService.listWithdrawals(accountNumber, null, 10).getItems().isEmpty());
+    }
+
+    @Test
+    public void testApplyInvalidBatch() {
+
+        // given
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(AccountNumber.of(3000000006L), Money.parse("5.00")),
+                BatchOperation.deposit(AccountNumber.of(3000000006L), Money.parse("0.00")));
+
+        // when
+        InvalidBatchException ex = assertThrows(InvalidBatchException.class, () -> bankService.applyBatch(operations, false));
+
+        // then
+        assertEquals(1, ex.getIndex());
+        assertThrows(InvalidBatchException.class, () -> bankService.applyBatch(List.of(), false));
+    }
+}
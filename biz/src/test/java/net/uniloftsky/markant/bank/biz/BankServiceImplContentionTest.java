@@ -0,0 +1,81 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test of concurrent opposite transfers between a few accounts on the real database
+ */
+@SpringBootTest(properties = "bank.lock.timeout=30s")
+public class BankServiceImplContentionTest {
+
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS = 16;
+    private static final int TRANSFERS = 4000;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testOppositeTransfersKeepTotalBalance() throws Exception {
+
+        // given
+        List<AccountNumber> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            AccountNumber accountNumber = AccountNumber.of(1000000000L + i);
+            bankService.deposit(accountNumber, Money.parse("1000.00"));
+            accounts.add(accountNumber);
+        }
+        Money expectedTotal = totalBalance(accounts);
+
+        // when
+        List<Future<?>> results = new ArrayList<>(TRANSFERS);
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int i = 0; i < TRANSFERS; i++) {
+                AccountNumber from = accounts.get(i % ACCOUNTS);
+                AccountNumber to = accounts.get((i + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS);
+                Money amount = Money.ofMinorUnits(ThreadLocalRandom.current().nextInt(1, 5000));
+                results.add(executor.submit(() -> {
+                    try {
+                        bankService.transfer(from, to, amount);
+                    } catch (InsufficientBalanceException ignored) {
+                        // expected when the random walk drains an account
+                    }
+                }));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "transfers are deadlocked");
+        }
+
+        // then
+        // every transfer completed without a busy error
+        for (Future<?> result : results) {
+            result.get();
+        }
+        assertEquals(expectedTotal, totalBalance(accounts));
+        for (AccountNumber accountNumber : accounts) {
+            assertFalse(bankService.getAccount(accountNumber).getBalance().isNegative());
+        }
+    }
+
+    private Money totalBalance(List<AccountNumber> accounts) {
+        Money total = Money.ZERO;
+        for (AccountNumber accountNumber : accounts) {
+            total = total.plus(bankService.getAccount(accountNumber).getBalance());
+        }
+        return total;
+    }
+}
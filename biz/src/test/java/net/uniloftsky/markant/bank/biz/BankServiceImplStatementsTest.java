@@ -0,0 +1,191 @@
+package net.uniloftsky.markant.bank.biz;
+
+import jakarta.persistence.EntityManager;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceServiceImpl;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Number of SQL statements issued by every write operation of {@link BankServiceImpl}, counted by the Hibernate statistics
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({BankServiceImpl.class, BankPersistenceServiceImpl.class, AccountLockCoordinator.class, TransactionIdGenerator.class})
+public class BankServiceImplStatementsTest {
+
+    @Autowired
+    private BankService bankService;
+
+    @Autowired
+    private BankPersistenceService persistenceService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    private AccountNumber accountNumber;
+    private AccountNumber targetAccountNumber;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        accountNumber = AccountNumber.of(1234567890L);
+        targetAccountNumber = AccountNumber.of(9999999999L);
+    }
+
+    @Test
+    public void testDepositToNewAccount() {
+
+        // given
+        statistics.clear();
+
+        // when
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        entityManager.flush();
+
+        // then
+        // account upsert and transaction insert
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    public void testWithdraw() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        entityManager.flush();
+        statistics.clear();
+
+        // when
+        bankService.withdraw(accountNumber, Money.parse("50.25"));
+        entityManager.flush();
+
+        // then
+        // conditional balance update and transaction insert
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    public void testTransfer() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        bankService.deposit(targetAccountNumber, Money.parse("10"));
+        entityManager.flush();
+        statistics.clear();
+
+        // when
+        bankService.transfer(accountNumber, targetAccountNumber, Money.parse("50.25"));
+        entityManager.flush();
+
+        // then
+        // balance updates of both accounts and journal entries of both parties
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(2, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    public void testListTransactions() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        bankService.withdraw(accountNumber, Money.parse("10"));
+        bankService.deposit(targetAccountNumber, Money.parse("10"));
+        bankService.transfer(targetAccountNumber, accountNumber, Money.parse("5"));
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        // when
+        List<BankTransaction> result = bankService.listTransactions(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
+
+        // then
+        // account check and one journal query
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    public void testListTransactionsPages() {
+
+        // given
+        // entries written within the same millisecond are ordered by id
+        for (int i = 0; i < 5; i++) {
+            bankService.deposit(accountNumber, Money.parse("1"));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        List<BankTransaction> expected = bankService.listTransactions(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
+        entityManager.clear();
+        statistics.clear();
+
+        // when
+        List<BankTransaction> result = new ArrayList<>();
+        TransactionPage<BankTransaction> page = bankService.listTransactions(accountNumber, null, 2);
+        result.addAll(page.getItems());
+        while (page.hasNext()) {
+            page = bankService.listTransactions(accountNumber, page.getNext(), 2);
+            result.addAll(page.getItems());
+        }
+
+        // then
+        // one journal query per page, the account is loaded once per persistence context, no gaps or duplicates
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testExportTransactions() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        bankService.withdraw(accountNumber, Money.parse("10"));
+        bankService.deposit(targetAccountNumber, Money.parse("10"));
+        bankService.transfer(accountNumber, targetAccountNumber, Money.parse("5"));
+        entityManager.flush();
+        entityManager.clear();
+        List<BankTransaction> expected = bankService.listTransactions(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
+        entityManager.clear();
+        statistics.clear();
+
+        // when
+        List<BankTransaction> result = new ArrayList<>();
+        bankService.exportTransactions(accountNumber, null, result::add);
+
+        // then
+        // account check and one streamed journal query, exported entries aren't kept in the persistence context
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(expected, result);
+        assertEquals(1, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+    }
+
+    @Test
+    public void testCreateAccount() {
+
+        // given
+        statistics.clear();
+
+        // when
+        persistenceService.createAccount(accountNumber.getNumber(), 0, System.currentTimeMillis());
+        entityManager.flush();
+
+        // then
+        // insert without the select of the assigned id
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+    }
+}
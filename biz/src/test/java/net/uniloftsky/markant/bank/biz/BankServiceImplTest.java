@@ -1,33 +1,50 @@
 package net.uniloftsky.markant.bank.biz;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.uniloftsky.markant.bank.biz.jfr.BankOperationEvent;
 import net.uniloftsky.markant.bank.biz.persistence.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
-import static net.uniloftsky.markant.bank.biz.BankServiceImpl.INITIAL_BALANCE;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 
 @ExtendWith(MockitoExtension.class)
 public class BankServiceImplTest {
 
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
     @Mock
     private BankPersistenceService persistenceService;
 
@@ -58,12 +75,12 @@ public class BankServiceImplTest {
     public void testGetAccount() throws AccountNotFoundException {
 
         // given
-        BigDecimal balance = new BigDecimal("100");
+        Money balance = Money.parse("100");
 
         // mocking account object from persistence service
         AccountEntity entity = new AccountEntity();
         entity.setNumber(number);
-        entity.setBalance(balance.toPlainString());
+        entity.setBalance(balance.getMinorUnits());
         given(persistenceService.getAccount(number)).willReturn(Optional.of(entity));
 
         // when
@@ -97,22 +114,17 @@ public class BankServiceImplTest {
     public void testWithdraw() throws InsufficientBalanceException, AccountNotFoundException {
 
         // given
-        BigDecimal withdrawalAmount = new BigDecimal("100.49");
-        BigDecimal accountBalance = new BigDecimal("200.65");
-        BigDecimal afterWithdrawal = accountBalance.subtract(withdrawalAmount);
-
-        // creating the mock of account entity with balance of "accountBalance"
-        AccountEntity accountEntity = new AccountEntity();
-        accountEntity.setNumber(number);
-        accountEntity.setBalance(accountBalance.toPlainString());
-        given(persistenceService.getAccount(number)).willReturn(Optional.of(accountEntity));
+        Money withdrawalAmount = Money.parse("100.49");
+        Money accountBalance = Money.parse("200.65");
+        Money afterWithdrawal = accountBalance.minus(withdrawalAmount);
 
         // mocking the clock to return a predefined timestamp for the transaction
         long transactionTimestamp = System.currentTimeMillis();
         mockClockInstant(transactionTimestamp);
 
-        // mocking the persistence layer to return an updated account with the new balance
-        mockAccountWithUpdatedBalance(accountEntity, afterWithdrawal, transactionTimestamp);
+        // mocking the persistence layer to return the new balance after the conditional update
+        given(persistenceService.debitIfSufficient(number, withdrawalAmount.getMinorUnits(), transactionTimestamp))
+                .willReturn(OptionalLong.of(afterWithdrawal.getMinorUnits()));
 
         // when
         BankAccount result = bankService.withdraw(accountNumber, withdrawalAmount);
@@ -120,7 +132,8 @@ public class BankServiceImplTest {
         // then
         assertNotNull(result);
         assertEquals(accountNumber, result.getNumber());
-        assertEquals(0, afterWithdrawal.compareTo(result.getBalance()));
+        assertEquals(afterWithdrawal, result.getBalance());
+        then(persistenceService).should().createWithdrawTransaction(anyLong(), eq(number), eq(withdrawalAmount.getMinorUnits()), eq(transactionTimestamp));
     }
 
     @Test
@@ -128,46 +141,85 @@ public class BankServiceImplTest {
 
         // given
         // withdrawal amount is greater than the account balance on purpose to invoke the exception
-        BigDecimal withdrawalAmount = new BigDecimal("500.49");
-        BigDecimal accountBalance = new BigDecimal("200.65");
+        Money withdrawalAmount = Money.parse("500.49");
+        Money accountBalance = Money.parse("200.65");
+
+        long transactionTimestamp = System.currentTimeMillis();
+        mockClockInstant(transactionTimestamp);
+
+        // the conditional update doesn't change any row
+        given(persistenceService.debitIfSufficient(number, withdrawalAmount.getMinorUnits(), transactionTimestamp)).willReturn(OptionalLong.empty());
 
         // creating the mock of account entity with balance of "accountBalance"
         AccountEntity accountEntity = new AccountEntity();
         accountEntity.setNumber(number);
-        accountEntity.setBalance(accountBalance.toPlainString());
+        accountEntity.setBalance(accountBalance.getMinorUnits());
         given(persistenceService.getAccount(number)).willReturn(Optional.of(accountEntity));
 
-        try {
+        // when
+        InsufficientBalanceException ex = assertThrows(InsufficientBalanceException.class, () -> bankService.withdraw(accountNumber, withdrawalAmount));
 
-            // when
-            bankService.withdraw(accountNumber, withdrawalAmount);
-        } catch (InsufficientBalanceException ex) {
+        // then
+        assertNotNull(ex);
+        then(persistenceService).should(never()).createWithdrawTransaction(anyLong(), anyLong(), anyLong(), anyLong());
+    }
 
-            // then
-            assertNotNull(ex);
-        }
+    @Test
+    public void testWithdrawAccountNotFound() {
+
+        // given
+        Money withdrawalAmount = Money.parse("10");
+
+        long transactionTimestamp = System.currentTimeMillis();
+        mockClockInstant(transactionTimestamp);
+
+        // the conditional update doesn't change any row because the account doesn't exist
+        given(persistenceService.debitIfSufficient(number, withdrawalAmount.getMinorUnits(), transactionTimestamp)).willReturn(OptionalLong.empty());
+        given(persistenceService.getAccount(number)).willReturn(Optional.empty());
+
+        // when
+        AccountNotFoundException ex = assertThrows(AccountNotFoundException.class, () -> bankService.withdraw(accountNumber, withdrawalAmount));
+
+        // then
+        assertEquals(accountNumber, ex.getAccountNumber());
     }
 
     @Test
-    public void testDeposit() {
+    public void testWithdrawUnknownAccountRejectedByFilter() {
 
         // given
-        BigDecimal depositAmount = new BigDecimal("100.49");
-        BigDecimal accountBalance = new BigDecimal("200.65");
-        BigDecimal afterDeposit = accountBalance.add(depositAmount);
+        Money withdrawalAmount = Money.parse("10");
+        mockClockInstant(System.currentTimeMillis());
 
-        // creating the mock of account entity with balance of "accountBalance"
-        AccountEntity accountEntity = new AccountEntity();
-        accountEntity.setNumber(number);
-        accountEntity.setBalance(accountBalance.toPlainString());
-        doReturn(accountEntity).when(bankService).getOrCreateAccountEntity(accountNumber);
+        // the filter is loaded without the account
+        AccountNumberFilter accountFilter = new AccountNumberFilter();
+        accountFilter.load(persistenceService);
+        bankService.setAccountFilter(accountFilter);
+
+        // when
+        AccountNotFoundException ex = assertThrows(AccountNotFoundException.class, () -> bankService.withdraw(accountNumber, withdrawalAmount));
+
+        // then
+        // the database isn't asked
+        assertEquals(accountNumber, ex.getAccountNumber());
+        then(persistenceService).should().listAccounts();
+        then(persistenceService).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    public void testDeposit() {
+
+        // given
+        Money depositAmount = Money.parse("100.49");
+        Money accountBalance = Money.parse("200.65");
+        Money afterDeposit = accountBalance.plus(depositAmount);
 
         // mocking the clock to return predefined timestamp
         long transactionTimestamp = System.currentTimeMillis();
         mockClockInstant(transactionTimestamp);
 
-        // mocking the persistence layer to return an updated account with the new balance
-        mockAccountWithUpdatedBalance(accountEntity, afterDeposit, transactionTimestamp);
+        // mocking the persistence layer to return the new balance after the upsert
+        given(persistenceService.creditOrCreate(number, depositAmount.getMinorUnits(), transactionTimestamp)).willReturn(afterDeposit.getMinorUnits());
 
         // when
         BankAccount result = bankService.deposit(accountNumber, depositAmount);
@@ -175,19 +227,63 @@ public class BankServiceImplTest {
         // then
         assertNotNull(result);
         assertEquals(accountNumber, result.getNumber());
-        assertEquals(0, afterDeposit.compareTo(result.getBalance()));
+        assertEquals(afterDeposit, result.getBalance());
+        then(persistenceService).should().createDepositTransaction(anyLong(), eq(number), eq(depositAmount.getMinorUnits()), eq(transactionTimestamp));
+    }
+
+    @Test
+    public void testDepositEvent() throws Exception {
+
+        // given
+        Money depositAmount = Money.parse("100.49");
+        long transactionTimestamp = System.currentTimeMillis();
+        mockClockInstant(transactionTimestamp);
+        given(persistenceService.creditOrCreate(number, depositAmount.getMinorUnits(), transactionTimestamp)).willReturn(depositAmount.getMinorUnits());
+
+        // when
+        List<RecordedEvent> events = recordEvents("net.uniloftsky.markant.bank.Deposit", () -> bankService.deposit(accountNumber, depositAmount));
+
+        // then
+        assertEquals(1, events.size());
+        RecordedEvent event = events.getFirst();
+        assertEquals(number, event.getLong("accountNumber"));
+        assertEquals(2, event.getInt("amountScale"));
+        assertEquals(BankOperationEvent.SUCCESS, event.getString("outcome"));
+        assertTrue(event.getDuration("persistenceTime").toNanos() > 0);
+    }
+
+    @Test
+    public void testWithdrawEventInsufficientBalance() throws Exception {
+
+        // given
+        Money withdrawalAmount = Money.parse("0.05");
+        long transactionTimestamp = System.currentTimeMillis();
+        mockClockInstant(transactionTimestamp);
+        given(persistenceService.debitIfSufficient(number, withdrawalAmount.getMinorUnits(), transactionTimestamp)).willReturn(OptionalLong.empty());
+        AccountEntity accountEntity = new AccountEntity();
+        accountEntity.setNumber(number);
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(accountEntity));
+
+        // when
+        List<RecordedEvent> events = recordEvents("net.uniloftsky.markant.bank.Withdraw",
+                () -> assertThrows(InsufficientBalanceException.class, () -> bankService.withdraw(accountNumber, withdrawalAmount)));
+
+        // then
+        assertEquals(1, events.size());
+        assertEquals(-2, events.getFirst().getInt("amountScale"));
+        assertEquals(InsufficientBalanceException.class.getSimpleName(), events.getFirst().getString("outcome"));
     }
 
     @Test
     public void testValidateTransactionParametersAccountNumberIsNull() {
 
         // given
-        BigDecimal amount = new BigDecimal("100");
+        Money amount = Money.parse("100");
 
         try {
 
             // when
-            bankService.validateTransactionParameters(amount, (AccountNumber) null);
+            AbstractBankService.validateTransactionParameters(amount, (AccountNumber) null);
         } catch (IllegalArgumentException ex) {
 
             // then
@@ -200,7 +296,7 @@ public class BankServiceImplTest {
         try {
 
             // when
-            bankService.validateTransactionParameters(null, accountNumber);
+            AbstractBankService.validateTransactionParameters(null, accountNumber);
         } catch (IllegalArgumentException ex) {
 
             // then
@@ -212,12 +308,12 @@ public class BankServiceImplTest {
     public void testValidateTransactionParametersAmountIsInvalid() {
 
         // given
-        BigDecimal amount = new BigDecimal("-100");
+        Money amount = Money.parse("-100");
 
         try {
 
             // when
-            bankService.validateTransactionParameters(amount, accountNumber);
+            AbstractBankService.validateTransactionParameters(amount, accountNumber);
         } catch (IllegalArgumentException ex) {
 
             // then
@@ -225,55 +321,6 @@ public class BankServiceImplTest {
         }
     }
 
-    @Test
-    public void testGetOrCreateAccountEntityExists() {
-
-        // given
-        // creating a mock of account entity from persistence
-        AccountEntity entity = new AccountEntity();
-        entity.setNumber(number);
-
-        String balance = "100";
-        entity.setBalance(balance);
-        given(persistenceService.getAccount(number)).willReturn(Optional.of(entity));
-
-        // when
-        AccountEntity result = bankService.getOrCreateAccountEntity(accountNumber);
-
-        // then
-        assertNotNull(result);
-        assertEquals(number, result.getNumber());
-        assertEquals(balance, result.getBalance());
-    }
-
-    @Test
-    public void testGetOrCreateAccountEntityNotExist() {
-
-        // given
-        // throw exception to simulate that requested account doesn't exist in persistence
-        // return empty account entity optional from persistence
-        given(persistenceService.getAccount(number)).willReturn(Optional.empty());
-
-        // mocking the clock to return predefined timestamp for account creation
-        long accountCreationTimestamp = System.currentTimeMillis();
-        mockClockInstant(accountCreationTimestamp);
-
-        // mocking persistent layer to return created account entity
-        AccountEntity entity = new AccountEntity();
-        entity.setNumber(number);
-        String balance = "100";
-        entity.setBalance(balance);
-        given(persistenceService.createAccount(number, INITIAL_BALANCE, accountCreationTimestamp)).willReturn(entity);
-
-        // when
-        AccountEntity result = bankService.getOrCreateAccountEntity(accountNumber);
-
-        // then
-        assertNotNull(result);
-        assertEquals(number, result.getNumber());
-        assertEquals(balance, result.getBalance());
-    }
-
     @Test
     public void testListWithdrawals() {
 
@@ -281,42 +328,44 @@ public class BankServiceImplTest {
         // mock bank service to return account entity
         doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
 
-        WithdrawTransactionEntity firstEntity = new WithdrawTransactionEntity();
-        firstEntity.setId(UUID.randomUUID());
-        firstEntity.setAmount("100");
+        TransactionEntity firstEntity = new TransactionEntity();
+        firstEntity.setTransactionId(idGenerator.nextId());
+        firstEntity.setType(TransactionEntryType.WITHDRAWAL);
+        firstEntity.setAmount(10000L);
         firstEntity.setTimestamp(123456L);
         firstEntity.setAccountNumber(number);
 
-        WithdrawTransactionEntity secondEntity = new WithdrawTransactionEntity();
-        secondEntity.setId(UUID.randomUUID());
-        secondEntity.setAmount("200");
+        TransactionEntity secondEntity = new TransactionEntity();
+        secondEntity.setTransactionId(idGenerator.nextId());
+        secondEntity.setType(TransactionEntryType.WITHDRAWAL);
+        secondEntity.setAmount(20000L);
         secondEntity.setTimestamp(123457L);
         secondEntity.setAccountNumber(number);
 
-        // mock persistence layer to return list of withdrawals entities
-        List<WithdrawTransactionEntity> entities = List.of(firstEntity, secondEntity);
-        given(persistenceService.listWithdrawals(number)).willReturn(entities);
+        // mock persistence layer to return list of withdrawals entities, most recent first
+        List<TransactionEntity> entities = List.of(secondEntity, firstEntity);
+        given(persistenceService.listTransactions(number, AbstractBankService.WITHDRAWAL_TYPES, TransactionPage.DEFAULT_LIMIT + 1)).willReturn(entities);
 
         // when
-        List<WithdrawTransaction> result = bankService.listWithdrawals(accountNumber);
+        List<WithdrawTransaction> result = bankService.listWithdrawals(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
 
         // then
         assertNotNull(result);
         assertFalse(result.isEmpty());
         assertEquals(entities.size(), result.size());
 
-        // testing that withdrawal transactions are ordered correctly and properties are mapped accurately
+        // testing that withdrawal transactions keep the order of the persistence layer and properties are mapped accurately
         // the first transaction should have the properties from the second entity (most recent timestamp)
         WithdrawTransaction firstTransaction = result.getFirst();
-        assertEquals(secondEntity.getId(), firstTransaction.getId().getId());
-        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().toPlainString());
+        assertEquals(secondEntity.getTransactionId(), firstTransaction.getId().getId());
+        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().getMinorUnits());
         assertEquals(secondEntity.getTimestamp(), firstTransaction.getTimestamp().toEpochMilli());
         assertEquals(secondEntity.getAccountNumber(), firstTransaction.getAccountNumber().getNumber());
 
         // the second transaction should have properties from the first entity
         WithdrawTransaction secondTransaction = result.getLast();
-        assertEquals(firstEntity.getId(), secondTransaction.getId().getId());
-        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().toPlainString());
+        assertEquals(firstEntity.getTransactionId(), secondTransaction.getId().getId());
+        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().getMinorUnits());
         assertEquals(firstEntity.getTimestamp(), secondTransaction.getTimestamp().toEpochMilli());
         assertEquals(firstEntity.getAccountNumber(), secondTransaction.getAccountNumber().getNumber());
     }
@@ -328,42 +377,44 @@ public class BankServiceImplTest {
         // mock bank service to return account entity
         doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
 
-        DepositTransactionEntity firstEntity = new DepositTransactionEntity();
-        firstEntity.setId(UUID.randomUUID());
-        firstEntity.setAmount("100");
+        TransactionEntity firstEntity = new TransactionEntity();
+        firstEntity.setTransactionId(idGenerator.nextId());
+        firstEntity.setType(TransactionEntryType.DEPOSIT);
+        firstEntity.setAmount(10000L);
         firstEntity.setTimestamp(123456L);
         firstEntity.setAccountNumber(number);
 
-        DepositTransactionEntity secondEntity = new DepositTransactionEntity();
-        secondEntity.setId(UUID.randomUUID());
-        secondEntity.setAmount("200");
+        TransactionEntity secondEntity = new TransactionEntity();
+        secondEntity.setTransactionId(idGenerator.nextId());
+        secondEntity.setType(TransactionEntryType.DEPOSIT);
+        secondEntity.setAmount(20000L);
         secondEntity.setTimestamp(123457L);
         secondEntity.setAccountNumber(number);
 
-        // mock persistence layer to return list of withdrawals entities
-        List<DepositTransactionEntity> entities = List.of(firstEntity, secondEntity);
-        given(persistenceService.listDeposits(number)).willReturn(entities);
+        // mock persistence layer to return list of withdrawals entities, most recent first
+        List<TransactionEntity> entities = List.of(secondEntity, firstEntity);
+        given(persistenceService.listTransactions(number, AbstractBankService.DEPOSIT_TYPES, TransactionPage.DEFAULT_LIMIT + 1)).willReturn(entities);
 
         // when
-        List<DepositTransaction> result = bankService.listDeposits(accountNumber);
+        List<DepositTransaction> result = bankService.listDeposits(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
 
         // then
         assertNotNull(result);
         assertFalse(result.isEmpty());
         assertEquals(entities.size(), result.size());
 
-        // testing that deposit transactions are ordered correctly and properties are mapped accurately
+        // testing that deposit transactions keep the order of the persistence layer and properties are mapped accurately
         // the first transaction should have the properties from the second entity (most recent timestamp)
         DepositTransaction firstTransaction = result.getFirst();
-        assertEquals(secondEntity.getId(), firstTransaction.getId().getId());
-        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().toPlainString());
+        assertEquals(secondEntity.getTransactionId(), firstTransaction.getId().getId());
+        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().getMinorUnits());
         assertEquals(secondEntity.getTimestamp(), firstTransaction.getTimestamp().toEpochMilli());
         assertEquals(secondEntity.getAccountNumber(), firstTransaction.getAccountNumber().getNumber());
 
         // the second transaction should have properties from the first entity
         DepositTransaction secondTransaction = result.getLast();
-        assertEquals(firstEntity.getId(), secondTransaction.getId().getId());
-        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().toPlainString());
+        assertEquals(firstEntity.getTransactionId(), secondTransaction.getId().getId());
+        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().getMinorUnits());
         assertEquals(firstEntity.getTimestamp(), secondTransaction.getTimestamp().toEpochMilli());
         assertEquals(firstEntity.getAccountNumber(), secondTransaction.getAccountNumber().getNumber());
     }
@@ -372,43 +423,165 @@ public class BankServiceImplTest {
     public void testListTransactions() {
 
         // given
-        // mock bank service to return deposits
-        TransactionId depositId = TransactionId.generateNew();
-        long depositTimestamp = 123456L;
-        BigDecimal depositAmount = new BigDecimal("100.50");
-        DepositTransaction deposit = new DepositTransaction(depositId, accountNumber, depositAmount, Instant.ofEpochMilli(depositTimestamp));
-        List<DepositTransaction> deposits = List.of(deposit);
-        doReturn(deposits).when(bankService).listDeposits(accountNumber);
-
-        // mock bank service to return withdrawals
-        TransactionId withdrawalId = TransactionId.generateNew();
-        long withdrawalTimestamp = 123457L;
-        BigDecimal withdrawalAmount = new BigDecimal("200.50");
-        WithdrawTransaction withdrawal = new WithdrawTransaction(withdrawalId, accountNumber, withdrawalAmount, Instant.ofEpochMilli(withdrawalTimestamp));
-        List<WithdrawTransaction> withdrawals = List.of(withdrawal);
-        doReturn(withdrawals).when(bankService).listWithdrawals(accountNumber);
-
-        // mock bank service to return transfers
-        TransactionId transferId = TransactionId.generateNew();
-        AccountNumber toAccountNumber = AccountNumber.of(9999999999L);
-        long transferTimestamp = 123455L;
-        BigDecimal transferAmount = new BigDecimal("100.50");
-        TransferTransaction transfer = new TransferTransaction(transferId, accountNumber, toAccountNumber, transferAmount, Instant.ofEpochMilli(transferTimestamp));
-        List<TransferTransaction> transfers = List.of(transfer);
-        doReturn(transfers).when(bankService).listTransfers(accountNumber);
+        // mock bank service to return account entity
+        doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
+
+        TransactionEntity withdrawal = new TransactionEntity();
+        withdrawal.setTransactionId(idGenerator.nextId());
+        withdrawal.setType(TransactionEntryType.WITHDRAWAL);
+        withdrawal.setAccountNumber(number);
+        withdrawal.setAmount(20050L);
+        withdrawal.setTimestamp(123457L);
+
+        TransactionEntity deposit = new TransactionEntity();
+        deposit.setTransactionId(idGenerator.nextId());
+        deposit.setType(TransactionEntryType.DEPOSIT);
+        deposit.setAccountNumber(number);
+        deposit.setAmount(10050L);
+        deposit.setTimestamp(123456L);
+
+        TransactionEntity transfer = new TransactionEntity();
+        transfer.setTransactionId(idGenerator.nextId());
+        transfer.setType(TransactionEntryType.TRANSFER_OUT);
+        transfer.setAccountNumber(number);
+        transfer.setCounterpartyAccountNumber(9999999999L);
+        transfer.setAmount(10050L);
+        transfer.setTimestamp(123455L);
+
+        // mock persistence layer to return the whole journal of the account, most recent first
+        given(persistenceService.listTransactions(number, AbstractBankService.ALL_TYPES, TransactionPage.DEFAULT_LIMIT + 1)).willReturn(List.of(withdrawal, deposit, transfer));
 
         // when
-        List<BankTransaction> result = bankService.listTransactions(accountNumber);
+        List<BankTransaction> result = bankService.listTransactions(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
 
         // then
-        assertNotNull(result);
-        assertFalse(result.isEmpty());
-        assertEquals(withdrawals.size() + deposits.size() + transfers.size(), result.size());
+        // transactions of every type are read by one query and keep its order
+        assertEquals(3, result.size());
+        assertEquals(withdrawal.getTransactionId(), result.get(0).getId().getId());
+        assertInstanceOf(WithdrawTransaction.class, result.get(0));
+        assertEquals(deposit.getTransactionId(), result.get(1).getId().getId());
+        assertInstanceOf(DepositTransaction.class, result.get(1));
+        assertEquals(transfer.getTransactionId(), result.get(2).getId().getId());
+        assertInstanceOf(TransferTransaction.class, result.get(2));
+    }
+
+    @Test
+    public void testExportTransactions() {
 
-        // testing that transactions are ordered by timestamp in descending order
-        // The first transaction in result list must be withdrawal (most recent timestamp)
-        TransactionId firstTransactionInResultId = result.getFirst().getId();
-        assertEquals(withdrawalId, firstTransactionInResultId);
+        // given
+        // mock bank service to return account entity
+        doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
+
+        TransactionEntity incoming = new TransactionEntity();
+        incoming.setTransactionId(idGenerator.nextId());
+        incoming.setType(TransactionEntryType.TRANSFER_IN);
+        incoming.setAccountNumber(number);
+        incoming.setCounterpartyAccountNumber(9999999999L);
+        incoming.setAmount(10050L);
+        incoming.setTimestamp(123456L);
+
+        TransactionEntity outgoing = new TransactionEntity();
+        outgoing.setTransactionId(idGenerator.nextId());
+        outgoing.setType(TransactionEntryType.TRANSFER_OUT);
+        outgoing.setAccountNumber(number);
+        outgoing.setCounterpartyAccountNumber(9999999999L);
+        outgoing.setAmount(20050L);
+        outgoing.setTimestamp(123455L);
+
+        // mock persistence layer to stream the transfer entries of the account
+        willAnswer(invocation -> {
+            Consumer<TransactionEntity> action = invocation.getArgument(2);
+            action.accept(incoming);
+            action.accept(outgoing);
+            return null;
+        }).given(persistenceService).forEachTransaction(eq(number), eq(AbstractBankService.TRANSFER_TYPES), any());
+
+        // when
+        List<BankTransaction> result = new ArrayList<>();
+        bankService.exportTransactions(accountNumber, TransactionType.TRANSFER, result::add);
+
+        // then
+        // transactions are mapped one by one in the streamed order
+        assertEquals(2, result.size());
+        TransferTransaction first = assertInstanceOf(TransferTransaction.class, result.get(0));
+        assertEquals(incoming.getTransactionId(), first.getId().getId());
+        assertEquals(AccountNumber.of(9999999999L), first.getFromAccountNumber());
+        TransferTransaction second = assertInstanceOf(TransferTransaction.class, result.get(1));
+        assertEquals(outgoing.getTransactionId(), second.getId().getId());
+        assertEquals(accountNumber, second.getFromAccountNumber());
+    }
+
+    @Test
+    public void testExportTransactionsAccountNotFound() {
+
+        // given
+        given(persistenceService.getAccount(number)).willReturn(Optional.empty());
+
+        // when
+        assertThrows(AccountNotFoundException.class, () -> bankService.exportTransactions(accountNumber, null, transaction -> fail()));
+
+        // then
+        then(persistenceService).should(never()).forEachTransaction(anyLong(), any(), any());
+    }
+
+    @Test
+    public void testListTransactionsPage() {
+
+        // given
+        // mock bank service to return account entity
+        doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
+
+        TransactionId previousId = idGenerator.nextTransactionId();
+        TransactionCursor after = TransactionCursor.of(new DepositTransaction(previousId, accountNumber, Money.parse("1"), Instant.ofEpochMilli(123458L)));
+
+        // persistence layer returns one entry more than the limit
+        List<TransactionEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TransactionEntity entity = new TransactionEntity();
+            entity.setTransactionId(idGenerator.nextId());
+            entity.setType(TransactionEntryType.DEPOSIT);
+            entity.setAccountNumber(number);
+            entity.setAmount(100L);
+            entity.setTimestamp(123457L - i);
+            entities.add(entity);
+        }
+        given(persistenceService.listTransactionsAfter(number, AbstractBankService.ALL_TYPES, 123458L, previousId.getId(), 3)).willReturn(entities);
+
+        // when
+        TransactionPage<BankTransaction> result = bankService.listTransactions(accountNumber, after, 2);
+
+        // then
+        // the extra entry is not returned, it only tells that the next page exists
+        assertEquals(2, result.getItems().size());
+        assertTrue(result.hasNext());
+        assertEquals(TransactionCursor.of(result.getItems().getLast()), result.getNext());
+    }
+
+    @Test
+    public void testListTransactionsLastPage() {
+
+        // given
+        doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
+        given(persistenceService.listTransactions(number, AbstractBankService.ALL_TYPES, 3)).willReturn(List.of());
+
+        // when
+        TransactionPage<BankTransaction> result = bankService.listTransactions(accountNumber, null, 2);
+
+        // then
+        assertTrue(result.getItems().isEmpty());
+        assertFalse(result.hasNext());
+        assertNull(result.getNext());
+    }
+
+    @Test
+    public void testListTransactionsInvalidLimit() {
+
+        // when
+        InvalidPageLimitException ex = assertThrows(InvalidPageLimitException.class,
+                () -> bankService.listTransactions(accountNumber, null, TransactionPage.MAX_LIMIT + 1));
+
+        // then
+        assertEquals(TransactionPage.MAX_LIMIT + 1, ex.getLimit());
     }
 
     @Test
@@ -417,34 +590,28 @@ public class BankServiceImplTest {
         // given
         long transferTimestamp = 123456L;
         mockClockInstant(transferTimestamp);
-        BigDecimal transferAmount = new BigDecimal("50");
+        Money transferAmount = Money.parse("50");
 
-        // mock initiator account entity
-        AccountEntity initiatorEntity = new AccountEntity();
-        initiatorEntity.setNumber(number);
-        BigDecimal initiatorBalance = new BigDecimal("100.50");
-        initiatorEntity.setBalance(initiatorBalance.toPlainString());
-        doReturn(initiatorEntity).when(bankService).getAccountEntity(accountNumber);
-        mockAccountWithUpdatedBalance(initiatorEntity, initiatorBalance.subtract(transferAmount), transferTimestamp);
+        // mock conditional updates of both accounts
+        Money initiatorBalance = Money.parse("100.50");
+        given(persistenceService.debitIfSufficient(number, transferAmount.getMinorUnits(), transferTimestamp))
+                .willReturn(OptionalLong.of(initiatorBalance.minus(transferAmount).getMinorUnits()));
 
-        // mock target account entity
         long targetNumber = 9999999999L;
         AccountNumber targetAccountNumber = AccountNumber.of(targetNumber);
-        AccountEntity targetEntity = new AccountEntity();
-        targetEntity.setNumber(targetNumber);
-        BigDecimal targetBalance = new BigDecimal("200.50");
-        targetEntity.setBalance(targetBalance.toPlainString());
-        doReturn(targetEntity).when(bankService).getAccountEntity(targetAccountNumber);
-        mockAccountWithUpdatedBalance(targetEntity, targetBalance.add(transferAmount), transferTimestamp);
+        Money targetBalance = Money.parse("200.50");
+        given(persistenceService.credit(targetNumber, transferAmount.getMinorUnits(), transferTimestamp))
+                .willReturn(OptionalLong.of(targetBalance.plus(transferAmount).getMinorUnits()));
 
         // mock created transfer transaction entity
-        TransferTransactionEntity createdTransactionEntity = new TransferTransactionEntity();
-
-        TransactionId transferId = TransactionId.generateNew();
-        createdTransactionEntity.setId(transferId.getId());
-        createdTransactionEntity.setFromAccountNumber(number);
-        createdTransactionEntity.setToAccountNumber(targetNumber);
-        createdTransactionEntity.setAmount(transferAmount.toPlainString());
+        TransactionEntity createdTransactionEntity = new TransactionEntity();
+
+        TransactionId transferId = idGenerator.nextTransactionId();
+        createdTransactionEntity.setTransactionId(transferId.getId());
+        createdTransactionEntity.setType(TransactionEntryType.TRANSFER_OUT);
+        createdTransactionEntity.setAccountNumber(number);
+        createdTransactionEntity.setCounterpartyAccountNumber(targetNumber);
+        createdTransactionEntity.setAmount(transferAmount.getMinorUnits());
         createdTransactionEntity.setTimestamp(transferTimestamp);
 
         doReturn(createdTransactionEntity).when(bankService).createTransferTransaction(accountNumber, targetAccountNumber, transferAmount, transferTimestamp);
@@ -453,8 +620,10 @@ public class BankServiceImplTest {
         TransferTransaction result = bankService.transfer(accountNumber, targetAccountNumber, transferAmount);
 
         // then
-        then(bankService).should().updateBalance(initiatorEntity, initiatorBalance.subtract(transferAmount), transferTimestamp);
-        then(bankService).should().updateBalance(targetEntity, targetBalance.add(transferAmount), transferTimestamp);
+        // initiator account number is lower, so it's updated first
+        InOrder inOrder = inOrder(persistenceService);
+        inOrder.verify(persistenceService).debitIfSufficient(number, transferAmount.getMinorUnits(), transferTimestamp);
+        inOrder.verify(persistenceService).credit(targetNumber, transferAmount.getMinorUnits(), transferTimestamp);
 
         assertNotNull(result);
         assertEquals(transferId, result.getId());
@@ -471,24 +640,46 @@ public class BankServiceImplTest {
         long transferTimestamp = 123456L;
         AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
         mockClockInstant(transferTimestamp);
-        BigDecimal transferAmount = new BigDecimal("50");
+        Money transferAmount = Money.parse("50");
+
+        // the conditional update of the initiator doesn't change any row
+        given(persistenceService.debitIfSufficient(number, transferAmount.getMinorUnits(), transferTimestamp)).willReturn(OptionalLong.empty());
 
         // mock initiator account entity
         AccountEntity initiatorEntity = new AccountEntity();
         initiatorEntity.setNumber(number);
-        BigDecimal initiatorBalance = new BigDecimal("25");
-        initiatorEntity.setBalance(initiatorBalance.toPlainString());
-        doReturn(initiatorEntity).when(bankService).getAccountEntity(accountNumber);
+        Money initiatorBalance = Money.parse("25");
+        initiatorEntity.setBalance(initiatorBalance.getMinorUnits());
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(initiatorEntity));
+
+        // when
+        InsufficientBalanceException ex = assertThrows(InsufficientBalanceException.class, () -> bankService.transfer(accountNumber, targetAccountNumber, transferAmount));
+
+        // then
+        assertNotNull(ex);
+        then(persistenceService).should(never()).credit(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testTransferToLowerAccountNumber() {
+
+        // given
+        long transferTimestamp = 123456L;
+        mockClockInstant(transferTimestamp);
+        Money transferAmount = Money.parse("50");
+        long targetNumber = 1000000000L;
+        AccountNumber targetAccountNumber = AccountNumber.of(targetNumber);
 
+        // target account doesn't exist
+        given(persistenceService.credit(targetNumber, transferAmount.getMinorUnits(), transferTimestamp)).willReturn(OptionalLong.empty());
 
         // when
-        try {
-            bankService.transfer(accountNumber, targetAccountNumber, transferAmount);
-        } catch (InsufficientBalanceException ex) {
+        AccountNotFoundException ex = assertThrows(AccountNotFoundException.class, () -> bankService.transfer(accountNumber, targetAccountNumber, transferAmount));
 
-            // then
-            assertNotNull(ex);
-        }
+        // then
+        // target account number is lower, so it's updated first and the initiator isn't touched
+        assertEquals(targetAccountNumber, ex.getAccountNumber());
+        then(persistenceService).should(never()).debitIfSufficient(anyLong(), anyLong(), anyLong());
     }
 
     @Test
@@ -500,48 +691,50 @@ public class BankServiceImplTest {
         // mock bank service to return account entity
         doReturn(new AccountEntity()).when(bankService).getAccountEntity(accountNumber);
 
-        TransferTransactionEntity firstEntity = new TransferTransactionEntity();
-        firstEntity.setId(UUID.randomUUID());
-        firstEntity.setAmount("100");
+        // outgoing transfer
+        TransactionEntity firstEntity = new TransactionEntity();
+        firstEntity.setTransactionId(idGenerator.nextId());
+        firstEntity.setType(TransactionEntryType.TRANSFER_OUT);
+        firstEntity.setAmount(10000L);
         firstEntity.setTimestamp(123456L);
-        firstEntity.setFromAccountNumber(number);
-        firstEntity.setToAccountNumber(targetAccountNumber.getNumber());
+        firstEntity.setAccountNumber(number);
+        firstEntity.setCounterpartyAccountNumber(targetAccountNumber.getNumber());
 
-        TransferTransactionEntity secondEntity = new TransferTransactionEntity();
-        secondEntity.setId(UUID.randomUUID());
-        secondEntity.setAmount("200");
+        // incoming transfer
+        TransactionEntity secondEntity = new TransactionEntity();
+        secondEntity.setTransactionId(idGenerator.nextId());
+        secondEntity.setType(TransactionEntryType.TRANSFER_IN);
+        secondEntity.setAmount(20000L);
         secondEntity.setTimestamp(123457L);
-        secondEntity.setFromAccountNumber(number);
-        secondEntity.setToAccountNumber(targetAccountNumber.getNumber());
+        secondEntity.setAccountNumber(number);
+        secondEntity.setCounterpartyAccountNumber(targetAccountNumber.getNumber());
 
-        // mock persistence layer to return list of transfer entities
-        List<TransferTransactionEntity> entities = List.of(firstEntity, secondEntity);
-        given(persistenceService.listTransfers(number)).willReturn(entities);
+        // mock persistence layer to return list of transfer entities, most recent first
+        List<TransactionEntity> entities = List.of(secondEntity, firstEntity);
+        given(persistenceService.listTransactions(number, AbstractBankService.TRANSFER_TYPES, TransactionPage.DEFAULT_LIMIT + 1)).willReturn(entities);
 
         // when
-        List<TransferTransaction> result = bankService.listTransfers(accountNumber);
+        List<TransferTransaction> result = bankService.listTransfers(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
 
         // then
         assertNotNull(result);
-        assertFalse(result.isEmpty());
         assertEquals(entities.size(), result.size());
 
-        // testing that transfer transactions are ordered correctly and properties are mapped accurately
-        // the first transaction should have the properties from the second entity (most recent timestamp)
+        // the first transaction is the incoming transfer, the counterparty is its initiator
         TransferTransaction firstTransaction = result.getFirst();
-        assertEquals(secondEntity.getId(), firstTransaction.getId().getId());
-        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().toPlainString());
+        assertEquals(secondEntity.getTransactionId(), firstTransaction.getId().getId());
+        assertEquals(secondEntity.getAmount(), firstTransaction.getAmount().getMinorUnits());
         assertEquals(secondEntity.getTimestamp(), firstTransaction.getTimestamp().toEpochMilli());
-        assertEquals(secondEntity.getFromAccountNumber(), firstTransaction.getFromAccountNumber().getNumber());
-        assertEquals(secondEntity.getToAccountNumber(), firstTransaction.getToAccountNumber().getNumber());
+        assertEquals(targetAccountNumber, firstTransaction.getFromAccountNumber());
+        assertEquals(accountNumber, firstTransaction.getToAccountNumber());
 
-        // the second transaction should have properties from the first entity
+        // the second transaction is the outgoing transfer, the counterparty is its target
         TransferTransaction secondTransaction = result.getLast();
-        assertEquals(firstEntity.getId(), secondTransaction.getId().getId());
-        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().toPlainString());
+        assertEquals(firstEntity.getTransactionId(), secondTransaction.getId().getId());
+        assertEquals(firstEntity.getAmount(), secondTransaction.getAmount().getMinorUnits());
         assertEquals(firstEntity.getTimestamp(), secondTransaction.getTimestamp().toEpochMilli());
-        assertEquals(firstEntity.getFromAccountNumber(), secondTransaction.getFromAccountNumber().getNumber());
-        assertEquals(firstEntity.getToAccountNumber(), secondTransaction.getToAccountNumber().getNumber());
+        assertEquals(accountNumber, secondTransaction.getFromAccountNumber());
+        assertEquals(targetAccountNumber, secondTransaction.getToAccountNumber());
     }
 
     @Test
@@ -549,28 +742,50 @@ public class BankServiceImplTest {
 
         // given
         AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
-        BigDecimal amount = new BigDecimal("100");
+        Money amount = Money.parse("100");
         long transferTimestamp = System.currentTimeMillis();
 
         // mocking persistence layer to create transfer transaction
-        TransferTransactionEntity entity = new TransferTransactionEntity();
-        entity.setFromAccountNumber(number);
-        entity.setToAccountNumber(targetAccountNumber.getNumber());
-        entity.setAmount(amount.toPlainString());
+        TransactionEntity entity = new TransactionEntity();
+        entity.setType(TransactionEntryType.TRANSFER_OUT);
+        entity.setAccountNumber(number);
+        entity.setCounterpartyAccountNumber(targetAccountNumber.getNumber());
+        entity.setAmount(amount.getMinorUnits());
         entity.setTimestamp(transferTimestamp);
 
-        given(persistenceService.createTransferTransaction(any(UUID.class), eq(number), eq(targetAccountNumber.getNumber()), eq(amount.toPlainString()), eq(transferTimestamp)))
+        given(persistenceService.createTransferTransaction(anyLong(), eq(number), eq(targetAccountNumber.getNumber()), eq(amount.getMinorUnits()), eq(transferTimestamp)))
                 .willReturn(entity);
 
         // when
-        TransferTransactionEntity result = bankService.createTransferTransaction(accountNumber, targetAccountNumber, amount, transferTimestamp);
+        TransactionEntity result = bankService.createTransferTransaction(accountNumber, targetAccountNumber, amount, transferTimestamp);
 
         // then
         assertNotNull(result);
-        assertEquals(amount.toPlainString(), result.getAmount());
+        assertEquals(amount.getMinorUnits(), result.getAmount());
         assertEquals(transferTimestamp, result.getTimestamp());
-        assertEquals(number, result.getFromAccountNumber());
-        assertEquals(targetAccountNumber.getNumber(), result.getToAccountNumber());
+        assertEquals(number, result.getAccountNumber());
+        assertEquals(targetAccountNumber.getNumber(), result.getCounterpartyAccountNumber());
+    }
+
+    /**
+     * Run the action while Flight Recorder records the given event
+     *
+     * @param eventName name of the recorded event
+     * @param action    action to run
+     * @return recorded events
+     */
+    private List<RecordedEvent> recordEvents(String eventName, Runnable action) throws IOException {
+        Path file = Files.createTempFile("bank-service-", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(eventName);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
     }
 
     /**
@@ -584,18 +799,4 @@ public class BankServiceImplTest {
         given(instant.toEpochMilli()).willReturn(timestamp);
     }
 
-    /**
-     * Method to mock the persistence service to simulate balance update
-     *
-     * @param entity         account entity to update
-     * @param updatedBalance updated balance
-     * @param timestamp      timestamp of update
-     */
-    private void mockAccountWithUpdatedBalance(AccountEntity entity, BigDecimal updatedBalance, long timestamp) {
-        AccountEntity updatedAccountEntity = new AccountEntity();
-        updatedAccountEntity.setNumber(number);
-        updatedAccountEntity.setBalance(updatedBalance.toPlainString());
-        given(persistenceService.updateAccountBalance(entity, updatedBalance.toPlainString(), timestamp)).willReturn(updatedAccountEntity);
-    }
-
 }
@@ -0,0 +1,115 @@
+package net.uniloftsky.markant.bank.biz;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Contended deposits and transfers on virtual threads must never pin their carrier threads,
+ * neither in the account locks nor in the persistence layer
+ */
+@SpringBootTest(properties = "bank.lock.timeout=30s")
+public class BankServiceImplVirtualThreadsTest {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final int ACCOUNTS = 4;
+    private static final int OPERATIONS = 2000;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testContendedOperationsDontPinCarrierThreads() throws Exception {
+
+        // given
+        List<AccountNumber> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            AccountNumber accountNumber = AccountNumber.of(2000000000L + i);
+            bankService.deposit(accountNumber, Money.parse("1000.00"));
+            accounts.add(accountNumber);
+        }
+
+        Path file = Files.createTempFile("virtual-threads-", ".jfr");
+        List<RecordedEvent> pinnedEvents;
+        try (Recording recording = new Recording()) {
+            // every park of a pinned virtual thread is recorded, not only the long ones
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            // when
+            List<Future<?>> results = new ArrayList<>(OPERATIONS);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    AccountNumber from = accounts.get(i % ACCOUNTS);
+                    AccountNumber to = accounts.get((i + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS);
+                    Money amount = Money.ofMinorUnits(ThreadLocalRandom.current().nextInt(1, 5000));
+                    boolean deposit = i % 2 == 0;
+                    results.add(executor.submit(() -> {
+                        try {
+                            if (deposit) {
+                                bankService.deposit(from, amount);
+                            } else {
+                                bankService.transfer(from, to, amount);
+                            }
+                        } catch (InsufficientBalanceException ignored) {
+                            // expected when the random walk drains an account
+                        }
+                    }));
+                }
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "operations are deadlocked");
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            recording.stop();
+            recording.dump(file);
+            // bank events are enabled by default and recorded too
+            pinnedEvents = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(PINNED_EVENT))
+                    .toList();
+        } finally {
+            Files.delete(file);
+        }
+
+        // then
+        assertTrue(pinnedEvents.isEmpty(), () -> "virtual threads were pinned:\n" + pinnedEvents.stream()
+                .map(BankServiceImplVirtualThreadsTest::describe)
+                .distinct()
+                .collect(Collectors.joining("\n\n")));
+    }
+
+    /**
+     * Top frames of the pinned thread stack
+     */
+    private static String describe(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return event.toString();
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(20)
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining("\n    at "));
+    }
+}
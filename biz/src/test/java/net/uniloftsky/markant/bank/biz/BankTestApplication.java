@@ -0,0 +1,12 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+
+/**
+ * Application configuration of the biz module tests running against the database.
+ * The R2DBC driver of the reactive persistence tests is on the classpath too, its connection factory would replace the datasource
+ */
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
+public class BankTestApplication {
+}
@@ -0,0 +1,116 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Group commit engine on the real database, with batches collected for up to 5 ms
+ */
+@SpringBootTest(properties = {"bank.engine=group-commit", "bank.group-commit.max-delay=5ms"})
+public class GroupCommitBankServiceImplTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testConcurrentOperations() throws Exception {
+
+        // given
+        assertInstanceOf(GroupCommitBankServiceImpl.class, bankService);
+        AccountNumber accountNumber = AccountNumber.of(2000000001L);
+        AccountNumber targetAccountNumber = AccountNumber.of(2000000002L);
+        bankService.deposit(accountNumber, Money.parse("100.00"));
+        bankService.deposit(targetAccountNumber, Money.parse("1.00"));
+
+        // when
+        // deposits run concurrently with withdrawals which cannot all succeed
+        List<Future<?>> deposits = new ArrayList<>();
+        List<Future<?>> withdrawals = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int i = 0; i < 100; i++) {
+                deposits.add(executor.submit(() -> bankService.deposit(targetAccountNumber, Money.parse("1.00"))));
+                withdrawals.add(executor.submit(() -> bankService.withdraw(accountNumber, Money.parse("3.00"))));
+            }
+        }
+
+        // then
+        // every deposit is committed, the rejected withdrawals don't affect the rest of their batches
+        for (Future<?> deposit : deposits) {
+            deposit.get();
+        }
+        int rejected = 0;
+        for (Future<?> withdrawal : withdrawals) {
+            try {
+                withdrawal.get();
+            } catch (ExecutionException ex) {
+                assertInstanceOf(InsufficientBalanceException.class, ex.getCause());
+                rejected++;
+            }
+        }
+        assertEquals(100 - 33, rejected);
+        assertEquals(Money.parse("1.00"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("101.00"), bankService.getAccount(targetAccountNumber).getBalance());
+        assertEquals(33, bankService.listWithdrawals(accountNumber, null, 100).getItems().size());
+    }
+
+    @Test
+    public void testTransfer() {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(2000000003L);
+        AccountNumber targetAccountNumber = AccountNumber.of(2000000004L);
+        AccountNumber missingAccountNumber = AccountNumber.of(2000000005L);
+        bankService.deposit(accountNumber, Money.parse("10.00"));
+        bankService.deposit(targetAccountNumber, Money.parse("1.00"));
+
+        // when
+        TransferTransaction transfer = bankService.transfer(accountNumber, targetAccountNumber, Money.parse("2.50"));
+
+        // then
+        assertEquals(Money.parse("2.50"), transfer.getAmount());
+        assertEquals(Money.parse("7.50"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("3.50"), bankService.getAccount(targetAccountNumber).getBalance());
+        assertEquals(1, bankService.listTransfers(targetAccountNumber, null, 10).getItems().size());
+
+        // rejected transfers change nothing
+        assertThrows(AccountNotFoundException.class, () -> bankService.transfer(accountNumber, missingAccountNumber, Money.parse("1.00")));
+        assertThrows(InsufficientBalanceException.class, () -> bankService.transfer(accountNumber, targetAccountNumber, Money.parse("8.00")));
+        assertEquals(Money.parse("7.50"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("3.50"), bankService.getAccount(targetAccountNumber).getBalance());
+    }
+
+    @Test
+    public void testApplyBatchAllOrNothing() {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(2000000006L);
+        bankService.deposit(accountNumber, Money.parse("10.00"));
+        List<BatchOperation> operations = List.of(
+                BatchOperation.withdrawal(accountNumber, Money.parse("4.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("7.00")));
+
+        // when
+        List<BatchOperationResult> rejected = bankService.applyBatch(operations, true);
+        List<BatchOperationResult> applied = bankService.applyBatch(operations, false);
+
+        // then
+        // the all-or-nothing batch changes nothing, the same batch is applied partially otherwise
+        assertEquals(BatchOperationResult.Status.NOT_APPLIED, rejected.get(0).getStatus());
+        assertEquals(BatchOperationResult.Status.REJECTED, rejected.get(1).getStatus());
+        assertEquals(BatchOperationResult.Status.APPLIED, applied.get(0).getStatus());
+        assertInstanceOf(InsufficientBalanceException.class, applied.get(1).getError());
+        assertEquals(Money.parse("6.00"), bankService.getAccount(accountNumber).getBalance());
+    }
+}
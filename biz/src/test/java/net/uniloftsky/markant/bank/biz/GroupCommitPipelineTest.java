@@ -0,0 +1,169 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.GroupCommitPipeline.Submission;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class GroupCommitPipelineTest {
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Mock
+    private BankPersistenceService persistenceService;
+
+    private GroupCommitPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        // a batch is committed as soon as three operations are collected
+        pipeline = new GroupCommitPipeline(persistenceService, TransactionOperations.withoutTransaction(), 3, Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void testConcurrentOperationsShareCommit() throws Exception {
+
+        // given
+        pipeline.start();
+
+        // when
+        List<Future<Long>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
+            for (long i = 1; i <= 3; i++) {
+                long amount = i;
+                results.add(executor.submit(() -> pipeline.submit(journal -> {
+                    journal.add(entry(amount));
+                    return amount;
+                })));
+            }
+        } finally {
+            pipeline.stop();
+        }
+
+        // then
+        // every caller gets its own result, journal entries of the batch are inserted at once
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1L, results.get(i).get());
+        }
+        ArgumentCaptor<List<TransactionEntity>> entries = journalCaptor();
+        then(persistenceService).should().createTransactions(entries.capture());
+        assertEquals(3, entries.getValue().size());
+    }
+
+    @Test
+    public void testRejectedOperationDoesNotFailBatch() {
+
+        // given
+        Submission<String> first = new Submission<>(journal -> {
+            journal.add(entry(1));
+            return "first";
+        });
+        Submission<String> rejected = new Submission<>(journal -> {
+            journal.add(entry(2));
+            throw new InsufficientBalanceException("insufficient");
+        });
+        Submission<String> last = new Submission<>(journal -> {
+            journal.add(entry(3));
+            return "last";
+        });
+
+        // when
+        pipeline.commit(List.of(first, rejected, last));
+
+        // then
+        assertEquals("first", first.getFuture().join());
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> rejected.getFuture().get());
+        assertInstanceOf(InsufficientBalanceException.class, ex.getCause());
+        assertEquals("last", last.getFuture().join());
+
+        // entries of the rejected operation are discarded
+        ArgumentCaptor<List<TransactionEntity>> entries = journalCaptor();
+        then(persistenceService).should().createTransactions(entries.capture());
+        assertEquals(List.of(1L, 3L), entries.getValue().stream().map(TransactionEntity::getAmount).toList());
+    }
+
+    @Test
+    public void testFailedBatchIsAppliedOneByOne() {
+
+        // given
+        Submission<String> first = new Submission<>(journal -> {
+            journal.add(entry(1));
+            return "first";
+        });
+        Submission<String> faulty = new Submission<>(journal -> {
+            throw new IllegalStateException("database failure");
+        });
+        Submission<String> last = new Submission<>(journal -> {
+            journal.add(entry(3));
+            return "last";
+        });
+
+        // when
+        pipeline.commit(List.of(first, faulty, last));
+
+        // then
+        // the batch transaction failed, the siblings of the faulty operation are committed in their own transactions
+        assertEquals("first", first.getFuture().join());
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> faulty.getFuture().get());
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals("last", last.getFuture().join());
+
+        ArgumentCaptor<List<TransactionEntity>> entries = journalCaptor();
+        then(persistenceService).should(times(2)).createTransactions(entries.capture());
+        assertEquals(List.of(1L), entries.getAllValues().get(0).stream().map(TransactionEntity::getAmount).toList());
+        assertEquals(List.of(3L), entries.getAllValues().get(1).stream().map(TransactionEntity::getAmount).toList());
+    }
+
+    @Test
+    public void testSubmitToStoppedPipeline() {
+
+        // given
+        pipeline.start();
+        pipeline.stop();
+
+        // when
+        // then
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(journal -> "result"));
+        then(persistenceService).should(never()).createTransactions(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<TransactionEntity>> journalCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private TransactionEntity entry(long amount) {
+        TransactionEntity entry = new TransactionEntity();
+        entry.setTransactionId(idGenerator.nextId());
+        entry.setType(TransactionEntryType.DEPOSIT);
+        entry.setAccountNumber(1234567890L);
+        entry.setAmount(amount);
+        entry.setTimestamp(123456L);
+        return entry;
+    }
+}
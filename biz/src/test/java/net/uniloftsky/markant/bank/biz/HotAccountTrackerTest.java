@@ -0,0 +1,113 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotAccountTrackerTest {
+
+    private HotAccountTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new HotAccountTracker(4);
+        tracker.setSampleInterval(1);
+    }
+
+    @Test
+    public void testTop() {
+
+        // given
+        for (int i = 0; i < 100; i++) {
+            tracker.record(1L, 1_000, 0);
+        }
+        tracker.record(1L, 1_000_000, 3);
+        for (int i = 0; i < 10; i++) {
+            tracker.record(2L, 10, 1);
+        }
+
+        // when
+        List<HotAccount> result = tracker.top(10);
+
+        // then
+        assertEquals(2, result.size());
+        HotAccount hottest = result.get(0);
+        assertEquals(1L, hottest.getAccountNumber());
+        assertEquals(101, hottest.getAcquisitions());
+        assertEquals(0, hottest.getError());
+        assertEquals(1_000_000, hottest.getMaxWaitNanos());
+        assertEquals(3, hottest.getMaxQueueLength());
+
+        // the single slow acquisition is above the 99th percentile
+        assertTrue(hottest.getWaitP99Nanos() >= 1_000 && hottest.getWaitP99Nanos() < 1_250);
+        assertEquals(2L, result.get(1).getAccountNumber());
+        assertEquals(1.0, result.get(1).getMeanQueueLength());
+    }
+
+    @Test
+    public void testMemoryIsBounded() {
+
+        // when
+        // the hot account is interleaved with many accounts acquired once
+        for (long number = 100; number < 1_000; number++) {
+            tracker.record(1L, 0, 0);
+            tracker.record(number, 0, 0);
+        }
+
+        // then
+        // the hot account keeps its slot, the evicted counts are inherited as errors
+        List<HotAccount> result = tracker.top(10);
+        assertEquals(4, result.size());
+        assertEquals(1L, result.get(0).getAccountNumber());
+        assertEquals(900, result.get(0).getAcquisitions());
+        assertEquals(0, result.get(0).getError());
+        for (HotAccount account : result.subList(1, 4)) {
+            assertTrue(account.getAcquisitions() - account.getError() <= 1);
+        }
+    }
+
+    @Test
+    public void testSampledCountsAreScaled() {
+
+        // given
+        tracker.setSampleInterval(8);
+
+        // when
+        tracker.record(1L, 0, 0);
+
+        // then
+        HotAccount result = tracker.top(1).get(0);
+        assertEquals(8, result.getAcquisitions());
+        assertEquals(1, result.getSamples());
+    }
+
+    @Test
+    public void testReset() {
+
+        // given
+        tracker.record(1L, 0, 0);
+
+        // when
+        tracker.reset();
+
+        // then
+        assertTrue(tracker.top(10).isEmpty());
+    }
+
+    @Test
+    public void testBuckets() {
+
+        // every value is within the bounds of its bucket, which are at most 25% apart
+        for (long nanos : new long[]{0, 1, 3, 4, 7, 8, 9, 10, 1_000, 123_456_789, 1L << 39}) {
+            int bucket = HotAccountTracker.bucket(nanos);
+            long upperBound = HotAccountTracker.upperBound(bucket);
+            assertTrue(nanos <= upperBound, "value " + nanos);
+            assertTrue(bucket == 0 || nanos > HotAccountTracker.upperBound(bucket - 1), "value " + nanos);
+            assertTrue(upperBound - nanos <= nanos / 4, "value " + nanos);
+        }
+        assertEquals(HotAccountTracker.BUCKETS - 1, HotAccountTracker.bucket(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,318 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willDoNothing;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class LedgerBankServiceImplTest {
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Mock
+    private BankPersistenceService persistenceService;
+
+    @Mock
+    private LedgerJournal journal;
+
+    @InjectMocks
+    private LedgerBankServiceImpl bankService;
+
+    /**
+     * Dummy number
+     */
+    private long number;
+
+    /**
+     * Dummy account number
+     */
+    private AccountNumber accountNumber;
+
+    @BeforeEach
+    void setUp() {
+        number = 1234567890L;
+        accountNumber = AccountNumber.of(number);
+        bankService.clock = Clock.fixed(Instant.ofEpochMilli(123456L), ZoneOffset.UTC);
+        bankService.setJournal(journal);
+    }
+
+    @Test
+    public void testDepositCreatesAccount() {
+
+        // given
+        Money depositAmount = Money.parse("100.49");
+
+        // when
+        BankAccount result = bankService.deposit(accountNumber, depositAmount);
+
+        // then
+        assertEquals(accountNumber, result.getNumber());
+        assertEquals(depositAmount, result.getBalance());
+        assertEquals(depositAmount, bankService.getAccount(accountNumber).getBalance());
+
+        // account creation must be journaled before the deposit
+        ArgumentCaptor<LedgerJournalEntry> entries = ArgumentCaptor.forClass(LedgerJournalEntry.class);
+        then(journal).should(times(2)).append(entries.capture());
+        assertEquals(LedgerJournalEntry.Kind.ACCOUNT, entries.getAllValues().get(0).getKind());
+        LedgerJournalEntry deposit = entries.getAllValues().get(1);
+        assertEquals(LedgerJournalEntry.Kind.DEPOSIT, deposit.getKind());
+        assertEquals(number, deposit.getAccountNumber());
+        assertEquals(depositAmount.getMinorUnits(), deposit.getBalanceAfter());
+
+        // nothing is written synchronously
+        then(persistenceService).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void testWithdraw() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("200.65"));
+        Money withdrawalAmount = Money.parse("100.49");
+
+        // when
+        BankAccount result = bankService.withdraw(accountNumber, withdrawalAmount);
+
+        // then
+        assertEquals(Money.parse("100.16"), result.getBalance());
+        ArgumentCaptor<LedgerJournalEntry> entries = ArgumentCaptor.forClass(LedgerJournalEntry.class);
+        then(journal).should(times(3)).append(entries.capture());
+        assertEquals(LedgerJournalEntry.Kind.WITHDRAWAL, entries.getValue().getKind());
+    }
+
+    @Test
+    public void testWithdrawInsufficientBalance() {
+
+        // given
+        Money balance = Money.parse("200.65");
+        bankService.deposit(accountNumber, balance);
+
+        // when
+        assertThrows(InsufficientBalanceException.class, () -> bankService.withdraw(accountNumber, Money.parse("500.49")));
+
+        // then
+        // the balance is untouched and nothing is journaled for the failed withdrawal
+        assertEquals(balance, bankService.getAccount(accountNumber).getBalance());
+        then(journal).should(times(2)).append(any());
+    }
+
+    @Test
+    public void testFailedJournalRejectsRequests() {
+
+        // given
+        Money balance = Money.parse("200.65");
+        bankService.deposit(accountNumber, balance);
+        IllegalStateException failure = new IllegalStateException("ledger journal failed");
+        willThrow(failure).given(journal).append(any());
+        willThrow(failure).given(journal).checkNotFailed();
+
+        // when
+        assertThrows(IllegalStateException.class, () -> bankService.withdraw(accountNumber, Money.parse("100")));
+
+        // then
+        // the rejected withdrawal doesn't change the balance and the balance isn't served any more
+        assertThrows(IllegalStateException.class, () -> bankService.getAccount(accountNumber));
+        willDoNothing().given(journal).checkNotFailed();
+        assertEquals(balance, bankService.getAccount(accountNumber).getBalance());
+    }
+
+    @Test
+    public void testApplyBatch() {
+
+        // given
+        AccountNumber missingAccountNumber = AccountNumber.of(1234567891L);
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(accountNumber, Money.parse("100.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("150.00")),
+                BatchOperation.withdrawal(missingAccountNumber, Money.parse("1.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("40.00")));
+
+        // when
+        List<BatchOperationResult> results = bankService.applyBatch(operations, false);
+
+        // then
+        // rejected operations are skipped, the rest of the batch is applied
+        assertEquals(BatchOperationResult.Status.APPLIED, results.get(0).getStatus());
+        assertInstanceOf(InsufficientBalanceException.class, results.get(1).getError());
+        assertInstanceOf(AccountNotFoundException.class, results.get(2).getError());
+        assertEquals(Money.parse("60.00"), results.get(3).getAccount().getBalance());
+        assertEquals(Money.parse("60.00"), bankService.getAccount(accountNumber).getBalance());
+        assertThrows(AccountNotFoundException.class, () -> bankService.getAccount(missingAccountNumber));
+    }
+
+    @Test
+    public void testApplyBatchAllOrNothing() {
+
+        // given
+        Money balance = Money.parse("50.00");
+        bankService.deposit(accountNumber, balance);
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(accountNumber, Money.parse("100.00")),
+                BatchOperation.withdrawal(accountNumber, Money.parse("200.00")),
+                BatchOperation.deposit(accountNumber, Money.parse("1.00")));
+
+        // when
+        List<BatchOperationResult> results = bankService.applyBatch(operations, true);
+
+        // then
+        // the batch is rejected as a whole, nothing is applied and journaled
+        assertEquals(BatchOperationResult.Status.NOT_APPLIED, results.get(0).getStatus());
+        assertEquals(BatchOperationResult.Status.REJECTED, results.get(1).getStatus());
+        assertEquals(BatchOperationResult.Status.NOT_APPLIED, results.get(2).getStatus());
+        assertEquals(balance, bankService.getAccount(accountNumber).getBalance());
+        then(journal).should(times(2)).append(any());
+    }
+
+    @Test
+    public void testWithdrawAccountNotFound() {
+        assertThrows(AccountNotFoundException.class, () -> bankService.withdraw(accountNumber, Money.parse("1")));
+        then(journal).should(never()).append(any());
+    }
+
+    @Test
+    public void testTransfer() {
+
+        // given
+        AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
+        bankService.deposit(accountNumber, Money.parse("100.50"));
+        bankService.deposit(targetAccountNumber, Money.parse("200.50"));
+        Money transferAmount = Money.parse("50");
+
+        // when
+        TransferTransaction result = bankService.transfer(targetAccountNumber, accountNumber, transferAmount);
+
+        // then
+        assertNotNull(result);
+        assertEquals(targetAccountNumber, result.getFromAccountNumber());
+        assertEquals(accountNumber, result.getToAccountNumber());
+        assertEquals(transferAmount, result.getAmount());
+        assertEquals(123456L, result.getTimestamp().toEpochMilli());
+        assertEquals(Money.parse("150.50"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("150.50"), bankService.getAccount(targetAccountNumber).getBalance());
+
+        ArgumentCaptor<LedgerJournalEntry> entries = ArgumentCaptor.forClass(LedgerJournalEntry.class);
+        then(journal).should(times(5)).append(entries.capture());
+        LedgerJournalEntry transfer = entries.getValue();
+        assertEquals(LedgerJournalEntry.Kind.TRANSFER, transfer.getKind());
+        assertEquals(result.getId().getId(), transfer.getTransactionId());
+        assertEquals(15050L, transfer.getBalanceAfter());
+        assertEquals(15050L, transfer.getTargetBalanceAfter());
+    }
+
+    @Test
+    public void testTransferInsufficientBalance() {
+
+        // given
+        AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
+        bankService.deposit(accountNumber, Money.parse("25"));
+        bankService.deposit(targetAccountNumber, Money.parse("25"));
+
+        // when
+        assertThrows(InsufficientBalanceException.class, () -> bankService.transfer(accountNumber, targetAccountNumber, Money.parse("50")));
+
+        // then
+        assertEquals(Money.parse("25"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("25"), bankService.getAccount(targetAccountNumber).getBalance());
+    }
+
+    @Test
+    public void testListDepositsFlushesJournal() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100"));
+        AccountEntity accountEntity = new AccountEntity();
+        accountEntity.setNumber(number);
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(accountEntity));
+
+        TransactionEntity entity = new TransactionEntity();
+        entity.setTransactionId(idGenerator.nextId());
+        entity.setType(TransactionEntryType.DEPOSIT);
+        entity.setAmount(10000L);
+        entity.setTimestamp(123456L);
+        entity.setAccountNumber(number);
+        given(persistenceService.listTransactions(number, AbstractBankService.DEPOSIT_TYPES, TransactionPage.DEFAULT_LIMIT + 1)).willReturn(List.of(entity));
+
+        // when
+        List<DepositTransaction> result = bankService.listDeposits(accountNumber, null, TransactionPage.DEFAULT_LIMIT).getItems();
+
+        // then
+        assertEquals(1, result.size());
+        assertEquals(entity.getTransactionId(), result.getFirst().getId().getId());
+
+        // the journal must be written before reading the history
+        InOrder inOrder = inOrder(journal, persistenceService);
+        inOrder.verify(journal).flush();
+        inOrder.verify(persistenceService).listTransactions(number, AbstractBankService.DEPOSIT_TYPES, TransactionPage.DEFAULT_LIMIT + 1);
+    }
+
+    @Test
+    public void testExportTransactionsFlushesJournal() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100"));
+        AccountEntity accountEntity = new AccountEntity();
+        accountEntity.setNumber(number);
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(accountEntity));
+
+        // when
+        bankService.exportTransactions(accountNumber, TransactionType.DEPOSIT, transaction -> {
+        });
+
+        // then
+        // the journal must be written before streaming the history
+        InOrder inOrder = inOrder(journal, persistenceService);
+        inOrder.verify(journal).flush();
+        inOrder.verify(persistenceService).forEachTransaction(eq(number), eq(AbstractBankService.DEPOSIT_TYPES), any());
+    }
+
+    @Test
+    public void testRebuild() {
+
+        // given
+        long targetNumber = 9999999999L;
+        AccountEntity accountEntity = new AccountEntity();
+        accountEntity.setNumber(number);
+        accountEntity.setBalance(15000L);
+        AccountEntity targetEntity = new AccountEntity();
+        targetEntity.setNumber(targetNumber);
+        targetEntity.setBalance(0L);
+        given(persistenceService.listAccounts()).willReturn(List.of(accountEntity, targetEntity));
+
+        // when
+        bankService.rebuild();
+
+        // then
+        // the persisted balances are loaded, the histories aren't read
+        assertEquals(Money.parse("150"), bankService.getAccount(accountNumber).getBalance());
+        assertEquals(Money.parse("0"), bankService.getAccount(AccountNumber.of(targetNumber)).getBalance());
+        assertThrows(AccountNotFoundException.class, () -> bankService.getAccount(AccountNumber.of(1111111111L)));
+        then(persistenceService).should(never()).listTransactions(anyLong());
+    }
+}
@@ -0,0 +1,203 @@
+package net.uniloftsky.markant.bank.biz;
+
+import net.uniloftsky.markant.bank.biz.persistence.AccountEntity;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class LedgerJournalTest {
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Mock
+    private BankPersistenceService persistenceService;
+
+    /**
+     * Dummy account numbers
+     */
+    private final long number = 1234567890L;
+    private final long targetNumber = 9999999999L;
+
+    private LedgerJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        journal = new LedgerJournal(persistenceService, TransactionOperations.withoutTransaction(), 100, 1000);
+    }
+
+    @Test
+    public void testWriteBatch() {
+
+        // given
+        AccountEntity account = accountEntity(number);
+        AccountEntity target = accountEntity(targetNumber);
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(account));
+        given(persistenceService.getAccount(targetNumber)).willReturn(Optional.of(target));
+
+        long depositId = idGenerator.nextId();
+        long transferId = idGenerator.nextId();
+        List<LedgerJournalEntry> batch = List.of(
+                LedgerJournalEntry.account(number, 0L, 1L),
+                LedgerJournalEntry.deposit(depositId, number, 10000L, 10000L, 2L),
+                LedgerJournalEntry.transfer(transferId, number, targetNumber, 4000L, 6000L, 4000L, 3L)
+        );
+
+        // when
+        journal.write(batch);
+
+        // then
+        // transactions are written in the journal order
+        InOrder inOrder = inOrder(persistenceService);
+        inOrder.verify(persistenceService).createAccount(number, 0L, 1L);
+        inOrder.verify(persistenceService).createDepositTransaction(depositId, number, 10000L, 2L);
+        inOrder.verify(persistenceService).createTransferTransaction(transferId, number, targetNumber, 4000L, 3L);
+
+        // only the last balance of every account is written
+        then(persistenceService).should(times(1)).updateAccountBalance(account, 6000L, 3L);
+        then(persistenceService).should(times(1)).updateAccountBalance(target, 4000L, 3L);
+        then(persistenceService).should(never()).updateAccountBalance(account, 10000L, 2L);
+    }
+
+    @Test
+    public void testFlushWaitsForWriter() {
+
+        // given
+        AccountEntity account = accountEntity(number);
+        given(persistenceService.getAccount(number)).willReturn(Optional.of(account));
+        journal.start();
+
+        // when
+        for (int i = 1; i <= 10; i++) {
+            journal.append(LedgerJournalEntry.deposit(idGenerator.nextId(), number, 100L, 100L * i, i));
+        }
+        journal.flush();
+
+        // then
+        then(persistenceService).should(times(10)).createDepositTransaction(anyLong(), eq(number), eq(100L), anyLong());
+        then(persistenceService).should().updateAccountBalance(account, 1000L, 10L);
+        assertEquals(0, journal.pending());
+        journal.stop();
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+
+        // given
+        // the first attempt to write fails
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionOperations failingOnce = new TransactionOperations() {
+            @Override
+            public <T> T execute(org.springframework.transaction.support.TransactionCallback<T> action) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("database is unavailable");
+                }
+                return action.doInTransaction(null);
+            }
+        };
+        journal = new LedgerJournal(persistenceService, failingOnce, 100, 1000);
+        journal.start();
+
+        // when
+        journal.append(LedgerJournalEntry.account(number, 0L, 1L));
+        journal.flush();
+
+        // then
+        assertEquals(2, attempts.get());
+        then(persistenceService).should().createAccount(number, 0L, 1L);
+        journal.stop();
+    }
+
+    @Test
+    public void testPoisonedBatchFailsJournal() {
+
+        // given
+        // the deposit violates a constraint on every attempt
+        long poisonedId = idGenerator.nextId();
+        given(persistenceService.createDepositTransaction(poisonedId, number, 100L, 2L)).willThrow(new IllegalStateException("duplicate key"));
+        journal = new LedgerJournal(persistenceService, TransactionOperations.withoutTransaction(), 100, 1000, 2, Duration.ofSeconds(10));
+        journal.start();
+
+        // when
+        journal.append(LedgerJournalEntry.account(number, 0L, 1L));
+        journal.append(LedgerJournalEntry.deposit(poisonedId, number, 100L, 100L, 2L));
+        journal.append(LedgerJournalEntry.deposit(idGenerator.nextId(), number, 200L, 300L, 3L));
+
+        // then
+        // the flush fails without waiting for its timeout, nothing after the poisoned entry is written or accepted
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> journal.flush());
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        then(persistenceService).should(never()).createDepositTransaction(anyLong(), eq(number), eq(200L), eq(3L));
+        then(persistenceService).should(never()).updateAccountBalance(any(), anyLong(), anyLong());
+        assertThrows(IllegalStateException.class, () -> journal.checkNotFailed());
+        assertThrows(IllegalStateException.class, () -> journal.append(LedgerJournalEntry.account(targetNumber, 0L, 4L)));
+        journal.stop();
+    }
+
+    @Test
+    public void testFlushTimesOut() throws InterruptedException {
+
+        // given
+        // the writer is blocked in the database
+        CountDownLatch blocked = new CountDownLatch(1);
+        TransactionOperations hanging = new TransactionOperations() {
+            @Override
+            public <T> T execute(org.springframework.transaction.support.TransactionCallback<T> action) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return action.doInTransaction(null);
+            }
+        };
+        journal = new LedgerJournal(persistenceService, hanging, 100, 1000, 1, Duration.ofMillis(50));
+        journal.start();
+
+        // when
+        journal.append(LedgerJournalEntry.account(number, 0L, 1L));
+
+        // then
+        assertThrows(IllegalStateException.class, () -> journal.flush());
+        blocked.countDown();
+        journal.stop();
+    }
+
+    @Test
+    public void testAppendToStoppedJournal() {
+        assertThrows(IllegalStateException.class, () -> journal.append(LedgerJournalEntry.account(number, 0L, 1L)));
+    }
+
+    private AccountEntity accountEntity(long number) {
+        AccountEntity entity = new AccountEntity();
+        entity.setNumber(number);
+        entity.setBalance(0L);
+        return entity;
+    }
+}
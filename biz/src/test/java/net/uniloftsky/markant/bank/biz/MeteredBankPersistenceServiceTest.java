@@ -0,0 +1,59 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class MeteredBankPersistenceServiceTest {
+
+    @Mock
+    private BankPersistenceService delegate;
+
+    private SimpleMeterRegistry registry;
+    private MeteredBankPersistenceService persistenceService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        persistenceService = new MeteredBankPersistenceService(delegate, new BankMetrics(registry));
+    }
+
+    @Test
+    public void testDebitIfSufficient() {
+
+        // given
+        given(delegate.debitIfSufficient(1234567890L, 100L, 123456L)).willReturn(OptionalLong.of(900L));
+
+        // when
+        OptionalLong result = persistenceService.debitIfSufficient(1234567890L, 100L, 123456L);
+
+        // then
+        // every method has its own timer
+        assertEquals(OptionalLong.of(900L), result);
+        assertEquals(1, registry.get(BankMetrics.PERSISTENCE).tag("method", "debitIfSufficient").timer().count());
+        assertEquals(0, registry.get(BankMetrics.PERSISTENCE).tag("method", "credit").timer().count());
+    }
+
+    @Test
+    public void testCreditFailure() {
+
+        // given
+        given(delegate.credit(1234567890L, 100L, 123456L)).willThrow(new IllegalStateException());
+
+        // when
+        assertThrows(IllegalStateException.class, () -> persistenceService.credit(1234567890L, 100L, 123456L));
+
+        // then
+        assertEquals(1, registry.get(BankMetrics.PERSISTENCE).tag("method", "credit").timer().count());
+    }
+}
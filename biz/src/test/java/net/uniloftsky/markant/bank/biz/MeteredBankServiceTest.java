@@ -0,0 +1,81 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class MeteredBankServiceTest {
+
+    @Mock
+    private BankService delegate;
+
+    private SimpleMeterRegistry registry;
+    private MeteredBankService bankService;
+
+    /**
+     * Dummy account number
+     */
+    private final AccountNumber accountNumber = AccountNumber.of(1234567890L);
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        bankService = new MeteredBankService(delegate, new BankMetrics(registry));
+    }
+
+    @Test
+    public void testDeposit() {
+
+        // given
+        BankAccount account = new BankAccount(accountNumber, Money.parse("100"));
+        given(delegate.deposit(accountNumber, Money.parse("100"))).willReturn(account);
+
+        // when
+        BankAccount result = bankService.deposit(accountNumber, Money.parse("100"));
+
+        // then
+        assertSame(account, result);
+        assertEquals(1, registry.get(BankMetrics.OPERATION).tag("operation", "deposit").timer().count());
+        assertEquals(0, registry.get(BankMetrics.OPERATION).tag("operation", "withdraw").timer().count());
+    }
+
+    @Test
+    public void testWithdrawInsufficientBalance() {
+
+        // given
+        given(delegate.withdraw(accountNumber, Money.parse("100"))).willThrow(new InsufficientBalanceException("insufficient balance"));
+
+        // when
+        assertThrows(InsufficientBalanceException.class, () -> bankService.withdraw(accountNumber, Money.parse("100")));
+
+        // then
+        // failed operations are timed and counted by the exception
+        assertEquals(1, registry.get(BankMetrics.OPERATION).tag("operation", "withdraw").timer().count());
+        assertEquals(1, registry.get(BankMetrics.OPERATION_FAILURES).tag("operation", "withdraw")
+                .tag("exception", InsufficientBalanceException.class.getSimpleName()).counter().count());
+        assertEquals(0, registry.get(BankMetrics.OPERATION_FAILURES).tag("operation", "withdraw")
+                .tag("exception", AccountNotFoundException.class.getSimpleName()).counter().count());
+    }
+
+    @Test
+    public void testTransferUnexpectedException() {
+
+        // given
+        AccountNumber targetAccountNumber = AccountNumber.of(9999999999L);
+        given(delegate.transfer(accountNumber, targetAccountNumber, Money.parse("100"))).willThrow(new IllegalStateException());
+
+        // when
+        assertThrows(IllegalStateException.class, () -> bankService.transfer(accountNumber, targetAccountNumber, Money.parse("100")));
+
+        // then
+        assertEquals(1, registry.get(BankMetrics.OPERATION_FAILURES).tag("operation", "transfer")
+                .tag("exception", IllegalStateException.class.getSimpleName()).counter().count());
+    }
+}
@@ -0,0 +1,74 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(10050L, Money.parse("100.50").getMinorUnits());
+        assertEquals(10050L, Money.parse("100.5").getMinorUnits());
+        assertEquals(10000L, Money.parse("100").getMinorUnits());
+        assertEquals(10000L, Money.parse("100.000").getMinorUnits());
+        assertEquals(5L, Money.parse("0.05").getMinorUnits());
+        assertEquals(50L, Money.parse(".5").getMinorUnits());
+        assertEquals(-5L, Money.parse("-0.05").getMinorUnits());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertThrows(NumberFormatException.class, () -> Money.parse(null));
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("100,50"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("100."));
+        assertThrows(NumberFormatException.class, () -> Money.parse("100.505"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1e5"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("92233720368547758.08"));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("100.50", Money.ofMinorUnits(10050L).toString());
+        assertEquals("0.05", Money.ofMinorUnits(5L).toString());
+        assertEquals("-0.05", Money.ofMinorUnits(-5L).toString());
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals("-92233720368547758.08", Money.ofMinorUnits(Long.MIN_VALUE).toString());
+    }
+
+    @Test
+    public void testArithmetic() {
+
+        // given
+        Money balance = Money.parse("200.65");
+        Money amount = Money.parse("100.49");
+
+        // when
+        Money afterWithdrawal = balance.minus(amount);
+        Money afterDeposit = balance.plus(amount);
+
+        // then
+        assertEquals(Money.parse("100.16"), afterWithdrawal);
+        assertEquals(Money.parse("301.14"), afterDeposit);
+        assertTrue(amount.minus(balance).isNegative());
+        assertTrue(amount.isPositive());
+    }
+
+    @Test
+    public void testOverflow() {
+        Money max = Money.ofMinorUnits(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinorUnits(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MIN_VALUE).minus(Money.ofMinorUnits(1)));
+    }
+
+    @Test
+    public void testBigDecimalConversion() {
+        assertEquals(Money.parse("100.50"), Money.of(new BigDecimal("100.5")));
+        assertEquals(new BigDecimal("100.50"), Money.parse("100.5").toBigDecimal());
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("0.001")));
+    }
+}
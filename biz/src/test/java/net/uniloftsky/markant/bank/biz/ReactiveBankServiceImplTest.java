@@ -0,0 +1,174 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import net.uniloftsky.markant.bank.biz.persistence.R2dbcBankPersistenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Reactive engine against the R2DBC persistence on a new in-memory database for every test
+ */
+public class ReactiveBankServiceImplTest {
+
+    private ReactiveBankServiceImpl bankService;
+
+    private AccountNumber accountNumber;
+    private AccountNumber targetAccountNumber;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionFactory connectionFactory = H2ConnectionFactory.inMemory("reactive-" + UUID.randomUUID());
+        new ResourceDatabasePopulator(new ClassPathResource("db/bank_schema.sql")).populate(connectionFactory).block();
+
+        R2dbcBankPersistenceService persistenceService = new R2dbcBankPersistenceService();
+        persistenceService.setDatabaseClient(DatabaseClient.create(connectionFactory));
+        bankService = new ReactiveBankServiceImpl();
+        bankService.setPersistenceService(persistenceService);
+        bankService.setTransactionalOperator(TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory)));
+
+        accountNumber = AccountNumber.of(1234567890L);
+        targetAccountNumber = AccountNumber.of(1234567891L);
+    }
+
+    @Test
+    public void testDepositAndWithdraw() {
+
+        // given
+        StepVerifier.create(bankService.deposit(accountNumber, Money.parse("100")))
+                .assertNext(account -> assertEquals(Money.parse("100"), account.getBalance()))
+                .verifyComplete();
+
+        // when
+        // then
+        StepVerifier.create(bankService.withdraw(accountNumber, Money.parse("30.50")))
+                .assertNext(account -> assertEquals(Money.parse("69.50"), account.getBalance()))
+                .verifyComplete();
+        StepVerifier.create(bankService.getAccount(accountNumber))
+                .assertNext(account -> assertEquals(Money.parse("69.50"), account.getBalance()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testWithdrawInsufficientBalance() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100")).block();
+
+        // when
+        // then
+        StepVerifier.create(bankService.withdraw(accountNumber, Money.parse("100.01")))
+                .verifyError(InsufficientBalanceException.class);
+        StepVerifier.create(bankService.withdraw(targetAccountNumber, Money.parse("1")))
+                .verifyError(AccountNotFoundException.class);
+        StepVerifier.create(bankService.withdraw(accountNumber, Money.ZERO))
+                .verifyError(IllegalArgumentException.class);
+        StepVerifier.create(bankService.listWithdrawals(accountNumber, null, 10))
+                .expectNextMatches(page -> page.getItems().isEmpty())
+                .verifyComplete();
+    }
+
+    @Test
+    public void testTransfer() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100")).block();
+        bankService.deposit(targetAccountNumber, Money.parse("5")).block();
+
+        // when
+        TransferTransaction result = bankService.transfer(accountNumber, targetAccountNumber, Money.parse("40")).block();
+
+        // then
+        assertNotNull(result);
+        assertEquals(accountNumber, result.getFromAccountNumber());
+        assertEquals(targetAccountNumber, result.getToAccountNumber());
+        StepVerifier.create(bankService.getAccount(accountNumber))
+                .assertNext(account -> assertEquals(Money.parse("60"), account.getBalance()))
+                .verifyComplete();
+        StepVerifier.create(bankService.getAccount(targetAccountNumber))
+                .assertNext(account -> assertEquals(Money.parse("45"), account.getBalance()))
+                .verifyComplete();
+
+        // both parties see the same transfer
+        StepVerifier.create(bankService.listTransfers(targetAccountNumber, null, 10))
+                .expectNextMatches(page -> page.getItems().equals(List.of(result)))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testTransferRollback() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("100")).block();
+
+        // when
+        // the initiator is debited first, then the missing target fails the transaction
+        StepVerifier.create(bankService.transfer(accountNumber, targetAccountNumber, Money.parse("40")))
+                .verifyError(AccountNotFoundException.class);
+
+        // then
+        StepVerifier.create(bankService.getAccount(accountNumber))
+                .assertNext(account -> assertEquals(Money.parse("100"), account.getBalance()))
+                .verifyComplete();
+        StepVerifier.create(bankService.listTransfers(accountNumber, null, 10))
+                .expectNextMatches(page -> page.getItems().isEmpty())
+                .verifyComplete();
+    }
+
+    @Test
+    public void testListTransactionsPages() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("1")).block();
+        bankService.deposit(accountNumber, Money.parse("2")).block();
+        bankService.withdraw(accountNumber, Money.parse("3")).block();
+
+        // when
+        TransactionPage<BankTransaction> firstPage = bankService.listTransactions(accountNumber, null, 2).block();
+        TransactionPage<BankTransaction> secondPage = bankService.listTransactions(accountNumber, firstPage.getNext(), 2).block();
+
+        // then
+        assertEquals(2, firstPage.getItems().size());
+        assertNotNull(firstPage.getNext());
+        assertEquals(1, secondPage.getItems().size());
+        assertNull(secondPage.getNext());
+        StepVerifier.create(bankService.listDeposits(accountNumber, null, 0))
+                .verifyError(InvalidPageLimitException.class);
+        StepVerifier.create(bankService.listDeposits(targetAccountNumber, null, 10))
+                .verifyError(AccountNotFoundException.class);
+    }
+
+    @Test
+    public void testExportTransactions() {
+
+        // given
+        bankService.deposit(accountNumber, Money.parse("10")).block();
+        bankService.deposit(targetAccountNumber, Money.parse("10")).block();
+        bankService.transfer(accountNumber, targetAccountNumber, Money.parse("4")).block();
+        bankService.withdraw(accountNumber, Money.parse("1")).block();
+
+        // when
+        // then
+        StepVerifier.create(bankService.exportTransactions(accountNumber, null))
+                .expectNextCount(3)
+                .verifyComplete();
+        StepVerifier.create(bankService.exportTransactions(accountNumber, TransactionType.TRANSFER))
+                .expectNextMatches(transaction -> transaction instanceof TransferTransaction)
+                .verifyComplete();
+        StepVerifier.create(bankService.exportTransactions(AccountNumber.of(1111111111L), null))
+                .verifyError(AccountNotFoundException.class);
+    }
+}
@@ -0,0 +1,262 @@
+package net.uniloftsky.markant.bank.biz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntity;
+import net.uniloftsky.markant.bank.biz.persistence.TransactionEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentHistoryCacheTest {
+
+    private static final long ACCOUNT = 1234567890L;
+    private static final long COUNTERPARTY = 1234567891L;
+
+    private final AccountNumber accountNumber = AccountNumber.of(ACCOUNT);
+    private final RecentHistoryCache cache = new RecentHistoryCache(4, DataSize.ofMegabytes(1));
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testMissUntilLoaded() {
+
+        // when
+        TransactionPage<BankTransaction> page = cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 2);
+
+        // then
+        assertNull(page);
+        assertEquals(0, cache.accounts());
+    }
+
+    @Test
+    public void testCompleteHistory() {
+
+        // given
+        // two entries are less than the size of the cache, so they are the whole history
+        cache.load(accountNumber, () -> List.of(deposit(2, 200), deposit(1, 100)));
+
+        // when
+        TransactionPage<BankTransaction> page = cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 3);
+
+        // then
+        assertNotNull(page);
+        assertEquals(2, page.getItems().size());
+        assertEquals(new TransactionId(2), page.getItems().get(0).getId());
+        assertEquals(new TransactionId(1), page.getItems().get(1).getId());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void testPageWithNextCursor() {
+
+        // given
+        cache.load(accountNumber, () -> List.of(deposit(3, 300), deposit(2, 200), deposit(1, 100)));
+
+        // when
+        TransactionPage<DepositTransaction> page = cache.firstPage(accountNumber, AbstractBankService.DEPOSIT_TYPES, 2);
+
+        // then
+        assertNotNull(page);
+        assertEquals(2, page.getItems().size());
+        assertEquals(Money.ofMinorUnits(300), page.getItems().get(0).getAmount());
+        assertEquals(TransactionCursor.of(page.getItems().get(1)), page.getNext());
+    }
+
+    @Test
+    public void testIncompleteHistoryFallsBack() {
+
+        // given
+        // as many entries as the size of the cache, older entries may exist
+        cache.load(accountNumber, () -> List.of(withdrawal(4, 400), deposit(3, 300), deposit(2, 200), deposit(1, 100)));
+
+        // when
+        TransactionPage<WithdrawTransaction> withdrawals = cache.firstPage(accountNumber, AbstractBankService.WITHDRAWAL_TYPES, 2);
+        TransactionPage<DepositTransaction> deposits = cache.firstPage(accountNumber, AbstractBankService.DEPOSIT_TYPES, 2);
+
+        // then
+        // a single cached withdrawal doesn't tell whether older ones exist, two of three cached deposits do
+        assertNull(withdrawals);
+        assertNotNull(deposits);
+        assertTrue(deposits.hasNext());
+    }
+
+    @Test
+    public void testRingOverwritesOldestEntries() {
+
+        // given
+        cache.load(accountNumber, List::of);
+
+        // when
+        for (long id = 1; id <= 6; id++) {
+            cache.add(ACCOUNT, id, TransactionEntryType.DEPOSIT, 0, id * 100, id);
+        }
+
+        // then
+        // the last four entries are cached, but the history isn't complete anymore
+        TransactionPage<BankTransaction> page = cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 3);
+        assertNotNull(page);
+        List<TransactionId> ids = new ArrayList<>();
+        page.getItems().forEach(transaction -> ids.add(transaction.getId()));
+        assertEquals(List.of(new TransactionId(6), new TransactionId(5), new TransactionId(4)), ids);
+        assertTrue(page.hasNext());
+        assertNull(cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 4));
+    }
+
+    @Test
+    public void testTransferParties() {
+
+        // given
+        cache.load(accountNumber, List::of);
+
+        // when
+        cache.add(ACCOUNT, 1, TransactionEntryType.TRANSFER_IN, COUNTERPARTY, 100, 1);
+        cache.add(ACCOUNT, 2, TransactionEntryType.TRANSFER_OUT, COUNTERPARTY, 50, 2);
+
+        // then
+        TransactionPage<TransferTransaction> page = cache.firstPage(accountNumber, AbstractBankService.TRANSFER_TYPES, 2);
+        assertNotNull(page);
+        TransferTransaction outgoing = page.getItems().get(0);
+        TransferTransaction incoming = page.getItems().get(1);
+        assertEquals(accountNumber, outgoing.getFromAccountNumber());
+        assertEquals(AccountNumber.of(COUNTERPARTY), outgoing.getToAccountNumber());
+        assertEquals(AccountNumber.of(COUNTERPARTY), incoming.getFromAccountNumber());
+        assertEquals(accountNumber, incoming.getToAccountNumber());
+    }
+
+    @Test
+    public void testLoadRacingWithAddIsNotCached() {
+
+        // when
+        cache.load(accountNumber, () -> {
+            cache.add(ACCOUNT, 2, TransactionEntryType.DEPOSIT, 0, 200, 2);
+            return List.of(deposit(1, 100));
+        });
+
+        // then
+        assertEquals(0, cache.accounts());
+    }
+
+    @Test
+    public void testAddWithinTransactionIsCachedOnCommit() {
+
+        // given
+        cache.load(accountNumber, List::of);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        cache.add(ACCOUNT, 1, TransactionEntryType.DEPOSIT, 0, 100, 1);
+
+        // then
+        assertTrue(cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 2).getItems().isEmpty());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(1, cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 2).getItems().size());
+    }
+
+    @Test
+    public void testLoadBetweenCommitAndAddKeepsEntryOnce() {
+
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        cache.add(ACCOUNT, 2, TransactionEntryType.DEPOSIT, 0, 200, 2);
+
+        // when
+        // the load reads the committed entry before it's added after the commit
+        cache.load(accountNumber, () -> List.of(deposit(2, 200), deposit(1, 100)));
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // then
+        TransactionPage<BankTransaction> page = cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 3);
+        assertEquals(2, page.getItems().size());
+        assertEquals(new TransactionId(2), page.getItems().get(0).getId());
+        assertEquals(new TransactionId(1), page.getItems().get(1).getId());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAccountEvicted() {
+
+        // given
+        // the memory of two accounts
+        RecentHistoryCache smallCache = new RecentHistoryCache(4, DataSize.ofBytes(2L * (4 * RecentHistoryCache.ENTRY_BYTES + RecentHistoryCache.ACCOUNT_OVERHEAD_BYTES)));
+        AccountNumber second = AccountNumber.of(ACCOUNT + 1);
+        AccountNumber third = AccountNumber.of(ACCOUNT + 2);
+        smallCache.load(accountNumber, List::of);
+        smallCache.load(second, List::of);
+        smallCache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 1);
+
+        // when
+        smallCache.load(third, List::of);
+
+        // then
+        assertEquals(2, smallCache.getMaxAccounts());
+        assertEquals(2, smallCache.accounts());
+        assertNotNull(smallCache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 1));
+        assertNull(smallCache.firstPage(second, AbstractBankService.ALL_TYPES, 1));
+        assertNotNull(smallCache.firstPage(third, AbstractBankService.ALL_TYPES, 1));
+    }
+
+    @Test
+    public void testAccountsSpreadOverStripes() {
+
+        // given
+        // the default budget is enough for the maximum stripes, a budget of two accounts has a single stripe
+        RecentHistoryCache defaultCache = new RecentHistoryCache();
+        int accounts = 10 * RecentHistoryCache.MAX_STRIPES;
+
+        // when
+        for (int i = 0; i < accounts; i++) {
+            defaultCache.load(AccountNumber.of(ACCOUNT + i), List::of);
+        }
+
+        // then
+        assertEquals(RecentHistoryCache.MAX_STRIPES, defaultCache.getStripes());
+        assertEquals(1, new RecentHistoryCache(4, DataSize.ofBytes(2L * (4 * RecentHistoryCache.ENTRY_BYTES + RecentHistoryCache.ACCOUNT_OVERHEAD_BYTES))).getStripes());
+        assertEquals(accounts, defaultCache.accounts());
+        for (int i = 0; i < accounts; i++) {
+            assertNotNull(defaultCache.firstPage(AccountNumber.of(ACCOUNT + i), AbstractBankService.ALL_TYPES, 1));
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+
+        // given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        // when
+        cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 1);
+        cache.load(accountNumber, List::of);
+        cache.firstPage(accountNumber, AbstractBankService.ALL_TYPES, 1);
+
+        // then
+        assertEquals(1, registry.get("bank.recent-history.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("bank.recent-history.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(0, registry.get("bank.recent-history.evictions").functionCounter().count());
+        assertEquals(1, registry.get("bank.recent-history.accounts").gauge().value());
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new RecentHistoryCache(0, DataSize.ofMegabytes(1)));
+    }
+
+    private static TransactionEntity deposit(long id, long amount) {
+        return AbstractBankService.createEntry(id, TransactionEntryType.DEPOSIT, ACCOUNT, null, amount, id);
+    }
+
+    private static TransactionEntity withdrawal(long id, long amount) {
+        return AbstractBankService.createEntry(id, TransactionEntryType.WITHDRAWAL, ACCOUNT, null, amount, id);
+    }
+}
@@ -0,0 +1,58 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedLockManagerTest {
+
+    @Test
+    public void testStripesAreRoundedUpToPowerOfTwo() {
+        assertEquals(1, new StripedLockManager(1).getStripes());
+        assertEquals(64, new StripedLockManager(64).getStripes());
+        assertEquals(128, new StripedLockManager(100).getStripes());
+        assertEquals(StripedLockManager.DEFAULT_STRIPES, new StripedLockManager().getStripes());
+    }
+
+    @Test
+    public void testInvalidStripes() {
+        assertThrows(IllegalArgumentException.class, () -> new StripedLockManager(0));
+        assertThrows(IllegalArgumentException.class, () -> new StripedLockManager(-1));
+    }
+
+    @Test
+    public void testSameAccountSameLock() {
+
+        // given
+        StripedLockManager lockManager = new StripedLockManager(16);
+        long number = 1234567890L;
+
+        // when
+        int stripe = lockManager.stripe(number);
+
+        // then
+        assertTrue(stripe >= 0 && stripe < 16);
+        assertSame(lockManager.lockAt(stripe), lockManager.lockFor(number));
+        assertSame(lockManager.lockFor(number), lockManager.lockFor(number));
+    }
+
+    @Test
+    public void testSequentialAccountsAreSpread() {
+
+        // given
+        StripedLockManager lockManager = new StripedLockManager(64);
+
+        // when
+        Set<Integer> stripes = new HashSet<>();
+        for (long number = 1000000000L; number < 1000000000L + 1024; number++) {
+            stripes.add(lockManager.stripe(number));
+        }
+
+        // then
+        // 1024 sequential account numbers cover every stripe
+        assertEquals(64, stripes.size());
+    }
+}
@@ -0,0 +1,39 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionCursorTest {
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Test
+    public void testRoundTrip() {
+
+        // given
+        DepositTransaction transaction = new DepositTransaction(idGenerator.nextTransactionId(), AccountNumber.of(1234567890L),
+                Money.parse("100.50"), Instant.ofEpochMilli(1700000000123L));
+        TransactionCursor cursor = TransactionCursor.of(transaction);
+
+        // when
+        TransactionCursor result = TransactionCursor.parse(cursor.toString());
+
+        // then
+        assertEquals(cursor, result);
+        assertEquals(1700000000123L, result.getTimestamp());
+        assertEquals(transaction.getId(), result.getId());
+        assertFalse(cursor.toString().contains("="));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertThrows(InvalidTransactionCursorException.class, () -> TransactionCursor.parse("not a cursor!"));
+        assertThrows(InvalidTransactionCursorException.class, () -> TransactionCursor.parse("AAAA"));
+    }
+}
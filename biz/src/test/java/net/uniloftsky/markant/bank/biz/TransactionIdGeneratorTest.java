@@ -0,0 +1,119 @@
+package net.uniloftsky.markant.bank.biz;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionIdGeneratorTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00.123Z");
+
+    @Test
+    public void testIdLayout() {
+
+        // given
+        TransactionIdGenerator generator = new TransactionIdGenerator(5, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        // then
+        assertTrue(first > 0);
+        assertEquals(NOW, TransactionIdGenerator.timestampOf(first));
+        assertEquals(5, TransactionIdGenerator.nodeIdOf(first));
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    public void testExhaustedSequenceBorrowsNextMillisecond() {
+
+        // given
+        // the clock is stopped, so all IDs are generated within one millisecond
+        TransactionIdGenerator generator = new TransactionIdGenerator(1, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // when
+        long last = 0;
+        for (int i = 0; i <= 1 << TransactionIdGenerator.SEQUENCE_BITS; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+
+        // then
+        // the node ID is kept, the timestamp runs one millisecond ahead
+        assertEquals(1, TransactionIdGenerator.nodeIdOf(last));
+        assertEquals(NOW.plusMillis(1), TransactionIdGenerator.timestampOf(last));
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws Exception {
+
+        // given
+        TransactionIdGenerator generator = new TransactionIdGenerator();
+        int threads = 8;
+        int idsPerThread = 20_000;
+
+        // when
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    long[] ids = new long[idsPerThread];
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids[j] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+        }
+
+        // then
+        // every thread sees increasing IDs and no ID is generated twice
+        Set<Long> unique = new HashSet<>();
+        for (Future<long[]> result : results) {
+            long[] ids = result.get();
+            for (int j = 0; j < ids.length; j++) {
+                assertTrue(j == 0 || ids[j] > ids[j - 1]);
+                unique.add(ids[j]);
+            }
+        }
+        assertEquals(threads * idsPerThread, unique.size());
+    }
+
+    @Test
+    public void testInvalidNodeId() {
+        assertThrows(IllegalArgumentException.class, () -> new TransactionIdGenerator(-1, Clock.systemUTC()));
+        assertThrows(IllegalArgumentException.class, () -> new TransactionIdGenerator(TransactionIdGenerator.MAX_NODE_ID + 1, Clock.systemUTC()));
+    }
+
+    @Test
+    public void testUuidFormat() {
+
+        // given
+        TransactionId first = new TransactionId(new TransactionIdGenerator(1, Clock.fixed(NOW, ZoneOffset.UTC)).nextId());
+        TransactionId second = new TransactionId(new TransactionIdGenerator(0, Clock.fixed(NOW.plusMillis(1), ZoneOffset.UTC)).nextId());
+
+        // when
+        String result = first.toString();
+
+        // then
+        // the string is a version 8 UUID ordered like the IDs, and is parsed back to the same ID
+        assertTrue(result.matches("[0-9a-f]{8}-[0-9a-f]{4}-8[0-9a-f]{3}-8[0-9a-f]{3}-[0-9a-f]{12}"), result);
+        assertEquals(first, TransactionId.parse(result));
+        assertEquals(second, TransactionId.parse(second.toString()));
+        assertTrue(result.compareTo(second.toString()) < 0);
+        assertThrows(IllegalArgumentException.class, () -> TransactionId.parse("11111111-1111-4111-8111-111111111111"));
+    }
+}
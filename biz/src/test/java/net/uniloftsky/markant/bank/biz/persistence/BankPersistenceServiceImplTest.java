@@ -1,23 +1,37 @@
 package net.uniloftsky.markant.bank.biz.persistence;
 
+import jakarta.persistence.EntityManager;
+import net.uniloftsky.markant.bank.biz.TransactionIdGenerator;
 import net.uniloftsky.markant.bank.biz.persistence.repository.AccountRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.DepositTransactionRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.TransferTransactionRepository;
-import net.uniloftsky.markant.bank.biz.persistence.repository.WithdrawTransactionRepository;
+import net.uniloftsky.markant.bank.biz.persistence.repository.TransactionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 @ExtendWith(MockitoExtension.class)
 public class BankPersistenceServiceImplTest {
@@ -26,13 +40,13 @@ public class BankPersistenceServiceImplTest {
     private AccountRepository accountRepository;
 
     @Mock
-    private DepositTransactionRepository depositTransactionRepository;
+    private TransactionRepository transactionRepository;
 
     @Mock
-    private WithdrawTransactionRepository withdrawTransactionRepository;
+    private EntityManager entityManager;
 
     @Mock
-    private TransferTransactionRepository transferTransactionRepository;
+    private JdbcTemplate jdbcTemplate;
 
     @InjectMocks
     private BankPersistenceServiceImpl bankPersistenceService;
@@ -42,6 +56,11 @@ public class BankPersistenceServiceImplTest {
      */
     private long accountNumber;
 
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
     @BeforeEach
     void setUp() {
         accountNumber = 1234567890L;
@@ -52,7 +71,7 @@ public class BankPersistenceServiceImplTest {
 
         // given
         long creationTimestamp = System.currentTimeMillis();
-        String balance = "100.50";
+        long balance = 10050L;
 
         // mocking the repository to return created account
         AccountEntity savedEntity = new AccountEntity();
@@ -61,7 +80,7 @@ public class BankPersistenceServiceImplTest {
         given(accountRepository.save(argThat(e -> // check that account is saved with right properties
                 e.getNumber() == accountNumber &&
                         e.getCreatedAt() == creationTimestamp &&
-                        e.getBalance().equals(balance))))
+                        e.getBalance() == balance)))
                 .willReturn(savedEntity);
 
         // when
@@ -80,7 +99,7 @@ public class BankPersistenceServiceImplTest {
         // mocking the repository to return account
         AccountEntity entity = new AccountEntity();
         entity.setNumber(accountNumber);
-        String balance = "100.50";
+        long balance = 10050L;
         entity.setBalance(balance);
         given(accountRepository.findById(accountNumber)).willReturn(Optional.of(entity));
 
@@ -108,6 +127,24 @@ public class BankPersistenceServiceImplTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void testListAccounts() {
+
+        // given
+        // mocking the repository to return all accounts
+        AccountEntity entity = new AccountEntity();
+        entity.setNumber(accountNumber);
+        given(accountRepository.findAll()).willReturn(List.of(entity));
+
+        // when
+        List<AccountEntity> result = bankPersistenceService.listAccounts();
+
+        // then
+        assertNotNull(result);
+        assertEquals(1, result.size());
+        assertEquals(accountNumber, result.getFirst().getNumber());
+    }
+
     @Test
     public void testUpdateAccountBalance() {
 
@@ -115,12 +152,12 @@ public class BankPersistenceServiceImplTest {
         // mocking repository to return updated entity
         AccountEntity entity = new AccountEntity();
         entity.setNumber(accountNumber);
-        String balance = "0";
+        long balance = 0L;
         entity.setBalance(balance);
         given(accountRepository.save(entity)).willReturn(entity);
 
         // when
-        String newBalance = "100";
+        long newBalance = 10000L;
         long updateTimestamp = System.currentTimeMillis();
         AccountEntity result = bankPersistenceService.updateAccountBalance(entity, newBalance, updateTimestamp);
 
@@ -131,164 +168,267 @@ public class BankPersistenceServiceImplTest {
         assertEquals(updateTimestamp, result.getUpdatedAt());
     }
 
+    @Test
+    public void testDebitIfSufficient() {
+
+        // given
+        long amount = 2500L;
+        long timestamp = System.currentTimeMillis();
+        given(accountRepository.debitIfSufficient(accountNumber, amount, timestamp)).willReturn(Optional.of(7500L));
+
+        // when
+        OptionalLong result = bankPersistenceService.debitIfSufficient(accountNumber, amount, timestamp);
+
+        // then
+        assertTrue(result.isPresent());
+        assertEquals(7500L, result.getAsLong());
+    }
+
+    @Test
+    public void testDebitIfSufficientNoRowUpdated() {
+
+        // given
+        // repository doesn't return the balance if the account doesn't exist or the balance is insufficient
+        long amount = 2500L;
+        long timestamp = System.currentTimeMillis();
+        given(accountRepository.debitIfSufficient(accountNumber, amount, timestamp)).willReturn(Optional.empty());
+
+        // when
+        OptionalLong result = bankPersistenceService.debitIfSufficient(accountNumber, amount, timestamp);
+
+        // then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testCredit() {
+
+        // given
+        long amount = 2500L;
+        long timestamp = System.currentTimeMillis();
+        given(accountRepository.credit(accountNumber, amount, timestamp)).willReturn(Optional.of(12500L));
+
+        // when
+        OptionalLong result = bankPersistenceService.credit(accountNumber, amount, timestamp);
+
+        // then
+        assertTrue(result.isPresent());
+        assertEquals(12500L, result.getAsLong());
+    }
+
+    @Test
+    public void testCreditOrCreate() {
+
+        // given
+        long amount = 2500L;
+        long timestamp = System.currentTimeMillis();
+        given(accountRepository.creditOrCreate(accountNumber, amount, timestamp)).willReturn(amount);
+
+        // when
+        long result = bankPersistenceService.creditOrCreate(accountNumber, amount, timestamp);
+
+        // then
+        assertEquals(amount, result);
+    }
+
     @Test
     public void testCreateDepositTransaction() {
 
         // given
-        UUID id = UUID.randomUUID();
+        long id = idGenerator.nextId();
         long accountNumber = 1234567890L;
-        String amount = "100.50";
+        long amount = 10050L;
         long timestamp = System.currentTimeMillis();
 
-        // mock repository to return saved deposit transaction
-        DepositTransactionEntity savedEntity = new DepositTransactionEntity();
-        savedEntity.setId(id);
-        savedEntity.setAccountNumber(accountNumber);
-        savedEntity.setAmount(amount);
-        savedEntity.setTimestamp(timestamp);
-        given(depositTransactionRepository.save(argThat(e -> // test that deposit is saved with right properties
-                e.getId().equals(id) &&
-                        e.getAmount().equals(amount) &&
-                        e.getAccountNumber() == accountNumber &&
-                        e.getTimestamp() == timestamp
-        ))).willReturn(savedEntity);
+        // mock repository to return the saved entity
+        given(transactionRepository.save(any(TransactionEntity.class))).willAnswer(invocation -> invocation.getArgument(0));
 
         // when
-        DepositTransactionEntity result = bankPersistenceService.createDepositTransaction(id, accountNumber, amount, timestamp);
+        TransactionEntity result = bankPersistenceService.createDepositTransaction(id, accountNumber, amount, timestamp);
 
         // then
         assertNotNull(result);
-        assertEquals(id, result.getId());
+        assertEquals(id, result.getTransactionId());
+        assertEquals(TransactionEntryType.DEPOSIT, result.getType());
         assertEquals(accountNumber, result.getAccountNumber());
+        assertNull(result.getCounterpartyAccountNumber());
         assertEquals(amount, result.getAmount());
         assertEquals(timestamp, result.getTimestamp());
     }
 
     @Test
-    public void testListDeposits() {
+    public void testListTransactionsFirstPage() {
 
         // given
-        // mocking repository to return list of deposits
-        DepositTransactionEntity entity = new DepositTransactionEntity();
-        entity.setId(UUID.randomUUID());
-        List<DepositTransactionEntity> entities = List.of(entity);
-        given(depositTransactionRepository.findAllByAccountNumber(accountNumber)).willReturn(entities);
+        // mocking repository to return the newest deposits
+        TransactionEntity entity = new TransactionEntity();
+        entity.setTransactionId(idGenerator.nextId());
+        List<TransactionEntity> entities = List.of(entity);
+        Set<TransactionEntryType> types = EnumSet.of(TransactionEntryType.DEPOSIT);
+        given(transactionRepository.findFirstPage(accountNumber, types, Limit.of(10))).willReturn(entities);
 
         // when
-        List<DepositTransactionEntity> result = bankPersistenceService.listDeposits(accountNumber);
+        List<TransactionEntity> result = bankPersistenceService.listTransactions(accountNumber, types, 10);
 
         // then
-        assertNotNull(result);
-        assertFalse(result.isEmpty());
-        assertEquals(entities.size(), result.size());
-        assertEquals(entity.getId(), result.getFirst().getId());
+        assertEquals(entities, result);
+    }
+
+    @Test
+    public void testForEachTransaction() {
+
+        // given
+        // mocking repository to stream the transfer entries
+        TransactionEntity first = new TransactionEntity();
+        first.setTransactionId(idGenerator.nextId());
+        TransactionEntity second = new TransactionEntity();
+        second.setTransactionId(idGenerator.nextId());
+        Set<TransactionEntryType> types = EnumSet.of(TransactionEntryType.TRANSFER_OUT, TransactionEntryType.TRANSFER_IN);
+        AtomicBoolean closed = new AtomicBoolean();
+        given(transactionRepository.streamAll(accountNumber, types)).willReturn(Stream.of(first, second).onClose(() -> closed.set(true)));
+
+        // when
+        List<TransactionEntity> result = new ArrayList<>();
+        bankPersistenceService.forEachTransaction(accountNumber, types, result::add);
+
+        // then
+        // every entry is detached once processed and the stream is closed
+        assertEquals(List.of(first, second), result);
+        then(entityManager).should().detach(first);
+        then(entityManager).should().detach(second);
+        assertTrue(closed.get());
     }
 
     @Test
     public void testCreateWithdrawTransaction() {
 
         // given
-        UUID id = UUID.randomUUID();
+        long id = idGenerator.nextId();
         long accountNumber = 1234567890L;
-        String amount = "100.50";
+        long amount = 10050L;
         long timestamp = System.currentTimeMillis();
 
-        // mock repository to return saved withdrawal transaction
-        WithdrawTransactionEntity savedEntity = new WithdrawTransactionEntity();
-        savedEntity.setId(id);
-        savedEntity.setAccountNumber(accountNumber);
-        savedEntity.setAmount(amount);
-        savedEntity.setTimestamp(timestamp);
-        given(withdrawTransactionRepository.save(argThat(e -> // test that withdrawal is saved with right properties
-                e.getId().equals(id) &&
-                        e.getAmount().equals(amount) &&
-                        e.getAccountNumber() == accountNumber &&
-                        e.getTimestamp() == timestamp
-        ))).willReturn(savedEntity);
+        // mock repository to return the saved entity
+        given(transactionRepository.save(any(TransactionEntity.class))).willAnswer(invocation -> invocation.getArgument(0));
 
         // when
-        WithdrawTransactionEntity result = bankPersistenceService.createWithdrawTransaction(id, accountNumber, amount, timestamp);
+        TransactionEntity result = bankPersistenceService.createWithdrawTransaction(id, accountNumber, amount, timestamp);
 
         // then
         assertNotNull(result);
-        assertEquals(id, result.getId());
+        assertEquals(id, result.getTransactionId());
+        assertEquals(TransactionEntryType.WITHDRAWAL, result.getType());
         assertEquals(accountNumber, result.getAccountNumber());
         assertEquals(amount, result.getAmount());
         assertEquals(timestamp, result.getTimestamp());
     }
 
     @Test
-    public void testListWithdrawals() {
+    public void testListTransactionsAfter() {
 
         // given
-        // mocking repository to return list of withdrawals
-        WithdrawTransactionEntity entity = new WithdrawTransactionEntity();
-        entity.setId(UUID.randomUUID());
-        List<WithdrawTransactionEntity> entities = List.of(entity);
-        given(withdrawTransactionRepository.findAllByAccountNumber(accountNumber)).willReturn(entities);
+        // mocking repository to return the withdrawals older than the given one
+        TransactionEntity entity = new TransactionEntity();
+        entity.setTransactionId(idGenerator.nextId());
+        List<TransactionEntity> entities = List.of(entity);
+        Set<TransactionEntryType> types = EnumSet.of(TransactionEntryType.WITHDRAWAL);
+        long afterId = idGenerator.nextId();
+        long afterTimestamp = System.currentTimeMillis();
+        given(transactionRepository.findPageAfter(accountNumber, types, afterTimestamp, afterId, Limit.of(10))).willReturn(entities);
 
         // when
-        List<WithdrawTransactionEntity> result = bankPersistenceService.listWithdrawals(accountNumber);
+        List<TransactionEntity> result = bankPersistenceService.listTransactionsAfter(accountNumber, types, afterTimestamp, afterId, 10);
 
         // then
-        assertNotNull(result);
-        assertFalse(result.isEmpty());
-        assertEquals(entities.size(), result.size());
-        assertEquals(entity.getId(), result.getFirst().getId());
+        assertEquals(entities, result);
     }
 
     @Test
     public void testCreateTransferTransaction() {
 
         // given
-        UUID id = UUID.randomUUID();
+        long id = idGenerator.nextId();
         long toAccountNumber = 1234567899L;
-        String amount = "100";
+        long amount = 10000L;
         long timestamp = System.currentTimeMillis();
 
-        // mock repository to return created transfer transaction entity
-        TransferTransactionEntity entity = new TransferTransactionEntity();
-        entity.setId(id);
-        entity.setFromAccountNumber(accountNumber);
-        entity.setToAccountNumber(toAccountNumber);
-        entity.setAmount(amount);
-        entity.setTimestamp(timestamp);
-        given(transferTransactionRepository.save(argThat(e -> // test that transfer is saved with right properties
-                e.getId().equals(id) &&
-                        e.getFromAccountNumber() == accountNumber &&
-                        e.getToAccountNumber() == toAccountNumber &&
-                        e.getAmount().equals(amount) &&
-                        e.getTimestamp() == timestamp))).willReturn(entity);
+        // mock repository to return the saved entities
+        given(transactionRepository.save(any(TransactionEntity.class))).willAnswer(invocation -> invocation.getArgument(0));
 
         // when
-        TransferTransactionEntity result = bankPersistenceService.createTransferTransaction(id, accountNumber, toAccountNumber, amount, timestamp);
+        TransactionEntity result = bankPersistenceService.createTransferTransaction(id, accountNumber, toAccountNumber, amount, timestamp);
 
         // then
+        // the initiator entry is returned
         assertNotNull(result);
-        assertEquals(id, result.getId());
-        assertEquals(accountNumber, result.getFromAccountNumber());
-        assertEquals(toAccountNumber, result.getToAccountNumber());
+        assertEquals(id, result.getTransactionId());
+        assertEquals(TransactionEntryType.TRANSFER_OUT, result.getType());
+        assertEquals(accountNumber, result.getAccountNumber());
+        assertEquals(toAccountNumber, result.getCounterpartyAccountNumber());
         assertEquals(amount, result.getAmount());
         assertEquals(timestamp, result.getTimestamp());
+
+        // the target gets the mirrored entry
+        then(transactionRepository).should().save(argThat(e ->
+                e.getTransactionId() == id &&
+                        e.getType() == TransactionEntryType.TRANSFER_IN &&
+                        e.getAccountNumber() == toAccountNumber &&
+                        e.getCounterpartyAccountNumber() == accountNumber &&
+                        e.getAmount() == amount &&
+                        e.getTimestamp() == timestamp));
     }
 
     @Test
-    public void testListTransfers() {
+    public void testCreateTransferTransactionToSameAccount() {
 
         // given
-        // mock repository to return list of transfers
-        TransferTransactionEntity entity = new TransferTransactionEntity();
-        entity.setId(UUID.randomUUID());
-        List<TransferTransactionEntity> entities = List.of(entity);
-        given(transferTransactionRepository.findAllByFromOrToAccountNumber(accountNumber)).willReturn(entities);
+        long id = idGenerator.nextId();
+        given(transactionRepository.save(any(TransactionEntity.class))).willAnswer(invocation -> invocation.getArgument(0));
 
         // when
-        List<TransferTransactionEntity> result = bankPersistenceService.listTransfers(accountNumber);
+        bankPersistenceService.createTransferTransaction(id, accountNumber, accountNumber, 10000L, System.currentTimeMillis());
 
         // then
-        assertNotNull(result);
-        assertFalse(result.isEmpty());
-        assertEquals(entities.size(), result.size());
-        assertEquals(entity.getId(), result.getFirst().getId());
+        // a transfer to the same account is recorded once
+        then(transactionRepository).should(times(1)).save(any(TransactionEntity.class));
+    }
+
+    @Test
+    public void testListTransactions() {
+
+        // given
+        // mock repository to return all entries of the account
+        TransactionEntity entity = new TransactionEntity();
+        entity.setTransactionId(idGenerator.nextId());
+        List<TransactionEntity> entities = List.of(entity);
+        given(transactionRepository.findAllByAccountNumberOrderByTimestampDesc(accountNumber)).willReturn(entities);
+
+        // when
+        List<TransactionEntity> result = bankPersistenceService.listTransactions(accountNumber);
+
+        // then
+        assertEquals(entities, result);
+    }
+
+    @Test
+    public void testCreateTransactions() {
+
+        // given
+        TransactionEntity deposit = new TransactionEntity();
+        deposit.setTransactionId(idGenerator.nextId());
+        deposit.setType(TransactionEntryType.DEPOSIT);
+        deposit.setAccountNumber(accountNumber);
+        deposit.setAmount(100L);
+        deposit.setTimestamp(123456L);
+        List<TransactionEntity> entries = List.of(deposit, deposit);
+
+        // when
+        bankPersistenceService.createTransactions(entries);
+        bankPersistenceService.createTransactions(List.of());
+
+        // then
+        // all entries are inserted with one batch, an empty list issues nothing
+        then(jdbcTemplate).should().batchUpdate(anyString(), eq(entries), eq(2), any(ParameterizedPreparedStatementSetter.class));
+        then(transactionRepository).should(never()).save(any());
     }
 }
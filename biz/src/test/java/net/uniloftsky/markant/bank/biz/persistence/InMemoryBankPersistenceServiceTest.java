@@ -0,0 +1,240 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import net.uniloftsky.markant.bank.biz.TransactionIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryBankPersistenceServiceTest {
+
+    /**
+     * A single stripe, so all accounts share one map and it grows
+     */
+    private final InMemoryBankPersistenceService persistenceService = new InMemoryBankPersistenceService(1);
+
+    /**
+     * Dummy numbers
+     */
+    private final long accountNumber = 1234567890L;
+    private final long toAccountNumber = 1234567899L;
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testCreateAndGetAccount() {
+
+        // when
+        AccountEntity created = persistenceService.createAccount(accountNumber, 10050L, 1L);
+
+        // then
+        assertEquals(accountNumber, created.getNumber());
+        assertEquals(10050L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertEquals(1L, persistenceService.getAccount(accountNumber).orElseThrow().getCreatedAt());
+        assertTrue(persistenceService.getAccount(toAccountNumber).isEmpty());
+        assertThrows(DuplicateKeyException.class, () -> persistenceService.createAccount(accountNumber, 0, 1L));
+    }
+
+    @Test
+    public void testManyAccounts() {
+
+        // when
+        for (long number = 1; number <= 1000; number++) {
+            persistenceService.creditOrCreate(number, number, 1L);
+        }
+
+        // then
+        // the map grew and kept every account
+        assertEquals(1000, persistenceService.listAccounts().size());
+        for (long number = 1; number <= 1000; number++) {
+            assertEquals(number, persistenceService.getAccount(number).orElseThrow().getBalance());
+        }
+    }
+
+    @Test
+    public void testBalanceUpdates() {
+
+        // given
+        AccountEntity entity = persistenceService.createAccount(accountNumber, 10000L, 1L);
+
+        // when
+        OptionalLong debited = persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        OptionalLong insufficient = persistenceService.debitIfSufficient(accountNumber, 7501L, 3L);
+        OptionalLong credited = persistenceService.credit(accountNumber, 500L, 4L);
+        OptionalLong missing = persistenceService.credit(toAccountNumber, 500L, 4L);
+        AccountEntity updated = persistenceService.updateAccountBalance(entity, 100L, 5L);
+
+        // then
+        assertEquals(OptionalLong.of(7500L), debited);
+        assertTrue(insufficient.isEmpty());
+        assertEquals(OptionalLong.of(8000L), credited);
+        assertTrue(missing.isEmpty());
+        assertEquals(100L, updated.getBalance());
+        assertEquals(5L, persistenceService.getAccount(accountNumber).orElseThrow().getUpdatedAt());
+    }
+
+    @Test
+    public void testCreateTransactionsAndListPages() {
+
+        // given
+        long first = idGenerator.nextId();
+        long second = idGenerator.nextId();
+        long third = idGenerator.nextId();
+        persistenceService.createDepositTransaction(first, accountNumber, 100L, 1L);
+        persistenceService.createWithdrawTransaction(second, accountNumber, 50L, 2L);
+        persistenceService.createDepositTransaction(third, accountNumber, 200L, 3L);
+        Set<TransactionEntryType> deposits = EnumSet.of(TransactionEntryType.DEPOSIT);
+
+        // when
+        List<TransactionEntity> firstPage = persistenceService.listTransactions(accountNumber, deposits, 1);
+        List<TransactionEntity> nextPage = persistenceService.listTransactionsAfter(accountNumber, deposits, 3L, third, 10);
+        List<TransactionEntity> all = persistenceService.listTransactions(accountNumber);
+
+        // then
+        // most recent first, the next page starts right after the given entry
+        assertEquals(List.of(third), ids(firstPage));
+        assertEquals(List.of(first), ids(nextPage));
+        assertEquals(List.of(third, second, first), ids(all));
+        TransactionEntity withdrawal = all.get(1);
+        assertEquals(TransactionEntryType.WITHDRAWAL, withdrawal.getType());
+        assertNull(withdrawal.getCounterpartyAccountNumber());
+        assertEquals(50L, withdrawal.getAmount());
+        assertEquals(2L, withdrawal.getTimestamp());
+    }
+
+    @Test
+    public void testLongHistory() {
+
+        // when
+        for (long i = 1; i <= 100; i++) {
+            persistenceService.createDepositTransaction(i, accountNumber, i, i);
+        }
+
+        // then
+        List<TransactionEntity> all = persistenceService.listTransactions(accountNumber);
+        assertEquals(100, all.size());
+        assertEquals(100L, all.getFirst().getTransactionId());
+        assertEquals(1L, all.getLast().getAmount());
+    }
+
+    @Test
+    public void testCreateTransferTransaction() {
+
+        // given
+        long id = idGenerator.nextId();
+
+        // when
+        persistenceService.createTransferTransaction(id, accountNumber, toAccountNumber, 10000L, 1L);
+        persistenceService.createTransferTransaction(idGenerator.nextId(), accountNumber, accountNumber, 10000L, 2L);
+
+        // then
+        // the target gets the mirrored entry, a transfer to the same account is recorded once
+        TransactionEntity incoming = persistenceService.listTransactions(toAccountNumber).getFirst();
+        assertEquals(id, incoming.getTransactionId());
+        assertEquals(TransactionEntryType.TRANSFER_IN, incoming.getType());
+        assertEquals(accountNumber, incoming.getCounterpartyAccountNumber());
+        assertEquals(2, persistenceService.listTransactions(accountNumber).size());
+    }
+
+    @Test
+    public void testForEachTransaction() {
+
+        // given
+        long out = idGenerator.nextId();
+        persistenceService.createDepositTransaction(idGenerator.nextId(), accountNumber, 100L, 1L);
+        persistenceService.createTransferTransaction(out, accountNumber, toAccountNumber, 50L, 2L);
+        Set<TransactionEntryType> transfers = EnumSet.of(TransactionEntryType.TRANSFER_OUT, TransactionEntryType.TRANSFER_IN);
+
+        // when
+        List<TransactionEntity> result = new ArrayList<>();
+        persistenceService.forEachTransaction(accountNumber, transfers, result::add);
+
+        // then
+        assertEquals(List.of(out), ids(result));
+    }
+
+    @Test
+    public void testTransactionAppendedOnCommit() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.createWithdrawTransaction(idGenerator.nextId(), accountNumber, 2500L, 2L);
+
+        // then
+        // the balance is changed right away, the entry is appended on commit
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertTrue(persistenceService.listTransactions(accountNumber).isEmpty());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1, persistenceService.listTransactions(accountNumber).size());
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testTransactionRolledBack() {
+
+        // given
+        AccountEntity entity = persistenceService.createAccount(accountNumber, 10000L, 1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.creditOrCreate(toAccountNumber, 2500L, 2L);
+        persistenceService.createTransferTransaction(idGenerator.nextId(), accountNumber, toAccountNumber, 2500L, 2L);
+        persistenceService.updateAccountBalance(entity, 1L, 3L);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // then
+        // nothing is left behind
+        AccountEntity account = persistenceService.getAccount(accountNumber).orElseThrow();
+        assertEquals(10000L, account.getBalance());
+        assertEquals(0L, account.getUpdatedAt());
+        assertTrue(persistenceService.getAccount(toAccountNumber).isEmpty());
+        assertTrue(persistenceService.listTransactions(accountNumber).isEmpty());
+        assertEquals(1, persistenceService.listAccounts().size());
+        // the account can be created again
+        assertEquals(100L, persistenceService.creditOrCreate(toAccountNumber, 100L, 4L));
+    }
+
+    @Test
+    public void testStripesRoundedUp() {
+        assertEquals(1024, new InMemoryBankPersistenceService().getStripes());
+        assertEquals(8, new InMemoryBankPersistenceService(5).getStripes());
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryBankPersistenceService(0));
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static List<Long> ids(List<TransactionEntity> entries) {
+        return entries.stream().map(TransactionEntity::getTransactionId).toList();
+    }
+}
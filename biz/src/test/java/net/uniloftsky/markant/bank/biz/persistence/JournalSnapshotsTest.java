@@ -0,0 +1,101 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import net.uniloftsky.markant.bank.biz.persistence.MappedJournalPersistenceService.Account;
+import net.uniloftsky.markant.bank.biz.persistence.MappedJournalPersistenceService.History;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalSnapshotsTest {
+
+    @TempDir
+    private Path directory;
+
+    /**
+     * Dummy numbers
+     */
+    private final long accountNumber = 1234567890L;
+    private final long toAccountNumber = 1234567899L;
+
+    @Test
+    public void testWriteAndLoad() throws IOException {
+
+        // given
+        JournalSnapshots snapshots = new JournalSnapshots(directory, 2);
+        Map<Long, Account> accounts = new HashMap<>();
+        accounts.put(accountNumber, new Account(accountNumber, 1L, 10050L, 2L));
+        accounts.put(toAccountNumber, new Account(toAccountNumber, 3L, 0L, 0L));
+        History history = new History();
+        history.add(64L);
+        history.add(192L);
+        Map<Long, History> histories = new HashMap<>();
+        histories.put(accountNumber, history);
+
+        // when
+        snapshots.write(new JournalSnapshots.Header(4, 256), accounts, histories);
+        Map<Long, Account> loadedAccounts = new HashMap<>();
+        Map<Long, History> loadedHistories = new HashMap<>();
+        JournalSnapshots.Header header = snapshots.load(snapshots.list().getFirst(), loadedAccounts, loadedHistories);
+
+        // then
+        assertEquals(4, header.sequence);
+        assertEquals(256, header.position);
+        assertEquals(2, loadedAccounts.size());
+        Account account = loadedAccounts.get(accountNumber);
+        assertEquals(1L, account.createdAt);
+        assertEquals(10050L, account.balance);
+        assertEquals(2L, account.updatedAt);
+        History loadedHistory = loadedHistories.get(accountNumber);
+        assertEquals(2, loadedHistory.size);
+        assertEquals(64L, loadedHistory.positions[0]);
+        assertEquals(192L, loadedHistory.positions[1]);
+    }
+
+    @Test
+    public void testOnlyNewestRetained() throws IOException {
+
+        // given
+        JournalSnapshots snapshots = new JournalSnapshots(directory, 2);
+
+        // when
+        for (long sequence = 1; sequence <= 3; sequence++) {
+            snapshots.write(new JournalSnapshots.Header(sequence, sequence * 64), Map.of(), Map.of());
+        }
+
+        // then
+        List<Path> files = snapshots.list();
+        assertEquals(2, files.size());
+        assertEquals(3, snapshots.load(files.get(0), new HashMap<>(), new HashMap<>()).sequence);
+        assertEquals(2, snapshots.load(files.get(1), new HashMap<>(), new HashMap<>()).sequence);
+    }
+
+    @Test
+    public void testDamagedSnapshotRejected() throws IOException {
+
+        // given
+        JournalSnapshots snapshots = new JournalSnapshots(directory, 2);
+        snapshots.write(new JournalSnapshots.Header(1, 64), Map.of(accountNumber, new Account(accountNumber, 1L, 100L, 0L)), Map.of());
+        Path file = snapshots.list().getFirst();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 40);
+        }
+
+        // when, then
+        assertThrows(IOException.class, () -> snapshots.load(file, new HashMap<>(), new HashMap<>()));
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new JournalSnapshots(directory, 0));
+    }
+}
@@ -0,0 +1,471 @@
+package net.uniloftsky.markant.bank.biz.persistence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.uniloftsky.markant.bank.biz.TransactionIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedJournalPersistenceServiceTest {
+
+    @TempDir
+    private Path directory;
+
+    private MappedJournalPersistenceService persistenceService;
+
+    /**
+     * Dummy numbers
+     */
+    private final long accountNumber = 1234567890L;
+    private final long toAccountNumber = 1234567899L;
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @BeforeEach
+    void setUp() {
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        persistenceService.stop();
+    }
+
+    @Test
+    public void testCreateAndGetAccount() {
+
+        // given
+        long creationTimestamp = System.currentTimeMillis();
+
+        // when
+        AccountEntity created = persistenceService.createAccount(accountNumber, 10050L, creationTimestamp);
+        Optional<AccountEntity> result = persistenceService.getAccount(accountNumber);
+
+        // then
+        assertEquals(accountNumber, created.getNumber());
+        assertTrue(result.isPresent());
+        assertEquals(10050L, result.get().getBalance());
+        assertEquals(creationTimestamp, result.get().getCreatedAt());
+        assertThrows(DuplicateKeyException.class, () -> persistenceService.createAccount(accountNumber, 0, creationTimestamp));
+    }
+
+    @Test
+    public void testGetAccountDoesntExist() {
+
+        // when
+        Optional<AccountEntity> result = persistenceService.getAccount(accountNumber);
+
+        // then
+        assertTrue(result.isEmpty());
+        assertTrue(persistenceService.listAccounts().isEmpty());
+    }
+
+    @Test
+    public void testUpdateAccountBalance() {
+
+        // given
+        AccountEntity entity = persistenceService.createAccount(accountNumber, 0, 1L);
+
+        // when
+        AccountEntity result = persistenceService.updateAccountBalance(entity, 10000L, 2L);
+
+        // then
+        assertEquals(10000L, result.getBalance());
+        assertEquals(2L, result.getUpdatedAt());
+        assertEquals(10000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testDebitIfSufficient() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+
+        // when
+        OptionalLong debited = persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        OptionalLong insufficient = persistenceService.debitIfSufficient(accountNumber, 7501L, 3L);
+        OptionalLong missing = persistenceService.debitIfSufficient(toAccountNumber, 1L, 3L);
+
+        // then
+        assertEquals(OptionalLong.of(7500L), debited);
+        assertTrue(insufficient.isEmpty());
+        assertTrue(missing.isEmpty());
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testCreditAndCreditOrCreate() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+
+        // when
+        OptionalLong credited = persistenceService.credit(accountNumber, 2500L, 2L);
+        OptionalLong missing = persistenceService.credit(toAccountNumber, 2500L, 2L);
+        long created = persistenceService.creditOrCreate(toAccountNumber, 2500L, 3L);
+        long added = persistenceService.creditOrCreate(toAccountNumber, 500L, 4L);
+
+        // then
+        assertEquals(OptionalLong.of(12500L), credited);
+        assertTrue(missing.isEmpty());
+        assertEquals(2500L, created);
+        assertEquals(3000L, added);
+        assertEquals(3L, persistenceService.getAccount(toAccountNumber).orElseThrow().getCreatedAt());
+    }
+
+    @Test
+    public void testCreateTransactionsAndListPages() {
+
+        // given
+        long first = idGenerator.nextId();
+        long second = idGenerator.nextId();
+        long third = idGenerator.nextId();
+        persistenceService.createDepositTransaction(first, accountNumber, 100L, 1L);
+        persistenceService.createWithdrawTransaction(second, accountNumber, 50L, 2L);
+        persistenceService.createDepositTransaction(third, accountNumber, 200L, 3L);
+        Set<TransactionEntryType> deposits = EnumSet.of(TransactionEntryType.DEPOSIT);
+
+        // when
+        List<TransactionEntity> firstPage = persistenceService.listTransactions(accountNumber, deposits, 1);
+        List<TransactionEntity> nextPage = persistenceService.listTransactionsAfter(accountNumber, deposits, 3L, third, 10);
+        List<TransactionEntity> all = persistenceService.listTransactions(accountNumber);
+
+        // then
+        // most recent first, the next page starts right after the given entry
+        assertEquals(List.of(third), ids(firstPage));
+        assertEquals(List.of(first), ids(nextPage));
+        assertEquals(List.of(third, second, first), ids(all));
+        TransactionEntity withdrawal = all.get(1);
+        assertEquals(TransactionEntryType.WITHDRAWAL, withdrawal.getType());
+        assertEquals(accountNumber, withdrawal.getAccountNumber());
+        assertNull(withdrawal.getCounterpartyAccountNumber());
+        assertEquals(50L, withdrawal.getAmount());
+        assertEquals(2L, withdrawal.getTimestamp());
+    }
+
+    @Test
+    public void testCreateTransferTransaction() {
+
+        // given
+        long id = idGenerator.nextId();
+
+        // when
+        TransactionEntity result = persistenceService.createTransferTransaction(id, accountNumber, toAccountNumber, 10000L, 1L);
+
+        // then
+        // the initiator entry is returned, the target gets the mirrored entry
+        assertEquals(TransactionEntryType.TRANSFER_OUT, result.getType());
+        assertEquals(toAccountNumber, result.getCounterpartyAccountNumber());
+        TransactionEntity incoming = persistenceService.listTransactions(toAccountNumber).getFirst();
+        assertEquals(id, incoming.getTransactionId());
+        assertEquals(TransactionEntryType.TRANSFER_IN, incoming.getType());
+        assertEquals(accountNumber, incoming.getCounterpartyAccountNumber());
+        assertEquals(10000L, incoming.getAmount());
+    }
+
+    @Test
+    public void testCreateTransferTransactionToSameAccount() {
+
+        // when
+        persistenceService.createTransferTransaction(idGenerator.nextId(), accountNumber, accountNumber, 10000L, 1L);
+
+        // then
+        // a transfer to the same account is recorded once
+        assertEquals(1, persistenceService.listTransactions(accountNumber).size());
+    }
+
+    @Test
+    public void testForEachTransaction() {
+
+        // given
+        long out = idGenerator.nextId();
+        persistenceService.createDepositTransaction(idGenerator.nextId(), accountNumber, 100L, 1L);
+        persistenceService.createTransferTransaction(out, accountNumber, toAccountNumber, 50L, 2L);
+        Set<TransactionEntryType> transfers = EnumSet.of(TransactionEntryType.TRANSFER_OUT, TransactionEntryType.TRANSFER_IN);
+
+        // when
+        List<TransactionEntity> result = new ArrayList<>();
+        persistenceService.forEachTransaction(accountNumber, transfers, result::add);
+
+        // then
+        assertEquals(List.of(out), ids(result));
+    }
+
+    @Test
+    public void testRecoveredAfterRestart() {
+
+        // given
+        long deposit = idGenerator.nextId();
+        long transfer = idGenerator.nextId();
+        persistenceService.creditOrCreate(accountNumber, 10000L, 1L);
+        persistenceService.createDepositTransaction(deposit, accountNumber, 10000L, 1L);
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.creditOrCreate(toAccountNumber, 2500L, 2L);
+        persistenceService.createTransferTransaction(transfer, accountNumber, toAccountNumber, 2500L, 2L);
+
+        // when
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+
+        // then
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertEquals(2500L, persistenceService.getAccount(toAccountNumber).orElseThrow().getBalance());
+        assertEquals(List.of(transfer, deposit), ids(persistenceService.listTransactions(accountNumber)));
+        assertEquals(List.of(transfer), ids(persistenceService.listTransactions(toAccountNumber)));
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws IOException {
+
+        // given
+        // two records per segment
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofBytes(2 * MappedJournalPersistenceService.RECORD_SIZE), Duration.ofMillis(1));
+        persistenceService.createAccount(accountNumber, 0, 1L);
+
+        // when
+        for (int i = 1; i <= 10; i++) {
+            persistenceService.credit(accountNumber, 100L, i);
+            persistenceService.createDepositTransaction(idGenerator.nextId(), accountNumber, 100L, i);
+        }
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofBytes(2 * MappedJournalPersistenceService.RECORD_SIZE), Duration.ofMillis(1));
+
+        // then
+        assertEquals(11, segmentFiles().size());
+        assertEquals(1000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertEquals(10, persistenceService.listTransactions(accountNumber).size());
+    }
+
+    @Test
+    public void testTransactionAppendedOnCommit() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.createWithdrawTransaction(idGenerator.nextId(), accountNumber, 2500L, 2L);
+
+        // then
+        // the balance is changed right away, the entry is appended on commit
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertTrue(persistenceService.listTransactions(accountNumber).isEmpty());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1, persistenceService.listTransactions(accountNumber).size());
+
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testTransactionRolledBack() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.creditOrCreate(toAccountNumber, 2500L, 2L);
+        persistenceService.createTransferTransaction(idGenerator.nextId(), accountNumber, toAccountNumber, 2500L, 2L);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // then
+        // nothing is left behind, neither in the index nor in the journal
+        assertEquals(10000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertTrue(persistenceService.getAccount(toAccountNumber).isEmpty());
+        assertTrue(persistenceService.listTransactions(accountNumber).isEmpty());
+
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+        assertEquals(10000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertTrue(persistenceService.getAccount(toAccountNumber).isEmpty());
+    }
+
+    @Test
+    public void testTornTailCutOff() throws IOException {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        persistenceService.credit(accountNumber, 100L, 2L);
+        persistenceService.stop();
+        // the last record is torn, as if the node crashed while it was written
+        try (FileChannel channel = FileChannel.open(segmentFiles().getFirst(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), MappedJournalPersistenceService.RECORD_SIZE + 20);
+        }
+
+        // when
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+        persistenceService.credit(accountNumber, 200L, 3L);
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+
+        // then
+        // the torn change is lost, the change appended after the recovery is kept
+        assertEquals(10200L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testRecoveredFromSnapshot() {
+
+        // given
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO, Duration.ZERO);
+        long deposit = idGenerator.nextId();
+        long withdrawal = idGenerator.nextId();
+        persistenceService.creditOrCreate(accountNumber, 10000L, 1L);
+        persistenceService.createDepositTransaction(deposit, accountNumber, 10000L, 1L);
+        persistenceService.snapshot();
+        persistenceService.debitIfSufficient(accountNumber, 2500L, 2L);
+        persistenceService.createWithdrawTransaction(withdrawal, accountNumber, 2500L, 2L);
+
+        // when
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO, Duration.ZERO);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        persistenceService.bindTo(registry);
+
+        // then
+        // only the two records after the snapshot are replayed
+        assertEquals(2, registry.get("bank.journal.snapshot.sequence").gauge().value());
+        assertEquals(2, registry.get("bank.journal.recovery.records").gauge().value());
+        assertTrue(registry.get("bank.journal.recovery").timeGauge().value() > 0);
+        assertEquals(7500L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertEquals(List.of(withdrawal, deposit), ids(persistenceService.listTransactions(accountNumber)));
+    }
+
+    @Test
+    public void testSnapshotWrittenOnStop() throws IOException {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        persistenceService.credit(accountNumber, 100L, 2L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        persistenceService.bindTo(registry);
+
+        // when
+        persistenceService.stop();
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+
+        // then
+        assertEquals(1, registry.get("bank.journal.snapshots").functionCounter().count());
+        assertEquals(1, snapshotFiles().size());
+        assertEquals(10100L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testSnapshotOfAnotherJournalDeleted() throws IOException {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        persistenceService.stop();
+        for (Path segment : segmentFiles()) {
+            Files.delete(segment);
+        }
+
+        // when
+        persistenceService = start(DataSize.ofMegabytes(1), Duration.ZERO);
+
+        // then
+        // the snapshot is beyond the end of the new journal
+        assertTrue(persistenceService.getAccount(accountNumber).isEmpty());
+        assertTrue(snapshotFiles().isEmpty());
+    }
+
+    @Test
+    public void testForceTimeoutFailsJournal() {
+
+        // given
+        persistenceService.createAccount(accountNumber, 10000L, 1L);
+        persistenceService.stop();
+        // the flusher doesn't force within the timeout
+        persistenceService = new MappedJournalPersistenceService(directory, DataSize.ofMegabytes(1), Duration.ofHours(1));
+        persistenceService.setForceTimeout(Duration.ofMillis(100));
+        persistenceService.start();
+
+        // when
+        assertThrows(IllegalStateException.class, () -> persistenceService.credit(accountNumber, 500L, 2L));
+
+        // then
+        // the balance which isn't durable is reverted and the failed journal rejects further writes
+        assertEquals(10000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+        assertThrows(IllegalStateException.class, () -> persistenceService.debitIfSufficient(accountNumber, 500L, 3L));
+        assertEquals(10000L, persistenceService.getAccount(accountNumber).orElseThrow().getBalance());
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedJournalPersistenceService(directory, DataSize.ofBytes(1), Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new MappedJournalPersistenceService(directory, DataSize.ofMegabytes(1), Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> persistenceService.configureSnapshots(Duration.ofMinutes(-1), 2));
+        assertThrows(IllegalArgumentException.class, () -> persistenceService.configureSnapshots(Duration.ofMinutes(5), 0));
+        assertThrows(IllegalArgumentException.class, () -> persistenceService.setForceTimeout(Duration.ZERO));
+    }
+
+    private MappedJournalPersistenceService start(DataSize segmentSize, Duration durabilityWindow) {
+        return start(segmentSize, durabilityWindow, MappedJournalPersistenceService.DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    private MappedJournalPersistenceService start(DataSize segmentSize, Duration durabilityWindow, Duration snapshotInterval) {
+        MappedJournalPersistenceService service = new MappedJournalPersistenceService(directory, segmentSize, durabilityWindow);
+        service.configureSnapshots(snapshotInterval, MappedJournalPersistenceService.DEFAULT_SNAPSHOT_RETENTION);
+        service.start();
+        return service;
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).toList();
+        }
+    }
+
+    private static List<Long> ids(List<TransactionEntity> entries) {
+        return entries.stream().map(TransactionEntity::getTransactionId).toList();
+    }
+}
@@ -0,0 +1,159 @@
+package net.uniloftsky.markant.bank.actuator;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Actuator endpoint controlling a Java Flight Recorder recording, exposed on {@code /actuator/flightrecording}.
+ * <ul>
+ *     <li>{@code POST} starts a new recording, replacing the previous one</li>
+ *     <li>{@code DELETE} stops the recording, it stays available for download</li>
+ *     <li>{@code GET} downloads the recording, a running recording is dumped as recorded so far</li>
+ * </ul>
+ * Recordings include the bank operation and persistence events of the {@code net.uniloftsky.markant.bank.biz.jfr}
+ * package along with the JVM events of the chosen settings.
+ */
+@Component
+@WebEndpoint(id = "flightrecording")
+public class FlightRecordingEndpoint {
+
+    /**
+     * Settings used if none are provided: the JDK "default" settings, with about 1% overhead
+     */
+    public static final String DEFAULT_SETTINGS = "default";
+
+    /**
+     * Maximum duration of a recording, after which it is stopped automatically
+     */
+    public static final Duration MAX_DURATION = Duration.ofHours(1);
+
+    /**
+     * Guards the recording. Not a monitor, so the virtual thread dumping the recording doesn't pin its carrier thread
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Recording recording;
+
+    /**
+     * Start a new recording
+     *
+     * @param settings name of the JDK settings, "default" or "profile"
+     * @return started recording
+     */
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> start(@Nullable String settings) {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings == null ? DEFAULT_SETTINGS : settings);
+        } catch (IOException | ParseException ex) {
+            return new WebEndpointResponse<>(Map.of("error", "unknown settings: " + settings), WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        lock.lock();
+        try {
+            if (recording != null) {
+                recording.close();
+            }
+            recording = new Recording(configuration);
+            recording.setName("markant-bank");
+            recording.setDuration(MAX_DURATION);
+            recording.start();
+            return new WebEndpointResponse<>(describe(recording));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the recording
+     *
+     * @return stopped recording, 404 if no recording is running
+     */
+    @DeleteOperation
+    public WebEndpointResponse<Map<String, Object>> stop() {
+        lock.lock();
+        try {
+            if (recording == null || recording.getState() != RecordingState.RUNNING) {
+                return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+            }
+            recording.stop();
+            return new WebEndpointResponse<>(describe(recording));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Download the recording in the JFR format
+     *
+     * @return recording file, 404 if nothing was recorded
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> download() {
+        lock.lock();
+        try {
+            if (recording == null || recording.getState() == RecordingState.NEW) {
+                return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+            }
+            Path file = Files.createTempFile("markant-bank-", ".jfr");
+            recording.dump(file);
+            return new WebEndpointResponse<>(new TemporaryFileResource(file));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        return Map.of(
+                "id", recording.getId(),
+                "name", recording.getName(),
+                "state", recording.getState().name(),
+                "startTime", String.valueOf(recording.getStartTime()));
+    }
+
+    /**
+     * Dumped recording, deleted once it is sent
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+
+        private TemporaryFileResource(Path file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.uniloftsky.markant.bank.actuator;
+
+import net.uniloftsky.markant.bank.biz.HotAccount;
+import net.uniloftsky.markant.bank.biz.HotAccountTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the accounts with the most lock acquisitions, exposed on {@code /actuator/hotaccounts}.
+ * <p>
+ * {@code DELETE /actuator/hotaccounts} resets the statistics.
+ */
+@Component
+@Endpoint(id = "hotaccounts")
+public class HotAccountsEndpoint {
+
+    /**
+     * Number of accounts listed by default
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    private HotAccountTracker hotAccountTracker;
+
+    /**
+     * List the hottest accounts
+     *
+     * @param limit maximum number of accounts, {@link #DEFAULT_LIMIT} if not provided
+     * @return hottest accounts, ordered by the estimated number of lock acquisitions
+     */
+    @ReadOperation
+    public List<HotAccount> hotAccounts(@Nullable Integer limit) {
+        return hotAccountTracker.top(limit == null || limit < 1 ? DEFAULT_LIMIT : limit);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        hotAccountTracker.reset();
+    }
+
+    @Autowired
+    public void setHotAccountTracker(HotAccountTracker hotAccountTracker) {
+        this.hotAccountTracker = hotAccountTracker;
+    }
+}
@@ -0,0 +1,111 @@
+package net.uniloftsky.markant.bank.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Configuration of the in-memory persistence, see the "memory" profile.
+ * <p>
+ * The datasource and JPA aren't configured by the profile, so transactions hold no resources: they only demarcate the
+ * operations for the transaction synchronizations, which release the account locks and commit or revert the changes of
+ * the in-memory persistence
+ */
+@Configuration
+@ConditionalOnProperty(name = "bank.persistence", havingValue = "memory")
+public class InMemoryConfig {
+
+    @Bean
+    public PlatformTransactionManager transactionManager() {
+        return new ResourcelessTransactionManager();
+    }
+
+    /**
+     * Transaction manager without a transactional resource, transactions only run the synchronizations.
+     * The state of a transaction is bound to the thread like the connection of a datasource transaction,
+     * so participating transactions share it
+     */
+    static final class ResourcelessTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new ResourcelessTransaction((TransactionState) TransactionSynchronizationManager.getResource(this));
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return ((ResourcelessTransaction) transaction).state != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            TransactionState state = new TransactionState();
+            ((ResourcelessTransaction) transaction).state = state;
+            TransactionSynchronizationManager.bindResource(this, state);
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            ((ResourcelessTransaction) transaction).state = null;
+            return TransactionSynchronizationManager.unbindResource(this);
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            TransactionSynchronizationManager.bindResource(this, suspendedResources);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        /**
+         * A participating transaction marked as rollback-only makes the outer one roll back
+         */
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+            ((ResourcelessTransaction) status.getTransaction()).state.rollbackOnly = true;
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            TransactionSynchronizationManager.unbindResource(this);
+        }
+    }
+
+    /**
+     * Transaction object, refers to the state of the transaction bound to the thread, if there is one
+     */
+    private static final class ResourcelessTransaction implements SmartTransactionObject {
+
+        private TransactionState state;
+
+        ResourcelessTransaction(TransactionState state) {
+            this.state = state;
+        }
+
+        @Override
+        public boolean isRollbackOnly() {
+            return state != null && state.rollbackOnly;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    private static final class TransactionState {
+
+        private boolean rollbackOnly;
+    }
+}
@@ -2,14 +2,13 @@ package net.uniloftsky.markant.bank.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import net.uniloftsky.markant.bank.biz.AccountNumber;
 import net.uniloftsky.markant.bank.biz.BankSerializers;
+import net.uniloftsky.markant.bank.biz.Money;
 import net.uniloftsky.markant.bank.biz.TransactionId;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 
 /**
@@ -25,7 +24,7 @@ public class JacksonConfig {
         // register custom serializers/deserializers
         SimpleModule module = new SimpleModule();
         module.addSerializer(AccountNumber.class, new BankSerializers.AccountNumberSerializer());
-        module.addSerializer(BigDecimal.class, new ToStringSerializer());
+        module.addSerializer(Money.class, new BankSerializers.MoneySerializer());
         module.addSerializer(TransactionId.class, new BankSerializers.TransactionIdSerializer());
         module.addSerializer(Instant.class, new BankSerializers.InstantToMillisSerializer());
         objectMapper.registerModule(module);
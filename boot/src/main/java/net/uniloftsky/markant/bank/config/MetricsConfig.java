@@ -0,0 +1,79 @@
+package net.uniloftsky.markant.bank.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.uniloftsky.markant.bank.biz.BankMetrics;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.BankServiceImpl;
+import net.uniloftsky.markant.bank.biz.GroupCommitBankServiceImpl;
+import net.uniloftsky.markant.bank.biz.LedgerBankServiceImpl;
+import net.uniloftsky.markant.bank.biz.MeteredBankPersistenceService;
+import net.uniloftsky.markant.bank.biz.MeteredBankService;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceServiceImpl;
+import net.uniloftsky.markant.bank.biz.persistence.InMemoryBankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.MappedJournalPersistenceService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Configuration for the bank service metrics.
+ * <p>
+ * The selected bank engine and the persistence service are wrapped with metered decorators, which are injected
+ * everywhere instead of them. The reactive engine and persistence aren't metered.
+ * <p>
+ * The decorators are selected by the same properties as the decorated beans, not by their presence: bean conditions
+ * of a user configuration depend on the order the configurations are processed in
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public BankMetrics bankMetrics(MeterRegistry meterRegistry) {
+        return new BankMetrics(meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.engine", havingValue = "jpa", matchIfMissing = true)
+    public BankService meteredBankService(BankServiceImpl bankEngine, BankMetrics bankMetrics) {
+        return new MeteredBankService(bankEngine, bankMetrics);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.engine", havingValue = "ledger")
+    public BankService meteredLedgerBankService(LedgerBankServiceImpl bankEngine, BankMetrics bankMetrics) {
+        return new MeteredBankService(bankEngine, bankMetrics);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.engine", havingValue = "group-commit")
+    public BankService meteredGroupCommitBankService(GroupCommitBankServiceImpl bankEngine, BankMetrics bankMetrics) {
+        return new MeteredBankService(bankEngine, bankMetrics);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.persistence", havingValue = "jpa", matchIfMissing = true)
+    public BankPersistenceService meteredBankPersistenceService(BankPersistenceServiceImpl persistenceService, BankMetrics bankMetrics) {
+        return new MeteredBankPersistenceService(persistenceService, bankMetrics);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.persistence", havingValue = "journal")
+    public BankPersistenceService meteredJournalPersistenceService(MappedJournalPersistenceService persistenceService, BankMetrics bankMetrics) {
+        return new MeteredBankPersistenceService(persistenceService, bankMetrics);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "bank.persistence", havingValue = "memory")
+    public BankPersistenceService meteredInMemoryPersistenceService(InMemoryBankPersistenceService persistenceService, BankMetrics bankMetrics) {
+        return new MeteredBankPersistenceService(persistenceService, bankMetrics);
+    }
+
+}
@@ -0,0 +1,47 @@
+package net.uniloftsky.markant.bank;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The "diagnostics" profile exposes the endpoints listing account numbers on the loopback management port only
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("diagnostics")
+public class DiagnosticsProfileTest {
+
+    @LocalServerPort
+    private int port;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void testDiagnosticsOnManagementPort() throws Exception {
+
+        // when
+        int onManagementPort = statusOf("http://127.0.0.1:" + managementPort + "/actuator/hotaccounts");
+        int onApplicationPort = statusOf("http://127.0.0.1:" + port + "/actuator/hotaccounts");
+
+        // then
+        assertEquals(200, onManagementPort);
+        assertEquals(404, onApplicationPort);
+    }
+
+    private int statusOf(String uri) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
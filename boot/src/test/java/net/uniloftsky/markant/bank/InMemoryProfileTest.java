@@ -0,0 +1,71 @@
+package net.uniloftsky.markant.bank;
+
+import net.uniloftsky.markant.bank.biz.persistence.InMemoryBankPersistenceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The "memory" profile runs the same API on the in-memory persistence, without a datasource
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("memory")
+public class InMemoryProfileTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testInMemoryProfile() throws Exception {
+
+        // given
+        assertTrue(context.getBeansOfType(DataSource.class).isEmpty());
+        assertEquals(1, context.getBeansOfType(InMemoryBankPersistenceService.class).size());
+
+        // when
+        mockMvc.perform(post("/accounts/1234567890/transactions/deposits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"amount\":\"100.00\"}"))
+                .andExpect(status().isCreated());
+        // the target doesn't exist, nothing is debited
+        mockMvc.perform(post("/accounts/1234567890/transactions/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"targetAccountNumber\":1234567891,\"amount\":\"30.25\"}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/accounts/1234567891/transactions/deposits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"amount\":\"1\"}"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/accounts/1234567890/transactions/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"targetAccountNumber\":1234567891,\"amount\":\"30.25\"}"))
+                .andExpect(status().isCreated());
+
+        // then
+        mockMvc.perform(get("/accounts/1234567890"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value("69.75"));
+        mockMvc.perform(get("/accounts/1234567891/transactions?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].type").value("TRANSFER"));
+    }
+}
@@ -0,0 +1,40 @@
+package net.uniloftsky.markant.bank;
+
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MarkantBankPrototypeApplicationTest {
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    @Autowired
+    private AsyncTaskExecutor applicationTaskExecutor;
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+
+        // when
+        ProtocolHandler protocolHandler = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector().getProtocolHandler();
+        CompletableFuture<Boolean> requestIsVirtual = new CompletableFuture<>();
+        protocolHandler.getExecutor().execute(() -> requestIsVirtual.complete(Thread.currentThread().isVirtual()));
+        CompletableFuture<Boolean> asyncTaskIsVirtual = new CompletableFuture<>();
+        applicationTaskExecutor.execute(() -> asyncTaskIsVirtual.complete(Thread.currentThread().isVirtual()));
+
+        // then
+        // requests and async work, such as streamed exports, run on virtual threads
+        assertTrue(requestIsVirtual.get(1, TimeUnit.SECONDS));
+        assertTrue(asyncTaskIsVirtual.get(1, TimeUnit.SECONDS));
+    }
+}
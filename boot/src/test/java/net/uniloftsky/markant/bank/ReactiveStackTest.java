@@ -0,0 +1,85 @@
+package net.uniloftsky.markant.bank;
+
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.ReactiveBankService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The "reactive" profile runs the same API on WebFlux with the reactive engine on R2DBC
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactiveStackTest {
+
+    @Autowired
+    private ReactiveWebServerApplicationContext context;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    public void testReactiveStack() {
+
+        // given
+        assertInstanceOf(NettyWebServer.class, context.getWebServer());
+        assertTrue(context.getBeansOfType(BankService.class).isEmpty());
+        assertEquals(1, context.getBeansOfType(ReactiveBankService.class).size());
+
+        // when
+        webTestClient.post().uri("/accounts/1234567890/transactions/deposits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"100.00\"}")
+                .exchange()
+                .expectStatus().isCreated();
+        webTestClient.post().uri("/accounts/1234567890/transactions/transfers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"targetAccountNumber\":1234567891,\"amount\":\"30.25\"}")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.post().uri("/accounts/1234567891/transactions/deposits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"1\"}")
+                .exchange()
+                .expectStatus().isCreated();
+        webTestClient.post().uri("/accounts/1234567890/transactions/transfers")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"targetAccountNumber\":1234567891,\"amount\":\"30.25\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.fromAccountNumber").isEqualTo(1234567890L)
+                .jsonPath("$.toAccountNumber").isEqualTo(1234567891L)
+                .jsonPath("$.amount").isEqualTo("30.25");
+
+        // then
+        webTestClient.get().uri("/accounts/1234567890")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.balance").isEqualTo("69.75");
+        webTestClient.get().uri("/accounts/1234567891/transactions?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(1)
+                .jsonPath("$.items[0].type").isEqualTo("TRANSFER")
+                .jsonPath("$.next").isNotEmpty();
+        webTestClient.get().uri("/accounts/1234567890/transactions/export")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+}
@@ -0,0 +1,79 @@
+package net.uniloftsky.markant.bank.actuator;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The endpoint is exposed by the "diagnostics" profile on the management port, here on the application port for mock MVC
+ */
+@SpringBootTest(properties = "management.endpoints.web.exposure.include=flightrecording")
+@AutoConfigureMockMvc
+public class FlightRecordingEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testRecording() throws Exception {
+
+        // given
+        mockMvc.perform(post("/actuator/flightrecording").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("RUNNING"));
+        bankService.deposit(AccountNumber.of(1234567890L), Money.parse("100"));
+        mockMvc.perform(delete("/actuator/flightrecording"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("STOPPED"));
+
+        // when
+        byte[] recording = mockMvc.perform(get("/actuator/flightrecording"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // then
+        // the download is a recording with the bank events
+        Path file = Files.createTempFile("recording-", ".jfr");
+        try {
+            Files.write(file, recording);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("net.uniloftsky.markant.bank.Deposit")
+                    && event.getLong("accountNumber") == 1234567890L));
+            assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("net.uniloftsky.markant.bank.Persistence")
+                    && "creditOrCreate".equals(event.getString("method"))));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testUnknownSettings() throws Exception {
+
+        // when
+        // then
+        mockMvc.perform(post("/actuator/flightrecording").contentType(MediaType.APPLICATION_JSON).content("{\"settings\":\"unknown\"}"))
+                .andExpect(status().isBadRequest());
+    }
+}
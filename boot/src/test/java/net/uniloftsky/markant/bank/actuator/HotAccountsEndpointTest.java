@@ -0,0 +1,51 @@
+package net.uniloftsky.markant.bank.actuator;
+
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The endpoint is exposed by the "diagnostics" profile on the management port, here on the application port for mock MVC
+ */
+@SpringBootTest(properties = {"bank.hot-accounts.sample-interval=1", "management.endpoints.web.exposure.include=hotaccounts"})
+@AutoConfigureMockMvc
+public class HotAccountsEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testHotAccounts() throws Exception {
+
+        // given
+        mockMvc.perform(delete("/actuator/hotaccounts")).andExpect(status().isNoContent());
+        AccountNumber hot = AccountNumber.of(1111111111L);
+        AccountNumber cold = AccountNumber.of(2222222222L);
+        for (int i = 0; i < 3; i++) {
+            bankService.deposit(hot, Money.parse("10"));
+        }
+        bankService.deposit(cold, Money.parse("10"));
+
+        // when
+        // then
+        mockMvc.perform(get("/actuator/hotaccounts").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].accountNumber").value(1111111111L))
+                .andExpect(jsonPath("$[0].acquisitions").value(3))
+                .andExpect(jsonPath("$[0].waitP99Nanos").isNumber());
+    }
+}
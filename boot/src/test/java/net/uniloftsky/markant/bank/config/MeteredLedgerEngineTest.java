@@ -0,0 +1,52 @@
+package net.uniloftsky.markant.bank.config;
+
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.LedgerBankServiceImpl;
+import net.uniloftsky.markant.bank.biz.MeteredBankPersistenceService;
+import net.uniloftsky.markant.bank.biz.MeteredBankService;
+import net.uniloftsky.markant.bank.biz.Money;
+import net.uniloftsky.markant.bank.biz.persistence.BankPersistenceService;
+import net.uniloftsky.markant.bank.biz.persistence.InMemoryBankPersistenceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * The metered decorators follow the selected engine and persistence, not only the defaults
+ */
+@SpringBootTest(properties = "bank.engine=ledger")
+@ActiveProfiles("memory")
+public class MeteredLedgerEngineTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private BankService bankService;
+
+    @Autowired
+    private BankPersistenceService persistenceService;
+
+    @Test
+    public void testLedgerEngineIsMetered() {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(1234567890L);
+
+        // when
+        bankService.deposit(accountNumber, Money.parse("100"));
+
+        // then
+        assertInstanceOf(MeteredBankService.class, bankService);
+        assertInstanceOf(MeteredBankPersistenceService.class, persistenceService);
+        assertEquals(1, context.getBeansOfType(LedgerBankServiceImpl.class).size());
+        assertEquals(1, context.getBeansOfType(InMemoryBankPersistenceService.class).size());
+        assertEquals(Money.parse("100"), bankService.getAccount(accountNumber).getBalance());
+    }
+}
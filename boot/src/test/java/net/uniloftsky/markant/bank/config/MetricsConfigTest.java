@@ -0,0 +1,66 @@
+package net.uniloftsky.markant.bank.config;
+
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BankService;
+import net.uniloftsky.markant.bank.biz.InsufficientBalanceException;
+import net.uniloftsky.markant.bank.biz.MeteredBankService;
+import net.uniloftsky.markant.bank.biz.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BankService bankService;
+
+    @Test
+    public void testPrometheusEndpoint() throws Exception {
+
+        // given
+        AccountNumber accountNumber = AccountNumber.of(1234567890L);
+        bankService.deposit(accountNumber, Money.parse("100"));
+        assertThrows(InsufficientBalanceException.class, () -> bankService.withdraw(accountNumber, Money.parse("200")));
+
+        // when
+        String prometheus = "/actuator/prometheus";
+
+        // then
+        // the engine is metered and every layer is visible in the scrape
+        assertInstanceOf(MeteredBankService.class, bankService);
+        mockMvc.perform(get(prometheus))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("bank_operation_seconds_count{operation=\"deposit\"")))
+                .andExpect(content().string(containsString("bank_operation_seconds_bucket{operation=\"deposit\"")))
+                .andExpect(content().string(containsString("bank_operation_failures_total{exception=\"InsufficientBalanceException\",operation=\"withdraw\"} 1.0")))
+                .andExpect(content().string(containsString("bank_lock_wait_seconds_count")))
+                .andExpect(content().string(containsString("bank_lock_hold_seconds_count")))
+                .andExpect(content().string(containsString("bank_transaction_commit_seconds_count")))
+                .andExpect(content().string(containsString("bank_persistence_seconds_count{method=\"creditOrCreate\"")));
+    }
+
+    @Test
+    public void testDiagnosticEndpointsNotExposed() throws Exception {
+
+        // then
+        // the endpoints listing and recording account numbers are exposed by the "diagnostics" profile only
+        mockMvc.perform(get("/actuator/hotaccounts")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/actuator/flightrecording")).andExpect(status().isNotFound());
+    }
+}
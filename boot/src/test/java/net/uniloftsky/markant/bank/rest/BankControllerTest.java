@@ -1,8 +1,10 @@
 package net.uniloftsky.markant.bank.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import net.uniloftsky.markant.bank.biz.*;
 import net.uniloftsky.markant.bank.config.JacksonConfig;
+import net.uniloftsky.markant.bank.config.MessageSourceConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,24 +15,38 @@ import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(BankController.class)
-@Import(JacksonConfig.class)
+@Import({JacksonConfig.class, MessageSourceConfig.class})
 public class BankControllerTest {
 
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
     /**
      * BankController endpoints. "%s" is an account number path variable
      */
@@ -39,6 +55,8 @@ public class BankControllerTest {
     private static final String WITHDRAW = "/accounts/%s/transactions/withdrawals";
     private static final String TRANSFER = "/accounts/%s/transactions/transfers";
     private static final String TRANSACTIONS = "/accounts/%s/transactions";
+    private static final String EXPORT = "/accounts/%s/transactions/export";
+    private static final String BATCHES = "/transactions/batches";
 
     @Autowired
     private MockMvc mockMvc;
@@ -67,7 +85,7 @@ public class BankControllerTest {
     /**
      * Dummy amount of money for balance or deposit/withdrawal transactions
      */
-    private final BigDecimal amount = new BigDecimal("100.00");
+    private final Money amount = Money.parse("100.00");
 
     @BeforeEach
     void setUp() {
@@ -90,7 +108,7 @@ public class BankControllerTest {
         result.andExpect(status().isOk());
         result.andExpect(jsonPath("$").isNotEmpty());
         result.andExpect(jsonPath("$.number").value(number));
-        result.andExpect(jsonPath("$.balance").value(amount.toPlainString()));
+        result.andExpect(jsonPath("$.balance").value(amount.toString()));
     }
 
     @Test
@@ -103,7 +121,7 @@ public class BankControllerTest {
 
         // mocking a request payload
         BalanceUpdateRequest request = new BalanceUpdateRequest();
-        request.setAmount(amount.toPlainString());
+        request.setAmount(amount.toString());
         String payload = objectMapper.writeValueAsString(request);
 
         // when
@@ -118,7 +136,7 @@ public class BankControllerTest {
         result.andExpect(status().isCreated());
         result.andExpect(jsonPath("$").isNotEmpty());
         result.andExpect(jsonPath("$.number").value(number));
-        result.andExpect(jsonPath("$.balance").value(bankAccount.getBalance().toPlainString()));
+        result.andExpect(jsonPath("$.balance").value(bankAccount.getBalance().toString()));
     }
 
     @Test
@@ -126,12 +144,12 @@ public class BankControllerTest {
 
         // given
         // mock bank service to return list of deposits
-        TransactionId depositId = TransactionId.generateNew();
-        BigDecimal amount = new BigDecimal("100");
+        TransactionId depositId = idGenerator.nextTransactionId();
+        Money amount = Money.parse("100");
         Instant timestamp = Instant.ofEpochMilli(System.currentTimeMillis());
         DepositTransaction deposit = new DepositTransaction(depositId, accountNumber, amount, timestamp);
         List<DepositTransaction> deposits = List.of(deposit);
-        given(bankService.listDeposits(accountNumber)).willReturn(deposits);
+        given(bankService.listDeposits(accountNumber, null, TransactionPage.DEFAULT_LIMIT)).willReturn(new TransactionPage<>(deposits, null));
 
         // when
         String formattedEndpoint = String.format(DEPOSIT, number);
@@ -139,13 +157,14 @@ public class BankControllerTest {
 
         // then
         result.andExpect(status().isOk());
-        result.andExpect(jsonPath("$").isNotEmpty());
-        result.andExpect(jsonPath("$").isArray());
-        result.andExpect(jsonPath("$[0].id").value(depositId.toString()));
-        result.andExpect(jsonPath("$[0].amount").value(amount.toPlainString()));
-        result.andExpect(jsonPath("$[0].timestamp").value(timestamp.toEpochMilli()));
-        result.andExpect(jsonPath("$[0].accountNumber").value(number));
-        result.andExpect(jsonPath("$[0].type").value(TransactionType.DEPOSIT.name()));
+        result.andExpect(jsonPath("$.items").isNotEmpty());
+        result.andExpect(jsonPath("$.items").isArray());
+        result.andExpect(jsonPath("$.items[0].id").value(depositId.toString()));
+        result.andExpect(jsonPath("$.items[0].amount").value(amount.toString()));
+        result.andExpect(jsonPath("$.items[0].timestamp").value(timestamp.toEpochMilli()));
+        result.andExpect(jsonPath("$.items[0].accountNumber").value(number));
+        result.andExpect(jsonPath("$.items[0].type").value(TransactionType.DEPOSIT.name()));
+        result.andExpect(jsonPath("$.next").isEmpty());
     }
 
     @Test
@@ -158,7 +177,7 @@ public class BankControllerTest {
 
         // mocking a request payload
         BalanceUpdateRequest request = new BalanceUpdateRequest();
-        request.setAmount(amount.toPlainString());
+        request.setAmount(amount.toString());
         String payload = objectMapper.writeValueAsString(request);
 
         // when
@@ -173,7 +192,7 @@ public class BankControllerTest {
         result.andExpect(status().isCreated());
         result.andExpect(jsonPath("$").isNotEmpty());
         result.andExpect(jsonPath("$.number").value(number));
-        result.andExpect(jsonPath("$.balance").value(bankAccount.getBalance().toPlainString()));
+        result.andExpect(jsonPath("$.balance").value(bankAccount.getBalance().toString()));
     }
 
     @Test
@@ -181,12 +200,12 @@ public class BankControllerTest {
 
         // given
         // mock bank service to return list of withdrawals
-        TransactionId withdrawalId = TransactionId.generateNew();
-        BigDecimal amount = new BigDecimal("100");
+        TransactionId withdrawalId = idGenerator.nextTransactionId();
+        Money amount = Money.parse("100");
         Instant timestamp = Instant.ofEpochMilli(System.currentTimeMillis());
         WithdrawTransaction withdrawal = new WithdrawTransaction(withdrawalId, accountNumber, amount, timestamp);
         List<WithdrawTransaction> withdrawals = List.of(withdrawal);
-        given(bankService.listWithdrawals(accountNumber)).willReturn(withdrawals);
+        given(bankService.listWithdrawals(accountNumber, null, TransactionPage.DEFAULT_LIMIT)).willReturn(new TransactionPage<>(withdrawals, null));
 
         // when
         String formattedEndpoint = String.format(WITHDRAW, number);
@@ -194,13 +213,13 @@ public class BankControllerTest {
 
         // then
         result.andExpect(status().isOk());
-        result.andExpect(jsonPath("$").isNotEmpty());
-        result.andExpect(jsonPath("$").isArray());
-        result.andExpect(jsonPath("$[0].id").value(withdrawalId.toString()));
-        result.andExpect(jsonPath("$[0].amount").value(amount.toPlainString()));
-        result.andExpect(jsonPath("$[0].timestamp").value(timestamp.toEpochMilli()));
-        result.andExpect(jsonPath("$[0].accountNumber").value(number));
-        result.andExpect(jsonPath("$[0].type").value(TransactionType.WITHDRAWAL.name()));
+        result.andExpect(jsonPath("$.items").isNotEmpty());
+        result.andExpect(jsonPath("$.items").isArray());
+        result.andExpect(jsonPath("$.items[0].id").value(withdrawalId.toString()));
+        result.andExpect(jsonPath("$.items[0].amount").value(amount.toString()));
+        result.andExpect(jsonPath("$.items[0].timestamp").value(timestamp.toEpochMilli()));
+        result.andExpect(jsonPath("$.items[0].accountNumber").value(number));
+        result.andExpect(jsonPath("$.items[0].type").value(TransactionType.WITHDRAWAL.name()));
     }
 
     @Test
@@ -208,8 +227,8 @@ public class BankControllerTest {
 
         // given
         // mock bank service to return created transfer transaction
-        TransactionId id = TransactionId.generateNew();
-        BigDecimal amount = new BigDecimal("100");
+        TransactionId id = idGenerator.nextTransactionId();
+        Money amount = Money.parse("100");
         long targetNumber = 9999999999L;
         AccountNumber targetAccountNumber = AccountNumber.of(targetNumber);
         Instant timestamp = Instant.ofEpochMilli(System.currentTimeMillis());
@@ -217,7 +236,7 @@ public class BankControllerTest {
         given(bankService.transfer(accountNumber, targetAccountNumber, amount)).willReturn(transfer);
 
         TransferRequest request = new TransferRequest();
-        request.setAmount(amount.toPlainString());
+        request.setAmount(amount.toString());
         request.setTargetAccountNumber(targetNumber);
 
         String json = objectMapper.writeValueAsString(request);
@@ -231,26 +250,63 @@ public class BankControllerTest {
         result.andExpect(status().isCreated());
         result.andExpect(jsonPath("$").isNotEmpty());
         result.andExpect(jsonPath("$.id").value(id.toString()));
-        result.andExpect(jsonPath("$.amount").value(amount.toPlainString()));
+        result.andExpect(jsonPath("$.amount").value(amount.toString()));
         result.andExpect(jsonPath("$.timestamp").value(timestamp.toEpochMilli()));
         result.andExpect(jsonPath("$.fromAccountNumber").value(number));
         result.andExpect(jsonPath("$.toAccountNumber").value(targetAccountNumber.toString()));
         result.andExpect(jsonPath("$.type").value(TransactionType.TRANSFER.name()));
     }
 
+    @Test
+    public void testApplyBatch() throws Exception {
+
+        // given
+        // mocking bank service to apply the deposit and reject the withdrawal
+        List<BatchOperation> operations = List.of(
+                BatchOperation.deposit(accountNumber, amount),
+                BatchOperation.withdrawal(AccountNumber.of(number + 1), amount));
+        given(bankService.applyBatch(operations, false)).willReturn(List.of(
+                BatchOperationResult.applied(new BankAccount(accountNumber, amount)),
+                BatchOperationResult.rejected(new AccountNotFoundException("not found", AccountNumber.of(number + 1)))));
+
+        String payload = """
+                {"allOrNothing": false, "operations": [
+                    {"accountNumber": %d, "type": "DEPOSIT", "amount": "%s"},
+                    {"accountNumber": %d, "type": "WITHDRAWAL", "amount": "%s"}
+                ]}
+                """.formatted(number, amount, number + 1, amount);
+
+        // when
+        ResultActions result = mockMvc.perform(
+                post(BATCHES)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload)
+        );
+
+        // then
+        result.andExpect(status().isOk());
+        result.andExpect(jsonPath("$.applied").value(1));
+        result.andExpect(jsonPath("$.rejected").value(1));
+        result.andExpect(jsonPath("$.results[0].status").value("APPLIED"));
+        result.andExpect(jsonPath("$.results[0].account.balance").value(amount.toString()));
+        result.andExpect(jsonPath("$.results[1].status").value("REJECTED"));
+        result.andExpect(jsonPath("$.results[1].error.key").value(ErrorKey.ACCOUNT_NOT_FOUND_ERROR.toString()));
+        result.andExpect(jsonPath("$.results[1].error.message").value("Account with number " + (number + 1) + " cannot be found"));
+    }
+
     @Test
     public void testListTransfers() throws Exception {
 
         // given
         // mock bank service to return list of transfers
-        TransactionId id = TransactionId.generateNew();
-        BigDecimal amount = new BigDecimal("100");
+        TransactionId id = idGenerator.nextTransactionId();
+        Money amount = Money.parse("100");
         long targetNumber = 9999999999L;
         AccountNumber targetAccountNumber = AccountNumber.of(targetNumber);
         Instant timestamp = Instant.ofEpochMilli(System.currentTimeMillis());
         TransferTransaction transfer = new TransferTransaction(id, accountNumber, targetAccountNumber, amount, timestamp);
         List<TransferTransaction> transfers = List.of(transfer);
-        given(bankService.listTransfers(accountNumber)).willReturn(transfers);
+        given(bankService.listTransfers(accountNumber, null, TransactionPage.DEFAULT_LIMIT)).willReturn(new TransactionPage<>(transfers, null));
 
         // when
         String formattedEndpoint = String.format(TRANSFER, number);
@@ -258,14 +314,14 @@ public class BankControllerTest {
 
         // then
         result.andExpect(status().isOk());
-        result.andExpect(jsonPath("$").isNotEmpty());
-        result.andExpect(jsonPath("$").isArray());
-        result.andExpect(jsonPath("$[0].id").value(id.toString()));
-        result.andExpect(jsonPath("$[0].amount").value(amount.toPlainString()));
-        result.andExpect(jsonPath("$[0].timestamp").value(timestamp.toEpochMilli()));
-        result.andExpect(jsonPath("$[0].fromAccountNumber").value(number));
-        result.andExpect(jsonPath("$[0].toAccountNumber").value(targetNumber));
-        result.andExpect(jsonPath("$[0].type").value(TransactionType.TRANSFER.name()));
+        result.andExpect(jsonPath("$.items").isNotEmpty());
+        result.andExpect(jsonPath("$.items").isArray());
+        result.andExpect(jsonPath("$.items[0].id").value(id.toString()));
+        result.andExpect(jsonPath("$.items[0].amount").value(amount.toString()));
+        result.andExpect(jsonPath("$.items[0].timestamp").value(timestamp.toEpochMilli()));
+        result.andExpect(jsonPath("$.items[0].fromAccountNumber").value(number));
+        result.andExpect(jsonPath("$.items[0].toAccountNumber").value(targetNumber));
+        result.andExpect(jsonPath("$.items[0].type").value(TransactionType.TRANSFER.name()));
     }
 
     @Test
@@ -273,18 +329,18 @@ public class BankControllerTest {
 
         // mock bank service to return list of all transactions
         List<BankTransaction> transactions = new ArrayList<>();
-        given(bankService.listTransactions(accountNumber)).willReturn(transactions);
+        given(bankService.listTransactions(accountNumber, null, TransactionPage.DEFAULT_LIMIT)).willReturn(new TransactionPage<>(transactions, null));
 
         // withdrawal transaction
-        TransactionId withdrawalId = TransactionId.generateNew();
-        BigDecimal withdrawalAmount = new BigDecimal("100");
+        TransactionId withdrawalId = idGenerator.nextTransactionId();
+        Money withdrawalAmount = Money.parse("100");
         Instant withdrawalInstant = Instant.ofEpochMilli(System.currentTimeMillis());
         WithdrawTransaction withdrawal = new WithdrawTransaction(withdrawalId, accountNumber, withdrawalAmount, withdrawalInstant);
         transactions.add(withdrawal);
 
         // deposit transaction
-        TransactionId depositId = TransactionId.generateNew();
-        BigDecimal depositAmount = new BigDecimal("150");
+        TransactionId depositId = idGenerator.nextTransactionId();
+        Money depositAmount = Money.parse("150");
         Instant depositTimestamp = Instant.ofEpochMilli(System.currentTimeMillis());
         DepositTransaction deposit = new DepositTransaction(depositId, accountNumber, depositAmount, depositTimestamp);
         transactions.add(deposit);
@@ -295,21 +351,102 @@ public class BankControllerTest {
 
         // then
         result.andExpect(status().isOk());
-        result.andExpect(jsonPath("$").isNotEmpty());
-        result.andExpect(jsonPath("$").isArray());
+        result.andExpect(jsonPath("$.items").isNotEmpty());
+        result.andExpect(jsonPath("$.items").isArray());
 
         // testing first element in response
-        result.andExpect(jsonPath("$[0].id").value(withdrawalId.toString()));
-        result.andExpect(jsonPath("$[0].amount").value(withdrawalAmount.toPlainString()));
-        result.andExpect(jsonPath("$[0].timestamp").value(withdrawalInstant.toEpochMilli()));
-        result.andExpect(jsonPath("$[0].accountNumber").value(number));
-        result.andExpect(jsonPath("$[0].type").value(TransactionType.WITHDRAWAL.name()));
+        result.andExpect(jsonPath("$.items[0].id").value(withdrawalId.toString()));
+        result.andExpect(jsonPath("$.items[0].amount").value(withdrawalAmount.toString()));
+        result.andExpect(jsonPath("$.items[0].timestamp").value(withdrawalInstant.toEpochMilli()));
+        result.andExpect(jsonPath("$.items[0].accountNumber").value(number));
+        result.andExpect(jsonPath("$.items[0].type").value(TransactionType.WITHDRAWAL.name()));
 
         // testing second element in response
-        result.andExpect(jsonPath("$[1].id").value(depositId.toString()));
-        result.andExpect(jsonPath("$[1].amount").value(depositAmount.toPlainString()));
-        result.andExpect(jsonPath("$[1].timestamp").value(depositTimestamp.toEpochMilli()));
-        result.andExpect(jsonPath("$[1].accountNumber").value(number));
-        result.andExpect(jsonPath("$[1].type").value(TransactionType.DEPOSIT.name()));
+        result.andExpect(jsonPath("$.items[1].id").value(depositId.toString()));
+        result.andExpect(jsonPath("$.items[1].amount").value(depositAmount.toString()));
+        result.andExpect(jsonPath("$.items[1].timestamp").value(depositTimestamp.toEpochMilli()));
+        result.andExpect(jsonPath("$.items[1].accountNumber").value(number));
+        result.andExpect(jsonPath("$.items[1].type").value(TransactionType.DEPOSIT.name()));
+    }
+
+    @Test
+    public void testListTransactionsNextPage() throws Exception {
+
+        // given
+        // the previous page ended with the deposit
+        DepositTransaction lastOfPreviousPage = new DepositTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(123457L));
+        TransactionCursor after = TransactionCursor.of(lastOfPreviousPage);
+
+        // mock bank service to return the page followed by another one
+        WithdrawTransaction withdrawal = new WithdrawTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(123456L));
+        TransactionCursor next = TransactionCursor.of(withdrawal);
+        given(bankService.listTransactions(accountNumber, after, 1)).willReturn(new TransactionPage<>(List.of(withdrawal), next));
+
+        // when
+        String formattedEndpoint = String.format(TRANSACTIONS, number);
+        ResultActions result = mockMvc.perform(get(formattedEndpoint).param("after", after.toString()).param("limit", "1"));
+
+        // then
+        result.andExpect(status().isOk());
+        result.andExpect(jsonPath("$.items[0].id").value(withdrawal.getId().toString()));
+        result.andExpect(jsonPath("$.next").value(next.toString()));
+    }
+
+    @Test
+    public void testExportTransactions() throws Exception {
+
+        // given
+        // mock bank service to stream two transactions
+        DepositTransaction deposit = new DepositTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(123457L));
+        WithdrawTransaction withdrawal = new WithdrawTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(123456L));
+        willAnswer(invocation -> {
+            Consumer<BankTransaction> action = invocation.getArgument(2);
+            action.accept(deposit);
+            action.accept(withdrawal);
+            return null;
+        }).given(bankService).exportTransactions(eq(accountNumber), isNull(), any());
+
+        // when
+        String formattedEndpoint = String.format(EXPORT, number);
+        MvcResult asyncResult = mockMvc.perform(get(formattedEndpoint)).andExpect(request().asyncStarted()).andReturn();
+        ResultActions result = mockMvc.perform(asyncDispatch(asyncResult));
+
+        // then
+        // one transaction per line
+        result.andExpect(status().isOk());
+        result.andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+        String[] lines = asyncResult.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(deposit.getId().toString(), JsonPath.read(lines[0], "$.id"));
+        assertEquals(amount.toString(), JsonPath.read(lines[0], "$.amount"));
+        assertEquals(withdrawal.getId().toString(), JsonPath.read(lines[1], "$.id"));
+        assertEquals(TransactionType.WITHDRAWAL.name(), JsonPath.read(lines[1], "$.type"));
+    }
+
+    @Test
+    public void testExportTransactionsAsJsonArray() throws Exception {
+
+        // given
+        // mock bank service to stream a single transfer
+        TransferTransaction transfer = new TransferTransaction(idGenerator.nextTransactionId(), accountNumber, AccountNumber.of(9999999999L), amount,
+                Instant.ofEpochMilli(123456L));
+        willAnswer(invocation -> {
+            Consumer<BankTransaction> action = invocation.getArgument(2);
+            action.accept(transfer);
+            return null;
+        }).given(bankService).exportTransactions(eq(accountNumber), eq(TransactionType.TRANSFER), any());
+
+        // when
+        String formattedEndpoint = String.format(EXPORT, number);
+        MvcResult asyncResult = mockMvc.perform(get(formattedEndpoint).param("type", TransactionType.TRANSFER.name()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted()).andReturn();
+        ResultActions result = mockMvc.perform(asyncDispatch(asyncResult));
+
+        // then
+        result.andExpect(status().isOk());
+        result.andExpect(content().contentType(MediaType.APPLICATION_JSON));
+        result.andExpect(jsonPath("$").isArray());
+        result.andExpect(jsonPath("$[0].id").value(transfer.getId().toString()));
+        result.andExpect(jsonPath("$[0].toAccountNumber").value(9999999999L));
     }
 }
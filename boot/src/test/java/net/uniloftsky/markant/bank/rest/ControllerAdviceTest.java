@@ -1,10 +1,15 @@
 package net.uniloftsky.markant.bank.rest;
 
 
+import net.uniloftsky.markant.bank.biz.AccountBusyException;
 import net.uniloftsky.markant.bank.biz.AccountNotFoundException;
 import net.uniloftsky.markant.bank.biz.AccountNumber;
 import net.uniloftsky.markant.bank.biz.InvalidAccountNumberException;
+import net.uniloftsky.markant.bank.biz.InvalidPageLimitException;
+import net.uniloftsky.markant.bank.biz.InvalidTransactionCursorException;
 import net.uniloftsky.markant.bank.biz.TransactionAmountFormatException;
+import net.uniloftsky.markant.bank.biz.TransactionPage;
+import net.uniloftsky.markant.bank.biz.TransactionType;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -12,7 +17,9 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.MessageSource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.util.Locale;
 
@@ -73,6 +80,29 @@ public class ControllerAdviceTest {
         assertEquals(message, result.getBody().getMessage());
     }
 
+    @Test
+    public void testHandleAccountBusy() {
+
+        // given
+        ErrorKey errorKey = ErrorKey.ACCOUNT_BUSY_ERROR;
+        AccountNumber accountNumber = AccountNumber.of(1234567890L);
+        AccountBusyException ex = new AccountBusyException(accountNumber);
+        String message = "message";
+
+        // create a mocked error response object with specified error key, message and placeholder variables
+        mockErrorResponse(errorKey, message, accountNumber.toString());
+
+        // when
+        ResponseEntity<ErrorResponse> result = controllerAdvice.handleAccountBusy(ex);
+
+        // then
+        assertNotNull(result);
+        assertNotNull(result.getBody());
+        assertEquals(HttpStatus.CONFLICT, result.getStatusCode());
+        assertEquals(errorKey, result.getBody().getKey());
+        assertEquals(message, result.getBody().getMessage());
+    }
+
     @Test
     public void testHandleInsufficientBalance() {
 
@@ -158,6 +188,73 @@ public class ControllerAdviceTest {
         assertEquals(message, result.getBody().getMessage());
     }
 
+    @Test
+    public void testHandleInvalidTransactionCursor() {
+
+        // given
+        ErrorKey errorKey = ErrorKey.INVALID_TRANSACTION_CURSOR_ERROR;
+        String invalidCursor = "abc";
+        InvalidTransactionCursorException ex = new InvalidTransactionCursorException(invalidCursor);
+        String message = "message";
+
+        // create a mocked error response object with specified error key, message and placeholder variables
+        mockErrorResponse(errorKey, message, invalidCursor);
+
+        // when
+        ResponseEntity<ErrorResponse> result = controllerAdvice.handleInvalidTransactionCursor(ex);
+
+        // then
+        assertNotNull(result);
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertNotNull(result.getBody());
+        assertEquals(errorKey, result.getBody().getKey());
+        assertEquals(message, result.getBody().getMessage());
+    }
+
+    @Test
+    public void testHandleInvalidPageLimit() {
+
+        // given
+        ErrorKey errorKey = ErrorKey.INVALID_PAGE_LIMIT_ERROR;
+        InvalidPageLimitException ex = new InvalidPageLimitException(0);
+        String message = "message";
+
+        // create a mocked error response object with specified error key, message and placeholder variables
+        mockErrorResponse(errorKey, message, "0", String.valueOf(TransactionPage.MAX_LIMIT));
+
+        // when
+        ResponseEntity<ErrorResponse> result = controllerAdvice.handleInvalidPageLimit(ex);
+
+        // then
+        assertNotNull(result);
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertNotNull(result.getBody());
+        assertEquals(errorKey, result.getBody().getKey());
+        assertEquals(message, result.getBody().getMessage());
+    }
+
+    @Test
+    public void testHandleInvalidRequestParameter() {
+
+        // given
+        ErrorKey errorKey = ErrorKey.INVALID_REQUEST_PARAMETER_ERROR;
+        MethodArgumentTypeMismatchException ex = new MethodArgumentTypeMismatchException("PAYMENT", TransactionType.class, "type", null, null);
+        String message = "message";
+
+        // create a mocked error response object with specified error key, message and placeholder variables
+        mockErrorResponse(errorKey, message, "PAYMENT", "type");
+
+        // when
+        ResponseEntity<ErrorResponse> result = controllerAdvice.handleInvalidRequestParameter(ex);
+
+        // then
+        assertNotNull(result);
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertNotNull(result.getBody());
+        assertEquals(errorKey, result.getBody().getKey());
+        assertEquals(message, result.getBody().getMessage());
+    }
+
     @Test
     public void testBuildErrorResponse() {
 
@@ -0,0 +1,162 @@
+package net.uniloftsky.markant.bank.rest;
+
+import net.uniloftsky.markant.bank.biz.*;
+import net.uniloftsky.markant.bank.config.JacksonConfig;
+import net.uniloftsky.markant.bank.config.MessageSourceConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest(ReactiveBankController.class)
+@Import({JacksonConfig.class, MessageSourceConfig.class})
+public class ReactiveBankControllerTest {
+
+    /**
+     * Generator of the dummy transaction IDs
+     */
+    private final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveBankService bankService;
+
+    /**
+     * Dummy number
+     */
+    private final long number = 1234567890L;
+
+    /**
+     * Dummy account number
+     */
+    private final AccountNumber accountNumber = AccountNumber.of(number);
+
+    /**
+     * Dummy amount of money
+     */
+    private final Money amount = Money.parse("100.00");
+
+    @Test
+    public void testGetAccount() {
+
+        // given
+        given(bankService.getAccount(accountNumber)).willReturn(Mono.just(new BankAccount(accountNumber, amount)));
+
+        // when
+        // then
+        webTestClient.get().uri("/accounts/{number}", number)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.number").isEqualTo(number)
+                .jsonPath("$.balance").isEqualTo(amount.toString());
+    }
+
+    @Test
+    public void testDeposit() {
+
+        // given
+        given(bankService.deposit(accountNumber, amount)).willReturn(Mono.just(new BankAccount(accountNumber, amount)));
+
+        // when
+        // then
+        webTestClient.post().uri("/accounts/{number}/transactions/deposits", number)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"100.00\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.balance").isEqualTo(amount.toString());
+    }
+
+    @Test
+    public void testErrors() {
+
+        // given
+        given(bankService.withdraw(accountNumber, amount)).willReturn(Mono.error(new InsufficientBalanceException("insufficient")));
+        given(bankService.getAccount(accountNumber)).willReturn(Mono.error(new AccountNotFoundException("not found", accountNumber)));
+
+        // when
+        // then
+        // errors are mapped to the same responses as on the servlet stack
+        webTestClient.post().uri("/accounts/{number}/transactions/withdrawals", number)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"100.00\"}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.INSUFFICIENT_BALANCE_ERROR.name());
+        webTestClient.post().uri("/accounts/{number}/transactions/withdrawals", number)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"1.001\"}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.TRANSACTION_AMOUNT_FORMAT_ERROR.name());
+        webTestClient.get().uri("/accounts/{number}", number)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.ACCOUNT_NOT_FOUND_ERROR.name())
+                .jsonPath("$.message").isEqualTo("Account with number " + number + " cannot be found");
+        webTestClient.get().uri("/accounts/{number}", 123)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.INVALID_ACCOUNT_NUMBER_ERROR.name());
+        webTestClient.get().uri("/accounts/{number}/transactions/export?type=PAYMENT", number)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.INVALID_REQUEST_PARAMETER_ERROR.name())
+                .jsonPath("$.message").isEqualTo("Invalid value PAYMENT provided for request parameter type");
+        webTestClient.get().uri("/unknown")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.key").isEqualTo(ErrorKey.API_NOT_FOUND_ERROR.name());
+    }
+
+    @Test
+    public void testExportTransactions() {
+
+        // given
+        BankTransaction first = new DepositTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(2));
+        BankTransaction second = new DepositTransaction(idGenerator.nextTransactionId(), accountNumber, amount, Instant.ofEpochMilli(1));
+        given(bankService.getAccount(accountNumber)).willReturn(Mono.just(new BankAccount(accountNumber, amount)));
+        given(bankService.exportTransactions(eq(accountNumber), isNull())).willAnswer(invocation -> Flux.just(first, second));
+
+        // when
+        String lines = webTestClient.get().uri("/accounts/{number}/transactions/export", number)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        // then
+        // newline delimited JSON by default, a JSON array if application/json is accepted
+        assertEquals(2, lines.lines().count());
+        webTestClient.get().uri("/accounts/{number}/transactions/export", number)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].timestamp").isEqualTo(2);
+    }
+}
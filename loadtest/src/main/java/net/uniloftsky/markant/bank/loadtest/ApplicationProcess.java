@@ -0,0 +1,134 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application under load, started from its jar in a JVM of its own, so the CPU and the garbage collection of the
+ * clients are not measured as latencies of the application. Stopped gracefully when closed
+ */
+final class ApplicationProcess implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationProcess.class);
+
+    /**
+     * Pause between the checks whether the application accepts requests
+     */
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(200);
+
+    /**
+     * Time the application gets to shut down before it's killed
+     */
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Process process;
+    private final URI baseUri;
+
+    private ApplicationProcess(Process process, URI baseUri) {
+        this.process = process;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Start the application on a free local port and wait until it accepts requests
+     *
+     * @param jar            executable jar of the application
+     * @param jvmArguments   options of the JVM of the application
+     * @param arguments      arguments of the application
+     * @param log            file the output of the application is written to
+     * @param startupTimeout time the application gets to accept requests
+     * @param client         HTTP client to check whether the application accepts requests
+     * @param probePath      path of a request answered once the application is started, whatever the status
+     * @return the started application
+     * @throws IllegalStateException if the application exits or doesn't accept requests in time
+     */
+    static ApplicationProcess start(Path jar, List<String> jvmArguments, List<String> arguments, Path log,
+                                    Duration startupTimeout, HttpClient client, String probePath) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("application jar " + jar.toAbsolutePath() + " not found, build it with mvn package");
+        }
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArguments);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.addAll(arguments);
+        command.add("--server.port=" + port);
+        logger.info("Starting {}, output written to {}", String.join(" ", command), log.toAbsolutePath());
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        ApplicationProcess application = new ApplicationProcess(process, URI.create("http://localhost:" + port + "/"));
+        try {
+            application.awaitStarted(startupTimeout, client, probePath, log);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            application.close();
+            throw ex;
+        }
+        return application;
+    }
+
+    /**
+     * URI of the application
+     */
+    URI getBaseUri() {
+        return baseUri;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            logger.warn("Application didn't stop within {}, killing it", STOP_TIMEOUT);
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private void awaitStarted(Duration timeout, HttpClient client, String probePath, Path log) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        HttpRequest probe = HttpRequest.newBuilder(baseUri.resolve(probePath))
+                .timeout(POLL_INTERVAL.multipliedBy(5))
+                .GET()
+                .build();
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("application exited with " + process.exitValue() + ", see " + log.toAbsolutePath());
+            }
+            try {
+                client.send(probe, HttpResponse.BodyHandlers.discarding());
+                logger.info("Application started at {}", baseUri);
+                return;
+            } catch (IOException ex) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("application not started within " + timeout + ", see " + log.toAbsolutePath(), ex);
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * A local port nothing listens on, it might be taken before the application binds it
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests of one endpoint, recorded by all clients concurrently.
+ * <p>
+ * Latencies of all responses are recorded in an HdrHistogram {@link Recorder}, which records without locking.
+ * Responses are counted by outcome: succeeded (2xx), rejected by the service (4xx, e.g. an insufficient balance or a
+ * busy account) and failed (5xx, timeouts and connection errors, without a latency)
+ */
+final class EndpointStats {
+
+    // Latencies are recorded in nanoseconds with three significant digits, the histogram resizes itself
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Record a response
+     *
+     * @param latencyNanos time from sending the request to receiving the whole response
+     * @param status       HTTP status of the response
+     */
+    void record(long latencyNanos, int status) {
+        recorder.recordValue(latencyNanos);
+        if (status < 400) {
+            succeeded.increment();
+        } else if (status < 500) {
+            rejected.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    /**
+     * Record a request without a response
+     */
+    void failed() {
+        failed.increment();
+    }
+
+    long requests() {
+        return succeeded.sum() + rejected.sum() + failed.sum();
+    }
+
+    /**
+     * Statistics as written to the report, latencies in microseconds. Takes the recorded latencies, so it's called
+     * once, after the clients have finished
+     *
+     * @param seconds length of the measurement, for the throughput
+     */
+    Map<String, Object> toMap(double seconds) {
+        Histogram histogram = recorder.getIntervalHistogram();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", requests());
+        result.put("succeeded", succeeded.sum());
+        result.put("rejected", rejected.sum());
+        result.put("failed", failed.sum());
+        result.put("throughput", requests() / seconds);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        if (histogram.getTotalCount() > 0) {
+            latency.put("min", micros(histogram.getMinValue()));
+            latency.put("mean", histogram.getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+            for (double percentile : PERCENTILES) {
+                latency.put("p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                        micros(histogram.getValueAtPercentile(percentile)));
+            }
+            latency.put("max", micros(histogram.getMaxValue()));
+        }
+        result.put("latencyMicros", latency);
+        return result;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,305 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end HTTP load test. Starts the application from its jar on a free local port in a JVM of its own and drives
+ * it with many concurrent clients over the JDK {@link HttpClient}, every client on its own virtual thread. With
+ * {@code loadtest.application.url} an application already running, e.g. on another host, is driven instead.
+ * <p>
+ * Every client is a closed loop: it picks an operation by the weights of the mix, an account from a Zipf distribution
+ * of hot accounts and, for transfers, a target by the transfer pattern, sends the request and waits for the response
+ * before sending the next one. Latencies are recorded per endpoint after a warmup. Being closed loops, the clients
+ * send less while the application stalls, so the percentiles don't include the time requests would have waited.
+ * <p>
+ * Arguments other than the {@code loadtest.*} settings are passed to the application, so the engine, the persistence
+ * and the profile under test are chosen like for the application, e.g.
+ * {@code --spring.profiles.active=memory --loadtest.clients=256 --loadtest.duration=1m}.
+ * A JSON report of the settings, the configuration under test, the throughput and the latency percentiles of every
+ * endpoint is written to {@code loadtest.report}, to compare runs.
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    /**
+     * Number of the first account, account numbers have ten digits
+     */
+    private static final long FIRST_ACCOUNT = 1000000000L;
+
+    /**
+     * Initial balance of every account, large enough to never run out during a run
+     */
+    private static final String INITIAL_BALANCE = "1000000.00";
+
+    /**
+     * Arguments of the application given before the command line, so they can be overridden by it.
+     * The debug log of every transaction would measure the logging
+     */
+    private static final List<String> DEFAULT_ARGUMENTS = List.of(
+            "--logging.level.org.springframework.transaction=INFO"
+    );
+
+    /**
+     * Prefix of the arguments of the load test, not passed to the application
+     */
+    private static final String SETTINGS_PREFIX = "--loadtest.";
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final LoadTestSettings settings;
+    private final ZipfDistribution accounts;
+
+    /**
+     * Operation of every unit of the total weight of the mix
+     */
+    private final Operation[] operations;
+
+    /**
+     * @param client   HTTP client of all clients
+     * @param baseUri  URI of the application
+     * @param settings settings of the run
+     */
+    LoadTest(HttpClient client, URI baseUri, LoadTestSettings settings) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.accounts = new ZipfDistribution(settings.getAccounts(), settings.getZipfExponent());
+        List<Operation> weighted = new ArrayList<>();
+        settings.getMix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+        this.operations = weighted.toArray(new Operation[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        LoadTestSettings settings = LoadTestSettings.of(environment);
+        List<String> arguments = new ArrayList<>(DEFAULT_ARGUMENTS);
+        for (String arg : args) {
+            if (!arg.startsWith(SETTINGS_PREFIX)) {
+                arguments.add(arg);
+            }
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .build();
+            Map<String, Object> application = new LinkedHashMap<>();
+            Map<String, Object> report;
+            String url = environment.getProperty("loadtest.application.url");
+            if (StringUtils.hasText(url)) {
+                application.put("url", url);
+                report = new LoadTest(client, URI.create(url.endsWith("/") ? url : url + "/"), settings).run(executor, application);
+            } else {
+                Path jar = Path.of(environment.getProperty("loadtest.application.jar", "boot/webapps/markant-bank-prototype.jar"));
+                List<String> jvmArguments = List.of(StringUtils.tokenizeToStringArray(environment.getProperty("loadtest.application.jvm-arguments", ""), " "));
+                Path log = Path.of(environment.getProperty("loadtest.application.log", "loadtest-application.log"));
+                Duration startupTimeout = DurationStyle.detectAndParse(environment.getProperty("loadtest.application.startup-timeout", "2m"));
+                application.put("jar", jar.toString());
+                application.put("jvmArguments", jvmArguments);
+                application.put("arguments", arguments);
+                try (ApplicationProcess process = ApplicationProcess.start(jar, jvmArguments, arguments, log, startupTimeout, client,
+                        "accounts/" + FIRST_ACCOUNT)) {
+                    report = new LoadTest(client, process.getBaseUri(), settings).run(executor, application);
+                }
+            }
+            write(report, settings.getReport());
+            logger.info("Load test report written to {}", settings.getReport().toAbsolutePath());
+        }
+    }
+
+    /**
+     * Create the accounts, warm up and measure
+     *
+     * @param executor    executor of the clients, creating a virtual thread per task
+     * @param application how the application under test is configured, for the report
+     * @return report of the measurement
+     */
+    Map<String, Object> run(ExecutorService executor, Map<String, Object> application) throws Exception {
+        Instant startedAt = Instant.now();
+        createAccounts(executor);
+        if (!settings.getWarmup().isZero()) {
+            logger.info("Warming up for {}", settings.getWarmup());
+            drive(executor, settings.getWarmup(), statsOf());
+        }
+        logger.info("Measuring {} clients for {}", settings.getClients(), settings.getDuration());
+        Map<Operation, EndpointStats> stats = statsOf();
+        long started = System.nanoTime();
+        drive(executor, settings.getDuration(), stats);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return report(startedAt, seconds, stats, application);
+    }
+
+    /**
+     * Deposit the initial balance to every account, with all clients
+     */
+    private void createAccounts(ExecutorService executor) throws Exception {
+        logger.info("Creating {} accounts", settings.getAccounts());
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> clients = new ArrayList<>(settings.getClients());
+        for (int i = 0; i < settings.getClients(); i++) {
+            clients.add(executor.submit(() -> {
+                for (int account = next.getAndIncrement(); account < settings.getAccounts(); account = next.getAndIncrement()) {
+                    HttpResponse<Void> response = client.send(deposit(account, INITIAL_BALANCE), HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 300) {
+                        throw new IllegalStateException("account " + accountNumber(account) + " cannot be created, status " + response.statusCode());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : clients) {
+            future.get();
+        }
+    }
+
+    /**
+     * Run the clients for the given time
+     */
+    private void drive(ExecutorService executor, Duration duration, Map<Operation, EndpointStats> stats) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<?>> clients = new ArrayList<>(settings.getClients());
+        for (int i = 0; i < settings.getClients(); i++) {
+            clients.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    Operation operation = operations[random.nextInt(operations.length)];
+                    HttpRequest request = request(operation, random);
+                    EndpointStats endpoint = stats.get(operation);
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        endpoint.record(System.nanoTime() - sent, response.statusCode());
+                    } catch (IOException ex) {
+                        endpoint.failed();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : clients) {
+            future.get();
+        }
+    }
+
+    private HttpRequest request(Operation operation, ThreadLocalRandom random) {
+        int account = accounts.sample(random);
+        String amount = "0." + String.format("%02d", 1 + random.nextInt(99));
+        return switch (operation) {
+            case BALANCE -> get("accounts/" + accountNumber(account));
+            case HISTORY -> get("accounts/" + accountNumber(account) + "/transactions?limit=" + settings.getHistoryLimit());
+            case DEPOSIT -> deposit(account, amount);
+            case WITHDRAWAL -> post("accounts/" + accountNumber(account) + "/transactions/withdrawals", "{\"amount\":\"" + amount + "\"}");
+            case TRANSFER -> {
+                int target = settings.getTransferPattern().target(account, accounts, random);
+                yield post("accounts/" + accountNumber(account) + "/transactions/transfers",
+                        "{\"targetAccountNumber\":" + accountNumber(target) + ",\"amount\":\"" + amount + "\"}");
+            }
+        };
+    }
+
+    private HttpRequest deposit(int account, String amount) {
+        return post("accounts/" + accountNumber(account) + "/transactions/deposits", "{\"amount\":\"" + amount + "\"}");
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(settings.getRequestTimeout())
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(settings.getRequestTimeout())
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static long accountNumber(int account) {
+        return FIRST_ACCOUNT + account;
+    }
+
+    private static Map<Operation, EndpointStats> statsOf() {
+        Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new EndpointStats());
+        }
+        return stats;
+    }
+
+    private Map<String, Object> report(Instant startedAt, double seconds, Map<Operation, EndpointStats> stats, Map<String, Object> application) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("seconds", seconds);
+        report.put("application", application);
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("settings", settings.toMap());
+
+        long requests = 0;
+        long reads = 0;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<Operation, EndpointStats> entry : stats.entrySet()) {
+            long endpointRequests = entry.getValue().requests();
+            if (endpointRequests == 0) {
+                continue;
+            }
+            requests += endpointRequests;
+            if (!entry.getKey().isWrite()) {
+                reads += endpointRequests;
+            }
+            endpoints.put(entry.getKey().getEndpoint(), entry.getValue().toMap(seconds));
+        }
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("requests", requests);
+        total.put("reads", reads);
+        total.put("writes", requests - reads);
+        total.put("throughput", requests / seconds);
+        report.put("total", total);
+        report.put("endpoints", endpoints);
+        logger.info("{} requests in {} s, {} requests/s", requests, String.format("%.1f", seconds), String.format("%.0f", requests / seconds));
+        return report;
+    }
+
+    private static void write(Map<String, Object> report, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+    }
+}
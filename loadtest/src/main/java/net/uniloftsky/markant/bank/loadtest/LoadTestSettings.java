@@ -0,0 +1,158 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from the {@code loadtest.*} properties of the command line, given like the
+ * application properties, e.g. {@code --loadtest.clients=256}
+ */
+final class LoadTestSettings {
+
+    private final int clients;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int accounts;
+    private final double zipfExponent;
+    private final Map<Operation, Integer> mix;
+    private final TransferPattern transferPattern;
+    private final int historyLimit;
+    private final Duration requestTimeout;
+    private final Path report;
+
+    private LoadTestSettings(int clients, Duration warmup, Duration duration, int accounts, double zipfExponent,
+                             Map<Operation, Integer> mix, TransferPattern transferPattern, int historyLimit,
+                             Duration requestTimeout, Path report) {
+        if (clients < 1) {
+            throw new IllegalArgumentException("number of clients must be positive, but was " + clients);
+        }
+        if (warmup.isNegative() || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("duration must be positive and warmup must not be negative, but were " + duration + " and " + warmup);
+        }
+        if (accounts < 2) {
+            throw new IllegalArgumentException("at least two accounts are needed for transfers, but was " + accounts);
+        }
+        int totalWeight = 0;
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            if (weight.getValue() < 0) {
+                throw new IllegalArgumentException("weight of " + weight.getKey() + " must not be negative, but was " + weight.getValue());
+            }
+            totalWeight += weight.getValue();
+        }
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("at least one operation must have a positive weight");
+        }
+        if (historyLimit < 1) {
+            throw new IllegalArgumentException("history limit must be positive, but was " + historyLimit);
+        }
+        this.clients = clients;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.accounts = accounts;
+        this.zipfExponent = zipfExponent;
+        this.mix = mix;
+        this.transferPattern = transferPattern;
+        this.historyLimit = historyLimit;
+        this.requestTimeout = requestTimeout;
+        this.report = report;
+    }
+
+    /**
+     * Read the settings
+     *
+     * @param environment environment of the command line
+     * @return settings, defaults for the missing properties
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    static LoadTestSettings of(Environment environment) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.BALANCE, environment.getProperty("loadtest.mix.balance", Integer.class, 40));
+        mix.put(Operation.HISTORY, environment.getProperty("loadtest.mix.history", Integer.class, 10));
+        mix.put(Operation.DEPOSIT, environment.getProperty("loadtest.mix.deposit", Integer.class, 20));
+        mix.put(Operation.WITHDRAWAL, environment.getProperty("loadtest.mix.withdrawal", Integer.class, 10));
+        mix.put(Operation.TRANSFER, environment.getProperty("loadtest.mix.transfer", Integer.class, 20));
+        return new LoadTestSettings(
+                environment.getProperty("loadtest.clients", Integer.class, 64),
+                duration(environment, "loadtest.warmup", "10s"),
+                duration(environment, "loadtest.duration", "30s"),
+                environment.getProperty("loadtest.accounts", Integer.class, 10000),
+                environment.getProperty("loadtest.zipf-exponent", Double.class, 0.99),
+                mix,
+                TransferPattern.valueOf(environment.getProperty("loadtest.transfer-pattern", "random").toUpperCase(Locale.ROOT)),
+                environment.getProperty("loadtest.history-limit", Integer.class, 20),
+                duration(environment, "loadtest.request-timeout", "10s"),
+                Path.of(environment.getProperty("loadtest.report", "loadtest-report.json")));
+    }
+
+    private static Duration duration(Environment environment, String key, String defaultValue) {
+        return DurationStyle.detectAndParse(environment.getProperty(key, defaultValue));
+    }
+
+    /**
+     * Settings as written to the report
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clients", clients);
+        result.put("warmupSeconds", warmup.toMillis() / 1000.0);
+        result.put("durationSeconds", duration.toMillis() / 1000.0);
+        result.put("accounts", accounts);
+        result.put("zipfExponent", zipfExponent);
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        mix.forEach((operation, weight) -> weights.put(operation.name().toLowerCase(Locale.ROOT), weight));
+        result.put("mix", weights);
+        result.put("transferPattern", transferPattern.name().toLowerCase(Locale.ROOT));
+        result.put("historyLimit", historyLimit);
+        return result;
+    }
+
+    int getClients() {
+        return clients;
+    }
+
+    Duration getWarmup() {
+        return warmup;
+    }
+
+    Duration getDuration() {
+        return duration;
+    }
+
+    int getAccounts() {
+        return accounts;
+    }
+
+    double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    /**
+     * Relative weights of the operations
+     */
+    Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    TransferPattern getTransferPattern() {
+        return transferPattern;
+    }
+
+    int getHistoryLimit() {
+        return historyLimit;
+    }
+
+    Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    Path getReport() {
+        return report;
+    }
+}
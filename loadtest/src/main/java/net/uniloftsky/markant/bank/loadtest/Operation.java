@@ -0,0 +1,33 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+/**
+ * Operations of the workload, one per endpoint
+ */
+enum Operation {
+
+    BALANCE("GET /accounts/{accountNumber}"),
+    HISTORY("GET /accounts/{accountNumber}/transactions"),
+    DEPOSIT("POST /accounts/{accountNumber}/transactions/deposits"),
+    WITHDRAWAL("POST /accounts/{accountNumber}/transactions/withdrawals"),
+    TRANSFER("POST /accounts/{accountNumber}/transactions/transfers");
+
+    private final String endpoint;
+
+    Operation(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Method and URL template of the endpoint, the key of the operation in the report
+     */
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Whether the operation changes a balance
+     */
+    boolean isWrite() {
+        return this != BALANCE && this != HISTORY;
+    }
+}
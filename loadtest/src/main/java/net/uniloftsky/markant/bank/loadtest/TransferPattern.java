@@ -0,0 +1,56 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * How the target of a transfer is chosen for an initiator drawn from the account distribution
+ */
+enum TransferPattern {
+
+    /**
+     * Target drawn from the account distribution too, so hot accounts transfer to each other
+     */
+    RANDOM {
+        @Override
+        int target(int initiator, ZipfDistribution accounts, RandomGenerator random) {
+            int target = accounts.sample(random);
+            while (target == initiator) {
+                target = accounts.sample(random);
+            }
+            return target;
+        }
+    },
+
+    /**
+     * Accounts form fixed pairs transferring to each other, concurrent transfers of a pair go in opposite directions
+     * and lock the same two accounts
+     */
+    PAIRED {
+        @Override
+        int target(int initiator, ZipfDistribution accounts, RandomGenerator random) {
+            int partner = initiator ^ 1;
+            return partner < accounts.size() ? partner : initiator - 1;
+        }
+    },
+
+    /**
+     * Every account transfers to the next one, so transfers of neighbouring accounts share an account and form
+     * chains of lock waits
+     */
+    CHAIN {
+        @Override
+        int target(int initiator, ZipfDistribution accounts, RandomGenerator random) {
+            return (initiator + 1) % accounts.size();
+        }
+    };
+
+    /**
+     * Choose the target account
+     *
+     * @param initiator index of the initiator
+     * @param accounts  distribution of the accounts, of at least two
+     * @param random    random generator of the calling thread
+     * @return index of the target, other than the initiator
+     */
+    abstract int target(int initiator, ZipfDistribution accounts, RandomGenerator random);
+}
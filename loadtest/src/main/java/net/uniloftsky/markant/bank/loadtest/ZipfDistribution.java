@@ -0,0 +1,60 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Zipf distribution over the indexes {@code 0..size-1}: index {@code k} is drawn with a probability proportional to
+ * {@code 1 / (k + 1)^exponent}, so the first indexes are the hot ones. An exponent of zero draws all indexes uniformly.
+ * <p>
+ * The cumulative weights are computed once, a sample is a binary search, so drawing allocates nothing and is shared
+ * by all clients.
+ */
+final class ZipfDistribution {
+
+    private final double[] cumulativeWeights;
+
+    /**
+     * @param size     number of indexes
+     * @param exponent skew, zero for a uniform distribution
+     */
+    ZipfDistribution(int size, double exponent) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive, but was " + size);
+        }
+        if (exponent < 0 || Double.isNaN(exponent)) {
+            throw new IllegalArgumentException("exponent must not be negative, but was " + exponent);
+        }
+        cumulativeWeights = new double[size];
+        double sum = 0;
+        for (int k = 0; k < size; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulativeWeights[k] = sum;
+        }
+    }
+
+    /**
+     * Draw an index
+     *
+     * @param random random generator of the calling thread
+     * @return index between zero and the size, exclusive
+     */
+    int sample(RandomGenerator random) {
+        double value = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, value);
+        // an insertion point is the first index whose cumulative weight is greater than the value
+        return index >= 0 ? Math.min(index + 1, cumulativeWeights.length - 1) : -index - 1;
+    }
+
+    /**
+     * Probability of an index
+     */
+    double probability(int index) {
+        double total = cumulativeWeights[cumulativeWeights.length - 1];
+        return (cumulativeWeights[index] - (index == 0 ? 0 : cumulativeWeights[index - 1])) / total;
+    }
+
+    int size() {
+        return cumulativeWeights.length;
+    }
+}
@@ -0,0 +1,71 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import net.uniloftsky.markant.bank.MarkantBankPrototypeApplication;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Short run of every transfer pattern against the application, started in the JVM of the test
+ */
+@SpringBootTest(classes = MarkantBankPrototypeApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("memory")
+public class LoadTestTest {
+
+    @LocalServerPort
+    private int port;
+
+    @ParameterizedTest
+    @EnumSource(TransferPattern.class)
+    @SuppressWarnings("unchecked")
+    public void testRun(TransferPattern pattern) throws Exception {
+
+        // given
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("loadtest.clients", "4")
+                .withProperty("loadtest.accounts", "16")
+                .withProperty("loadtest.warmup", "0s")
+                .withProperty("loadtest.duration", "500ms")
+                .withProperty("loadtest.transfer-pattern", pattern.name());
+        LoadTestSettings settings = LoadTestSettings.of(environment);
+        Map<String, Object> report;
+
+        // when
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .build();
+            LoadTest loadTest = new LoadTest(client, URI.create("http://localhost:" + port + "/"), settings);
+            report = loadTest.run(executor, Map.of("url", "http://localhost:" + port));
+        }
+
+        // then
+        assertEquals(Map.of("url", "http://localhost:" + port), report.get("application"));
+        assertEquals(pattern.name().toLowerCase(), ((Map<String, Object>) report.get("settings")).get("transferPattern"));
+        Map<String, Object> total = (Map<String, Object>) report.get("total");
+        assertTrue((Long) total.get("requests") > 0);
+        assertEquals((Long) total.get("requests"), (Long) total.get("reads") + (Long) total.get("writes"));
+
+        // then every operation was sent and answered without errors
+        Map<String, Object> endpoints = (Map<String, Object>) report.get("endpoints");
+        for (Operation operation : Operation.values()) {
+            Map<String, Object> endpoint = (Map<String, Object>) endpoints.get(operation.getEndpoint());
+            assertNotNull(endpoint, operation.getEndpoint());
+            assertEquals(0L, endpoint.get("failed"), operation.getEndpoint());
+            assertTrue((Long) endpoint.get("succeeded") > 0, operation.getEndpoint());
+            assertTrue(((Map<String, Object>) endpoint.get("latencyMicros")).containsKey("p99"), operation.getEndpoint());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferPatternTest {
+
+    @ParameterizedTest
+    @EnumSource(TransferPattern.class)
+    public void testTargetIsAnotherAccount(TransferPattern pattern) {
+
+        // given an odd number of accounts, so the last one has no pair
+        ZipfDistribution accounts = new ZipfDistribution(5, 0.99);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // then
+        for (int initiator = 0; initiator < accounts.size(); initiator++) {
+            for (int i = 0; i < 100; i++) {
+                int target = pattern.target(initiator, accounts, random);
+                assertNotEquals(initiator, target);
+                assertTrue(target >= 0 && target < accounts.size());
+            }
+        }
+    }
+
+    @Test
+    public void testPaired() {
+
+        // given
+        ZipfDistribution accounts = new ZipfDistribution(5, 0.99);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // then
+        assertEquals(1, TransferPattern.PAIRED.target(0, accounts, random));
+        assertEquals(0, TransferPattern.PAIRED.target(1, accounts, random));
+        assertEquals(3, TransferPattern.PAIRED.target(2, accounts, random));
+        assertEquals(2, TransferPattern.PAIRED.target(3, accounts, random));
+        assertEquals(3, TransferPattern.PAIRED.target(4, accounts, random));
+    }
+
+    @Test
+    public void testChain() {
+
+        // given
+        ZipfDistribution accounts = new ZipfDistribution(5, 0.99);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // then
+        assertEquals(1, TransferPattern.CHAIN.target(0, accounts, random));
+        assertEquals(4, TransferPattern.CHAIN.target(3, accounts, random));
+        assertEquals(0, TransferPattern.CHAIN.target(4, accounts, random));
+    }
+}
@@ -0,0 +1,65 @@
+package net.uniloftsky.markant.bank.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZipfDistributionTest {
+
+    @Test
+    public void testUniformWithoutSkew() {
+
+        // given
+        ZipfDistribution distribution = new ZipfDistribution(4, 0);
+
+        // then
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0.25, distribution.probability(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void testProbabilities() {
+
+        // given
+        ZipfDistribution distribution = new ZipfDistribution(3, 1);
+
+        // then weights 1, 1/2 and 1/3 of a total of 11/6
+        assertEquals(6 / 11.0, distribution.probability(0), 1e-9);
+        assertEquals(3 / 11.0, distribution.probability(1), 1e-9);
+        assertEquals(2 / 11.0, distribution.probability(2), 1e-9);
+    }
+
+    @Test
+    public void testSamplesFollowTheDistribution() {
+
+        // given
+        ZipfDistribution distribution = new ZipfDistribution(100, 0.99);
+        SplittableRandom random = new SplittableRandom(42);
+        int samples = 200000;
+        int[] counts = new int[distribution.size()];
+
+        // when
+        for (int i = 0; i < samples; i++) {
+            counts[distribution.sample(random)]++;
+        }
+
+        // then the hot accounts are drawn by their probability, within a percent of all samples
+        for (int i = 0; i < 5; i++) {
+            assertEquals(distribution.probability(i), counts[i] / (double) samples, 0.01);
+        }
+        assertTrue(counts[0] > counts[1]);
+        assertTrue(counts[1] > counts[10]);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+
+        // then
+        assertThrows(IllegalArgumentException.class, () -> new ZipfDistribution(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfDistribution(10, -1));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfDistribution(10, Double.NaN));
+    }
+}
@@ -0,0 +1,119 @@
+package net.uniloftsky.markant.bank.rest;
+
+import net.uniloftsky.markant.bank.biz.AccountBusyException;
+import net.uniloftsky.markant.bank.biz.AccountNotFoundException;
+import net.uniloftsky.markant.bank.biz.InsufficientBalanceException;
+import net.uniloftsky.markant.bank.biz.BatchOperation;
+import net.uniloftsky.markant.bank.biz.InvalidAccountNumberException;
+import net.uniloftsky.markant.bank.biz.InvalidBatchException;
+import net.uniloftsky.markant.bank.biz.InvalidPageLimitException;
+import net.uniloftsky.markant.bank.biz.InvalidTransactionCursorException;
+import net.uniloftsky.markant.bank.biz.TransactionAmountFormatException;
+import net.uniloftsky.markant.bank.biz.TransactionPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.MessageSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.Locale;
+
+/**
+ * Base of the controller advices of the servlet and the reactive stacks, handles the exceptions of the business layer.
+ * Exceptions of the web frameworks are handled by the subclasses
+ */
+public abstract class AbstractControllerAdvice {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractControllerAdvice.class);
+
+    /**
+     * Message source to retrieve localization
+     */
+    private MessageSource messageSource;
+
+    @ExceptionHandler(AccountNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleAccountNotFound(AccountNotFoundException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.ACCOUNT_NOT_FOUND_ERROR, ex.getAccountNumber().toString());
+        return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(AccountBusyException.class)
+    public ResponseEntity<ErrorResponse> handleAccountBusy(AccountBusyException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.ACCOUNT_BUSY_ERROR, ex.getAccountNumber().toString());
+        return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(InsufficientBalanceException.class)
+    public ResponseEntity<ErrorResponse> handleInsufficientBalance() {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INSUFFICIENT_BALANCE_ERROR);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidAccountNumberException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidAccountNumber(InvalidAccountNumberException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INVALID_ACCOUNT_NUMBER_ERROR, ex.getAccountNumber());
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleGenericException(Exception ex) {
+        logger.error("Unhandled exception occurred", ex);
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.SYSTEM_INTERNAL_ERROR);
+        return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @ExceptionHandler(TransactionAmountFormatException.class)
+    public ResponseEntity<ErrorResponse> handleTransactionAmountFormatException(TransactionAmountFormatException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.TRANSACTION_AMOUNT_FORMAT_ERROR, ex.getAmount());
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidTransactionCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidTransactionCursor(InvalidTransactionCursorException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INVALID_TRANSACTION_CURSOR_ERROR, ex.getCursor());
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidPageLimitException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidPageLimit(InvalidPageLimitException ex) {
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INVALID_PAGE_LIMIT_ERROR, String.valueOf(ex.getLimit()), String.valueOf(TransactionPage.MAX_LIMIT));
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidBatch(InvalidBatchException ex) {
+        String reason = ex.getIndex() < 0 ? "invalid number of operations" : "invalid operation at position " + ex.getIndex();
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INVALID_BATCH_ERROR, reason, String.valueOf(BatchOperation.MAX_BATCH_SIZE));
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Builds an error response object based on the provided error key and placeholder values.
+     *
+     * @param errorKey  the key representing the error
+     * @param variables values to replace placeholders in the error message
+     * @return an ErrorResponse object with the localized message
+     */
+    ErrorResponse buildErrorResponse(ErrorKey errorKey, String... variables) {
+        String message = getLocalizedMessage(errorKey.getMessageKey(), variables);
+        return ErrorResponse.of(errorKey, message);
+    }
+
+    /**
+     * Retrieves a localized message based on the provided message key and replaces placeholders with given variables.
+     *
+     * @param messageKey the key corresponding to an entry in exceptions.properties
+     * @param variables  values to replace placeholders, provided in the order they appear in the message
+     * @return the localized message with placeholders replaced by the specified variables
+     */
+    String getLocalizedMessage(String messageKey, String... variables) {
+        return messageSource.getMessage(messageKey, variables, Locale.ROOT);
+    }
+
+    @Autowired
+    public void setMessageSource(MessageSource messageSource) {
+        this.messageSource = messageSource;
+    }
+}
@@ -1,10 +1,9 @@
 package net.uniloftsky.markant.bank.rest;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import net.uniloftsky.markant.bank.biz.Money;
 import net.uniloftsky.markant.bank.biz.TransactionAmountFormatException;
 
-import java.math.BigDecimal;
-
 /**
  * Request used for deposit/withdrawal money from/to specific account number
  */
@@ -14,12 +13,12 @@ public final class BalanceUpdateRequest {
     /**
      * Deposit/withdrawal amount
      */
-    @Schema(description = "The amount of money to deposit/withdraw. The fractional part must be separated by a period (.)", example = "100.25")
+    @Schema(description = "The amount of money to deposit/withdraw. The fractional part must be separated by a period (.) and have at most two digits", example = "100.25")
     private String amount;
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         try {
-            return new BigDecimal(amount);
+            return Money.parse(amount);
         } catch (NumberFormatException ex) {
             throw new TransactionAmountFormatException(amount);
         }
@@ -1,8 +1,9 @@
 package net.uniloftsky.markant.bank.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
-import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -10,18 +11,28 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import net.uniloftsky.markant.bank.biz.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Tag(name = "banking", description = "Bank API")
 public class BankController {
 
     private BankService bankService;
+    private ObjectMapper objectMapper;
+    private MessageSource messageSource;
 
     @GetMapping(value = "accounts/{accountNumber}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get banking account balance", description = "Endpoint to check the balance of the given banking account")
@@ -53,15 +64,19 @@ public class BankController {
     @GetMapping(value = "accounts/{accountNumber}/transactions/deposits", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get history of deposits for the account", description = "Endpoint to get history of deposits for the given account")
     @Parameter(name = "accountNumber", description = "Account number. Must be a 10 digits long number")
+    @Parameter(name = "after", description = "Cursor of the previous page, taken from its \"next\" field. Omit to get the first page")
+    @Parameter(name = "limit", description = "Maximum number of transactions on the page, from 1 to " + TransactionPage.MAX_LIMIT)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Request was performed successfully",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = DepositTransaction.class)))),
+                    content = @Content(schema = @Schema(implementation = TransactionPage.class))),
             @ApiResponse(responseCode = "404", description = "If account by the given account number doesn't exist", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
-    public ResponseEntity<List<DepositTransaction>> listDeposits(@PathVariable("accountNumber") long accountNumber) {
-        List<DepositTransaction> result = bankService.listDeposits(AccountNumber.of(accountNumber));
+    public ResponseEntity<TransactionPage<DepositTransaction>> listDeposits(@PathVariable("accountNumber") long accountNumber,
+                                                                            @RequestParam(value = "after", required = false) String after,
+                                                                            @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        TransactionPage<DepositTransaction> result = bankService.listDeposits(AccountNumber.of(accountNumber), parseCursor(after), limit);
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
@@ -82,16 +97,20 @@ public class BankController {
     @GetMapping(value = "accounts/{accountNumber}/transactions/withdrawals", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get history of withdrawals for the account", description = "Endpoint to get history of withdrawals for the given account")
     @Parameter(name = "accountNumber", description = "Account number. Must be a 10 digits long number")
+    @Parameter(name = "after", description = "Cursor of the previous page, taken from its \"next\" field. Omit to get the first page")
+    @Parameter(name = "limit", description = "Maximum number of transactions on the page, from 1 to " + TransactionPage.MAX_LIMIT)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Request was performed successfully",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = WithdrawTransaction.class)))),
+                    content = @Content(schema = @Schema(implementation = TransactionPage.class))),
             @ApiResponse(responseCode = "404", description = "If account by the given account number doesn't exist",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
-    public ResponseEntity<List<WithdrawTransaction>> listWithdrawals(@PathVariable("accountNumber") long accountNumber) {
-        List<WithdrawTransaction> result = bankService.listWithdrawals(AccountNumber.of(accountNumber));
+    public ResponseEntity<TransactionPage<WithdrawTransaction>> listWithdrawals(@PathVariable("accountNumber") long accountNumber,
+                                                                                @RequestParam(value = "after", required = false) String after,
+                                                                                @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        TransactionPage<WithdrawTransaction> result = bankService.listWithdrawals(AccountNumber.of(accountNumber), parseCursor(after), limit);
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
@@ -112,36 +131,177 @@ public class BankController {
     @GetMapping(value = "accounts/{accountNumber}/transactions/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get history of transfers for the account", description = "Endpoint to get history of transfers for the given account")
     @Parameter(name = "accountNumber", description = "Account number. Must be a 10 digits long number")
+    @Parameter(name = "after", description = "Cursor of the previous page, taken from its \"next\" field. Omit to get the first page")
+    @Parameter(name = "limit", description = "Maximum number of transactions on the page, from 1 to " + TransactionPage.MAX_LIMIT)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Request was performed successfully",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = TransferTransaction.class)))),
+                    content = @Content(schema = @Schema(implementation = TransactionPage.class))),
             @ApiResponse(responseCode = "404", description = "If account by the given account number doesn't exist", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
-    public ResponseEntity<List<TransferTransaction>> listTransfers(@PathVariable("accountNumber") long accountNumber) {
-        List<TransferTransaction> result = bankService.listTransfers(AccountNumber.of(accountNumber));
+    public ResponseEntity<TransactionPage<TransferTransaction>> listTransfers(@PathVariable("accountNumber") long accountNumber,
+                                                                              @RequestParam(value = "after", required = false) String after,
+                                                                              @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        TransactionPage<TransferTransaction> result = bankService.listTransfers(AccountNumber.of(accountNumber), parseCursor(after), limit);
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
     @GetMapping(value = "accounts/{accountNumber}/transactions", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get history of all transactions for the account", description = "Endpoint to get history of transactions for the given account")
     @Parameter(name = "accountNumber", description = "Account number. Must be a 10 digits long number")
+    @Parameter(name = "after", description = "Cursor of the previous page, taken from its \"next\" field. Omit to get the first page")
+    @Parameter(name = "limit", description = "Maximum number of transactions on the page, from 1 to " + TransactionPage.MAX_LIMIT)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Request was performed successfully",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = BankTransaction.class)))),
+                    content = @Content(schema = @Schema(implementation = TransactionPage.class))),
             @ApiResponse(responseCode = "404", description = "If account by the given account number doesn't exist", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
-    public ResponseEntity<List<BankTransaction>> listTransactions(@PathVariable("accountNumber") long accountNumber) {
-        List<BankTransaction> result = bankService.listTransactions(AccountNumber.of(accountNumber));
+    public ResponseEntity<TransactionPage<BankTransaction>> listTransactions(@PathVariable("accountNumber") long accountNumber,
+                                                                             @RequestParam(value = "after", required = false) String after,
+                                                                             @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        TransactionPage<BankTransaction> result = bankService.listTransactions(AccountNumber.of(accountNumber), parseCursor(after), limit);
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    @PostMapping(value = "transactions/batches", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Apply a batch of deposits and withdrawals",
+            description = "Endpoint to apply up to " + BatchOperation.MAX_BATCH_SIZE + " deposits and withdrawals of any accounts in the given order. " +
+                    "Every operation is applied or rejected on its own, unless the batch is all-or-nothing")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch was processed, results of the operations are in the response",
+                    content = @Content(schema = @Schema(implementation = BatchResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    public ResponseEntity<BatchResponse> applyBatch(@RequestBody BatchRequest request) {
+        List<BatchOperationResult> results = bankService.applyBatch(request.getOperations(), request.isAllOrNothing());
+        return new ResponseEntity<>(BatchResponse.of(results, this::buildErrorResponse), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(summary = "Export complete history of transactions for the account",
+            description = "Endpoint to stream the complete history of transactions for the given account, most recent first. " +
+                    "Transactions are written as newline delimited JSON, or as a JSON array if application/json is accepted")
+    @Parameter(name = "accountNumber", description = "Account number. Must be a 10 digits long number")
+    @Parameter(name = "type", description = "Type of transactions to export. Omit to export all transactions")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Request was performed successfully",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = BankTransaction.class))),
+            @ApiResponse(responseCode = "404", description = "If account by the given account number doesn't exist", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request. Check the description in response", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    public ResponseEntity<StreamingResponseBody> exportTransactions(@PathVariable("accountNumber") long accountNumber,
+                                                                    @RequestParam(value = "type", required = false) TransactionType type,
+                                                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        AccountNumber number = AccountNumber.of(accountNumber);
+        // the status can't be changed once streaming has started, so a missing account is reported right away
+        bankService.getAccount(number);
+
+        boolean array = isJsonArrayRequested(accept);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                if (array) {
+                    generator.writeStartArray();
+                }
+                // send the headers before the first batch of transactions is read
+                generator.flush();
+                bankService.exportTransactions(number, type, transaction -> writeTransaction(generator, transaction, array));
+                if (array) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        MediaType contentType = array ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
+    /**
+     * Write a single exported transaction. Transactions are written through the generator buffer, the response
+     * is flushed by the container whenever its buffer is full
+     *
+     * @param generator   JSON generator of the response
+     * @param transaction transaction to write
+     * @param array       if true, transaction is an element of the JSON array, otherwise a single line
+     */
+    private void writeTransaction(JsonGenerator generator, BankTransaction transaction, boolean array) {
+        try {
+            generator.writeObject(transaction);
+            if (!array) {
+                generator.writeRaw('\n');
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Build the error response of a rejected batch operation, like the controller advice does for single operations
+     *
+     * @param ex reason of the rejection
+     * @return error response
+     */
+    private ErrorResponse buildErrorResponse(BankServiceException ex) {
+        ErrorKey errorKey;
+        String[] variables = {};
+        if (ex instanceof AccountNotFoundException notFound) {
+            errorKey = ErrorKey.ACCOUNT_NOT_FOUND_ERROR;
+            variables = new String[]{notFound.getAccountNumber().toString()};
+        } else if (ex instanceof InsufficientBalanceException) {
+            errorKey = ErrorKey.INSUFFICIENT_BALANCE_ERROR;
+        } else {
+            errorKey = ErrorKey.SYSTEM_INTERNAL_ERROR;
+        }
+        return ErrorResponse.of(errorKey, messageSource.getMessage(errorKey.getMessageKey(), variables, Locale.ROOT));
+    }
+
+    /**
+     * Check if the export should be a single JSON array instead of newline delimited JSON
+     *
+     * @param accept value of the Accept header, may be null
+     * @return true if application/json is accepted explicitly and newline delimited JSON isn't
+     */
+    static boolean isJsonArrayRequested(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return false;
+        }
+        boolean json = false;
+        for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+            if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON)) {
+                return false;
+            }
+            json |= mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_JSON);
+        }
+        return json;
+    }
+
+    /**
+     * Parse the optional history cursor request parameter
+     *
+     * @param after encoded cursor, may be null
+     * @return cursor or null if not provided
+     */
+    static TransactionCursor parseCursor(String after) {
+        return after == null || after.isEmpty() ? null : TransactionCursor.parse(after);
+    }
+
     @Autowired
     public void setBankService(BankService bankService) {
         this.bankService = bankService;
     }
 
+    @Autowired
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Autowired
+    public void setMessageSource(MessageSource messageSource) {
+        this.messageSource = messageSource;
+    }
+
 }
@@ -0,0 +1,89 @@
+package net.uniloftsky.markant.bank.rest;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.BatchOperation;
+import net.uniloftsky.markant.bank.biz.Money;
+import net.uniloftsky.markant.bank.biz.TransactionAmountFormatException;
+import net.uniloftsky.markant.bank.biz.TransactionType;
+
+import java.util.List;
+
+/**
+ * Request used to apply a batch of deposits and withdrawals
+ */
+@Schema(description = "Request object to apply a batch of deposits and withdrawals")
+public class BatchRequest {
+
+    /**
+     * All-or-nothing mode of the batch
+     */
+    @Schema(description = "If true, the batch is applied only if none of its operations is rejected. Otherwise every operation is applied or rejected on its own")
+    private boolean allOrNothing;
+
+    /**
+     * Operations of the batch
+     */
+    @Schema(description = "Deposits and withdrawals to apply in the given order, from 1 to " + BatchOperation.MAX_BATCH_SIZE)
+    private List<Operation> operations;
+
+    public boolean isAllOrNothing() {
+        return allOrNothing;
+    }
+
+    public void setAllOrNothing(boolean allOrNothing) {
+        this.allOrNothing = allOrNothing;
+    }
+
+    public List<BatchOperation> getOperations() {
+        return operations == null ? null : operations.stream().map(Operation::toBatchOperation).toList();
+    }
+
+    public void setOperations(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "allOrNothing=" + allOrNothing +
+                ", operations=" + (operations == null ? 0 : operations.size()) +
+                '}';
+    }
+
+    /**
+     * Single operation of the batch
+     */
+    @Schema(name = "BatchOperationRequest", description = "Deposit or withdrawal of the batch")
+    public static class Operation {
+
+        @Schema(description = "Account number of the operation. Must be a 10 digits long number")
+        private long accountNumber;
+
+        @Schema(description = "Type of the operation, DEPOSIT or WITHDRAWAL")
+        private TransactionType type;
+
+        @Schema(description = "The amount of money to deposit/withdraw. The fractional part must be separated by a period (.) and have at most two digits", example = "100.25")
+        private String amount;
+
+        public void setAccountNumber(long accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+
+        public void setType(TransactionType type) {
+            this.type = type;
+        }
+
+        public void setAmount(String amount) {
+            this.amount = amount;
+        }
+
+        BatchOperation toBatchOperation() {
+            try {
+                return new BatchOperation(AccountNumber.of(accountNumber), type, Money.parse(amount));
+            } catch (NumberFormatException ex) {
+                throw new TransactionAmountFormatException(amount);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package net.uniloftsky.markant.bank.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import net.uniloftsky.markant.bank.biz.BankAccount;
+import net.uniloftsky.markant.bank.biz.BankServiceException;
+import net.uniloftsky.markant.bank.biz.BatchOperationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Response with the results of a batch of deposits and withdrawals
+ */
+@JsonPropertyOrder({"applied", "rejected", "results"})
+@Schema(description = "Results of a batch of deposits and withdrawals")
+public final class BatchResponse {
+
+    @Schema(description = "Number of applied operations")
+    private final int applied;
+
+    @Schema(description = "Number of rejected operations")
+    private final int rejected;
+
+    @Schema(description = "Results of the operations, in the order of the request")
+    private final List<Result> results;
+
+    private BatchResponse(int applied, int rejected, List<Result> results) {
+        this.applied = applied;
+        this.rejected = rejected;
+        this.results = results;
+    }
+
+    /**
+     * Create the response of batch results
+     *
+     * @param results       results of the batch operations
+     * @param errorResponse builder of the error responses of rejected operations
+     * @return batch response
+     */
+    static BatchResponse of(List<BatchOperationResult> results, Function<BankServiceException, ErrorResponse> errorResponse) {
+        int applied = 0;
+        int rejected = 0;
+        List<Result> responseResults = new ArrayList<>(results.size());
+        for (BatchOperationResult result : results) {
+            switch (result.getStatus()) {
+                case APPLIED -> applied++;
+                case REJECTED -> rejected++;
+                case NOT_APPLIED -> {
+                }
+            }
+            ErrorResponse error = result.getError() == null ? null : errorResponse.apply(result.getError());
+            responseResults.add(new Result(result.getStatus(), result.getAccount(), error));
+        }
+        return new BatchResponse(applied, rejected, responseResults);
+    }
+
+    public int getApplied() {
+        return applied;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Result of a single operation
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonPropertyOrder({"status", "account", "error"})
+    @Schema(name = "BatchOperationResponse", description = "Result of a deposit or withdrawal of the batch")
+    public static final class Result {
+
+        @Schema(description = "APPLIED, REJECTED or NOT_APPLIED if another operation of an all-or-nothing batch was rejected")
+        private final BatchOperationResult.Status status;
+
+        @Schema(description = "Account with its balance after the operation, only if the operation is applied")
+        private final BankAccount account;
+
+        @Schema(description = "Reason of the rejection, only if the operation is rejected")
+        private final ErrorResponse error;
+
+        Result(BatchOperationResult.Status status, BankAccount account, ErrorResponse error) {
+            this.status = status;
+            this.account = account;
+            this.error = error;
+        }
+
+        public BatchOperationResult.Status getStatus() {
+            return status;
+        }
+
+        public BankAccount getAccount() {
+            return account;
+        }
+
+        public ErrorResponse getError() {
+            return error;
+        }
+    }
+}
@@ -20,6 +20,11 @@ public enum ErrorKey {
      */
     ACCOUNT_NOT_FOUND_ERROR("account.not.found.error"),
 
+    /**
+     * Error if the account is locked by other operations for too long
+     */
+    ACCOUNT_BUSY_ERROR("account.busy.error"),
+
     /**
      * Error if the transaction amount exceeds the current account balance
      */
@@ -33,7 +38,27 @@ public enum ErrorKey {
     /**
      * Error if provided transaction amount format is invalid. For example 100,50 instead of 100.50
      */
-    TRANSACTION_AMOUNT_FORMAT_ERROR("transaction.amount.format.error");
+    TRANSACTION_AMOUNT_FORMAT_ERROR("transaction.amount.format.error"),
+
+    /**
+     * Error if provided transaction history cursor cannot be decoded
+     */
+    INVALID_TRANSACTION_CURSOR_ERROR("invalid.transaction.cursor.error"),
+
+    /**
+     * Error if requested number of transactions on a history page is out of range
+     */
+    INVALID_PAGE_LIMIT_ERROR("invalid.page.limit.error"),
+
+    /**
+     * Error if a batch of operations is empty, too large or contains an operation which cannot be batched
+     */
+    INVALID_BATCH_ERROR("invalid.batch.error"),
+
+    /**
+     * Error if a request parameter cannot be converted to the expected type. For example unknown transaction type
+     */
+    INVALID_REQUEST_PARAMETER_ERROR("invalid.request.parameter.error");
 
     /**
      * Message key corresponding to "exceptions.properties"
@@ -0,0 +1,100 @@
+package net.uniloftsky.markant.bank.rest;
+
+import net.uniloftsky.markant.bank.biz.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of the {@link BankController}, with the same URLs, requests and responses.
+ * Active when the application runs as a reactive web application, see the "reactive" profile.
+ * The API is documented by the {@link BankController}
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveBankController {
+
+    private ReactiveBankService bankService;
+
+    @GetMapping(value = "accounts/{accountNumber}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BankAccount>> getAccount(@PathVariable("accountNumber") long accountNumber) {
+        return Mono.defer(() -> bankService.getAccount(AccountNumber.of(accountNumber)))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK));
+    }
+
+    @PostMapping(value = "accounts/{accountNumber}/transactions/deposits", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BankAccount>> deposit(@PathVariable("accountNumber") long accountNumber, @RequestBody BalanceUpdateRequest request) {
+        return Mono.defer(() -> bankService.deposit(AccountNumber.of(accountNumber), request.getAmount()))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.CREATED));
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions/deposits", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TransactionPage<DepositTransaction>>> listDeposits(@PathVariable("accountNumber") long accountNumber,
+                                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                                  @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        return Mono.defer(() -> bankService.listDeposits(AccountNumber.of(accountNumber), BankController.parseCursor(after), limit))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK));
+    }
+
+    @PostMapping(value = "accounts/{accountNumber}/transactions/withdrawals", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BankAccount>> withdraw(@PathVariable("accountNumber") long accountNumber, @RequestBody BalanceUpdateRequest request) {
+        return Mono.defer(() -> bankService.withdraw(AccountNumber.of(accountNumber), request.getAmount()))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.CREATED));
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions/withdrawals", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TransactionPage<WithdrawTransaction>>> listWithdrawals(@PathVariable("accountNumber") long accountNumber,
+                                                                                      @RequestParam(value = "after", required = false) String after,
+                                                                                      @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        return Mono.defer(() -> bankService.listWithdrawals(AccountNumber.of(accountNumber), BankController.parseCursor(after), limit))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK));
+    }
+
+    @PostMapping(value = "accounts/{accountNumber}/transactions/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TransferTransaction>> transfer(@PathVariable("accountNumber") long fromAccountNumber, @RequestBody TransferRequest request) {
+        return Mono.defer(() -> bankService.transfer(AccountNumber.of(fromAccountNumber), request.getTargetAccountNumber(), request.getAmount()))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.CREATED));
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TransactionPage<TransferTransaction>>> listTransfers(@PathVariable("accountNumber") long accountNumber,
+                                                                                    @RequestParam(value = "after", required = false) String after,
+                                                                                    @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        return Mono.defer(() -> bankService.listTransfers(AccountNumber.of(accountNumber), BankController.parseCursor(after), limit))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK));
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TransactionPage<BankTransaction>>> listTransactions(@PathVariable("accountNumber") long accountNumber,
+                                                                                   @RequestParam(value = "after", required = false) String after,
+                                                                                   @RequestParam(value = "limit", defaultValue = "" + TransactionPage.DEFAULT_LIMIT) int limit) {
+        return Mono.defer(() -> bankService.listTransactions(AccountNumber.of(accountNumber), BankController.parseCursor(after), limit))
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK));
+    }
+
+    @GetMapping(value = "accounts/{accountNumber}/transactions/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<BankTransaction>>> exportTransactions(@PathVariable("accountNumber") long accountNumber,
+                                                                          @RequestParam(value = "type", required = false) TransactionType type,
+                                                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return Mono.defer(() -> {
+            AccountNumber number = AccountNumber.of(accountNumber);
+            MediaType contentType = BankController.isJsonArrayRequested(accept) ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON;
+            // the status can't be changed once streaming has started, so a missing account is reported right away.
+            // Transactions are read as the response is written, as a JSON array or one per line
+            return bankService.getAccount(number)
+                    .thenReturn(ResponseEntity.ok().contentType(contentType).body(bankService.exportTransactions(number, type)));
+        });
+    }
+
+    @Autowired
+    public void setBankService(ReactiveBankService bankService) {
+        this.bankService = bankService;
+    }
+
+}
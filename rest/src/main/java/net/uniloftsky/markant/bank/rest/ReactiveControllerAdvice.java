@@ -0,0 +1,43 @@
+package net.uniloftsky.markant.bank.rest;
+
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+/**
+ * Controller advice to handle exceptions of the reactive stack, with the same responses as the {@link ControllerAdvice}
+ * of the servlet stack
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveControllerAdvice extends AbstractControllerAdvice {
+
+    /**
+     * WebFlux reports missing handlers and unsupported requests with their status, only missing handlers
+     * have a response of their own, like on the servlet stack
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorResponse> handleResponseStatus(ResponseStatusException ex) {
+        if (ex.getStatusCode().value() == HttpStatus.NOT_FOUND.value()) {
+            ErrorResponse errorResponse = buildErrorResponse(ErrorKey.API_NOT_FOUND_ERROR);
+            return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+        }
+        return handleGenericException(ex);
+    }
+
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidRequestParameter(ServerWebInputException ex) {
+        MethodParameter parameter = ex.getMethodParameter();
+        if (!(ex.getCause() instanceof TypeMismatchException typeMismatch) || parameter == null) {
+            return handleGenericException(ex);
+        }
+        ErrorResponse errorResponse = buildErrorResponse(ErrorKey.INVALID_REQUEST_PARAMETER_ERROR, String.valueOf(typeMismatch.getValue()), parameter.getParameterName());
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+}
@@ -2,10 +2,9 @@ package net.uniloftsky.markant.bank.rest;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import net.uniloftsky.markant.bank.biz.AccountNumber;
+import net.uniloftsky.markant.bank.biz.Money;
 import net.uniloftsky.markant.bank.biz.TransactionAmountFormatException;
 
-import java.math.BigDecimal;
-
 /**
  * Request used to transfer transaction from one account to another
  */
@@ -21,7 +20,7 @@ public class TransferRequest {
     /**
      * Transfer amount
      */
-    @Schema(description = "The amount of money to transfer. The fractional part must be separated by a period (.)", example = "100.25")
+    @Schema(description = "The amount of money to transfer. The fractional part must be separated by a period (.) and have at most two digits", example = "100.25")
     private String amount;
 
     public AccountNumber getTargetAccountNumber() {
@@ -32,9 +31,9 @@ public class TransferRequest {
         this.targetAccountNumber = targetAccountNumber;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         try {
-            return new BigDecimal(amount);
+            return Money.parse(amount);
         } catch (NumberFormatException ex) {
             throw new TransactionAmountFormatException(amount);
         }